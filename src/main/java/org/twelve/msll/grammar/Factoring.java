@@ -0,0 +1,57 @@
+package org.twelve.msll.grammar;
+
+import org.twelve.msll.grammarsymbol.NonTerminal;
+import org.twelve.msll.parser.Symbol;
+
+import java.util.List;
+
+/**
+ * What a production made by left factoring ({@link GrammarBuilder.Transform#LEFT_FACTORING}) or inlining
+ * ({@link GrammarBuilder.Transform#INLINING}) stands for, so the parse tree comes out as the grammar before the
+ * rewrite would have built it.
+ * <p>
+ * Alternatives sharing a prefix are parsed as one production, {@code A → prefix A_rest'}, and the rest of each
+ * alternative becomes a production of the helper grammar {@code A_rest'}. The helper's node is {@link #spliced()}
+ * into the node of {@code A} as soon as it is expanded, so the nodes of an alternative end up side by side under
+ * {@code A} wherever the production parsing them cut it. Once the production of an alternative's rest is chosen it
+ * is known which alternative was parsed: its {@link #explain()} is given to the node of {@code A}, and the nodes of
+ * the rules the alternative was substituted from are put back with {@link #nests()}.
+ * <p>
+ * A production rules were inlined into is not spliced and completes nothing: it only names the inlined rules among
+ * its nests, to be put back when the parser is asked for their nodes.
+ *
+ * @param spliced whether the expanded node is a helper whose nodes belong to its parent
+ * @param explain the explain of the alternative the production completes, {@code null} if it does not complete
+ *                one (yet)
+ * @param nests   the rule nodes to put back among the nodes of the alternative, in order
+ * @author huizi 2024
+ */
+public record Factoring(boolean spliced, String explain, List<Nest> nests) {
+    /**
+     * The factoring of a helper production that only continues a prefix shared by several alternatives.
+     */
+    public static final Factoring CONTINUED = new Factoring(true, null, List.of());
+
+    /**
+     * @return whether the production completes an alternative, so its explain is to be applied
+     */
+    public boolean completes() {
+        return this.explain != null;
+    }
+
+    /**
+     * A rule node an alternative was substituted from: a leading non-terminal replaced by one of its productions,
+     * so that the alternative's prefix could be shared, or a rule inlined into the production. The node takes the
+     * nodes {@code [from, to)} of its parent.
+     *
+     * @param symbol  the symbol of the rule node
+     * @param explain the explain of the substituted production
+     * @param inlined whether the rule was inlined, so its node is only put back on request
+     * @param from    the index of its first node among the nodes of its parent
+     * @param to      the index after its last node
+     * @param nests   the rule nodes within it, indexed among its own nodes
+     */
+    public record Nest(Symbol<NonTerminal> symbol, String explain, boolean inlined, int from, int to,
+                       List<Nest> nests) {
+    }
+}
@@ -0,0 +1,467 @@
+package org.twelve.msll.grammar;
+
+import org.twelve.msll.grammarsymbol.Terminal;
+import org.twelve.msll.grammarsymbol.Terminals;
+import org.twelve.msll.parser.Symbol;
+import org.twelve.msll.util.Components;
+import org.twelve.msll.util.Tool;
+
+import java.util.*;
+
+/**
+ * Computes the FIRST and FOLLOW sets of a set of grammars.
+ * <p>
+ * Every terminal met gets a dense index, and the sets are {@link BitSet}s over those indexes while they are being
+ * computed. Instead of sweeping all productions until nothing changes, each set is solved over the strongly
+ * connected components of its dependency graph, dependencies first: a component is iterated to its fixpoint once
+ * everything it depends on is final, so an acyclic rule is visited once and only a cycle iterates.
+ * <ul>
+ *   <li>FIRST(A) depends on FIRST(B) for every non-terminal B in a production of A;</li>
+ *   <li>FOLLOW(B) depends on FOLLOW(A) for every production of A that B can end.</li>
+ * </ul>
+ * The sets are the least fixpoints the sweeps computed. Any terminal symbol, ε and grammar predicates included,
+ * ends the FIRST of a production; a production whose symbols are all nullable non-terminals has ε in its FIRST, and
+ * a grammar is nullable when ε is in its FIRST. FOLLOW never holds ε. The results are stored on the
+ * {@link Production}s and {@link Grammar}s.
+ * <p>
+ * Sets rebuilt after some rules changed start from the sets of the grammars before the change: a component none of
+ * whose members changed, and none of whose dependencies got a different set, takes its sets over as they were, so
+ * only the components a change reaches are solved again, and a change stops spreading where a set comes out the
+ * same. The solver is kept on the {@link Grammars} for the next such rebuild.
+ *
+ * @author huizi 2024
+ */
+final class FirstFollowSets {
+    private final List<Grammar> grammars;
+    private final Map<Grammar, Integer> indexes = new IdentityHashMap<>();
+    private final Map<Terminal, Integer> terminalIndexes = new IdentityHashMap<>();
+    private final List<Terminal> terminalList = new ArrayList<>();
+    private final int epsilon;
+
+    private final BitSet[] firsts;
+    private final BitSet[] follows;
+    /**
+     * FOLLOW of every grammar before it takes in FOLLOW of other grammars: its seed and the terminals that follow it
+     * within productions.
+     */
+    private final BitSet[] localFollows;
+    /**
+     * The grammars whose FOLLOW the FOLLOW of every grammar takes in.
+     */
+    private final int[][] followDependencies;
+    /**
+     * FIRST of every production, in the order of {@link Grammar#productions()}.
+     */
+    private final BitSet[][] productionFirsts;
+    /**
+     * The grammars of the non-terminal symbols of every production; {@code null} for a terminal symbol.
+     */
+    private final Grammar[][][] symbolGrammars;
+
+    /**
+     * The sets of the grammars these were rebuilt from, {@code null} for grammars built from scratch; released once
+     * the sets are computed.
+     */
+    private FirstFollowSets previous;
+    private final boolean incremental;
+    /**
+     * Index in {@link #previous} of the grammar of the same name, -1 for a new grammar.
+     */
+    private final int[] previousIndexes;
+    /**
+     * Whether the productions of a grammar differ from those of its previous grammar, or it has none.
+     */
+    private final boolean[] rebuilt;
+    private final boolean[] firstChanged;
+    private final boolean[] productionFirstChanged;
+    private final boolean[] followChanged;
+
+    FirstFollowSets(Map<String, Grammar> grammars, Terminals terminals) {
+        this(grammars, terminals, null);
+    }
+
+    /**
+     * @param previous the sets of the grammars before some rules changed, or {@code null} to solve everything; its
+     *                 terminals keep their indexes, so sets of both can be compared directly
+     */
+    FirstFollowSets(Map<String, Grammar> grammars, Terminals terminals, FirstFollowSets previous) {
+        this.grammars = new ArrayList<>(grammars.values());
+        for (int i = 0; i < this.grammars.size(); i++) this.indexes.put(this.grammars.get(i), i);
+        this.previous = previous;
+        this.incremental = previous != null;
+        if (previous != null) {
+            this.terminalList.addAll(previous.terminalList);
+            this.terminalIndexes.putAll(previous.terminalIndexes);
+        }
+        this.epsilon = index(terminals.EPSILON);
+        int size = this.grammars.size();
+        this.firsts = new BitSet[size];
+        this.follows = new BitSet[size];
+        this.localFollows = new BitSet[size];
+        this.followDependencies = new int[size][];
+        this.productionFirsts = new BitSet[size][];
+        this.symbolGrammars = new Grammar[size][][];
+        this.previousIndexes = new int[size];
+        this.rebuilt = new boolean[size];
+        this.firstChanged = new boolean[size];
+        this.productionFirstChanged = new boolean[size];
+        this.followChanged = new boolean[size];
+        Map<String, Integer> previousByName = new HashMap<>();
+        if (previous != null) {
+            for (int g = 0; g < previous.grammars.size(); g++) previousByName.put(previous.grammars.get(g).name(), g);
+        }
+        for (int g = 0; g < size; g++) {
+            Grammar grammar = this.grammars.get(g);
+            Integer old = previousByName.get(grammar.name());
+            this.previousIndexes[g] = old == null ? -1 : old;
+            this.rebuilt[g] = old == null || !sameProductions(previous.grammars.get(old), grammar);
+            this.firsts[g] = new BitSet();
+            this.follows[g] = new BitSet();
+            for (Terminal terminal : grammar.follow()) this.follows[g].set(index(terminal));
+            List<Production> productions = grammar.productions();
+            this.productionFirsts[g] = new BitSet[productions.size()];
+            this.symbolGrammars[g] = new Grammar[productions.size()][];
+            for (int p = 0; p < productions.size(); p++) {
+                this.productionFirsts[g][p] = new BitSet();
+                List<Symbol> symbols = productions.get(p).symbols();
+                Grammar[] resolved = new Grammar[symbols.size()];
+                for (int s = 0; s < symbols.size(); s++) {
+                    Symbol symbol = symbols.get(s);
+                    if (symbol.isTerminal()) {
+                        index((Terminal) symbol.type());
+                        continue;
+                    }
+                    resolved[s] = grammars.get(symbol.name());
+                    if (resolved[s] == null) {
+                        Tool.grammarError("symbol: " + symbol.name() + " is not found in all possible grammars");
+                    }
+                    resolved[s].trace();
+                }
+                this.symbolGrammars[g][p] = resolved;
+            }
+        }
+    }
+
+    /**
+     * @return whether both grammars have the same symbols in the same productions
+     */
+    private static boolean sameProductions(Grammar before, Grammar after) {
+        List<Production> was = before.productions();
+        List<Production> is = after.productions();
+        if (was.size() != is.size()) return false;
+        for (int p = 0; p < was.size(); p++) {
+            Production a = was.get(p), b = is.get(p);
+            if (a.symbolCount() != b.symbolCount()) return false;
+            for (int s = 0; s < a.symbolCount(); s++) {
+                Symbol<?> x = a.symbolAt(s), y = b.symbolAt(s);
+                if (x.isTerminal() != y.isTerminal()) return false;
+                if (x.isTerminal() ? x.type() != y.type() : !x.name().equals(y.name())) return false;
+            }
+        }
+        return true;
+    }
+
+    private int index(Terminal terminal) {
+        Integer index = this.terminalIndexes.get(terminal);
+        if (index == null) {
+            index = this.terminalList.size();
+            this.terminalIndexes.put(terminal, index);
+            this.terminalList.add(terminal);
+        }
+        return index;
+    }
+
+    /**
+     * Computes FIRST, then FOLLOW, and stores them on the productions and grammars.
+     */
+    void compute() {
+        int size = this.grammars.size();
+        List<int[]> firstDependencies = new ArrayList<>(size);
+        List<BitSet> followDependencies = new ArrayList<>(size);
+        for (int g = 0; g < size; g++) followDependencies.add(new BitSet());
+        for (int g = 0; g < size; g++) {
+            BitSet dependencies = new BitSet();
+            for (Grammar[] resolved : this.symbolGrammars[g]) {
+                for (Grammar grammar : resolved) {
+                    if (grammar != null) dependencies.set(this.indexes.get(grammar));
+                }
+            }
+            firstDependencies.add(dependencies.stream().toArray());
+        }
+        solve(firstDependencies, (g, dependencies) -> updateFirst(g), new Settle() {
+            @Override
+            public boolean reuse(int[] component) {
+                return reuseFirsts(component, firstDependencies);
+            }
+
+            @Override
+            public void settled(int[] component) {
+                settleFirsts(component);
+            }
+        });
+
+        for (int g = 0; g < size; g++) this.localFollows[g] = this.follows[g];
+        for (int g = 0; g < size; g++) collectFollows(g, this.localFollows, followDependencies);
+        List<int[]> followEdges = new ArrayList<>(size);
+        for (int g = 0; g < size; g++) {
+            this.followDependencies[g] = followDependencies.get(g).stream().toArray();
+            followEdges.add(this.followDependencies[g]);
+            this.follows[g] = (BitSet) this.localFollows[g].clone();
+        }
+        solve(followEdges, this::updateFollow, new Settle() {
+            @Override
+            public boolean reuse(int[] component) {
+                return reuseFollows(component);
+            }
+
+            @Override
+            public void settled(int[] component) {
+                for (int g : component) {
+                    int old = previousIndexes[g];
+                    followChanged[g] = old < 0 || !follows[g].equals(previous.follows[old]);
+                }
+            }
+        });
+
+        store();
+        this.previous = null;
+    }
+
+    /**
+     * Takes over the FIRST sets of a component from the previous sets, if none of its members changed and none of
+     * the grammars they depend on got a different FIRST.
+     *
+     * @return whether the sets were taken over
+     */
+    private boolean reuseFirsts(int[] component, List<int[]> dependencies) {
+        if (this.previous == null) return false;
+        for (int g : component) {
+            if (this.rebuilt[g]) return false;
+            for (int dependency : dependencies.get(g)) {
+                if (this.firstChanged[dependency]) return false;
+            }
+        }
+        for (int g : component) {
+            int old = this.previousIndexes[g];
+            this.firsts[g] = (BitSet) this.previous.firsts[old].clone();
+            for (int p = 0; p < this.productionFirsts[g].length; p++) {
+                this.productionFirsts[g][p] = (BitSet) this.previous.productionFirsts[old][p].clone();
+            }
+        }
+        return true;
+    }
+
+    private void settleFirsts(int[] component) {
+        for (int g : component) {
+            int old = this.previousIndexes[g];
+            if (old < 0) {
+                this.firstChanged[g] = this.productionFirstChanged[g] = true;
+                continue;
+            }
+            this.firstChanged[g] = !this.firsts[g].equals(this.previous.firsts[old]);
+            BitSet[] before = this.previous.productionFirsts[old];
+            BitSet[] after = this.productionFirsts[g];
+            boolean changed = before.length != after.length;
+            for (int p = 0; p < after.length && !changed; p++) changed = !after[p].equals(before[p]);
+            this.productionFirstChanged[g] = changed;
+        }
+    }
+
+    /**
+     * Takes over the FOLLOW sets of a component from the previous sets, if every member has the same local FOLLOW
+     * and takes in FOLLOW of the same grammars as before, none of which got a different FOLLOW.
+     *
+     * @return whether the sets were taken over
+     */
+    private boolean reuseFollows(int[] component) {
+        if (this.previous == null) return false;
+        for (int g : component) {
+            int old = this.previousIndexes[g];
+            if (old < 0 || !this.localFollows[g].equals(this.previous.localFollows[old])) return false;
+            int[] dependencies = this.followDependencies[g];
+            int[] before = this.previous.followDependencies[old];
+            if (dependencies.length != before.length) return false;
+            int[] mapped = new int[dependencies.length];
+            for (int i = 0; i < dependencies.length; i++) {
+                if (this.followChanged[dependencies[i]] || this.previousIndexes[dependencies[i]] < 0) return false;
+                mapped[i] = this.previousIndexes[dependencies[i]];
+            }
+            Arrays.sort(mapped);
+            if (!Arrays.equals(mapped, before)) return false;
+        }
+        for (int g : component) this.follows[g] = (BitSet) this.previous.follows[this.previousIndexes[g]].clone();
+        return true;
+    }
+
+    /**
+     * @return whether the sets were rebuilt from the sets of earlier grammars, see {@link #rebuilt()}
+     */
+    boolean incremental() {
+        return this.incremental;
+    }
+
+    /**
+     * @return the names of the grammars that are new or whose productions changed
+     */
+    Set<String> rebuilt() {
+        Set<String> names = new HashSet<>();
+        for (int g = 0; g < this.grammars.size(); g++) {
+            if (this.rebuilt[g]) names.add(this.grammars.get(g).name());
+        }
+        return names;
+    }
+
+    /**
+     * @return the names of the grammars whose predict table row may differ from that of the grammar of the same
+     * name before: new or changed productions, FIRST of a production changed, or FOLLOW changed for a nullable one
+     */
+    Set<String> changed() {
+        Set<String> names = new HashSet<>();
+        for (int g = 0; g < this.grammars.size(); g++) {
+            if (this.rebuilt[g] || this.productionFirstChanged[g]
+                    || (this.followChanged[g] && this.firsts[g].get(this.epsilon))) {
+                names.add(this.grammars.get(g).name());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Recomputes FIRST of the productions of grammar {@code g} and of the grammar.
+     *
+     * @return whether FIRST of the grammar grew
+     */
+    private boolean updateFirst(int g) {
+        BitSet first = this.firsts[g];
+        int before = first.cardinality();
+        Grammar[][] resolved = this.symbolGrammars[g];
+        List<Production> productions = this.grammars.get(g).productions();
+        for (int p = 0; p < resolved.length; p++) {
+            BitSet production = this.productionFirsts[g][p];
+            boolean broken = false;
+            for (int s = 0; s < resolved[p].length && !broken; s++) {
+                Grammar grammar = resolved[p][s];
+                if (grammar == null) {
+                    production.set(this.terminalIndexes.get((Terminal) productions.get(p).symbolAt(s).type()));
+                    broken = true;
+                } else {
+                    // FIRST of the symbol without ε
+                    BitSet symbolFirst = this.firsts[this.indexes.get(grammar)];
+                    boolean hadEpsilon = production.get(this.epsilon);
+                    production.or(symbolFirst);
+                    if (!hadEpsilon) production.clear(this.epsilon);
+                    broken = !symbolFirst.get(this.epsilon);
+                }
+            }
+            // a production whose every symbol can produce ε can produce ε
+            if (!broken) production.set(this.epsilon);
+            first.or(production);
+        }
+        return first.cardinality() > before;
+    }
+
+    /**
+     * Records, for every non-terminal of the productions of grammar {@code g}, the terminals that can follow it
+     * within the production, and whether the rest of the production is nullable, which makes its FOLLOW depend on
+     * FOLLOW of {@code g}.
+     */
+    private void collectFollows(int g, BitSet[] localFollows, List<BitSet> followDependencies) {
+        Grammar[][] resolved = this.symbolGrammars[g];
+        List<Production> productions = this.grammars.get(g).productions();
+        for (int p = 0; p < resolved.length; p++) {
+            BitSet next = new BitSet(); // FIRST of the rest of the production
+            boolean restNullable = true;
+            for (int s = resolved[p].length - 1; s >= 0; s--) {
+                Grammar grammar = resolved[p][s];
+                if (grammar == null) {
+                    next.clear();
+                    next.set(this.terminalIndexes.get((Terminal) productions.get(p).symbolAt(s).type()));
+                    restNullable = false;
+                    continue;
+                }
+                int b = this.indexes.get(grammar);
+                if (restNullable) followDependencies.get(b).set(g);
+                localFollows[b].or(next);
+                BitSet symbolFirst = this.firsts[b];
+                if (!symbolFirst.get(this.epsilon)) {
+                    next.clear();
+                    restNullable = false;
+                }
+                next.or(symbolFirst);
+            }
+        }
+    }
+
+    /**
+     * Adds FOLLOW of every grammar that grammar {@code b} can end a production of.
+     *
+     * @return whether FOLLOW of {@code b} grew
+     */
+    private boolean updateFollow(int b, int[] dependencies) {
+        BitSet follow = this.follows[b];
+        int before = follow.cardinality();
+        for (int a : dependencies) follow.or(this.follows[a]);
+        return follow.cardinality() > before;
+    }
+
+    /**
+     * Solves one kind of set: visits the strongly connected components of the dependency graph in an order where
+     * every component comes after the components it depends on, and updates the members of a component until none
+     * of them changes, unless its sets can be taken over from the previous sets.
+     */
+    private static void solve(List<int[]> dependencies, Update update, Settle settle) {
+        for (int[] component : new Components(dependencies).components()) {
+            if (settle.reuse(component)) continue;
+            boolean changed;
+            do {
+                changed = false;
+                for (int node : component) {
+                    if (update.update(node, dependencies.get(node))) changed = true;
+                }
+            } while (changed && (component.length > 1 || Components.selfDependent(component[0], dependencies)));
+            settle.settled(component);
+        }
+    }
+
+    private interface Update {
+        boolean update(int node, int[] dependencies);
+    }
+
+    private interface Settle {
+        /**
+         * @return whether the sets of the component were taken over, so it needs no solving
+         */
+        boolean reuse(int[] component);
+
+        /**
+         * Called once the sets of a solved component are final.
+         */
+        void settled(int[] component);
+    }
+
+    /**
+     * Writes the sets back as the FIRST of every production, and the FIRST and FOLLOW of every grammar.
+     */
+    private void store() {
+        for (int g = 0; g < this.grammars.size(); g++) {
+            Grammar grammar = this.grammars.get(g);
+            List<Production> productions = grammar.productions();
+            for (int p = 0; p < productions.size(); p++) {
+                Set<Terminal> first = productions.get(p).first();
+                first.clear();
+                first.addAll(terminals(this.productionFirsts[g][p]));
+            }
+            grammar.setFirst(terminals(this.firsts[g]), this.firsts[g].get(this.epsilon));
+            BitSet follow = (BitSet) this.follows[g].clone();
+            follow.clear(this.epsilon);
+            grammar.follow().clear();
+            grammar.follow().addAll(terminals(follow));
+        }
+    }
+
+    private List<Terminal> terminals(BitSet set) {
+        List<Terminal> terminals = new ArrayList<>(set.cardinality());
+        for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) terminals.add(this.terminalList.get(i));
+        return terminals;
+    }
+}
@@ -40,9 +40,18 @@ public class Grammar {
     // FOLLOW set for this grammar
     private Set<Terminal> follow;
 
+    // FIRST set for this grammar once computed by the GrammarBuilder, null before
+    private List<Terminal> first = null;
+
+    // whether ε is in the computed FIRST set
+    private boolean nullable = false;
+
     // Boolean flag indicating if this grammar has been traced (used for debugging)
     private boolean traced = false;
 
+    // Dense index of this grammar within its Grammars (row of the predict table); -1 until collected
+    private int ordinal = -1;
+
     /**
      * 构造函数
      *
@@ -99,15 +108,30 @@ public class Grammar {
         return this.traced;
     }
 
+    /**
+     * Whether this grammar is a helper made by left factoring to hold the rests of alternatives sharing a prefix
+     * (see {@link Factoring}). Its cells keep their ε production alongside the others: the alternatives it stands
+     * for were all followed before factoring.
+     *
+     * @return is a left factoring helper
+     */
+    public boolean factoredRest() {
+        if (this.productions.isEmpty()) return false;
+        Factoring factoring = this.productions.get(0).factoring();
+        return factoring != null && factoring.spliced();
+    }
+
     /**
      * Computes the FIRST set for the production rules.
      * For each production, calculates its FIRST set and adds it to the non-terminal's FIRST set.
      * If there are overlapping terminal symbols across different productions, an exception is thrown.
      * Note that LL parsers do not support overlapping grammars.
+     * Once the {@link GrammarBuilder} has computed the FIRST sets, a copy of the computed set is returned.
      *
      * @return A list of terminals representing the combined FIRST set of all productions.
      */
     public List<Terminal> first() {
+        if (this.first != null) return new ArrayList<>(this.first);
         Set<Terminal> first = new HashSet<>();
         this.productions().forEach(production -> {
             List<Terminal> intersection = new ArrayList<>(first);
@@ -125,9 +149,21 @@ public class Grammar {
     }
 
     public boolean containsEmptyFirst() {
+        if (this.first != null) return this.nullable;
         return this.first().contains(terminals.EPSILON);
     }
 
+    /**
+     * Stores the FIRST set computed by the {@link GrammarBuilder}.
+     *
+     * @param first    the FIRST set
+     * @param nullable whether it contains ε
+     */
+    void setFirst(List<Terminal> first, boolean nullable) {
+        this.first = Collections.unmodifiableList(first);
+        this.nullable = nullable;
+    }
+
     /**
      * Computes the FOLLOW set for the non-terminal.
      * For each non-terminal, calculates its FOLLOW set and adds it to the non-terminal's FOLLOW set.
@@ -171,6 +207,25 @@ public class Grammar {
         return this.grammars;
     }
 
+    /**
+     * Assigns the dense index of this grammar within its {@link Grammars}.
+     *
+     * @param ordinal the index, unique among the grammars of one language
+     */
+    void setOrdinal(int ordinal) {
+        this.ordinal = ordinal;
+    }
+
+    /**
+     * Returns the dense index of this grammar within its {@link Grammars}; the predict table uses it as the row of
+     * its flat cell array.
+     *
+     * @return the ordinal, or -1 if the grammar has not been collected into a {@link Grammars} yet
+     */
+    public int ordinal() {
+        return this.ordinal;
+    }
+
     /**
      * Sets the trace status of the non-terminal.
      * <p>
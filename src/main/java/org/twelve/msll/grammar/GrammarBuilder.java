@@ -6,8 +6,6 @@ import org.twelve.msll.util.Tool;
 
 import java.util.*;
 
-import static org.twelve.msll.util.Tool.cast;
-
 /**
  * Abstract GrammarBuilder class for constructing a set of grammars for a customized language.
  *
@@ -18,6 +16,40 @@ import static org.twelve.msll.util.Tool.cast;
  * @since 1.0
  */
 public abstract class GrammarBuilder {
+    /**
+     * Optional rewrites of the grammars, run by {@link #build()} after left recursion elimination, in the order
+     * they are declared. None is on by default; each keeps the language and the parse tree of the grammar as
+     * written.
+     */
+    public enum Transform {
+        /**
+         * Grammars no start grammar reaches are removed, so that neither the FIRST and FOLLOW sets nor the predict
+         * table spend anything on rules a parse can never enter, and the terminals only they consume are lexed as
+         * terminals the parser does not expect. See {@link #removeUnreachable}.
+         */
+        PRUNING,
+        /**
+         * Rules of a single production that only pass through, {@code a: b;} and the helpers of left recursion
+         * elimination and of groups, are inlined into the productions referring to them, so the parser does not
+         * expand them one level at a time. Their nodes are left out of the tree, as {@link
+         * org.twelve.msll.parser.MyParser} abstracts them anyway, unless {@link
+         * org.twelve.msll.parser.MsllParser#setInlinedNodes} asks for them.
+         */
+        INLINING,
+        /**
+         * Alternatives sharing a prefix are parsed as one production up to where they differ, so the parser
+         * forks at the end of the prefix, if at all, instead of at its start; a leading non-terminal whose FIRST
+         * set overlaps a sibling alternative's is substituted by its productions to expose the prefix. See
+         * {@link Factoring}.
+         */
+        LEFT_FACTORING
+    }
+
+    /**
+     * The optional rewrites {@link #build()} runs
+     */
+    private Set<Transform> transforms = EnumSet.noneOf(Transform.class);
+
     /**
      * A map to store the grammars by their names
      */
@@ -43,6 +75,22 @@ public abstract class GrammarBuilder {
         this.terminals = terminals;
     }
 
+    /**
+     * Chooses the optional rewrites {@link #build()} runs; none by default.
+     *
+     * @param transforms The rewrites to run.
+     */
+    public void setTransforms(Set<Transform> transforms) {
+        this.transforms = transforms.isEmpty() ? EnumSet.noneOf(Transform.class) : EnumSet.copyOf(transforms);
+    }
+
+    /**
+     * @return the optional rewrites {@link #build()} runs
+     */
+    public Set<Transform> transforms() {
+        return Collections.unmodifiableSet(this.transforms);
+    }
+
     /**
      * Creates or retrieves an existing grammar based on the grammar name.
      *
@@ -66,76 +114,6 @@ public abstract class GrammarBuilder {
         return grammar;
     }
 
-    /**
-     * Determines whether the FIRST set of a production has changed.
-     *
-     * This method compares the current size of the production's FIRST set with its previous size
-     * after updating it. If the size increases, it indicates that new terminals have been added to
-     * the FIRST set, and the method returns true. and the first computation will continue.
-     *
-     * @param production The production whose FIRST set is being checked.
-     * @param changed    The current state of change for FIRST sets.
-     * @return True if the FIRST set has changed; otherwise false.
-     */
-    private boolean isFirstChanged(Production production, boolean changed) {
-        boolean isChanged = changed;
-        boolean broken = false;
-        int oldSize = production.first().size();
-        for (Symbol symbol : production.symbols()) {
-            broken = checkBroken(production, symbol, broken);
-        }
-        // if all symbol in production can produce epsilon, then add epsilon to grammar.first
-        if (!broken) {
-            production.first().add(terminals.EPSILON);
-        }
-        if (production.first().size() > oldSize) {
-            isChanged = true;
-        }
-        return isChanged;
-    }
-
-    /**
-     * Checks whether a production can continue to add symbols to the FIRST set.
-     *
-     * This method processes each symbol in the production, adding its FIRST set to the production's
-     * FIRST set. If the symbol is a terminal, it is added directly, and the loop breaks. If the symbol is
-     * a non-terminal and contains epsilon, the loop continues to the next symbol.
-     *
-     * @param production The production being processed.
-     * @param symbol     The symbol from the production being examined.
-     * @param broken     Whether the production has "broken" (i.e., can no longer add symbols to FIRST).
-     * @return True if the production has been "broken" (i.e., can't continue to add symbols to FIRST); otherwise false.
-     */
-    private boolean checkBroken(Production production, Symbol symbol, boolean broken) {
-        boolean isBroken = broken;
-        // symbol is a terminal symbol, then FIRST(this) is {symbol}.
-        if (symbol.isTerminal()) {
-            if (!isBroken) {
-                production.first().add(cast(symbol.type()));
-                isBroken = true;
-            }
-        } else {
-            // if the first symbol is non-terminal, then this.first == the non-terminal.first
-            Grammar grammar = production.grammar().grammars().get(symbol.name());
-            if (grammar == null) {
-                Tool.grammarError("symbol: " + symbol.name() + " is not found in all possible grammars");
-            }
-            grammar.trace();
-            // if there is epsilon in this symbol FIRST, continue to compute next symbol, the next symbol
-            // FIRST will be added to the production as well
-            List<Terminal> grammarFirst = grammar.first();
-            boolean hasEpsilon = grammarFirst.remove(terminals.EPSILON);
-            if (!isBroken) {
-                production.first().addAll(grammarFirst);
-            }
-            // if this is epsilon, go on add the first to production;
-            if (!isBroken && !hasEpsilon) {
-                isBroken = true; // there is no epsilon in this symbol, do not need to traverse next symbol
-            }
-        }
-        return isBroken;
-    }
-
     /**
      * Abstract method for initializing grammars.
      *
@@ -144,17 +122,30 @@ public abstract class GrammarBuilder {
     public abstract void initialize();
 
     /**
-     * Builds the set of grammars after eliminating left recursion, computing FIRST and FOLLOW sets,
-     * and verifying the start grammar.
+     * Builds the set of grammars after eliminating left recursion, running the chosen {@link Transform}s, verifying
+     * the start grammar and computing FIRST and FOLLOW sets (see {@link FirstFollowSets}).
      *
      * @return The constructed Grammars object, ready for parsing.
      */
     public Grammars build() {
         this.eliminateLeftRecur(grammars);
+        if (this.transforms.contains(Transform.PRUNING)) {
+            List<String> unreachable = this.removeUnreachable(grammars);
+            unreachable.forEach(name -> Tool.warn("Warning: grammar " + name + " is not reachable, removed"));
+        }
+        if (this.transforms.contains(Transform.INLINING)) {
+            new Inlining(grammars, nonTerminals, terminals).inline();
+        }
+        if (this.transforms.contains(Transform.LEFT_FACTORING)) {
+            new LeftFactoring(grammars, nonTerminals, terminals).factor();
+        }
         Grammars gs = new Grammars(grammars);
         verifyStart(gs);
-        this.computeFirsts();
-        this.computeFollows();
+        Grammars previous = this.previousGrammars();
+        FirstFollowSets sets = new FirstFollowSets(grammars, terminals,
+                previous == null ? null : previous.firstFollowSets());
+        sets.compute();
+        gs.setFirstFollowSets(sets);
         // print not traced grammars
         printGrammarWarning(gs);
         return gs;
@@ -175,122 +166,52 @@ public abstract class GrammarBuilder {
     }
 
     /**
-     * 去掉头部所有的terminal，留下尾部第一个terminal
-     * trim(abCdef) = Cd;
+     * Removes the grammars no production reachable from a start grammar refers to, see {@link Transform#PRUNING}.
+     * <p>
+     * A symbol no grammar is defined for is still an error, in a removed grammar as well, and every start grammar
+     * is kept, so the grammar is verified as if nothing were removed.
      *
-     * @param origin input symbol list
-     * @return trimmed symbol list
+     * @param grammars The set of grammars to prune.
+     * @return the names of the grammars removed
      */
-    private List<Symbol> trimSProductionSymbols(List<Symbol> origin) {
-        List<Symbol> symbols = new ArrayList<>();
-        boolean onHead = false;
-        List<Symbol> buffer = new ArrayList<>();
-        for (Symbol symbol : origin) {
-            if (symbol.isTerminal()) {
-                if (onHead) {
-                    buffer.add(symbol);
+    protected List<String> removeUnreachable(Map<String, Grammar> grammars) {
+        Deque<Grammar> pending = new ArrayDeque<>();
+        Set<String> reached = new HashSet<>();
+        for (Map.Entry<String, Grammar> entry : grammars.entrySet()) {
+            Grammar grammar = entry.getValue();
+            for (Production production : grammar.productions()) {
+                for (Symbol symbol : production.symbols()) {
+                    if (!symbol.isTerminal() && !grammars.containsKey(symbol.name())) {
+                        Tool.grammarError("symbol: " + symbol.name() + " is not found in all possible grammars");
+                    }
                 }
-            } else {
-                if (!onHead) {
-                    onHead = true;
-                } else {
-                    symbols.addAll(buffer);
-                    buffer.clear();
+            }
+            if (grammar.type().isStart() && reached.add(entry.getKey())) pending.add(grammar);
+        }
+        if (pending.isEmpty()) return List.of();
+        while (!pending.isEmpty()) {
+            for (Production production : pending.poll().productions()) {
+                for (Symbol symbol : production.symbols()) {
+                    if (!symbol.isTerminal() && reached.add(symbol.name())) pending.add(grammars.get(symbol.name()));
                 }
-                symbols.add(symbol);
             }
         }
-        if (buffer.size() > 0) {
-            symbols.add(buffer.get(0));
+        List<String> removed = new ArrayList<>();
+        for (String name : grammars.keySet()) {
+            if (!reached.contains(name)) removed.add(name);
         }
-        return symbols;
-    }
-
-    /**
-     * Computes the FIRST set for all productions in the grammar.
-     *
-     * This method iterates through all productions and calculates their FIRST sets.
-     * It repeats this process until no changes are detected, ensuring that all FIRST sets are correctly computed.
-     */
-    private void computeFirsts() {
-        // get all productions
-        List<Production> productions = new ArrayList<>();
-        grammars.values().forEach(g -> productions.addAll(g.productions()));
-        // traverse productions multi times until there is no change for all grammar.follow
-        boolean changed;
-        do {
-            changed = false;
-            for (Production production : productions) {
-                changed = isFirstChanged(production, changed);
-            }
-        } while (changed);
+        removed.forEach(grammars::remove);
+        return removed;
     }
 
     /**
-     * Computes the FOLLOW set for all productions in the grammar.
+     * The grammars this builder rebuilds after some rules changed, whose FIRST and FOLLOW sets are taken over where
+     * the change does not reach.
      *
-     * This method iterates through all productions and calculates their FOLLOW sets,
-     * repeating the process until no changes are detected.
+     * @return the earlier grammars, or {@code null} (default) to compute every set from scratch
      */
-    private void computeFollows() {
-        // get all productions
-        List<Production> productions = new ArrayList<>();
-        grammars.values().forEach(g -> productions.addAll(g.productions()));
-        // traverse productions multi times until there is no change for all grammar.follow
-        boolean changed;
-        do {
-            changed = false;
-            for (Production production : productions) {
-                changed = isFollowChanged(production, changed);
-            }
-        } while (changed);
-    }
-
-    /**
-     * Checks whether the FOLLOW set of a production has changed.
-     *
-     * This method processes a production's symbols from right to left, updating the FOLLOW set of each non-terminal
-     * symbol based on the symbols that follow it. It trims terminal symbols from the head of the production.
-     *
-     * @param production The production being processed.
-     * @param changed    The current state of change for FOLLOW sets.
-     * @return True if the FOLLOW set has changed; otherwise false.
-     */
-    private boolean isFollowChanged(Production production, boolean changed) {
-        boolean isChanged = changed;
-        Grammar grammar = production.grammar();
-        // trim production symbols
-        List<Symbol> symbols = this.trimSProductionSymbols(production.symbols());
-        Set<Terminal> first = new HashSet<>(); // next first is my follow
-        boolean containsEmpty = true;
-        for (int i = symbols.size() - 1; i >= 0; i--) {
-            Symbol symbol = symbols.get(i);
-            // from right to left, if there are terminal from right
-            if (symbol.isTerminal()) {
-                first.clear();
-                first.add(cast(symbol.type()));
-                containsEmpty = false;
-                continue;
-            }
-            Grammar g = grammars.get(symbol.name()); // a non-terminal grammar in this production
-            int oldSize = g.follow().size();
-            // if the rest produce empty, add parent follow to my follow
-            if (containsEmpty) {
-                g.follow().addAll(grammar.follow());
-            }
-            // next first add to my follow
-            g.follow().addAll(first);
-            if (!g.first().contains(terminals.EPSILON)) { // if I don't have epsilon, the previous grammar will only
-                // have my first, or it will have my follow
-                first.clear();
-                containsEmpty = false;
-            }
-            first.addAll(g.first());
-            if (g.follow().size() > oldSize) {
-                isChanged = true;
-            }
-        }
-        return isChanged;
+    protected Grammars previousGrammars() {
+        return null;
     }
 
     private void printGrammarWarning(Grammars grammars) {
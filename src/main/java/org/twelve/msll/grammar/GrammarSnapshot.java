@@ -0,0 +1,494 @@
+package org.twelve.msll.grammar;
+
+import org.twelve.msll.grammarsymbol.NonTerminal;
+import org.twelve.msll.grammarsymbol.NonTerminals;
+import org.twelve.msll.grammarsymbol.SymbolType;
+import org.twelve.msll.grammarsymbol.Terminal;
+import org.twelve.msll.grammarsymbol.Terminals;
+import org.twelve.msll.parser.PredictTable;
+import org.twelve.msll.parser.Symbol;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * A fully built grammar in a versioned binary form: terminals (patterns, lexer commands, modes, ordinals and
+ * aliases), non-terminals, grammars with their FIRST and FOLLOW sets, productions with their symbols, explain,
+ * associativity, FIRST sets and {@link Factoring}, and the cells of the predict table with its settings.
+ * <p>
+ * Reading a snapshot recreates every object as it was saved, so a parser builder can be restored without parsing
+ * the grammar sources, eliminating left recursion, computing FIRST/FOLLOW or filling the predict table; only the
+ * conflict cells and the filtered cells are derived again from the cells, in one pass. No code is generated: the
+ * snapshot is data interpreted by the same runtime.
+ * <p>
+ * Layout: the magic number {@code MSLL}, the {@link #VERSION}, then the terminal pool, the non-terminal pool, the
+ * grammars and the table. Objects refer to each other by their index in a pool; strings are UTF-8 with a length
+ * prefix, {@code -1} for {@code null}. A snapshot of another version is rejected rather than misread.
+ *
+ * @author huizi 2024
+ */
+public final class GrammarSnapshot {
+    private static final int MAGIC = 0x4D534C4C; // "MSLL"
+
+    /**
+     * Format version; bumped on every change of the layout.
+     */
+    public static final int VERSION = 3;
+
+    private static final byte REGULAR = 0;
+    private static final byte SHARED_EPSILON = 1;
+    private static final byte SHARED_WHITESPACE = 2;
+    private static final byte SHARED_IGNORED = 1;
+
+    private final Grammars grammars;
+    private final NonTerminals nonTerminals;
+    private final Terminals terminals;
+    private final Map<Terminal, Map<Grammar, List<Production>>> cells;
+    private final boolean autoEpsilonAlongside;
+    private final int lookahead;
+
+    private GrammarSnapshot(Grammars grammars, NonTerminals nonTerminals, Terminals terminals,
+                            Map<Terminal, Map<Grammar, List<Production>>> cells, boolean autoEpsilonAlongside,
+                            int lookahead) {
+        this.grammars = grammars;
+        this.nonTerminals = nonTerminals;
+        this.terminals = terminals;
+        this.cells = cells;
+        this.autoEpsilonAlongside = autoEpsilonAlongside;
+        this.lookahead = lookahead;
+    }
+
+    public Grammars grammars() {
+        return this.grammars;
+    }
+
+    public NonTerminals nonTerminals() {
+        return this.nonTerminals;
+    }
+
+    public Terminals terminals() {
+        return this.terminals;
+    }
+
+    /**
+     * @return the predict table cells, ready for {@link PredictTable#PredictTable(Grammars, Map)}
+     */
+    public Map<Terminal, Map<Grammar, List<Production>>> cells() {
+        return this.cells;
+    }
+
+    /**
+     * @return the {@link PredictTable#autoEpsilonAlongsideEnabled()} setting of the saved table
+     */
+    public boolean autoEpsilonAlongside() {
+        return this.autoEpsilonAlongside;
+    }
+
+    /**
+     * @return the {@link PredictTable#lookahead()} of the saved table
+     */
+    public int lookahead() {
+        return this.lookahead;
+    }
+
+    /**
+     * Saves a built grammar to {@code path}, replacing the file if it exists.
+     */
+    public static void save(Path path, Grammars grammars, NonTerminals nonTerminals, Terminals terminals,
+                            PredictTable predictTable) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path))) {
+            write(out, grammars, nonTerminals, terminals, predictTable);
+        }
+    }
+
+    /**
+     * Reads the grammar saved at {@code path}.
+     *
+     * @throws IOException if the file cannot be read, is not a snapshot or is of another {@link #VERSION}
+     */
+    public static GrammarSnapshot load(Path path) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+            return read(in);
+        }
+    }
+
+    public static void write(OutputStream stream, Grammars grammars, NonTerminals nonTerminals, Terminals terminals,
+                             PredictTable predictTable) throws IOException {
+        new Encoder(new DataOutputStream(stream), grammars, nonTerminals, terminals, predictTable).write();
+    }
+
+    public static GrammarSnapshot read(InputStream stream) throws IOException {
+        return new Decoder(new DataInputStream(stream)).read();
+    }
+
+    private static final class Encoder {
+        private final DataOutputStream out;
+        private final List<Grammar> grammars;
+        private final NonTerminals nonTerminals;
+        private final Terminals terminals;
+        private final PredictTable predictTable;
+        private final Map<Terminal, Integer> terminalIndexes = new IdentityHashMap<>();
+        private final List<Terminal> terminalPool = new ArrayList<>();
+        private final Map<NonTerminal, Integer> nonTerminalIndexes = new IdentityHashMap<>();
+        private final List<NonTerminal> nonTerminalPool = new ArrayList<>();
+        private final Map<Grammar, Integer> grammarIndexes = new IdentityHashMap<>();
+
+        Encoder(DataOutputStream out, Grammars grammars, NonTerminals nonTerminals, Terminals terminals,
+                PredictTable predictTable) {
+            this.out = out;
+            this.grammars = grammars.grammars();
+            this.nonTerminals = nonTerminals;
+            this.terminals = terminals;
+            this.predictTable = predictTable;
+        }
+
+        void write() throws IOException {
+            collect();
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeTerminals();
+            writeNonTerminals();
+            writeGrammars();
+            writeTable();
+            out.flush();
+        }
+
+        /**
+         * Gives an index to every terminal and non-terminal the grammar refers to, the collections' own first.
+         */
+        private void collect() {
+            terminals.values().forEach(this::terminal);
+            List.of(terminals.END, terminals.EOL, terminals.OR_OR, terminals.OR, terminals.COLON,
+                    terminals.SEMICOLON, terminals.EPSILON).forEach(this::terminal);
+            terminals.aliases().values().forEach(this::terminal);
+            if (nonTerminals.getStart() != null) nonTerminal(nonTerminals.getStart());
+            nonTerminals.values().forEach(this::nonTerminal);
+            for (int g = 0; g < grammars.size(); g++) {
+                Grammar grammar = grammars.get(g);
+                grammarIndexes.put(grammar, g);
+                nonTerminal(grammar.nonTerminal());
+                grammar.first().forEach(this::terminal);
+                grammar.follow().forEach(this::terminal);
+                for (Production production : grammar.productions()) {
+                    production.first().forEach(this::terminal);
+                    for (Symbol<?> symbol : production.symbols()) {
+                        if (symbol.isTerminal()) {
+                            terminal((Terminal) symbol.type());
+                        } else {
+                            nonTerminal((NonTerminal) symbol.type());
+                        }
+                    }
+                    if (production.factoring() != null) collect(production.factoring().nests());
+                }
+            }
+            predictTable.cells().keySet().forEach(this::terminal);
+        }
+
+        private void collect(List<Factoring.Nest> nests) {
+            for (Factoring.Nest nest : nests) {
+                nonTerminal(nest.symbol().type());
+                collect(nest.nests());
+            }
+        }
+
+        private int terminal(Terminal terminal) {
+            return terminalIndexes.computeIfAbsent(terminal, t -> {
+                terminalPool.add(t);
+                return terminalPool.size() - 1;
+            });
+        }
+
+        private int nonTerminal(NonTerminal nonTerminal) {
+            return nonTerminalIndexes.computeIfAbsent(nonTerminal, n -> {
+                nonTerminalPool.add(n);
+                return nonTerminalPool.size() - 1;
+            });
+        }
+
+        private void writeTerminals() throws IOException {
+            out.writeInt(terminalPool.size());
+            int nextOrdinal = 0;
+            for (Terminal terminal : terminalPool) {
+                if (terminal == Terminal.EPSILON) {
+                    out.writeByte(SHARED_EPSILON);
+                } else if (terminal == Terminal.WHITESPACE) {
+                    out.writeByte(SHARED_WHITESPACE);
+                } else {
+                    out.writeByte(REGULAR);
+                    writeString(terminal.name());
+                    writeString(terminal.pattern());
+                    out.writeBoolean(terminal.isRegex());
+                    writeString(terminal.getCommand());
+                    writeString(terminal.mode());
+                    out.writeInt(terminal.ordinal());
+                }
+                nextOrdinal = Math.max(nextOrdinal, terminal.ordinal() + 1);
+            }
+            out.writeInt(nextOrdinal);
+            writeTerminalList(terminals.values());
+            writeTerminalList(List.of(terminals.END, terminals.EOL, terminals.OR_OR, terminals.OR, terminals.COLON,
+                    terminals.SEMICOLON, terminals.EPSILON));
+            out.writeInt(terminals.aliases().size());
+            for (Map.Entry<String, Terminal> alias : terminals.aliases().entrySet()) {
+                writeString(alias.getKey());
+                out.writeInt(terminalIndexes.get(alias.getValue()));
+            }
+        }
+
+        private void writeNonTerminals() throws IOException {
+            out.writeInt(nonTerminalPool.size());
+            for (NonTerminal nonTerminal : nonTerminalPool) {
+                if (nonTerminal == NonTerminals.IGNORED) {
+                    out.writeByte(SHARED_IGNORED);
+                    continue;
+                }
+                out.writeByte(REGULAR);
+                writeString(nonTerminal.name());
+                out.writeBoolean(nonTerminal.isStart());
+                out.writeBoolean(nonTerminal.fixed());
+            }
+            // the start symbol first, so it is the start of the restored collection too
+            List<NonTerminal> values = new ArrayList<>();
+            if (nonTerminals.getStart() != null) values.add(nonTerminals.getStart());
+            nonTerminals.values().stream().filter(n -> n != nonTerminals.getStart()).forEach(values::add);
+            out.writeInt(values.size());
+            for (NonTerminal nonTerminal : values) out.writeInt(nonTerminalIndexes.get(nonTerminal));
+        }
+
+        private void writeGrammars() throws IOException {
+            out.writeInt(grammars.size());
+            for (Grammar grammar : grammars) {
+                out.writeInt(nonTerminalIndexes.get(grammar.nonTerminal()));
+                writeString(grammar.name());
+                out.writeBoolean(grammar.traced());
+                out.writeBoolean(grammar.containsEmptyFirst());
+                writeTerminalList(grammar.first());
+                writeTerminalList(grammar.follow());
+            }
+            // productions after every grammar, as their symbols may refer to any grammar's non-terminal
+            for (Grammar grammar : grammars) {
+                out.writeInt(grammar.productions().size());
+                for (Production production : grammar.productions()) {
+                    writeString(production.toString());
+                    writeString(production.explain());
+                    out.writeByte(production.assoc().ordinal());
+                    writeFactoring(production.factoring());
+                    List<Symbol> symbols = production.symbols();
+                    out.writeInt(symbols.size());
+                    for (Symbol<?> symbol : symbols) {
+                        out.writeBoolean(symbol.isTerminal());
+                        out.writeInt(symbol.isTerminal()
+                                ? terminalIndexes.get((Terminal) symbol.type())
+                                : nonTerminalIndexes.get((NonTerminal) symbol.type()));
+                        writeString(symbol.name());
+                    }
+                    writeTerminalList(production.first());
+                }
+            }
+        }
+
+        private void writeTable() throws IOException {
+            out.writeBoolean(predictTable.autoEpsilonAlongsideEnabled());
+            out.writeInt(predictTable.lookahead());
+            Map<Terminal, Map<Grammar, List<Production>>> cells = predictTable.cells();
+            out.writeInt(cells.size());
+            for (Map.Entry<Terminal, Map<Grammar, List<Production>>> byTerminal : cells.entrySet()) {
+                out.writeInt(terminalIndexes.get(byTerminal.getKey()));
+                out.writeInt(byTerminal.getValue().size());
+                for (Map.Entry<Grammar, List<Production>> cell : byTerminal.getValue().entrySet()) {
+                    Grammar grammar = cell.getKey();
+                    out.writeInt(grammarIndexes.get(grammar));
+                    out.writeInt(cell.getValue().size());
+                    for (Production production : cell.getValue()) {
+                        out.writeInt(production == null ? -1 : grammar.productions().indexOf(production));
+                    }
+                }
+            }
+        }
+
+        private void writeFactoring(Factoring factoring) throws IOException {
+            out.writeBoolean(factoring != null);
+            if (factoring == null) return;
+            out.writeBoolean(factoring.spliced());
+            writeString(factoring.explain());
+            writeNests(factoring.nests());
+        }
+
+        private void writeNests(List<Factoring.Nest> nests) throws IOException {
+            out.writeInt(nests.size());
+            for (Factoring.Nest nest : nests) {
+                out.writeInt(nonTerminalIndexes.get(nest.symbol().type()));
+                writeString(nest.symbol().name());
+                writeString(nest.explain());
+                out.writeBoolean(nest.inlined());
+                out.writeInt(nest.from());
+                out.writeInt(nest.to());
+                writeNests(nest.nests());
+            }
+        }
+
+        private void writeTerminalList(Collection<Terminal> list) throws IOException {
+            out.writeInt(list.size());
+            for (Terminal terminal : list) out.writeInt(terminalIndexes.get(terminal));
+        }
+
+        private void writeString(String value) throws IOException {
+            if (value == null) {
+                out.writeInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static final class Decoder {
+        private final DataInputStream in;
+        private Terminal[] terminalPool;
+        private NonTerminal[] nonTerminalPool;
+
+        Decoder(DataInputStream in) {
+            this.in = in;
+        }
+
+        GrammarSnapshot read() throws IOException {
+            if (in.readInt() != MAGIC) throw new IOException("not an MSLL grammar snapshot");
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported grammar snapshot version: " + version + ", expected " + VERSION);
+            }
+            Terminals terminals = readTerminals();
+            NonTerminals nonTerminals = readNonTerminals();
+
+            int size = in.readInt();
+            List<Grammar> grammars = new ArrayList<>(size);
+            Map<String, Grammar> byName = new LinkedHashMap<>();
+            for (int g = 0; g < size; g++) {
+                Grammar grammar = new Grammar(nonTerminalPool[in.readInt()], nonTerminals, terminals, readString());
+                if (in.readBoolean()) grammar.trace();
+                boolean nullable = in.readBoolean();
+                grammar.setFirst(readTerminalList(), nullable);
+                grammar.follow().clear();
+                grammar.follow().addAll(readTerminalList());
+                grammars.add(grammar);
+                byName.put(grammar.name(), grammar);
+            }
+            for (Grammar grammar : grammars) {
+                int productions = in.readInt();
+                for (int p = 0; p < productions; p++) {
+                    String display = readString();
+                    String explain = readString();
+                    ASSOC assoc = ASSOC.values()[in.readByte()];
+                    Factoring factoring = readFactoring();
+                    int symbolCount = in.readInt();
+                    List<Symbol> symbols = new ArrayList<>(symbolCount);
+                    for (int s = 0; s < symbolCount; s++) {
+                        boolean terminal = in.readBoolean();
+                        SymbolType type = terminal ? terminalPool[in.readInt()] : nonTerminalPool[in.readInt()];
+                        symbols.add(new Symbol<>(type, readString()));
+                    }
+                    Production.restore(grammar, symbols, nonTerminals, terminals, display, explain, assoc,
+                            factoring, readTerminalList());
+                }
+            }
+            Grammars restored = new Grammars(byName);
+
+            boolean autoEpsilonAlongside = in.readBoolean();
+            int lookahead = in.readInt();
+            int terminalCount = in.readInt();
+            Map<Terminal, Map<Grammar, List<Production>>> cells = new HashMap<>();
+            for (int t = 0; t < terminalCount; t++) {
+                Map<Grammar, List<Production>> byGrammar = new HashMap<>();
+                cells.put(terminalPool[in.readInt()], byGrammar);
+                int grammarCount = in.readInt();
+                for (int g = 0; g < grammarCount; g++) {
+                    Grammar grammar = grammars.get(in.readInt());
+                    int cellSize = in.readInt();
+                    List<Production> cell = new ArrayList<>(cellSize);
+                    for (int p = 0; p < cellSize; p++) {
+                        int production = in.readInt();
+                        cell.add(production < 0 ? null : grammar.productions().get(production));
+                    }
+                    byGrammar.put(grammar, cell);
+                }
+            }
+            return new GrammarSnapshot(restored, nonTerminals, terminals, cells, autoEpsilonAlongside, lookahead);
+        }
+
+        private Terminals readTerminals() throws IOException {
+            terminalPool = new Terminal[in.readInt()];
+            for (int i = 0; i < terminalPool.length; i++) {
+                byte kind = in.readByte();
+                if (kind == SHARED_EPSILON) {
+                    terminalPool[i] = Terminal.EPSILON;
+                } else if (kind == SHARED_WHITESPACE) {
+                    terminalPool[i] = Terminal.WHITESPACE;
+                } else {
+                    terminalPool[i] = Terminal.restore(readString(), readString(), in.readBoolean(), readString(),
+                            readString(), in.readInt());
+                }
+            }
+            int nextOrdinal = in.readInt();
+            List<Terminal> values = readTerminalList();
+            List<Terminal> builtins = readTerminalList();
+            int aliasCount = in.readInt();
+            Map<String, Terminal> aliases = new HashMap<>();
+            for (int i = 0; i < aliasCount; i++) aliases.put(readString(), terminalPool[in.readInt()]);
+            return Terminals.restore(values, builtins, aliases, nextOrdinal);
+        }
+
+        private NonTerminals readNonTerminals() throws IOException {
+            nonTerminalPool = new NonTerminal[in.readInt()];
+            for (int i = 0; i < nonTerminalPool.length; i++) {
+                if (in.readByte() == SHARED_IGNORED) {
+                    nonTerminalPool[i] = NonTerminals.IGNORED;
+                    continue;
+                }
+                nonTerminalPool[i] = new NonTerminal(readString(), in.readBoolean());
+                if (in.readBoolean()) nonTerminalPool[i].fix();
+            }
+            NonTerminals nonTerminals = new NonTerminals();
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) nonTerminals.addSymbol(nonTerminalPool[in.readInt()]);
+            return nonTerminals;
+        }
+
+        private Factoring readFactoring() throws IOException {
+            if (!in.readBoolean()) return null;
+            boolean spliced = in.readBoolean();
+            return new Factoring(spliced, readString(), readNests());
+        }
+
+        private List<Factoring.Nest> readNests() throws IOException {
+            int size = in.readInt();
+            List<Factoring.Nest> nests = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                Symbol<NonTerminal> symbol = new Symbol<>(nonTerminalPool[in.readInt()], readString());
+                String explain = readString();
+                boolean inlined = in.readBoolean();
+                int from = in.readInt();
+                nests.add(new Factoring.Nest(symbol, explain, inlined, from, in.readInt(), readNests()));
+            }
+            return List.copyOf(nests);
+        }
+
+        private List<Terminal> readTerminalList() throws IOException {
+            int size = in.readInt();
+            List<Terminal> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) list.add(terminalPool[in.readInt()]);
+            return list;
+        }
+
+        private String readString() throws IOException {
+            int length = in.readInt();
+            if (length < 0) return null;
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
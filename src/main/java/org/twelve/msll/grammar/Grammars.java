@@ -1,8 +1,15 @@
 package org.twelve.msll.grammar;
 
+import org.twelve.msll.grammarsymbol.Terminal;
+import org.twelve.msll.parser.Symbol;
+import org.twelve.msll.util.Constants;
+
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * all grmmars in one particular language
@@ -21,6 +28,17 @@ public class Grammars {
      */
     private final Grammar start;
 
+    /**
+     * The FIRST and FOLLOW solver of these grammars, kept for rebuilding them after some rules change; {@code null}
+     * for grammars restored from a snapshot
+     */
+    private FirstFollowSets sets = null;
+
+    /**
+     * see {@link #expectsLineEnds()}; {@code null} until asked
+     */
+    private volatile Boolean lineEnds = null;
+
     /**
      * constructor from grammar list
      *
@@ -28,7 +46,11 @@ public class Grammars {
      */
     public Grammars(Map<String, Grammar> grammars) {
         this.grammars = grammars;
-        this.grammars.values().forEach(grammar -> grammar.setGrammars(this));
+        int ordinal = 0;
+        for (Grammar grammar : this.grammars.values()) {
+            grammar.setGrammars(this);
+            grammar.setOrdinal(ordinal++);
+        }
         this.start = this.grammars.values().stream().filter(g -> g.type().isStart()).findFirst().get();
         this.start.first();
         this.start.follow();
@@ -53,6 +75,92 @@ public class Grammars {
         return grammars.get(name);
     }
 
+    /**
+     * number of grammars in the language; ordinals run from 0 to size() - 1
+     *
+     * @return grammar count
+     */
+    public int size() {
+        return grammars.size();
+    }
+
+    void setFirstFollowSets(FirstFollowSets sets) {
+        this.sets = sets;
+    }
+
+    FirstFollowSets firstFollowSets() {
+        return this.sets;
+    }
+
+    /**
+     * names of the grammars that are new or have other productions than the grammars these were rebuilt from
+     *
+     * @return grammar names, or {@code null} if these grammars were built from scratch
+     */
+    public Set<String> rebuilt() {
+        return this.sets == null || !this.sets.incremental() ? null : Collections.unmodifiableSet(this.sets.rebuilt());
+    }
+
+    /**
+     * names of the grammars whose predict table row may differ from that of the grammars these were rebuilt from:
+     * the {@link #rebuilt()} ones and those whose FIRST or FOLLOW came out different
+     *
+     * @return grammar names, or {@code null} if these grammars were built from scratch
+     */
+    public Set<String> changed() {
+        return this.sets == null || !this.sets.incremental() ? null : Collections.unmodifiableSet(this.sets.changed());
+    }
+
+    /**
+     * the terminals the parser may expect a token of: those the productions consume, predicates and epsilon left
+     * out. The lexer tries the others only where they may match, see
+     * {@link org.twelve.msll.grammarsymbol.Terminals#expect}
+     *
+     * @return terminals of the productions
+     */
+    public Set<Terminal> expectedTerminals() {
+        Set<Terminal> expected = new HashSet<>();
+        for (Grammar grammar : this.grammars.values()) {
+            for (Production production : grammar.productions()) {
+                for (Symbol symbol : production.symbols()) {
+                    if (symbol.isTerminal() && symbol.type() != Terminal.EPSILON
+                            && !symbol.type().name().contains(Constants.PREDICATE_ABLE)) {
+                        expected.add((Terminal) symbol.type());
+                    }
+                }
+            }
+        }
+        return expected;
+    }
+
+    /**
+     * whether the parser needs end-of-line tokens: a production consumes {@code EOL}, or has a predicate, which may
+     * test the token at the end of a line (e.g. {@code notLineTerminator})
+     *
+     * @return false if the lexer may leave end-of-line tokens out
+     */
+    public boolean expectsLineEnds() {
+        Boolean lineEnds = this.lineEnds;
+        if (lineEnds == null) {
+            lineEnds = referencesLineEnds();
+            this.lineEnds = lineEnds;
+        }
+        return lineEnds;
+    }
+
+    private boolean referencesLineEnds() {
+        for (Grammar grammar : this.grammars.values()) {
+            for (Production production : grammar.productions()) {
+                for (Symbol symbol : production.symbols()) {
+                    if (!symbol.isTerminal()) continue;
+                    String name = symbol.type().name();
+                    if (name.equals(Constants.EOL_STR) || name.contains(Constants.PREDICATE_ABLE)) return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * get all grammars in the language
      *
@@ -0,0 +1,46 @@
+package org.twelve.msll.grammar;
+
+import org.twelve.msll.grammarsymbol.NonTerminals;
+import org.twelve.msll.grammarsymbol.Terminals;
+
+/**
+ * Rebuilds the grammars of a language after some of its parser rules changed.
+ * <p>
+ * The lexer rules are left as they were: the terminals are those of the earlier build (a copy, see
+ * {@link Terminals#copy()}), so no lexer rule is compiled again. The grammars of all rules are created again from
+ * their nodes, which costs little, and left recursion is eliminated again; the FIRST and FOLLOW sets are then
+ * taken over from the earlier grammars wherever the change does not reach them (see {@link FirstFollowSets}), and
+ * {@link Grammars#rebuilt()} and {@link Grammars#changed()} tell which grammars it reached.
+ *
+ * @author huizi 2024
+ */
+public class IncrementalGrammarBuilder extends ParserTreeGrammarBuilder {
+    private final ParserRules rules;
+    private final Grammars previous;
+
+    /**
+     * @param rules        all parser rules, changed ones included, see {@link ParserRules#with(ParserRules)}
+     * @param previous     the grammars built before the change
+     * @param nonTerminals a new set of non-terminals
+     * @param terminals    a copy of the terminals of the earlier build
+     */
+    public IncrementalGrammarBuilder(ParserRules rules, Grammars previous, NonTerminals nonTerminals,
+                                     Terminals terminals) {
+        super(null, null, nonTerminals, terminals);
+        this.rules = rules;
+        this.previous = previous;
+    }
+
+    /**
+     * Creates the grammars of the rules; the terminals are there already.
+     */
+    @Override
+    public void initialize() {
+        buildNonTerminals(this.rules.grammars());
+    }
+
+    @Override
+    protected Grammars previousGrammars() {
+        return this.previous;
+    }
+}
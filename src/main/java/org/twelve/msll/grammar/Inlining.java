@@ -0,0 +1,218 @@
+package org.twelve.msll.grammar;
+
+import org.twelve.msll.grammarsymbol.NonTerminal;
+import org.twelve.msll.grammarsymbol.NonTerminals;
+import org.twelve.msll.grammarsymbol.Terminals;
+import org.twelve.msll.parser.Symbol;
+import org.twelve.msll.util.Constants;
+
+import java.util.*;
+
+/**
+ * Inlines the rules that only pass through, see {@link GrammarBuilder.Transform#INLINING}.
+ * <p>
+ * A rule of a single production is inlined into every production referring to it, so the parser neither expands
+ * it nor pushes and pops it, and no node is made for it: a named rule whose production is a single symbol,
+ * {@code a: b;} or the {@code _beta'} of left recursion elimination, whose node {@link
+ * org.twelve.msll.parser.MyParser} abstracts away anyway, and a helper grammar ({@code '} names) without an
+ * explain, whose node is spliced into its parent anyway. Chains of them collapse into the first production
+ * that is not inlined. The named rules inlined are kept as the {@link Factoring.Nest}s of the productions, for
+ * the parser to put their nodes back on request.
+ * <p>
+ * Fixed rules, start rules, rules whose symbol may derive nothing or is a predicate, and rules inlining would
+ * never end for are left as they are.
+ *
+ * @author huizi 2024
+ */
+final class Inlining {
+    /**
+     * What an inlined rule stands for: its symbols, with the rules inlined into it in turn, and their nests.
+     */
+    private record Expansion(List<Symbol> symbols, List<Factoring.Nest> nests) {
+    }
+
+    private final Map<String, Grammar> grammars;
+    private final NonTerminals nonTerminals;
+    private final Terminals terminals;
+
+    /**
+     * The single production of every rule to inline, by rule name.
+     */
+    private final Map<String, Production> inlined = new HashMap<>();
+
+    /**
+     * What the inlined rules stand for, worked out on first use.
+     */
+    private final Map<String, Expansion> expansions = new HashMap<>();
+
+    Inlining(Map<String, Grammar> grammars, NonTerminals nonTerminals, Terminals terminals) {
+        this.grammars = grammars;
+        this.nonTerminals = nonTerminals;
+        this.terminals = terminals;
+    }
+
+    /**
+     * Inlines the rules that only pass through into the productions referring to them, and removes them.
+     *
+     * @return the names of the rules inlined
+     */
+    List<String> inline() {
+        Set<String> nullable = nullable();
+        for (Grammar grammar : this.grammars.values()) {
+            if (inlinable(grammar, nullable)) this.inlined.put(grammar.name(), grammar.productions().get(0));
+        }
+        dropCycles();
+        if (this.inlined.isEmpty()) return List.of();
+        for (Grammar grammar : this.grammars.values()) {
+            if (this.inlined.containsKey(grammar.name())) continue;
+            List<Production> written = new ArrayList<>(grammar.productions());
+            if (written.stream().noneMatch(this::refersToInlined)) continue;
+            grammar.productions().clear();
+            for (Production production : written) {
+                if (refersToInlined(production)) {
+                    rewrite(grammar, production);
+                } else {
+                    grammar.productions().add(production);
+                }
+            }
+        }
+        this.inlined.keySet().forEach(this.grammars::remove);
+        return new ArrayList<>(new TreeSet<>(this.inlined.keySet()));
+    }
+
+    private boolean inlinable(Grammar grammar, Set<String> nullable) {
+        if (grammar.productions().size() != 1 || grammar.type().isStart() || grammar.type().fixed()) return false;
+        List<Symbol> symbols = grammar.productions().get(0).symbols();
+        for (Symbol<?> symbol : symbols) {
+            if (isPredicate(symbol)) return false;
+        }
+        if (grammar.nonTerminal() == NonTerminals.IGNORED) {
+            String explain = grammar.productions().get(0).explain();
+            return explain == null || explain.isEmpty();
+        }
+        if (symbols.size() != 1) return false;
+        Symbol<?> symbol = symbols.get(0);
+        if (symbol.isTerminal()) return symbol.type() != terminals.EPSILON;
+        // a helper's nodes would become the rule node's, and an empty node is not abstracted
+        return symbol.type() != NonTerminals.IGNORED && !nullable.contains(symbol.name());
+    }
+
+    /**
+     * Leaves out the rules inlining would never end for: those reaching themselves through rules to inline, and
+     * those reaching such a rule.
+     */
+    private void dropCycles() {
+        Set<String> settled = new HashSet<>();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Map.Entry<String, Production> rule : this.inlined.entrySet()) {
+                if (settled.contains(rule.getKey())) continue;
+                boolean ready = true;
+                for (Symbol<?> symbol : rule.getValue().symbols()) {
+                    if (!symbol.isTerminal() && this.inlined.containsKey(symbol.name())
+                            && !settled.contains(symbol.name())) {
+                        ready = false;
+                        break;
+                    }
+                }
+                if (ready) changed |= settled.add(rule.getKey());
+            }
+        }
+        this.inlined.keySet().retainAll(settled);
+    }
+
+    private boolean refersToInlined(Production production) {
+        for (Symbol<?> symbol : production.symbols()) {
+            if (!symbol.isTerminal() && this.inlined.containsKey(symbol.name())) return true;
+        }
+        return false;
+    }
+
+    private void rewrite(Grammar grammar, Production production) {
+        Expansion expansion = expand(production.symbols());
+        List<Symbol> symbols = new ArrayList<>(expansion.symbols());
+        if (symbols.isEmpty()) symbols.add(new Symbol<>(terminals.EPSILON));
+        Factoring factoring = expansion.nests().isEmpty() ? null : new Factoring(false, null, expansion.nests());
+        new Production(grammar, symbols, nonTerminals, terminals, production.explain(), production.assoc(), factoring);
+    }
+
+    /**
+     * @return {@code symbols} with the rules to inline replaced by what they stand for, ε left out
+     */
+    private Expansion expand(List<Symbol> symbols) {
+        List<Symbol> expanded = new ArrayList<>();
+        List<Factoring.Nest> nests = new ArrayList<>();
+        int at = 0;
+        for (Symbol<?> symbol : symbols) {
+            if (symbol.type() == terminals.EPSILON) continue;
+            Expansion expansion = symbol.isTerminal() ? null : expansion(symbol.name());
+            if (expansion == null) {
+                expanded.add(symbol);
+                if (!isPredicate(symbol)) at++;
+                continue;
+            }
+            for (Symbol<?> s : expansion.symbols()) expanded.add(new Symbol<>(s.type(), s.name()));
+            int width = expansion.symbols().size();
+            if (symbol.type() == NonTerminals.IGNORED) {
+                // a helper's node would be spliced, only the rules inlined into it are put back
+                for (Factoring.Nest nest : expansion.nests()) nests.add(shift(nest, at));
+            } else {
+                Production inlined = this.inlined.get(symbol.name());
+                Symbol<NonTerminal> rule = new Symbol<>(inlined.grammar().nonTerminal(), symbol.name());
+                nests.add(new Factoring.Nest(rule, inlined.explain(), true, at, at + width, expansion.nests()));
+            }
+            at += width;
+        }
+        return new Expansion(expanded, List.copyOf(nests));
+    }
+
+    private Expansion expansion(String rule) {
+        Production production = this.inlined.get(rule);
+        if (production == null) return null;
+        Expansion expansion = this.expansions.get(rule);
+        if (expansion == null) {
+            expansion = expand(production.symbols());
+            this.expansions.put(rule, expansion);
+        }
+        return expansion;
+    }
+
+    private static Factoring.Nest shift(Factoring.Nest nest, int by) {
+        return new Factoring.Nest(nest.symbol(), nest.explain(), nest.inlined(), nest.from() + by, nest.to() + by,
+                nest.nests());
+    }
+
+    /**
+     * @return the names of the grammars that may derive nothing, solved by iterating to the fixpoint
+     */
+    private Set<String> nullable() {
+        Set<String> nullable = new HashSet<>();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Grammar grammar : this.grammars.values()) {
+                if (nullable.contains(grammar.name())) continue;
+                for (Production production : grammar.productions()) {
+                    boolean empty = true;
+                    for (Symbol<?> symbol : production.symbols()) {
+                        if (symbol.type() == terminals.EPSILON || isPredicate(symbol)) continue;
+                        if (symbol.isTerminal() || !nullable.contains(symbol.name())) {
+                            empty = false;
+                            break;
+                        }
+                    }
+                    if (empty) {
+                        changed |= nullable.add(grammar.name());
+                        break;
+                    }
+                }
+            }
+        }
+        return nullable;
+    }
+
+    private static boolean isPredicate(Symbol<?> symbol) {
+        return symbol.isTerminal() && symbol.type().name().contains(Constants.PREDICATE_ABLE);
+    }
+}
@@ -0,0 +1,345 @@
+package org.twelve.msll.grammar;
+
+import org.twelve.msll.grammarsymbol.NonTerminal;
+import org.twelve.msll.grammarsymbol.NonTerminals;
+import org.twelve.msll.grammarsymbol.Terminal;
+import org.twelve.msll.grammarsymbol.Terminals;
+import org.twelve.msll.parser.Symbol;
+import org.twelve.msll.util.Constants;
+
+import java.util.*;
+
+/**
+ * Left factors the grammars, see {@link GrammarBuilder.Transform#LEFT_FACTORING}.
+ * <p>
+ * The alternatives of a grammar starting with the same symbols are replaced by one production of the shared prefix
+ * followed by a helper grammar, {@code A → prefix A_rest_1'}, whose productions are the rests of the alternatives,
+ * factored again where they share a prefix in turn. The parser then follows one stack through the prefix, and
+ * forks where the alternatives differ, if their next tokens do not tell them apart already.
+ * <p>
+ * Alternatives often share no written prefix but start with rules that do, e.g. {@code atom: NAME | call} with
+ * {@code call: NAME '(' args ')'}. A leading non-terminal whose FIRST set overlaps a sibling alternative's is
+ * therefore substituted by its productions first, a few levels deep at most, so the prefix shows. The rule stays
+ * as it is for its other uses.
+ * <p>
+ * Every production made carries a {@link Factoring}, telling the tree builder which alternative it completes and
+ * which rule nodes the substitution took out, so the tree is built as for the grammar as written.
+ *
+ * @author huizi 2024
+ */
+final class LeftFactoring {
+    /**
+     * Most rules substituted into an alternative.
+     */
+    private static final int MAX_SUBSTITUTIONS = 4;
+
+    /**
+     * Most productions a rule may have to be substituted.
+     */
+    private static final int MAX_SUBSTITUTED = 8;
+
+    /**
+     * Most alternatives substitution may grow a grammar to; beyond, the grammar is factored as written.
+     */
+    private static final int MAX_ALTERNATIVES = 64;
+
+    /**
+     * An alternative being factored: its symbols (no ε), its explain and associativity, and the rule nodes it was
+     * substituted from.
+     */
+    private record Alternative(List<Symbol> symbols, String explain, ASSOC assoc, List<Factoring.Nest> nests,
+                               int substitutions) {
+    }
+
+    private final Map<String, Grammar> grammars;
+    private final NonTerminals nonTerminals;
+    private final Terminals terminals;
+
+    /**
+     * The alternatives of every grammar as written, before any is factored.
+     */
+    private final Map<String, List<Alternative>> written = new HashMap<>();
+
+    /**
+     * FIRST sets of the grammars as written, with ε for a nullable one.
+     */
+    private final Map<String, Set<Terminal>> firsts = new HashMap<>();
+
+    LeftFactoring(Map<String, Grammar> grammars, NonTerminals nonTerminals, Terminals terminals) {
+        this.grammars = grammars;
+        this.nonTerminals = nonTerminals;
+        this.terminals = terminals;
+    }
+
+    /**
+     * Factors every grammar whose alternatives share a prefix, adding the helper grammars to the map.
+     *
+     * @return the names of the grammars factored
+     */
+    List<String> factor() {
+        for (Grammar grammar : this.grammars.values()) {
+            List<Alternative> alternatives = new ArrayList<>();
+            for (Production production : grammar.productions()) {
+                List<Symbol> symbols = new ArrayList<>();
+                for (Symbol symbol : production.symbols()) {
+                    if (symbol.type() != terminals.EPSILON) symbols.add(symbol);
+                }
+                List<Factoring.Nest> nests = production.factoring() == null ? List.of() : production.factoring().nests();
+                alternatives.add(new Alternative(symbols, production.explain(), production.assoc(), nests, 0));
+            }
+            this.written.put(grammar.name(), alternatives);
+        }
+        computeFirsts();
+        List<String> factored = new ArrayList<>();
+        for (String name : new TreeSet<>(this.written.keySet())) {
+            if (factor(this.grammars.get(name))) factored.add(name);
+        }
+        return factored;
+    }
+
+    private boolean factor(Grammar grammar) {
+        List<Alternative> alternatives = this.written.get(grammar.name());
+        List<Alternative> substituted = substitute(alternatives, 0, grammar.name());
+        if (!shares(substituted, 0)) {
+            if (!shares(alternatives, 0)) return false;
+            substituted = alternatives;
+        }
+        grammar.productions().clear();
+        emit(grammar, grammar, substituted, 0, new int[]{0});
+        return true;
+    }
+
+    /**
+     * Adds the productions of {@code alternatives}, from their symbol {@code offset} on, to {@code into}: the
+     * grammar being factored itself at offset 0, a helper of it after a shared prefix.
+     */
+    private void emit(Grammar owner, Grammar into, List<Alternative> alternatives, int offset, int[] helpers) {
+        boolean spliced = into != owner;
+        for (List<Alternative> group : group(alternatives, offset)) {
+            Alternative first = group.get(0);
+            if (group.size() == 1) {
+                List<Symbol> rest = first.symbols().subList(offset, first.symbols().size());
+                Factoring factoring = spliced || !first.nests().isEmpty()
+                        ? new Factoring(spliced, first.explain(), first.nests()) : null;
+                production(into, rest, spliced ? "" : first.explain(), first.assoc(), factoring);
+                continue;
+            }
+            int shared = sharedLength(group, offset);
+            Grammar helper = helper(owner, helpers);
+            List<Symbol> prefix = new ArrayList<>(first.symbols().subList(offset, offset + shared));
+            prefix.add(new Symbol<>(NonTerminals.IGNORED, helper.name()));
+            production(into, prefix, "", ASSOC.NONE, spliced ? Factoring.CONTINUED : null);
+            List<Alternative> rests = substitute(group, offset + shared, owner.name());
+            if (!shares(rests, offset + shared)) rests = group;
+            emit(owner, helper, rests, offset + shared, helpers);
+        }
+    }
+
+    private void production(Grammar grammar, List<Symbol> symbols, String explain, ASSOC assoc,
+                            Factoring factoring) {
+        List<Symbol> copy = new ArrayList<>(symbols);
+        if (copy.isEmpty()) copy.add(new Symbol<>(terminals.EPSILON));
+        new Production(grammar, copy, nonTerminals, terminals, explain, assoc, factoring);
+    }
+
+    private Grammar helper(Grammar owner, int[] helpers) {
+        String base = owner.name().endsWith("'") ? owner.name().substring(0, owner.name().length() - 1)
+                : owner.name();
+        String name;
+        do {
+            name = base + "_rest_" + (++helpers[0]) + "'";
+        } while (this.grammars.containsKey(name));
+        Grammar helper = new Grammar(nonTerminals.addNonTerminal(name), nonTerminals, terminals, name);
+        this.grammars.put(name, helper);
+        return helper;
+    }
+
+    /**
+     * Groups the alternatives by their symbol at {@code offset}, in the order the groups first appear; an
+     * alternative ending there, or having a predicate there, is a group of its own.
+     */
+    private static Collection<List<Alternative>> group(List<Alternative> alternatives, int offset) {
+        Map<Object, List<Alternative>> groups = new LinkedHashMap<>();
+        for (Alternative alternative : alternatives) {
+            groups.computeIfAbsent(key(alternative, offset), k -> new ArrayList<>()).add(alternative);
+        }
+        return groups.values();
+    }
+
+    private static boolean shares(List<Alternative> alternatives, int offset) {
+        return group(alternatives, offset).size() < alternatives.size();
+    }
+
+    /**
+     * @return the number of symbols from {@code offset} on all alternatives of the group have in common
+     */
+    private static int sharedLength(List<Alternative> group, int offset) {
+        int length = 1;
+        while (true) {
+            Object key = key(group.get(0), offset + length);
+            for (Alternative alternative : group) {
+                if (!key.equals(key(alternative, offset + length))) return length;
+            }
+            length++;
+        }
+    }
+
+    /**
+     * @return what tells the symbol at {@code index} apart; equal only for symbols making the same node
+     */
+    private static Object key(Alternative alternative, int index) {
+        if (index >= alternative.symbols().size()) return new Object();
+        Symbol<?> symbol = alternative.symbols().get(index);
+        if (isPredicate(symbol)) return new Object();
+        return (symbol.isTerminal() ? "T " + symbol.type().name() + " " : "N ") + symbol.name();
+    }
+
+    private static boolean isPredicate(Symbol<?> symbol) {
+        return symbol.isTerminal() && symbol.type().name().contains(Constants.PREDICATE_ABLE);
+    }
+
+    /**
+     * Substitutes the non-terminal at {@code offset} of every alternative whose FIRST set there overlaps the one
+     * of an alternative with another symbol there, until none does.
+     *
+     * @return the alternatives substituted, or {@code alternatives} if there would be too many
+     */
+    private List<Alternative> substitute(List<Alternative> alternatives, int offset, String owner) {
+        List<Alternative> result = alternatives;
+        boolean substituted = true;
+        while (substituted) {
+            substituted = false;
+            List<Alternative> next = new ArrayList<>();
+            for (Alternative alternative : result) {
+                String rule = substitutable(alternative, offset, result, owner);
+                if (rule == null) {
+                    next.add(alternative);
+                    continue;
+                }
+                for (Alternative production : this.written.get(rule)) {
+                    next.add(substitute(alternative, offset, production));
+                }
+                substituted = true;
+            }
+            if (next.size() > MAX_ALTERNATIVES) return alternatives;
+            result = next;
+        }
+        return result;
+    }
+
+    /**
+     * @return the name of the rule at {@code offset} of {@code alternative} if it is to be substituted,
+     * {@code null} otherwise
+     */
+    private String substitutable(Alternative alternative, int offset, List<Alternative> siblings, String owner) {
+        if (offset >= alternative.symbols().size() || alternative.substitutions() >= MAX_SUBSTITUTIONS) return null;
+        Symbol<?> symbol = alternative.symbols().get(offset);
+        if (symbol.isTerminal() || symbol.name().equals(owner)) return null;
+        List<Alternative> productions = this.written.get(symbol.name());
+        Grammar grammar = this.grammars.get(symbol.name());
+        if (productions == null || grammar.type().isStart() || productions.size() > MAX_SUBSTITUTED) return null;
+        Set<Terminal> first = this.firsts.get(symbol.name());
+        if (first.contains(terminals.EPSILON)) return null;
+        for (Alternative production : productions) {
+            if (production.symbols().isEmpty()) return null;
+            for (Symbol<?> s : production.symbols()) {
+                if (isPredicate(s)) return null;
+            }
+        }
+        Object key = key(alternative, offset);
+        for (Alternative sibling : siblings) {
+            if (sibling == alternative || key.equals(key(sibling, offset))) continue;
+            if (!Collections.disjoint(first, first(sibling.symbols(), offset))) return symbol.name();
+        }
+        return null;
+    }
+
+    /**
+     * Replaces the non-terminal at {@code offset} of {@code alternative} by the symbols of one of its productions.
+     */
+    @SuppressWarnings("unchecked")
+    private static Alternative substitute(Alternative alternative, int offset, Alternative production) {
+        List<Symbol> symbols = new ArrayList<>(alternative.symbols().subList(0, offset));
+        for (Symbol<?> symbol : production.symbols()) symbols.add(new Symbol<>(symbol.type(), symbol.name()));
+        symbols.addAll(alternative.symbols().subList(offset + 1, alternative.symbols().size()));
+        int at = 0;
+        for (int i = 0; i < offset; i++) {
+            if (!isPredicate(alternative.symbols().get(i))) at++;
+        }
+        Symbol<NonTerminal> rule = alternative.symbols().get(offset);
+        Factoring.Nest added = new Factoring.Nest(new Symbol<>(rule.type(), rule.name()), production.explain(), false,
+                at, at + production.symbols().size(), production.nests());
+        List<Factoring.Nest> nests = nest(alternative.nests(), added);
+        return new Alternative(symbols, alternative.explain(), alternative.assoc(), nests,
+                alternative.substitutions() + 1);
+    }
+
+    /**
+     * Adds the rule node of a substitution to {@code nests}: the node at {@code added.from()} becomes the nodes
+     * {@code added} spans, within the nests around it.
+     */
+    private static List<Factoring.Nest> nest(List<Factoring.Nest> nests, Factoring.Nest added) {
+        int at = added.from();
+        int grown = added.to() - added.from() - 1;
+        List<Factoring.Nest> result = new ArrayList<>();
+        Factoring.Nest pending = added;
+        for (Factoring.Nest nest : nests) {
+            if (nest.to() <= at) {
+                result.add(nest);
+            } else if (nest.from() > at) {
+                if (pending != null) result.add(pending);
+                pending = null;
+                result.add(new Factoring.Nest(nest.symbol(), nest.explain(), nest.inlined(), nest.from() + grown,
+                        nest.to() + grown, nest.nests()));
+            } else {
+                pending = null;
+                Factoring.Nest inner = new Factoring.Nest(added.symbol(), added.explain(), added.inlined(),
+                        at - nest.from(), added.to() - nest.from(), added.nests());
+                result.add(new Factoring.Nest(nest.symbol(), nest.explain(), nest.inlined(), nest.from(),
+                        nest.to() + grown, nest(nest.nests(), inner)));
+            }
+        }
+        if (pending != null) result.add(pending);
+        return List.copyOf(result);
+    }
+
+    /**
+     * The FIRST sets of the grammars as written, solved by iterating to the fixpoint. They only decide which rules
+     * are worth substituting; the FIRST sets of the factored grammars are computed as for any grammar.
+     */
+    private void computeFirsts() {
+        this.written.keySet().forEach(name -> this.firsts.put(name, new HashSet<>()));
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Map.Entry<String, List<Alternative>> grammar : this.written.entrySet()) {
+                Set<Terminal> first = this.firsts.get(grammar.getKey());
+                for (Alternative alternative : grammar.getValue()) {
+                    changed |= first.addAll(first(alternative.symbols(), 0));
+                }
+            }
+        }
+    }
+
+    private Set<Terminal> first(List<Symbol> symbols, int from) {
+        Set<Terminal> first = new HashSet<>();
+        for (int i = from; i < symbols.size(); i++) {
+            Symbol<?> symbol = symbols.get(i);
+            if (symbol.isTerminal()) {
+                first.add((Terminal) symbol.type());
+                return first;
+            }
+            boolean nullable = false;
+            for (Terminal terminal : this.firsts.getOrDefault(symbol.name(), Set.of())) {
+                if (terminal == terminals.EPSILON) {
+                    nullable = true;
+                } else {
+                    first.add(terminal);
+                }
+            }
+            if (!nullable) return first;
+        }
+        first.add(terminals.EPSILON);
+        return first;
+    }
+}
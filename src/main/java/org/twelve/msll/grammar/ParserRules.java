@@ -0,0 +1,289 @@
+package org.twelve.msll.grammar;
+
+import org.twelve.msll.lexer.Token;
+import org.twelve.msll.parsetree.G4GrammarTree;
+import org.twelve.msll.parsetree.NonTerminalNode;
+import org.twelve.msll.parsetree.ParseNode;
+import org.twelve.msll.parsetree.TerminalNode;
+import org.twelve.msll.util.Constants;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.twelve.msll.util.Tool.cast;
+
+/**
+ * The rules of a parser grammar tree, in the order of the grammar file, each with the grammars generated for its
+ * groups and quantified symbols (tagged {@link Constants#GENERATED} by the grammar reader).
+ * <p>
+ * Rules are what a grammar developer edits: {@link #with(ParserRules)} replaces some of them, and the grammar
+ * nodes of the result can be built again by an {@link IncrementalGrammarBuilder} without reading the rest of the
+ * grammar file again. The nodes are shared, never changed, between the rule sets made from one another.
+ *
+ * @author huizi 2024
+ */
+public final class ParserRules {
+    /**
+     * The name of a generated grammar: what it was generated for, and the id of the node it replaced.
+     */
+    private static final Pattern GENERATED_NAME = Pattern.compile("(.*)_\\d+'");
+    private static final Pattern GENERATED_ID = Pattern.compile(".*_(\\d+)'");
+
+    /**
+     * Grammar nodes by rule name: the nodes declaring the rule (more than one when the file declares it again),
+     * then the grammars generated for them, in the order they are referred to.
+     */
+    private final Map<String, List<NonTerminalNode>> rules;
+
+    private ParserRules(Map<String, List<NonTerminalNode>> rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * Collects the rules of a parser grammar tree, as read by a
+     * {@link org.twelve.msll.parser.ParserGrammarReader}.
+     */
+    public static ParserRules of(G4GrammarTree tree) {
+        List<NonTerminalNode> declared = new ArrayList<>();
+        Map<String, NonTerminalNode> generated = new HashMap<>();
+        for (ParseNode node : tree.grammarRoot().nodes()) {
+            if (!node.name().equals(Constants.GRAMMAR)) continue;
+            NonTerminalNode grammar = cast(node);
+            if (grammar.getTag(Constants.GENERATED) != null) {
+                generated.put(name(grammar), grammar);
+            } else {
+                declared.add(grammar);
+            }
+        }
+        Map<String, List<NonTerminalNode>> rules = new LinkedHashMap<>();
+        for (NonTerminalNode rule : declared) {
+            List<NonTerminalNode> nodes = rules.computeIfAbsent(name(rule), k -> new ArrayList<>());
+            nodes.add(nodes.size() - generatedCount(nodes), rule);
+            Set<NonTerminalNode> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            seen.addAll(nodes);
+            for (int i = 0; i < nodes.size(); i++) collectGenerated(nodes.get(i), generated, seen, nodes);
+        }
+        return new ParserRules(rules);
+    }
+
+    private static int generatedCount(List<NonTerminalNode> nodes) {
+        int count = 0;
+        for (NonTerminalNode node : nodes) {
+            if (node.getTag(Constants.GENERATED) != null) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Appends the generated grammars {@code node} refers to, and those they refer to in turn, to {@code nodes}.
+     */
+    private static void collectGenerated(ParseNode node, Map<String, NonTerminalNode> generated,
+                                         Set<NonTerminalNode> seen, List<NonTerminalNode> nodes) {
+        if (!(node instanceof NonTerminalNode parent)) return;
+        if (parent.name().equals(Constants.NON_TERMINAL) && !parent.nodes().isEmpty()) {
+            NonTerminalNode grammar = generated.get(parent.nodes().get(0).lexeme());
+            if (grammar != null && seen.add(grammar)) nodes.add(grammar);
+            return;
+        }
+        for (ParseNode child : parent.nodes()) collectGenerated(child, generated, seen, nodes);
+    }
+
+    private static String name(NonTerminalNode grammar) {
+        for (ParseNode node : grammar.nodes()) {
+            if (node instanceof NonTerminalNode head) return head.nodes().get(0).lexeme();
+        }
+        return null;
+    }
+
+    /**
+     * Replaces the rules {@code changed} declares and adds those it declares anew, after the rules of this set.
+     * <p>
+     * The grammars generated for a replaced rule take the names of the grammars generated for the rule it
+     * replaces, position by position as long as they were generated for the same kind of construct, so a part of
+     * a rule the edit left alone comes out as the very grammar it was. Any other generated grammar of
+     * {@code changed} whose name a grammar of this set already uses is given a name no grammar uses, so two
+     * different grammars never merge into one. The nodes of {@code changed} are renamed in place.
+     *
+     * @param changed rules read from the changed part of the grammar file
+     * @return a new rule set; this one is left as it is
+     */
+    public ParserRules with(ParserRules changed) {
+        Set<String> taken = new HashSet<>();
+        for (List<NonTerminalNode> nodes : this.rules.values()) taken.addAll(generatedNames(nodes));
+        long[] next = {nextId(taken, changed)};
+        Map<String, List<NonTerminalNode>> rules = new LinkedHashMap<>(this.rules);
+        changed.rules.forEach((name, nodes) -> {
+            List<NonTerminalNode> before = this.rules.get(name);
+            Map<String, String> renames = before == null ? new HashMap<>() : keptNames(before, nodes);
+            for (String generated : generatedNames(nodes)) {
+                if (!renames.containsKey(generated) && taken.contains(generated)) {
+                    renames.put(generated, kind(generated) + "_" + next[0]++ + "'");
+                }
+            }
+            if (!renames.isEmpty()) {
+                for (NonTerminalNode node : nodes) rename(node, renames);
+            }
+            taken.addAll(generatedNames(nodes));
+            rules.put(name, nodes);
+        });
+        return new ParserRules(rules);
+    }
+
+    /**
+     * @return the names {@code after}'s generated grammars take from {@code before}'s, by position
+     */
+    private static Map<String, String> keptNames(List<NonTerminalNode> before, List<NonTerminalNode> after) {
+        List<String> was = generatedNames(before);
+        List<String> is = generatedNames(after);
+        Map<String, String> renames = new HashMap<>();
+        for (int i = 0; i < Math.min(was.size(), is.size()); i++) {
+            if (kind(was.get(i)).equals(kind(is.get(i)))) renames.put(is.get(i), was.get(i));
+        }
+        return renames;
+    }
+
+    /**
+     * @return an id above that of every generated grammar of {@code taken} and {@code changed}
+     */
+    private static long nextId(Set<String> taken, ParserRules changed) {
+        Set<String> names = new HashSet<>(taken);
+        for (List<NonTerminalNode> nodes : changed.rules.values()) names.addAll(generatedNames(nodes));
+        long next = 0;
+        for (String name : names) {
+            Matcher matcher = GENERATED_ID.matcher(name);
+            if (matcher.matches()) next = Math.max(next, Long.parseLong(matcher.group(1)) + 1);
+        }
+        return next;
+    }
+
+    private static List<String> generatedNames(List<NonTerminalNode> nodes) {
+        List<String> names = new ArrayList<>();
+        for (NonTerminalNode node : nodes) {
+            if (node.getTag(Constants.GENERATED) != null) names.add(name(node));
+        }
+        return names;
+    }
+
+    private static String kind(String generatedName) {
+        Matcher matcher = GENERATED_NAME.matcher(generatedName);
+        return matcher.matches() ? matcher.group(1) : generatedName;
+    }
+
+    private static void rename(NonTerminalNode node, Map<String, String> renames) {
+        for (ParseNode child : node.nodes()) {
+            if (child instanceof NonTerminalNode nonTerminal) {
+                rename(nonTerminal, renames);
+            } else if (node.name().equals(Constants.NON_TERMINAL) && renames.containsKey(child.lexeme())) {
+                TerminalNode id = cast(child);
+                Token token = id.token();
+                id.setToken(new Token(token.terminal(), renames.get(child.lexeme()), token.location()));
+            }
+        }
+    }
+
+    /**
+     * The rules of {@code other} that are not the rules of the same name here: changed and added ones. Rules are
+     * compared by their text, comments left out and the grammars generated for them written in place, so the
+     * names generated by different reads do not matter.
+     *
+     * @return the rules to pass to {@link #with(ParserRules)} to get {@code other}, or {@code null} when that is not
+     * possible: {@code other} lacks a rule of this set, or starts with another rule
+     */
+    public ParserRules changedIn(ParserRules other) {
+        if (!this.rules.keySet().iterator().next().equals(other.rules.keySet().iterator().next())) return null;
+        if (!other.rules.keySet().containsAll(this.rules.keySet())) return null;
+        Map<String, List<NonTerminalNode>> changed = new LinkedHashMap<>();
+        other.rules.forEach((name, nodes) -> {
+            List<NonTerminalNode> before = this.rules.get(name);
+            if (before == null || !text(before).equals(text(nodes))) changed.put(name, nodes);
+        });
+        return new ParserRules(changed);
+    }
+
+    /**
+     * @return whether the set has no rules
+     */
+    public boolean isEmpty() {
+        return this.rules.isEmpty();
+    }
+
+    private static String text(List<NonTerminalNode> nodes) {
+        Map<String, NonTerminalNode> generated = new HashMap<>();
+        for (NonTerminalNode node : nodes) {
+            if (node.getTag(Constants.GENERATED) != null) generated.put(name(node), node);
+        }
+        StringBuilder text = new StringBuilder();
+        Set<String> written = new HashSet<>();
+        for (NonTerminalNode node : nodes) {
+            if (node.getTag(Constants.GENERATED) == null) text(node, generated, written, text);
+        }
+        return text.toString();
+    }
+
+    private static void text(ParseNode node, Map<String, NonTerminalNode> generated, Set<String> written,
+                             StringBuilder text) {
+        if (node.name().equals(Constants.COMMENT)) return;
+        if (!(node instanceof NonTerminalNode parent)) {
+            text.append(node.lexeme()).append(' ');
+            return;
+        }
+        if (parent.name().equals(Constants.NON_TERMINAL) && !parent.nodes().isEmpty()) {
+            String name = parent.nodes().get(0).lexeme();
+            NonTerminalNode grammar = generated.get(name);
+            if (grammar != null) {
+                text.append(kind(name));
+                if (written.add(name)) {
+                    text.append('{');
+                    for (ParseNode child : grammar.nodes()) {
+                        if (!child.name().equals(Constants.NON_TERMINAL)) text(child, generated, written, text);
+                    }
+                    text.append('}');
+                }
+                text.append(' ');
+                return;
+            }
+        }
+        text.append(parent.name()).append('(');
+        for (ParseNode child : parent.nodes()) text(child, generated, written, text);
+        text.append(") ");
+    }
+
+    /**
+     * @return the rule names, in the order of the grammar file
+     */
+    public Set<String> names() {
+        return Collections.unmodifiableSet(this.rules.keySet());
+    }
+
+    /**
+     * @return whether the set has a rule of the given name
+     */
+    public boolean contains(String name) {
+        return this.rules.containsKey(name);
+    }
+
+    /**
+     * The grammar nodes to build, as the grammars node of a tree holds them: the declared rules in order, the first
+     * one being the start rule, then the generated grammars.
+     */
+    public List<NonTerminalNode> grammars() {
+        List<NonTerminalNode> declared = new ArrayList<>();
+        List<NonTerminalNode> generated = new ArrayList<>();
+        for (List<NonTerminalNode> nodes : this.rules.values()) {
+            for (NonTerminalNode node : nodes) {
+                (node.getTag(Constants.GENERATED) == null ? declared : generated).add(node);
+            }
+        }
+        declared.addAll(generated);
+        return declared;
+    }
+}
@@ -200,23 +200,33 @@ public class ParserTreeGrammarBuilder extends GrammarBuilder {
      * non-terminal entries in the grammar. It creates the grammar productions associated with each non-terminal.
      */
     private void buildNonTerminals() {
-        buildGrammarSymbols(this.parserTree, (nodes, head, productions, i) -> {
+        buildNonTerminals(this.parserTree.grammarRoot().nodes());
+    }
+
+    /**
+     * Constructs non-terminal symbols and their productions from grammar nodes of a parser parse tree, the first
+     * grammar being the start one. Nodes other than grammars are skipped.
+     *
+     * @param nodes The grammar nodes, in the order of the grammar file.
+     */
+    protected void buildNonTerminals(List<? extends ParseNode> nodes) {
+        buildGrammarSymbols(nodes, (pNodes, head, productions, i) -> {
             createNonTerminal(head, productions.nodes(), i == 0);
         });
     }
 
     /**
-     * Helper method to build grammar symbols from a given parse tree.
+     * Helper method to build grammar symbols from the nodes of a grammar tree.
      * <p>
-     * This method iterates through the grammar nodes in the parse tree, filtering out comments and processing
+     * This method iterates through the grammar nodes, filtering out comments and processing
      * each grammar rule. It then invokes a provided builder function to create terminal or non-terminal entries.
      *
-     * @param tree    The parse tree representing the grammar or lexer rules.
+     * @param all     The nodes of the grammar root of the parse tree.
      * @param builder The builder function used to construct terminals or non-terminals.
      */
-    private void buildGrammarSymbols(G4GrammarTree tree, SymbolBuilder builder) {
+    private void buildGrammarSymbols(List<? extends ParseNode> all, SymbolBuilder builder) {
         //build grammar
-        List<ParseNode> nodes = tree.grammarRoot().nodes().stream().filter(n -> n.symbol().name().equals(Constants.GRAMMAR)).collect(Collectors.toList());
+        List<ParseNode> nodes = all.stream().filter(n -> n.symbol().name().equals(Constants.GRAMMAR)).collect(Collectors.toList());
         for (int i = 0; i < nodes.size(); i++) {
             ParseNode node = nodes.get(i);
             if (node.name().equals(Constants.COMMENT)) {
@@ -66,6 +66,11 @@ public class Production implements Iterable<Symbol> {
      */
     private boolean isLeftRecur = false;
 
+    /**
+     * What this production stands for if left factoring made it, {@code null} otherwise.
+     */
+    private Factoring factoring = null;
+
     /**
      * Private constructor to initialize common fields for different ways to create a production.
      *
@@ -144,6 +149,31 @@ public class Production implements Iterable<Symbol> {
         this(grammar, symbols, nonTerminals, terminals, "", ASSOC.NONE);
     }
 
+    /**
+     * Constructs a production made by left factoring.
+     *
+     * @param factoring What the production stands for, see {@link Factoring}.
+     */
+    Production(Grammar grammar, List<Symbol> symbols, NonTerminals nonTerminals, Terminals terminals, String explain,
+               ASSOC assoc, Factoring factoring) {
+        this(grammar, symbols, nonTerminals, terminals, explain, assoc);
+        this.factoring = factoring;
+    }
+
+    /**
+     * Recreates a production read back by {@link GrammarSnapshot}, with its display and FIRST set as they were saved.
+     */
+    static Production restore(Grammar grammar, List<Symbol> symbols, NonTerminals nonTerminals, Terminals terminals,
+                              String display, String explain, ASSOC assoc, Factoring factoring,
+                              Collection<Terminal> first) {
+        Production production = new Production(grammar, nonTerminals, terminals, display, explain, assoc);
+        production.symbols.addAll(symbols);
+        production.factoring = factoring;
+        production.first.addAll(first);
+        production.isLeftRecur = !symbols.isEmpty() && production.verifyLeftRecursion();
+        return production;
+    }
+
     /**
      * Verifies if the production contains left recursion.
      * Left recursion occurs when the first symbol on the right-hand side is the same as the left non-terminal.
@@ -186,6 +216,23 @@ public class Production implements Iterable<Symbol> {
         return new ArrayList<>(this.symbols);
     }
 
+    /**
+     * Returns the symbol at {@code index} without copying the symbol list; used by the parser's inner loop.
+     *
+     * @param index position of the symbol in the production
+     * @return the symbol at that position
+     */
+    public Symbol symbolAt(int index) {
+        return this.symbols.get(index);
+    }
+
+    /**
+     * @return the number of symbols in the production (an &epsilon; production has one)
+     */
+    public int symbolCount() {
+        return this.symbols.size();
+    }
+
     /**
      * Checks if the production is an empty production.
      *
@@ -247,4 +294,13 @@ public class Production implements Iterable<Symbol> {
     public ASSOC assoc() {
         return this.assoc;
     }
+
+    /**
+     * Returns what this production stands for if left factoring made it.
+     *
+     * @return The factoring, or {@code null} for a production of the grammar as written.
+     */
+    public Factoring factoring() {
+        return this.factoring;
+    }
 }
@@ -19,6 +19,22 @@ public class Terminal extends SymbolType {
     // Special terminal symbols for grammar, such as epsilon and whitespace
     public final static Terminal EPSILON = new Terminal(Constants.EPSILON_STR, Constants.EPSILON);
     public static final Terminal WHITESPACE = new Terminal(Constants.WHITESPACE_STR, Constants.WHITESPACE);
+
+    /**
+     * Ordinals of the shared special terminals; every {@link Terminals} numbers its own terminals after them.
+     */
+    static final int RESERVED_ORDINALS = 2;
+
+    static {
+        EPSILON.ordinal = 0;
+        WHITESPACE.ordinal = 1;
+    }
+
+    /**
+     * Dense index of the terminal within the {@link Terminals} it was registered with, used as the column of the
+     * predict table's flat cell array. -1 until the terminal is registered.
+     */
+    private int ordinal = -1;
     /**
      * Indicates if the terminal is defined using a regex pattern.
      * If true, the terminal matches input using regex.
@@ -64,6 +80,19 @@ public class Terminal extends SymbolType {
         this.isRegex = true;
     }
 
+    /**
+     * Recreates a terminal exactly as it was saved, pattern untrimmed and ordinal included, for
+     * {@link Terminals#restore}.
+     */
+    public static Terminal restore(String name, String pattern, boolean isRegex, String command, String mode, int ordinal) {
+        Terminal terminal = new Terminal(name, pattern);
+        terminal.pattern = pattern;
+        terminal.isRegex = isRegex;
+        terminal.command = command;
+        terminal.mode = mode;
+        terminal.ordinal = ordinal;
+        return terminal;
+    }
 
     /**
      * Returns the compiled {@link Pattern} for this terminal, building and caching it on first call.
@@ -176,6 +205,22 @@ public class Terminal extends SymbolType {
         return this.command;
     }
 
+    /**
+     * Returns the dense index of this terminal within its {@link Terminals}.
+     *
+     * @return the ordinal, or -1 if the terminal was never registered
+     */
+    public int ordinal() {
+        return this.ordinal;
+    }
+
+    /**
+     * Assigns the ordinal once; a terminal keeps its first ordinal even when another collection absorbs it.
+     */
+    void assignOrdinal(int ordinal) {
+        if (this.ordinal < 0) this.ordinal = ordinal;
+    }
+
     /** Returns the lexer mode this terminal belongs to (null = always active). */
     public String mode() {
         return this.mode;
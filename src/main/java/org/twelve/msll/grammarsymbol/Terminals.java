@@ -10,6 +10,7 @@ import org.twelve.msll.util.RegexString;
 
 import java.util.*;
 import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Stores all terminal symbols for a specific parser.
@@ -26,17 +27,32 @@ public class Terminals implements SymbolTypes<Terminal> {
     protected final List<Terminal> terminals = new ArrayList<>();
 
     /**
-     * Flat array of [WHITESPACE, ...this.terminals] cached for the match() hot path.
-     * Re-built lazily whenever terminals change.  Avoids O(N_lines) ArrayList creation
-     * and copy overhead inside match().
+     * Indexes over {@link #terminals}, kept in step with it so lookups and registration need no scan: the terminals
+     * by name and by pattern, and every terminal's position key. Appending takes a key above all others and
+     * inserting at the front one below, so comparing keys orders terminals as the list does, and a lookup that
+     * several terminals satisfy still returns the earliest one.
      */
-    private Terminal[] cachedTerminalArray = null;
+    private final Map<String, List<Terminal>> byName = new HashMap<>();
+    private final Map<String, List<Terminal>> byPattern = new HashMap<>();
+    private final Map<Terminal, Long> positions = new IdentityHashMap<>();
+    private long firstPosition = 0;
+    private long lastPosition = 0;
 
     /**
-     * Per-mode cached terminal arrays.  Built lazily on first access for each mode name.
-     * Cleared whenever terminals change (same lifecycle as cachedTerminalArray).
+     * The matching arrays of the current terminal set, see {@link #compile()}; {@code null} once the set changes.
      */
-    private final Map<String, Terminal[]> modeTerminalCache = new HashMap<>();
+    private volatile Frozen frozen = null;
+
+    /**
+     * Whether the set may no longer change, see {@link #freeze()}.
+     */
+    private volatile boolean sealed = false;
+
+    /**
+     * The terminals the parser expects tokens of, see {@link #expect}; {@code null} until told, when every terminal
+     * is tried at every position.
+     */
+    private volatile Set<Terminal> expected = null;
 
     /**
      * Maps terminal names that have been absorbed into another terminal (because
@@ -52,6 +68,11 @@ public class Terminals implements SymbolTypes<Terminal> {
      * {@code ... TemplateCloseBrace ...} still resolves.
      */
     private final Map<String, Terminal> nameAliases = new HashMap<>();
+
+    /**
+     * Next {@link Terminal#ordinal()} to hand out; the first ones are reserved for the shared special terminals.
+     */
+    private int nextOrdinal = Terminal.RESERVED_ORDINALS;
     public final Terminal END;
     public final Terminal EOL;
     public final Terminal OR_OR;
@@ -75,6 +96,55 @@ public class Terminals implements SymbolTypes<Terminal> {
         EPSILON = this.addIfAbsent(Terminal.EPSILON);
     }
 
+    private Terminals(Terminal end, Terminal eol, Terminal orOr, Terminal or, Terminal colon, Terminal semicolon,
+                      Terminal epsilon) {
+        END = end;
+        EOL = eol;
+        OR_OR = orOr;
+        OR = or;
+        COLON = colon;
+        SEMICOLON = semicolon;
+        EPSILON = epsilon;
+    }
+
+    /**
+     * Recreates a terminal collection as it was saved, e.g. by a {@link org.twelve.msll.grammar.GrammarSnapshot}.
+     *
+     * @param values      the terminals in matching order, ordinals already assigned
+     * @param builtins    the terminals standing for {@link #END}, {@link #EOL}, {@link #OR_OR}, {@link #OR},
+     *                    {@link #COLON}, {@link #SEMICOLON} and {@link #EPSILON}, in that order; they need not be
+     *                    among {@code values}
+     * @param aliases     see {@link #aliases()}
+     * @param nextOrdinal the ordinal of the next terminal added
+     */
+    public static Terminals restore(List<Terminal> values, List<Terminal> builtins, Map<String, Terminal> aliases,
+                                    int nextOrdinal) {
+        Terminals terminals = new Terminals(builtins.get(0), builtins.get(1), builtins.get(2), builtins.get(3),
+                builtins.get(4), builtins.get(5), builtins.get(6));
+        values.forEach(terminals::append);
+        terminals.nameAliases.putAll(aliases);
+        terminals.nextOrdinal = Math.max(nextOrdinal, Terminal.RESERVED_ORDINALS);
+        return terminals;
+    }
+
+    /**
+     * Copies this collection: the same terminals in the same order, with their ordinals, commands and modes, and
+     * the same aliases. Terminals added to the copy are not added here, so a grammar rebuilt on the copy leaves the
+     * lexer of this one as it is, while both keep matching the same way. The matching arrays are shared until the
+     * copy changes. The copy is not {@link #freeze() frozen}, whether this one is or not.
+     *
+     * @return the copy
+     */
+    public Terminals copy() {
+        Terminals copy = new Terminals(END, EOL, OR_OR, OR, COLON, SEMICOLON, EPSILON);
+        this.terminals.forEach(copy::append);
+        copy.nameAliases.putAll(this.nameAliases);
+        copy.nextOrdinal = this.nextOrdinal;
+        copy.expected = this.expected;
+        copy.frozen = this.frozen;
+        return copy;
+    }
+
     private static Terminals parserTerminals = null;
     private static Terminals lexerTerminals = null;
     private static Terminals myTerminals = null;
@@ -129,7 +199,7 @@ public class Terminals implements SymbolTypes<Terminal> {
         // cross-contamination the bare seed is meant to prevent. Strip
         // them here; keep only EOL / END / EPSILON, which the MSLL
         // runtime itself inserts as sentinels during lexing.
-        bare.terminals.removeIf(t -> {
+        bare.removeAll(bare.terminals.stream().filter(t -> {
             String n = t.name();
             return n.equals(Constants.LEFT_PAREN_STR)
                 || n.equals(Constants.RIGHT_PAREN_STR)
@@ -139,9 +209,8 @@ public class Terminals implements SymbolTypes<Terminal> {
                 || n.equals(Constants.OR_STR)
                 || n.equals(Constants.COLON_STR)
                 || n.equals(Constants.SEMICOLON_STR);
-        });
-        bare.cachedTerminalArray = null;
-        bare.modeTerminalCache.clear();
+        }).toList());
+        bare.frozen = null;
         return bare;
     }
 
@@ -275,17 +344,7 @@ public class Terminals implements SymbolTypes<Terminal> {
      * @throws LexerException if an unexpected character is found.
      */
     public List<Token> match(String line, int lineNum, int charIndex) throws LexerException {
-        // P2: use a per-Terminals cached flat array instead of building a new ArrayList per call.
-        // During parsing the terminal set is frozen, so the cache is always valid here.
-        Terminal[] allTerminals = this.cachedTerminalArray;
-        if (allTerminals == null) {
-            allTerminals = new Terminal[this.terminals.size() + 1];
-            allTerminals[0] = Terminal.WHITESPACE;
-            for (int i = 0; i < this.terminals.size(); i++) {
-                allTerminals[i + 1] = this.terminals.get(i);
-            }
-            this.cachedTerminalArray = allTerminals;
-        }
+        Matching all = frozen().all;
         List<Token> tokens = new ArrayList<>();
         int position = 0;
         int length = line.length();
@@ -295,9 +354,11 @@ public class Terminals implements SymbolTypes<Terminal> {
             Token bestMatch = null;
             int maxMatchLength = -1;
 
-            // P1: use pre-compiled Pattern cached on Terminal; only Matcher is created here.
-            for (Terminal terminal : allTerminals) {
-                Matcher matcher = terminal.compiledPattern().matcher(remainingInput);
+            // P1: patterns are compiled by compile(); only Matcher is created here.
+            for (int i = 0; i < all.terminals.length; i++) {
+                if (!all.mayStart(i, remainingInput)) continue;
+                Terminal terminal = all.terminals[i];
+                Matcher matcher = all.patterns[i].matcher(remainingInput);
                 if (matcher.lookingAt()) {
                     String name = terminal.tokenName();
                     String value = matcher.group(name);
@@ -339,13 +400,18 @@ public class Terminals implements SymbolTypes<Terminal> {
         return tokens;
     }
 
+    /**
+     * Finds the first terminal, in definition order, named {@code lexeme} or whose pattern is {@code lexeme} without
+     * its quotes; terminals with an empty name are skipped. Falls back to the terminals absorbed by another one.
+     */
     @Override
     public Terminal fromName(String lexeme) {
-        Optional<Terminal> terminal = this.terminals.stream().filter(t -> !t.name().isEmpty() && (t.name().equals(lexeme.trim()) || t.pattern().equals(lexeme.replace("\"", "").trim()))).findFirst();
-        if (terminal.isPresent()) {
-            return terminal.get();
+        String name = lexeme.trim();
+        Terminal terminal = earliest(this.byName.get(name), earliest(this.byPattern.get(lexeme.replace("\"", "").trim()), null, true), true);
+        if (terminal != null) {
+            return terminal;
         }
-        Terminal aliased = this.nameAliases.get(lexeme.trim());
+        Terminal aliased = this.nameAliases.get(name);
         return aliased;
     }
 
@@ -394,16 +460,68 @@ public class Terminals implements SymbolTypes<Terminal> {
 
     public Terminal fromPattern(String pattern) {
         if (pattern == null || pattern.trim() == Constants.EMPTY) return null;
-        Optional<Terminal> terminal = this.terminals.stream().filter(t -> t.pattern().equals(pattern.trim()) || t.pattern().equals(pattern.replace("\"", "").trim())).findFirst();
-        if (terminal.isPresent()) {
-            return terminal.get();
-        } else {
-            return null;
+        return earliest(this.byPattern.get(pattern.trim()), earliest(this.byPattern.get(pattern.replace("\"", "").trim()), null, false), false);
+    }
+
+    /**
+     * The candidate that comes first in {@link #terminals}.
+     *
+     * @param candidates terminals to choose from, may be {@code null}
+     * @param best       the best one found so far, may be {@code null}
+     * @param named      whether to skip terminals with an empty name
+     */
+    private Terminal earliest(List<Terminal> candidates, Terminal best, boolean named) {
+        if (candidates == null) return best;
+        for (Terminal candidate : candidates) {
+            if (named && candidate.name().isEmpty()) continue;
+            if (best == null || this.positions.get(candidate) < this.positions.get(best)) best = candidate;
         }
+        return best;
+    }
+
+    private void append(Terminal terminal) {
+        this.terminals.add(terminal);
+        this.positions.put(terminal, ++this.lastPosition);
+        index(terminal);
+    }
+
+    private void prepend(Terminal terminal) {
+        this.terminals.add(0, terminal);
+        this.positions.put(terminal, --this.firstPosition);
+        index(terminal);
+    }
+
+    private void removeAll(Collection<Terminal> removed) {
+        if (removed.isEmpty()) return;
+        Set<Terminal> gone = Collections.newSetFromMap(new IdentityHashMap<>());
+        gone.addAll(removed);
+        this.terminals.removeIf(gone::contains);
+        for (Terminal terminal : gone) {
+            unindex(terminal);
+            this.positions.remove(terminal);
+        }
+    }
+
+    private void index(Terminal terminal) {
+        this.byName.computeIfAbsent(terminal.name(), k -> new ArrayList<>(1)).add(terminal);
+        this.byPattern.computeIfAbsent(terminal.pattern(), k -> new ArrayList<>(1)).add(terminal);
+    }
+
+    private void unindex(Terminal terminal) {
+        unindex(this.byName, terminal.name(), terminal);
+        unindex(this.byPattern, terminal.pattern(), terminal);
+    }
+
+    private static void unindex(Map<String, List<Terminal>> index, String key, Terminal terminal) {
+        List<Terminal> terminals = index.get(key);
+        if (terminals == null) return;
+        terminals.removeIf(t -> t == terminal);
+        if (terminals.isEmpty()) index.remove(key);
     }
 
     @Override
     public Terminal addSymbol(Terminal symbolType) {
+        checkNotFrozen();
         Terminal old = this.fromName(symbolType.name());
         if (old == null) {
             // Only dedup by pattern when the new terminal lives in the same
@@ -419,7 +537,8 @@ public class Terminals implements SymbolTypes<Terminal> {
         }
         if (old == null) {
             old = symbolType;
-            this.terminals.add(symbolType);
+            this.append(symbolType);
+            symbolType.assignOrdinal(nextOrdinal++);
         } else {
             // Record the displaced name as an alias so parser rules that
             // still reference it can resolve to the surviving terminal.
@@ -433,32 +552,41 @@ public class Terminals implements SymbolTypes<Terminal> {
                 this.nameAliases.put(displacedName, old);
                 this.nameAliases.put(incomingName, old);
             }
+            this.removeAll(List.of(old));
             old.refresh(symbolType);
-            this.terminals.remove(old);
-            this.terminals.removeIf(t -> t.pattern().equals(symbolType.pattern()));
-            this.terminals.add(old);
+            List<Terminal> samePattern = this.byPattern.get(symbolType.pattern());
+            if (samePattern != null) this.removeAll(new ArrayList<>(samePattern));
+            this.append(old);
         }
-        this.cachedTerminalArray = null;
-        this.modeTerminalCache.clear();
+        this.frozen = null;
         return old;
     }
 
     public Terminal addTerminal(String name, String pattern) {
+        checkNotFrozen();
         Terminal terminal = new Terminal(name, pattern);
-        this.terminals.add(terminal);
-        this.cachedTerminalArray = null;
-        this.modeTerminalCache.clear();
+        this.append(terminal);
+        terminal.assignOrdinal(nextOrdinal++);
+        this.frozen = null;
         return terminal;
     }
 
     public Terminal addTerminal(String name, RegexString rStr) {
+        checkNotFrozen();
         Terminal terminal = new Terminal(name, rStr);
-        this.terminals.add(terminal);
-        this.cachedTerminalArray = null;
-        this.modeTerminalCache.clear();
+        this.append(terminal);
+        terminal.assignOrdinal(nextOrdinal++);
+        this.frozen = null;
         return terminal;
     }
 
+    /**
+     * Names absorbed into another terminal, with the terminal they resolve to. Read-only.
+     */
+    public Map<String, Terminal> aliases() {
+        return Collections.unmodifiableMap(this.nameAliases);
+    }
+
     @Override
     public List<Terminal> values() {
         return this.terminals;
@@ -471,10 +599,11 @@ public class Terminals implements SymbolTypes<Terminal> {
             old = this.fromPattern(symbolType.pattern());
         }
         if (old == null) {
+            checkNotFrozen();
             old = symbolType;
-            this.terminals.add(0, symbolType);
-            this.cachedTerminalArray = null;
-            this.modeTerminalCache.clear();
+            this.prepend(symbolType);
+            symbolType.assignOrdinal(nextOrdinal++);
+            this.frozen = null;
         }
         return old;
     }
@@ -484,40 +613,202 @@ public class Terminals implements SymbolTypes<Terminal> {
     // -----------------------------------------------------------------------
 
     /**
-     * Returns the terminal array to use for the given mode.
+     * Compiles every terminal pattern and builds the matching arrays of every lexer mode, so that lexing only reads
+     * them. A {@link org.twelve.msll.parserbuilder.ParserBuilder} compiles its terminals once the grammar is built.
+     * <p>
+     * Adding a terminal afterwards discards the arrays, and they are built again, once, by the next {@code compile()}
+     * or the next match. The arrays are immutable and published at once, so a thread that finds none and builds its
+     * own gets the same result.
+     *
+     * @return this
+     */
+    public Terminals compile() {
+        frozen();
+        return this;
+    }
+
+    /**
+     * {@link #compile() Compiles} the terminals and stops them from changing: adding a terminal or telling other
+     * expected terminals throws {@link IllegalStateException} from then on, so any number of lexers may share them
+     * without synchronization, and the arrays they match with are never built again underneath them. A {@link
+     * org.twelve.msll.parserbuilder.ParserBuilder#freeze() frozen} builder freezes its terminals.
+     *
+     * @return this
+     */
+    public Terminals freeze() {
+        compile();
+        this.sealed = true;
+        return this;
+    }
+
+    /**
+     * @return whether the terminals are {@link #freeze() frozen}
+     */
+    public boolean isFrozen() {
+        return this.sealed;
+    }
+
+    private void checkNotFrozen() {
+        if (this.sealed) throw new IllegalStateException("terminals are frozen");
+    }
+
+    /**
+     * Tells which terminals the parser expects tokens of, so that lexing spends less on the others.
+     * <p>
+     * A terminal no production consumes and whose rule has no command (skip, channel, mode) is moved out of the
+     * set tried at every position: it still takes part in matching, in its place, so a longer or preferred match
+     * of it wins as before, but only at a position whose first character it may start with, which is worked out
+     * once per terminal when the matching arrays are built. Terminals with a command stay in, as they stand for
+     * input the parser never sees, such as white space and comments. Unless a production consumes it, the
+     * zero-length {@link #EOL} is moved out as well, and is only tried at the end of a line.
+     * <p>
+     * Matching gives the same tokens whatever the terminals are told. Telling the terminals they are told already
+     * keeps the matching arrays, so the lexers using them are not made to build them again.
      *
-     * <ul>
-     *   <li>If no terminal has an explicit mode set (plain grammar files without mode
-     *       sections), all terminals are returned — backward-compatible behaviour.</li>
-     *   <li>Otherwise only terminals belonging to {@code mode} (or with {@code mode==null},
-     *       i.e. built-ins) are returned.</li>
-     * </ul>
+     * @param expected the terminals the parser expects, see
+     *                 {@link org.twelve.msll.grammar.Grammars#expectedTerminals()}; {@code null} to try all
+     *                 everywhere
+     * @return this, to be {@link #compile() compiled} again
+     * @throws IllegalStateException if the terminals are {@link #freeze() frozen} and told other terminals
      */
-    private Terminal[] getActiveTerminalsFor(String mode) {
-        boolean hasModeSpecific = this.terminals.stream()
-                .anyMatch(t -> t.mode() != null && !t.mode().equals("DEFAULT_MODE"));
-        if (!hasModeSpecific) {
-            // No mode sections → use the global cached array (backward compat)
-            if (this.cachedTerminalArray == null) {
-                Terminal[] arr = new Terminal[this.terminals.size() + 1];
-                arr[0] = Terminal.WHITESPACE;
-                for (int i = 0; i < this.terminals.size(); i++) arr[i + 1] = this.terminals.get(i);
-                this.cachedTerminalArray = arr;
+    public Terminals expect(Set<Terminal> expected) {
+        Set<Terminal> told = expected == null ? null : Set.copyOf(expected);
+        if (Objects.equals(told, this.expected)) return this;
+        checkNotFrozen();
+        this.expected = told;
+        this.frozen = null;
+        return this;
+    }
+
+    private Frozen frozen() {
+        Frozen frozen = this.frozen;
+        if (frozen == null) {
+            frozen = new Frozen(this.terminals, this.expected);
+            this.frozen = frozen;
+        }
+        return frozen;
+    }
+
+    /**
+     * Terminals to try, in order, and their compiled patterns.
+     */
+    private static final class Matching {
+        /**
+         * The first characters probed for the terminals the parser does not expect; any other one may start them.
+         */
+        static final int PROBED = 128;
+
+        final Terminal[] terminals;
+        final Pattern[] patterns;
+        /**
+         * The characters a terminal may start with, for those tried only where they may match; {@code null} for
+         * the terminals tried everywhere.
+         */
+        final BitSet[] starts;
+
+        Matching(List<Terminal> terminals, Map<Terminal, BitSet> starts) {
+            this.terminals = new Terminal[terminals.size() + 1];
+            this.patterns = new Pattern[this.terminals.length];
+            this.starts = new BitSet[this.terminals.length];
+            this.terminals[0] = Terminal.WHITESPACE;
+            for (int i = 0; i < terminals.size(); i++) this.terminals[i + 1] = terminals.get(i);
+            for (int i = 0; i < this.terminals.length; i++) {
+                this.patterns[i] = this.terminals[i].compiledPattern();
+                this.starts[i] = starts.get(this.terminals[i]);
             }
-            return this.cachedTerminalArray;
         }
-        String key = mode == null ? "DEFAULT_MODE" : mode;
-        return modeTerminalCache.computeIfAbsent(key, m -> {
-            List<Terminal> active = new ArrayList<>();
-            active.add(Terminal.WHITESPACE);
-            for (Terminal t : this.terminals) {
-                // null mode = always active (built-in); matching mode = active
-                if (t.mode() == null || t.mode().equals(m)) {
-                    active.add(t);
+
+        /**
+         * @return whether the terminal at {@code index} is to be tried on {@code input}
+         */
+        boolean mayStart(int index, String input) {
+            BitSet starts = this.starts[index];
+            if (starts == null || input.isEmpty()) return true;
+            char first = input.charAt(0);
+            return first >= PROBED || starts.get(first);
+        }
+
+        /**
+         * The characters below {@link #PROBED} a pattern may match input starting with: those it matches, or needs
+         * more input after.
+         */
+        static BitSet starts(Pattern pattern) {
+            BitSet starts = new BitSet(PROBED);
+            for (char c = 0; c < PROBED; c++) {
+                Matcher matcher = pattern.matcher(String.valueOf(c));
+                if (matcher.lookingAt() || matcher.hitEnd()) starts.set(c);
+            }
+            return starts;
+        }
+    }
+
+    /**
+     * The matching arrays of a terminal set: [WHITESPACE, ...terminals] for plain grammars and {@link #match}, and
+     * one per lexer mode when the grammar declares mode sections.
+     */
+    private static final class Frozen {
+        final Matching all;
+        /**
+         * By mode name ({@code null} mode under "DEFAULT_MODE"); {@code null} when no terminal has a mode of its own.
+         */
+        final Map<String, Matching> modes;
+        /**
+         * The built-ins only, for a mode no terminal belongs to.
+         */
+        final Matching builtins;
+
+        Frozen(List<Terminal> terminals, Set<Terminal> expected) {
+            Map<Terminal, BitSet> starts = new HashMap<>();
+            if (expected != null) {
+                for (Terminal t : terminals) {
+                    if (!expected.contains(t) && t.getCommand() == null) {
+                        starts.put(t, Matching.starts(t.compiledPattern()));
+                    }
                 }
             }
-            return active.toArray(new Terminal[0]);
-        });
+            this.all = new Matching(terminals, starts);
+            boolean hasModeSpecific = terminals.stream()
+                    .anyMatch(t -> t.mode() != null && !t.mode().equals("DEFAULT_MODE"));
+            if (!hasModeSpecific) {
+                this.modes = null;
+                this.builtins = null;
+                return;
+            }
+            Set<String> names = new LinkedHashSet<>();
+            names.add("DEFAULT_MODE");
+            for (Terminal t : terminals) {
+                if (t.mode() != null) names.add(t.mode());
+            }
+            Map<String, Matching> modes = new HashMap<>();
+            for (String name : names) modes.put(name, new Matching(active(terminals, name), starts));
+            this.modes = Map.copyOf(modes);
+            this.builtins = new Matching(active(terminals, null), starts);
+        }
+
+        /**
+         * null mode = always active (built-in); matching mode = active
+         */
+        private static List<Terminal> active(List<Terminal> terminals, String mode) {
+            List<Terminal> active = new ArrayList<>();
+            for (Terminal t : terminals) {
+                if (t.mode() == null || t.mode().equals(mode)) active.add(t);
+            }
+            return active;
+        }
+
+        /**
+         * <ul>
+         *   <li>If no terminal has an explicit mode set (plain grammar files without mode
+         *       sections), all terminals are returned — backward-compatible behaviour.</li>
+         *   <li>Otherwise only terminals belonging to {@code mode} (or with {@code mode==null},
+         *       i.e. built-ins) are returned.</li>
+         * </ul>
+         */
+        Matching activeFor(String mode) {
+            if (this.modes == null) return this.all;
+            Matching matching = this.modes.get(mode == null ? "DEFAULT_MODE" : mode);
+            return matching == null ? this.builtins : matching;
+        }
     }
 
     /**
@@ -537,12 +828,14 @@ public class Terminals implements SymbolTypes<Terminal> {
      */
     public MatchResult matchNext(String remaining, int lineNum, int lineCharIndex,
                                  int positionInLine, String mode) throws LexerException {
-        Terminal[] activeTerminals = getActiveTerminalsFor(mode);
+        Matching active = frozen().activeFor(mode);
         Token bestMatch = null;
         int maxMatchLength = -1;
 
-        for (Terminal terminal : activeTerminals) {
-            Matcher matcher = terminal.compiledPattern().matcher(remaining);
+        for (int i = 0; i < active.terminals.length; i++) {
+            if (!active.mayStart(i, remaining)) continue;
+            Terminal terminal = active.terminals[i];
+            Matcher matcher = active.patterns[i].matcher(remaining);
             if (matcher.lookingAt()) {
                 String name = terminal.tokenName();
                 String value = matcher.group(name);
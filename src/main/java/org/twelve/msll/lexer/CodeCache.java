@@ -70,6 +70,14 @@ public class CodeCache {
         return this.lines.size() - 1;
     }
 
+    /**
+     * Forgets every line, keeping the storage for the next input.
+     */
+    public void clear() {
+        this.lines.clear();
+        this.pendingCloser = null;
+    }
+
     public boolean isMultiLine() {
         return this.pendingCloser != null;
     }
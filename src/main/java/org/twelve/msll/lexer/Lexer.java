@@ -18,7 +18,7 @@ import java.util.function.Consumer;
  */
 public abstract class Lexer {
     protected final Terminals terminals;
-    protected final Reader reader;
+    protected Reader reader;
     protected final CodeCache codeCache;
 
     public Lexer(Reader reader, Terminals terminals) {
@@ -30,6 +30,19 @@ public abstract class Lexer {
     private int charIndex = 0;
     private int lineIndex = 0;
 
+    /**
+     * Starts over on a new input, keeping what does not depend on the input (the code cache's storage, and
+     * whatever a subclass derived from the terminals). Tokens and token buffers of earlier scans are not touched.
+     *
+     * @param reader the new input
+     */
+    public void reset(Reader reader) {
+        this.reader = reader;
+        this.codeCache.clear();
+        this.charIndex = 0;
+        this.lineIndex = 0;
+    }
+
     @SneakyThrows
     private int read(Reader reader) {
         return reader.read();
@@ -22,7 +22,10 @@ import java.util.Map;
  * @author huizi 2024
  */
 public class LexerCommands {
-    private static Map<String,LexerCommand> commands = new HashMap<>();
+    /**
+     * Immutable, replaced as a whole on registration, so lexers on any thread read it without locking.
+     */
+    private static volatile Map<String,LexerCommand> commands = Map.of();
 
     static{
         // channel(NAME) – route token to the named channel (e.g., HIDDEN, ERROR)
@@ -49,7 +52,7 @@ public class LexerCommands {
      * @param call  The command call containing the command name and arguments.
      * @param token The token to apply the command on.
      */
-    public synchronized static void execute(CommandCall call, Token token) {
+    public static void execute(CommandCall call, Token token) {
         LexerCommand command = commands.get(call.name());
         if(command!=null){
             command.execute(call.args(),token);
@@ -64,7 +67,9 @@ public class LexerCommands {
      * @param name    The name of the command.
      * @param command The lexer command to be registered.
      */
-    public static void addCommand(String name, LexerCommand command){
+    public static synchronized void addCommand(String name, LexerCommand command){
+        Map<String,LexerCommand> commands = new HashMap<>(LexerCommands.commands);
         commands.put(name,command);
+        LexerCommands.commands = Map.copyOf(commands);
     }
 }
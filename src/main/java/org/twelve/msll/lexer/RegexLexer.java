@@ -39,8 +39,22 @@ import java.util.function.Consumer;
  * @author huizi 2024
  */
 public class RegexLexer extends Lexer {
+    /**
+     * Whether every line ends with an {@code EOL} token.
+     */
+    private final boolean lineEnds;
+
     public RegexLexer(Reader reader, Terminals terminals) {
+        this(reader, terminals, true);
+    }
+
+    /**
+     * @param lineEnds whether to end every line with an {@code EOL} token; a parser none of whose rules refers to
+     *                 {@code EOL} (see {@link org.twelve.msll.grammar.Grammars#expectsLineEnds()}) has no use for them
+     */
+    public RegexLexer(Reader reader, Terminals terminals, boolean lineEnds) {
         super(reader, terminals);
+        this.lineEnds = lineEnds;
     }
 
     private int preCharIndex = 0;
@@ -73,6 +87,14 @@ public class RegexLexer extends Lexer {
     private Terminal newlineTerminal = null;
     private boolean newlineProbed = false;
 
+    @Override
+    public void reset(Reader reader) {
+        super.reset(reader);
+        this.preCharIndex = 0;
+        this.currentMode = "DEFAULT_MODE";
+        this.modeStack.clear();
+    }
+
     private Terminal probeNewlineTerminal() {
         if (!newlineProbed) {
             // Literal strings are stored verbatim as they appear between the
@@ -159,6 +181,8 @@ public class RegexLexer extends Lexer {
         while (true) {
             // EOL ($) matches the empty string, so we use an unconditioned loop
             // and break only when we see it (mirrors the original match() logic).
+            // A parser that needs no EOL token gets none: the line ends with its text.
+            if (!this.lineEnds && position == line.length()) break;
             String remaining = line.substring(position);
             MatchResult result = this.terminals.matchNext(remaining, currentLine, currentIndex,
                     position, currentMode);
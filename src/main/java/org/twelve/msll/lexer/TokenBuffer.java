@@ -2,12 +2,31 @@ package org.twelve.msll.lexer;
 
 import lombok.SneakyThrows;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * The tokens of one input, in order. The lexer adds them; the parser reads them by index and, should it get ahead of
+ * the lexer, waits for them.
+ * <p>
+ * Waiting uses a {@link ReentrantLock} rather than the buffer's monitor, so a parse running on a virtual thread does
+ * not pin its carrier; and since the lexer normally completes before the parser starts, a read of a token that is
+ * already there takes no lock at all.
+ */
 public class TokenBuffer {
-    private final List<Token> tokens = new ArrayList<>();
+    /**
+     * Replaced, never resized in place, when it runs full: a reader that sees a token count also sees an array
+     * holding that many tokens.
+     */
+    private volatile Token[] tokens = new Token[256];
     private final CodeCache codeCache;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition added = lock.newCondition();
+    /**
+     * Number of tokens published to readers; written after the token is stored.
+     */
+    private volatile int size = 0;
     private int currentIndex = 0;
 
     public TokenBuffer(CodeCache codeCache) {
@@ -15,37 +34,58 @@ public class TokenBuffer {
     }
 
     // Method to add tokens to the buffer
-    public synchronized void addToken(Token token) {
-        tokens.add(token);
-        notifyAll(); // Notify waiting threads that a new token is available
+    public void addToken(Token token) {
+        lock.lock();
+        try {
+            Token[] tokens = this.tokens;
+            if (size == tokens.length) {
+                this.tokens = tokens = Arrays.copyOf(tokens, size * 2);
+            }
+            tokens[size] = token;
+            size = size + 1;
+            added.signalAll(); // Notify waiting threads that a new token is available
+        } finally {
+            lock.unlock();
+        }
     }
 
-    public synchronized Token nextToken() throws InterruptedException {
-        while (currentIndex >= tokens.size()) {
-            wait(); // Wait for tokens to be added
-        }
-        return tokens.get(currentIndex++);
+    public Token nextToken() throws InterruptedException {
+        Token token = await(currentIndex);
+        currentIndex++;
+        return token;
     }
 
-    public synchronized Token lookahead(int k) {
+    public Token lookahead(int k) {
         int lookaheadIndex = currentIndex + k - 1;
-        if (lookaheadIndex < tokens.size()) {
-            return tokens.get(lookaheadIndex);
+        if (lookaheadIndex < size) {
+            return tokens[lookaheadIndex];
         } else {
             return null; // Or handle EOF
         }
     }
 
     @SneakyThrows
-    public synchronized Token get(Integer index){
-        while (index >= tokens.size()) {
-            wait();
+    public Token get(Integer index) {
+        return await(index);
+    }
+
+    private Token await(int index) throws InterruptedException {
+        if (index < size) {
+            return tokens[index];
+        }
+        lock.lock();
+        try {
+            while (index >= size) {
+                added.await(); // Wait for tokens to be added
+            }
+            return tokens[index];
+        } finally {
+            lock.unlock();
         }
-        return tokens.get(index);
     }
 
-    public int size(){
-        return this.tokens.size();
+    public int size() {
+        return this.size;
     }
 
     public String getLine(int number) {
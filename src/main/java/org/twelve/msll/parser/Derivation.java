@@ -0,0 +1,55 @@
+package org.twelve.msll.parser;
+
+import org.twelve.msll.grammar.Production;
+import org.twelve.msll.lexer.Token;
+
+/**
+ * One step of the derivation a stack has performed since it was last committed to the parse tree.
+ * <p>
+ * A stack does not build parse nodes while it runs; it only records what it did, newest first, in an immutable
+ * chain that forks share with their parent. The chain is replayed onto the tree once the stack is known to
+ * survive (see {@link MsllParser}), so the nodes of forks that later die are never allocated.
+ * <p>
+ * A step either expands the non-terminal on top of the stack by a production ({@code token == null}) or matches
+ * the terminal on top of the stack to a token.
+ *
+ * @author huizi 2024
+ */
+final class Derivation {
+    /**
+     * The production the non-terminal was expanded by; {@code null} for a match, or for a non-terminal whose cell
+     * offered no production (it stays in the tree without children).
+     */
+    final Production production;
+
+    /**
+     * The explain recorded on the expanded node.
+     */
+    final String explain;
+
+    /**
+     * The token a terminal was matched to; {@code null} for an expansion.
+     */
+    final Token token;
+
+    final Derivation previous;
+
+    private Derivation(Production production, String explain, Token token, Derivation previous) {
+        this.production = production;
+        this.explain = explain;
+        this.token = token;
+        this.previous = previous;
+    }
+
+    static Derivation expand(Production production, String explain, Derivation previous) {
+        return new Derivation(production, explain, null, previous);
+    }
+
+    static Derivation match(Token token, Derivation previous) {
+        return new Derivation(null, null, token, previous);
+    }
+
+    boolean isMatch() {
+        return this.token != null;
+    }
+}
@@ -0,0 +1,68 @@
+package org.twelve.msll.parser;
+
+import org.twelve.msll.grammar.Grammar;
+import org.twelve.msll.grammar.Production;
+import org.twelve.msll.grammarsymbol.Terminal;
+import org.twelve.msll.lexer.Token;
+import org.twelve.msll.lexer.TokenBuffer;
+
+/**
+ * The most recent stack failure of a parse, kept as plain references and only rendered into a message when it
+ * turns out to be the syntax error of the parse.
+ * <p>
+ * Under heavy forking almost every failure is a fork that simply did not pan out, and the other stacks carry on.
+ * Building the message (source line, candidate productions) and throwing for each of them used to dominate the
+ * cost of a dead fork, so a failing stack only records what went wrong here and reports failure by return value.
+ * One instance is reused for the whole parse; when the last live stack fails, {@link #render} produces exactly
+ * the message the parser used to throw.
+ *
+ * @author huizi 2024
+ */
+final class Diagnostic {
+    private Token token;
+    /**
+     * The terminal the stack expected, {@code null} when a non-terminal had no production for the token.
+     */
+    private Terminal expected;
+    private Symbol<?> symbol;
+    private Production owner;
+    private Grammar grammar;
+
+    /**
+     * Records a terminal on top of the stack that does not match {@code token}.
+     *
+     * @param symbol the expected terminal's symbol
+     * @param owner  the production it belongs to, {@code null} for the end marker
+     */
+    void unexpectedToken(Token token, Symbol<?> symbol, Production owner) {
+        this.token = token;
+        this.expected = (Terminal) symbol.type();
+        this.symbol = symbol;
+        this.owner = owner;
+        this.grammar = null;
+    }
+
+    /**
+     * Records a non-terminal whose predict table row has no cell for {@code token}.
+     */
+    void noProduction(Token token, Grammar grammar) {
+        this.token = token;
+        this.expected = null;
+        this.symbol = null;
+        this.owner = null;
+        this.grammar = grammar;
+    }
+
+    String render(TokenBuffer tokens, PredictTable predictTable) {
+        String line = tokens.getLine(token.location().line().number());
+        if (expected == null) {
+            return predictTable.mismatch(token, grammar, line);
+        }
+        String keywordHint = (!token.terminal().isRegex() && expected.name().equals("ID"))
+                ? System.lineSeparator() + "Hint: '" + token.lexeme() + "' is a reserved keyword and cannot be used as an identifier."
+                : "";
+        return "unexpected token: " + token.lexeme() + ", expected token in " + (owner == null ? symbol.name() : owner.grammar().name()) + " is "
+                + expected.name() + ", at line:" + token.location().line().number() + ", position: " + token.location().lineStart() + " - "
+                + token.location().lineEnd() + System.lineSeparator() + line + keywordHint;
+    }
+}
@@ -0,0 +1,257 @@
+package org.twelve.msll.parser;
+
+import org.twelve.msll.grammarsymbol.NonTerminal;
+import org.twelve.msll.grammarsymbol.NonTerminals;
+import org.twelve.msll.grammarsymbol.Terminal;
+import org.twelve.msll.grammarsymbol.Terminals;
+import org.twelve.msll.lexer.RegexLexer;
+import org.twelve.msll.lexer.Token;
+import org.twelve.msll.lexer.TokenBuffer;
+import org.twelve.msll.parsetree.G4GrammarTree;
+import org.twelve.msll.parsetree.NonTerminalNode;
+import org.twelve.msll.parsetree.TerminalNode;
+import org.twelve.msll.util.Constants;
+import org.twelve.msll.util.Tool;
+
+import java.io.Reader;
+
+/**
+ * Hand-written reader of a {@code .gm} grammar file, the direct alternative to a {@link G4Parser}.
+ * <p>
+ * A {@link G4Parser} is an MSLL parser running on a CFG of the {@code .gm} format: it builds a full parse tree with
+ * multiple stacks, polishes it and then optimizes it into the tree {@link org.twelve.msll.grammar.ParserTreeGrammarBuilder}
+ * walks. A reader scans the file with the same lexer and the same terminals, but decides every step on the current
+ * token, recursive descent, and creates the nodes of the optimized tree right away: single-child nodes are never
+ * created, strings and regexes are unquoted and {@code |} tokens dropped as they are read. The tree it returns is the
+ * one the parser of the same file returns, so both can feed the same grammar builder.
+ * <p>
+ * Tokens on a channel and end-of-line markers are skipped, as the MSLL parser skips them.
+ * <p>
+ * Only the {@code .gm} format is read: an ANTLR4 {@code .g4} grammar reaches a reader after {@link
+ * org.twelve.msll.tools.G4GrammarLoader} has converted it to {@code .gm} text.
+ *
+ * @param <P> The type of grammar tree read.
+ * @author huizi 2024
+ */
+public abstract class G4Reader<P extends G4GrammarTree> {
+    protected final NonTerminals nonTerminals;
+    protected final Terminals terminals;
+    private final TokenBuffer tokens;
+    private int cursor = -1;
+    private Token token;
+
+    /**
+     * @param nonTerminals the non-terminals of the grammar format, see {@link NonTerminals#parser()}
+     * @param terminals    the terminals of the grammar format, see {@link Terminals#parser()}
+     * @param reader       the grammar file
+     */
+    protected G4Reader(NonTerminals nonTerminals, Terminals terminals, Reader reader) {
+        this.nonTerminals = nonTerminals;
+        this.terminals = terminals;
+        this.tokens = new RegexLexer(reader, terminals).scan();
+        this.advance();
+    }
+
+    /**
+     * Reads the whole grammar file.
+     *
+     * @return the grammar tree, as the corresponding {@link G4Parser} would return it
+     */
+    public abstract P read();
+
+    /**
+     * Moves to the next token the parser would not skip.
+     */
+    private void advance() {
+        do {
+            this.token = this.tokens.get(++this.cursor);
+            if (this.token == null) {//error in lexing
+                throw new RuntimeException("something wrong in lexing...");
+            }
+        } while (this.token.terminal() != this.terminals.END
+                && (!this.token.channel().isEmpty() || this.token.terminal() == this.terminals.EOL));
+    }
+
+    /**
+     * @return whether the current token is of the given terminal
+     */
+    protected boolean at(Terminal terminal) {
+        return this.token.terminal() == terminal;
+    }
+
+    /**
+     * @return whether the token after the current one is of the given terminal
+     */
+    protected boolean next(Terminal terminal) {
+        for (int i = this.cursor + 1; i < this.tokens.size(); i++) {
+            Token next = this.tokens.get(i);
+            if (next == null) return false;
+            if (!next.channel().isEmpty() || next.terminal() == this.terminals.EOL) continue;
+            return next.terminal() == terminal;
+        }
+        return false;
+    }
+
+    /**
+     * Consumes the current token, which must be of the given terminal.
+     *
+     * @return its node, unquoted if it is a string or a regex
+     */
+    protected TerminalNode expect(Terminal terminal) {
+        if (!at(terminal)) fail(terminal.name());
+        return take();
+    }
+
+    /**
+     * Consumes the current token.
+     *
+     * @return its node, unquoted if it is a string or a regex
+     */
+    protected TerminalNode take() {
+        Token token = this.token;
+        String name = token.terminal().name();
+        if (name.equals(Constants.REGEX)) {
+            token = new Token(token.terminal(), token.lexeme().replaceAll("/\"|\"/", ""), token.location());
+        }
+        if (name.equals(Constants.STRING)) {
+            String s = token.lexeme();
+            // Strip only the outermost quote pair to preserve embedded quotes (e.g. '"' → ")
+            if (s.length() >= 2) {
+                char first = s.charAt(0), last = s.charAt(s.length() - 1);
+                if ((first == '\'' && last == '\'') || (first == '"' && last == '"')) {
+                    s = s.substring(1, s.length() - 1);
+                }
+            }
+            token = new Token(token.terminal(), s, token.location());
+        }
+        // the CFG of the format writes the colon as ':', which names its symbols so
+        TerminalNode node = new TerminalNode(token.terminal() == this.terminals.COLON
+                ? new Symbol<>(this.terminals.COLON, Constants.COLON)
+                : new Symbol<>(token.terminal()));
+        node.setToken(token);
+        this.advance();
+        return node;
+    }
+
+    /**
+     * Consumes the current token without creating a node for it, as for the {@code |} between alternatives.
+     */
+    protected void skip() {
+        this.advance();
+    }
+
+    /**
+     * Creates a node of the non-terminal of the given name for what was read; like the nodes a parser derives by the
+     * productions of the format, it has an empty explanation.
+     */
+    protected NonTerminalNode node(String name) {
+        NonTerminalNode node = new NonTerminalNode(new Symbol<>(nonTerminal(name)));
+        node.setExplain(Constants.EMPTY);
+        return node;
+    }
+
+    /**
+     * Returns the non-terminal of the given name, registering it if no {@link G4Parser} of the format was built yet.
+     * The start non-terminal is always the first one looked up, when the root node is created.
+     */
+    protected NonTerminal nonTerminal(String name) {
+        NonTerminal nonTerminal = this.nonTerminals.fromName(name);
+        if (nonTerminal != null) return nonTerminal;
+        synchronized (this.nonTerminals) {
+            return this.nonTerminals.addNonTerminal(name);
+        }
+    }
+
+    /**
+     * Reads the comments the format allows at the current place into the given node.
+     */
+    protected void comments(NonTerminalNode parent, Terminal... comments) {
+        while (atAny(comments)) parent.addNode(take());
+    }
+
+    /**
+     * Reads the {@code options {...}} and {@code channels {...}} statements, either of them first.
+     */
+    protected void channelOptions(NonTerminalNode parent) {
+        if (at(terminal(Constants.OPTIONS_STR))) {
+            parent.addNode(options());
+            if (at(terminal(Constants.CHANNELS.toUpperCase()))) parent.addNode(channels());
+        } else if (at(terminal(Constants.CHANNELS.toUpperCase()))) {
+            parent.addNode(channels());
+            if (at(terminal(Constants.OPTIONS_STR))) parent.addNode(options());
+        }
+    }
+
+    private NonTerminalNode options() {
+        NonTerminalNode options = node(Constants.OPTIONS_STATEMENT);
+        options.addNode(take());
+        options.addNode(expect(terminal(Constants.LEFT_BRACE_STR)));
+        while (atId()) {
+            NonTerminalNode option = node(Constants.OPTION);
+            option.addNode(take());
+            option.addNode(expect(terminal(Constants.EQUAL_STR)));
+            option.addNode(id());
+            option.addNode(expect(this.terminals.SEMICOLON));
+            options.addNode(option);
+        }
+        options.addNode(expect(terminal(Constants.RIGHT_BRACE_STR)));
+        return options;
+    }
+
+    private NonTerminalNode channels() {
+        NonTerminalNode channels = node(Constants.CHANNEL_STATEMENT);
+        channels.addNode(take());
+        channels.addNode(expect(terminal(Constants.LEFT_BRACE_STR)));
+        channels.addNode(id());
+        while (at(terminal(Constants.COMMA_STR))) {
+            channels.addNode(take());
+            channels.addNode(id());
+        }
+        channels.addNode(expect(terminal(Constants.RIGHT_BRACE_STR)));
+        return channels;
+    }
+
+    /**
+     * Consumes an identifier, lower or upper case.
+     */
+    protected TerminalNode id() {
+        if (!atId()) fail(Constants.ID);
+        return take();
+    }
+
+    private boolean atId() {
+        return at(terminal(Constants.ID)) || at(terminal(Constants.UPPER_ID));
+    }
+
+    /**
+     * @return whether the current token is of one of the given terminals
+     */
+    protected boolean atAny(Terminal... terminals) {
+        for (Terminal terminal : terminals) {
+            if (at(terminal)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the whole file was read
+     */
+    protected boolean atEnd() {
+        return at(this.terminals.END);
+    }
+
+    protected Terminal terminal(String name) {
+        return this.terminals.fromName(name);
+    }
+
+    /**
+     * Reports the current token as unexpected.
+     *
+     * @param expected what the format allows at its place
+     */
+    protected void fail(String expected) {
+        String found = atEnd() ? "end of file" : "'" + this.token.lexeme() + "'";
+        int line = this.token.location() == null ? 0 : this.token.location().line().number() + 1;
+        Tool.grammarError("unexpected " + found + " at line " + line + ", expecting " + expected);
+    }
+}
@@ -29,9 +29,10 @@ import java.util.regex.Pattern;
 public class GrammarPredicate {
     /**
      * A map storing registered predicate functions.
-     * Each function is a BiPredicate that takes a pair of token input and token buffer, along with additional arguments
+     * Each function is a BiPredicate that takes a pair of token input and token buffer, along with additional arguments.
+     * The map is immutable and replaced as a whole on registration, so parsers on any thread read it without locking.
      */
-    private static Map<String, BiPredicate<Pair<Token, List<Token>>, List>> functions = new HashMap<>();
+    private static volatile Map<String, BiPredicate<Pair<Token, List<Token>>, List>> functions = Map.of();
 
     /**
      *  Static initializer that adds built-in predicate functions
@@ -46,22 +47,32 @@ public class GrammarPredicate {
             return token.lexeme().trim().equals(key.trim());
         });
     }
+    /**
+     * The pattern of a predicate call, compiled once.
+     */
+    private static final Pattern CALL = Pattern.compile("(\\bthis\\.)?(?<func>\\w+)(\\((?<args>.*)\\))?");
+
     private final List args = new ArrayList();
     private String funcName;
+    /**
+     * The function {@link #funcName} names, bound by a {@link PredicateRegistry}; {@code null} while unbound or
+     * when no function of that name is registered.
+     */
+    private volatile BiPredicate<Pair<Token, List<Token>>, List> function;
 
     /**
      * Parses the provided predicate code and extracts the function name and its arguments.
      *
      * The input code is expected to follow the pattern of a function call with optional arguments,
-     * such as `notLineTerminator()` or `n("someArg")`. The function name is stored in `funcName`,
-     * and the arguments are parsed and stored in the `args` list.
+     * such as `notLineTerminator()` or `n("someArg")`, optionally wrapped in the braces of the grammar.
+     * The function name is stored in `funcName`, and the arguments are parsed into typed values
+     * (String, Long or Double) and stored in the `args` list.
      *
      * @param code The string representing the predicate function.
      */
     public GrammarPredicate(String code) {
         String FUNC = "func", ARGS = "args";
-        Pattern pattern = Pattern.compile("(\\bthis\\.)?(?<func>\\w+)(\\((?<args>.*)\\))?");
-        Matcher matcher = pattern.matcher(code);
+        Matcher matcher = CALL.matcher(code.replace("{", "").replace("}", ""));
         while (matcher.find()) {
             String func = matcher.group(FUNC);
             String args = matcher.group(ARGS);
@@ -70,6 +81,7 @@ public class GrammarPredicate {
             }
             if (args != null && !args.trim().equals(Constants.EMPTY)) {
                 for (String arg : args.split(",")) {
+                    arg = arg.trim();
                     if (arg.startsWith("\"")) {
                         this.args.add(arg.replace("\"", ""));
                     } else {
@@ -84,32 +96,51 @@ public class GrammarPredicate {
     /**
      * Executes the predicate function by applying it to the given token and token buffer.
      *
-     * The `test` method retrieves the function corresponding to `funcName` and applies it to the current token and token buffer.
+     * The function was looked up when the predicate was bound, so this only applies it.
      * If the predicate returns false, a grammar error is raised.
      *
      * @param token The current token being evaluated by the predicate.
      * @param tokens The buffer of tokens (context for the predicate function).
      */
     public void test(Token token, TokenBuffer tokens) {
-        BiPredicate<Pair<Token, List<Token>>, List> function = functions.get(this.funcName);
-        if (function == null) return;//forget it, function is not found, then ignore the predicate
-        if (!function.test(new Pair(token, tokens), this.args)) {
+        if (this.function == null) return;//forget it, function is not found, then ignore the predicate
+        if (!this.function.test(new Pair(token, tokens), this.args)) {
             Tool.grammarError("grammar predicate fail:"+this.funcName);
         }
 
     }
 
     /**
-     * Adds a new predicate function to the registry.
+     * Binds the predicate to its function.
+     *
+     * @param function the function, {@code null} to ignore the predicate
+     */
+    void bind(BiPredicate<Pair<Token, List<Token>>, List> function) {
+        this.function = function;
+    }
+
+    /**
+     * Returns the built-in and globally added functions, which every {@link PredicateRegistry} starts with.
+     */
+    static Map<String, BiPredicate<Pair<Token, List<Token>>, List>> functions() {
+        return functions;
+    }
+
+    /**
+     * Adds a new predicate function to the global registry.
      *
      * This method allows external code to register new predicate functions. Each function
      * is defined as a `BiPredicate`, which takes a pair (token, token buffer) and a list of arguments.
+     * Parser builders created afterwards see it; to add a function to one builder only, use
+     * {@link org.twelve.msll.parserbuilder.ParserBuilder#predicates()}.
      *
      * @param name The name of the predicate function.
      * @param predicate The function logic for the predicate.
      */
-    public static void addFunction(String name, BiPredicate<Pair<Token, List<Token>>, List> predicate) {
-        functions.put(name,predicate);
+    public static synchronized void addFunction(String name, BiPredicate<Pair<Token, List<Token>>, List> predicate) {
+        Map<String, BiPredicate<Pair<Token, List<Token>>, List>> functions = new HashMap<>(GrammarPredicate.functions);
+        functions.put(name, predicate);
+        GrammarPredicate.functions = Map.copyOf(functions);
     }
 
     /**
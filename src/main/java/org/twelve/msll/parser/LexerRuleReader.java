@@ -0,0 +1,173 @@
+package org.twelve.msll.parser;
+
+import org.twelve.msll.grammarsymbol.NonTerminals;
+import org.twelve.msll.grammarsymbol.Terminal;
+import org.twelve.msll.grammarsymbol.Terminals;
+import org.twelve.msll.parsetree.LexerRuleTree;
+import org.twelve.msll.parsetree.NonTerminalNode;
+import org.twelve.msll.parsetree.ParseNode;
+import org.twelve.msll.util.Constants;
+
+import java.io.Reader;
+
+/**
+ * Reads a lexer grammar ({@code .gm}) file into the {@link LexerRuleTree} a {@link LexerRuleParser} would parse it
+ * into, in one pass and without an MSLL parser.
+ * <p>
+ * The grammar file is read as
+ * <pre>
+ * lexer    : comment* lexer_head? comment* options_and_channels? (grammar | fragment_grammar | mode_decl | comment)*
+ * grammar  : UPPER_ID COMMENT* ':' lex_body LEXER_COMMAND? ';'
+ * fragment_grammar : 'fragment' UPPER_ID COMMENT* ':' lex_body ';'
+ * lex_body : lex_alt ('|' lex_alt)*
+ * lex_alt  : (lex_atom ('*' '?'? | '+' '?'? | '?')?)+
+ * lex_atom : STRING | SINGLE_CHARACTER | ANY | SPECIAL | REGEX | PREDICATE | UPPER_ID | '(' lex_body ')' | '~' lex_atom
+ * </pre>
+ * An element without a quantifier is its atom itself, as in the optimized tree of the parser.
+ *
+ * @author huizi 2024
+ */
+public class LexerRuleReader extends G4Reader<LexerRuleTree> {
+    private final Terminal lexerGrammar;
+    private final Terminal comment;
+    private final Terminal longComment;
+    private final Terminal upperId;
+    private final Terminal fragment;
+    private final Terminal mode;
+    private final Terminal lexerCommand;
+    private final Terminal leftParen;
+    private final Terminal rightParen;
+    private final Terminal not;
+    private final Terminal star;
+    private final Terminal plus;
+    private final Terminal question;
+    private final Terminal[] tokens;
+    private final Terminal[] atoms;
+
+    public LexerRuleReader(Reader reader) {
+        super(NonTerminals.lexer(), Terminals.lexer(), reader);
+        this.lexerGrammar = terminal(Constants.LEXER_GRAMMAR);
+        this.comment = terminal(Constants.COMMENT);
+        this.longComment = terminal(Constants.LONG_COMMENT);
+        this.upperId = terminal(Constants.UPPER_ID);
+        this.fragment = terminal(Constants.FRAGMENT.toUpperCase());
+        this.mode = terminal(Constants.MODE_STR);
+        this.lexerCommand = terminal(Constants.LEXER_COMMAND);
+        this.leftParen = terminal(Constants.LEFT_PAREN_STR);
+        this.rightParen = terminal(Constants.RIGHT_PAREN_STR);
+        this.not = terminal(Constants.NOT_STR);
+        this.star = terminal(Constants.STAR_STR);
+        this.plus = terminal(Constants.PLUS_STR);
+        this.question = terminal(Constants.QUESTION_STR);
+        this.tokens = new Terminal[]{terminal(Constants.STRING), terminal(Constants.SINGLE_CHARACTER),
+                terminal(Constants.ANY), terminal(Constants.SPECIAL), terminal(Constants.REGEX),
+                terminal(Constants.PREDICATE)};
+        this.atoms = new Terminal[]{this.tokens[0], this.tokens[1], this.tokens[2], this.tokens[3], this.tokens[4],
+                this.tokens[5], this.upperId, this.leftParen, this.not};
+    }
+
+    @Override
+    public LexerRuleTree read() {
+        NonTerminalNode lexer = node(Constants.LEXER);
+        comments(lexer, this.longComment, this.comment);
+        if (at(this.lexerGrammar)) {
+            NonTerminalNode head = node(Constants.LEXER_HEAD);
+            head.addNode(take());
+            head.addNode(expect(this.upperId));
+            head.addNode(expect(this.terminals.SEMICOLON));
+            lexer.addNode(head);
+            comments(lexer, this.longComment, this.comment);
+        }
+        channelOptions(lexer);
+        while (!atEnd()) {
+            if (atAny(this.longComment, this.comment)) {
+                lexer.addNode(take());
+            } else if (at(this.fragment)) {
+                NonTerminalNode grammar = node(Constants.FRAGMENT_GRAMMAR);
+                grammar.addNode(take());
+                rule(grammar, false);
+                lexer.addNode(grammar);
+            } else if (at(this.mode)) {
+                NonTerminalNode mode = node(Constants.MODE_DECL);
+                mode.addNode(take());
+                mode.addNode(expect(this.upperId));
+                mode.addNode(expect(this.terminals.SEMICOLON));
+                lexer.addNode(mode);
+            } else {
+                NonTerminalNode grammar = node(Constants.GRAMMAR);
+                rule(grammar, true);
+                lexer.addNode(grammar);
+            }
+        }
+        return new LexerRuleTree(lexer);
+    }
+
+    /**
+     * Reads a rule from its name on.
+     *
+     * @param command whether the rule may have a lexer command, which fragments may not
+     */
+    private void rule(NonTerminalNode grammar, boolean command) {
+        grammar.addNode(terminal());
+        comments(grammar, this.comment);
+        grammar.addNode(expect(this.terminals.COLON));
+        grammar.addNode(body());
+        if (command && at(this.lexerCommand)) grammar.addNode(take());
+        grammar.addNode(expect(this.terminals.SEMICOLON));
+    }
+
+    private NonTerminalNode terminal() {
+        NonTerminalNode terminal = node(Constants.TERMINAL);
+        terminal.addNode(expect(this.upperId));
+        return terminal;
+    }
+
+    private NonTerminalNode body() {
+        NonTerminalNode body = node(Constants.LEX_BODY);
+        body.addNode(alternative());
+        while (at(this.terminals.OR)) {
+            skip();
+            body.addNode(alternative());
+        }
+        return body;
+    }
+
+    private NonTerminalNode alternative() {
+        NonTerminalNode alternative = node(Constants.LEX_ALT);
+        do {
+            alternative.addNode(element());
+        } while (atAny(this.atoms));
+        return alternative;
+    }
+
+    private ParseNode element() {
+        ParseNode atom = atom();
+        if (!atAny(this.star, this.plus, this.question)) return atom;
+        NonTerminalNode element = node(Constants.LEX_ELEM);
+        element.addNode(atom);
+        boolean lazy = !at(this.question);
+        element.addNode(take());
+        if (lazy && at(this.question)) element.addNode(take());
+        return element;
+    }
+
+    private ParseNode atom() {
+        if (atAny(this.tokens)) return take();
+        if (at(this.upperId)) return terminal();
+        if (at(this.leftParen)) {
+            NonTerminalNode group = node(Constants.LEX_GROUP);
+            group.addNode(take());
+            group.addNode(body());
+            group.addNode(expect(this.rightParen));
+            return group;
+        }
+        if (at(this.not)) {
+            NonTerminalNode not = node(Constants.LEX_NOT);
+            not.addNode(take());
+            not.addNode(atom());
+            return not;
+        }
+        fail("a lexer rule element");
+        return null;
+    }
+}
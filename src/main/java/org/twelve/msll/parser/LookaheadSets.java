@@ -0,0 +1,414 @@
+package org.twelve.msll.parser;
+
+import org.twelve.msll.grammar.Grammar;
+import org.twelve.msll.grammar.Grammars;
+import org.twelve.msll.grammar.Production;
+import org.twelve.msll.grammarsymbol.Terminal;
+import org.twelve.msll.util.Components;
+import org.twelve.msll.util.Constants;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bounded LL(k) lookahead sets used to prune forks <em>before</em> a stack is cloned.
+ * <p>
+ * The predict table only looks at one token, so a FIRST-FIRST (or FIRST/FOLLOW) conflict cell forks one stack
+ * per production, even when the second or third token would rule most of them out immediately. This class
+ * computes, once per table, FIRST<sub>k</sub> for every grammar (the set of terminal sequences of length &le; k a
+ * grammar can start with; a sequence shorter than k is a complete derivation) and, for the productions of the
+ * conflicted cells only, FIRST<sub>k</sub> of the production itself.
+ * <p>
+ * At runtime {@link #viable} walks the production's lookahead set against the next k significant tokens, and
+ * when a derivation of the production is shorter than the lookahead window it continues with the symbols still
+ * waiting on the stack below — so an &epsilon; production (or any short one) is checked against the real parse
+ * context rather than a global FOLLOW approximation. This is what lets epsilon-alongside cells benefit too.
+ * <p>
+ * The check is conservative: a production is only rejected when <em>no</em> derivation of it followed by the
+ * stack can match the lookahead. Sets that grow past {@link #MAX_SEQUENCES} degrade to "anything", grammar
+ * predicates are treated as &epsilon; (always passing), so pruning never removes a path that could survive.
+ *
+ * @author huizi 2024
+ */
+public class LookaheadSets {
+    /**
+     * Upper bound on the number of sequences kept per set; a larger set degrades to "anything".
+     * Keeps table construction bounded on large grammars (FIRST<sub>k</sub> grows as |T|<sup>k</sup>).
+     */
+    private static final int MAX_SEQUENCES = 4096;
+
+    /**
+     * Marker for a set that is unknown or too large to track: every lookahead is accepted.
+     */
+    private static final Set<List<Terminal>> TOP = Collections.unmodifiableSet(new HashSet<>());
+
+    /**
+     * Returned by the matching steps when the whole lookahead window has been matched.
+     */
+    private static final int MATCHED = -1;
+
+    private final int k;
+
+    /**
+     * FIRST<sub>k</sub> per grammar name, stored as tries for O(k) matching.
+     */
+    private final Map<String, Node> grammarFirsts = new HashMap<>();
+
+    /**
+     * FIRST<sub>k</sub> of the productions appearing in conflicted cells.
+     */
+    private final Map<Production, Node> productionFirsts = new HashMap<>();
+
+    /**
+     * FIRST<sub>k</sub> per grammar name as sequence sets, kept for the lookahead sets of grammars rebuilt from
+     * these, see {@link #LookaheadSets(Grammars, int, Set, LookaheadSets, Set, Set, Map)}.
+     */
+    private final Map<String, Set<List<Terminal>>> sets;
+
+    /**
+     * Computes the lookahead sets for the given grammars.
+     *
+     * @param grammars    the finished grammars of the table
+     * @param k           the lookahead depth, at least 2
+     * @param conflicted  the productions of the conflicted cells, which get their own precomputed set
+     */
+    LookaheadSets(Grammars grammars, int k, Set<Production> conflicted) {
+        this(grammars, k, conflicted, null, null, null, null);
+    }
+
+    /**
+     * Computes the lookahead sets for grammars rebuilt from those of {@code previous}. The set (and trie) of a
+     * grammar is taken over when neither the grammar nor anything it reaches was rebuilt with other productions
+     * or came out with another set; likewise the set of a conflicted production of such a grammar.
+     *
+     * @param previous the lookahead sets of the grammars before, or {@code null} to compute everything
+     * @param rebuilt  the names of the grammars whose productions changed, see {@link Grammars#rebuilt()}
+     * @param narrowed the names of those that lost a production, rather than only gaining some
+     * @param before   the production each production of a grammar not rebuilt was before
+     */
+    LookaheadSets(Grammars grammars, int k, Set<Production> conflicted, LookaheadSets previous, Set<String> rebuilt,
+                  Set<String> narrowed, Map<Production, Production> before) {
+        this.k = k;
+        if (previous != null && (previous.k != k || rebuilt == null)) previous = null;
+        Set<String> changed = new HashSet<>();
+        this.sets = computeGrammarFirsts(grammars, previous, rebuilt, narrowed, changed);
+        for (Map.Entry<String, Set<List<Terminal>>> entry : this.sets.entrySet()) {
+            String name = entry.getKey();
+            grammarFirsts.put(name, previous != null && !changed.contains(name)
+                    ? previous.grammarFirsts.get(name) : Node.of(entry.getValue(), k));
+        }
+        for (Production production : conflicted) {
+            Production was = previous == null ? null : before.get(production);
+            Node first = was == null || reaches(production, changed) ? null : previous.productionFirsts.get(was);
+            productionFirsts.put(production, first == null ? Node.of(firstOf(production.symbols(), sets), k) : first);
+        }
+    }
+
+    private static boolean reaches(Production production, Set<String> changed) {
+        for (Symbol<?> symbol : production.symbols()) {
+            if (!symbol.isTerminal() && changed.contains(symbol.name())) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the lookahead depth k
+     */
+    public int k() {
+        return this.k;
+    }
+
+    /**
+     * Decides whether a production can still match the lookahead.
+     *
+     * @param production the candidate production taken from a conflicted cell
+     * @param stack      the stack the production would be expanded on (the expanded node already popped)
+     * @param lookahead  the next significant terminals, starting with the current token
+     * @param size       number of valid entries in {@code lookahead} (at most k)
+     * @return false only if no derivation of the production followed by the stack can start with the lookahead
+     */
+    public boolean viable(Production production, MsllStack stack, Terminal[] lookahead, int size) {
+        if (size == 0) return true;
+        Node first = productionFirsts.get(production);
+        int mask;
+        if (first == null) {
+            mask = 1;
+            for (Symbol<?> symbol : production.symbols()) {
+                mask = step(symbol, mask, lookahead, size);
+                if (mask == MATCHED) return true;
+                if (mask == 0) return false;
+            }
+        } else {
+            mask = walk(first, 1, lookahead, size);
+        }
+        for (int i = stack.size() - 1; i >= 0 && mask != MATCHED && mask != 0; i--) {
+            mask = step(stack.symbolAt(i), mask, lookahead, size);
+        }
+        return mask == MATCHED;
+    }
+
+    /**
+     * Decides whether a production is ruled out by the lookahead on its own, without looking at the stack.
+     * A fork rejected this way fails on those tokens in every context, which is what lets the
+     * {@link PredictionCache} still record decisions made over a pruned cell.
+     *
+     * @return true if no derivation of the production (followed by anything) can start with the lookahead
+     */
+    public boolean rejectedByItself(Production production, Terminal[] lookahead, int size) {
+        if (size == 0) return false;
+        Node first = productionFirsts.get(production);
+        int mask = 1;
+        if (first == null) {
+            for (Symbol<?> symbol : production.symbols()) {
+                mask = step(symbol, mask, lookahead, size);
+                if (mask == MATCHED || mask == 0) break;
+            }
+        } else {
+            mask = walk(first, 1, lookahead, size);
+        }
+        return mask == 0;
+    }
+
+    /**
+     * Advances a set of lookahead positions (bit i set = the first i tokens are matched) over one symbol.
+     */
+    private int step(Symbol<?> symbol, int mask, Terminal[] lookahead, int size) {
+        if (symbol.isTerminal()) {
+            if (isTransparent(symbol)) return mask;
+            int out = 0;
+            for (int i = 0; i < size; i++) {
+                if ((mask & (1 << i)) != 0 && lookahead[i] == symbol.type()) {
+                    if (i + 1 == size) return MATCHED;
+                    out |= 1 << (i + 1);
+                }
+            }
+            return out;
+        }
+        Node first = grammarFirsts.get(symbol.name());
+        return first == null ? MATCHED : walk(first, mask, lookahead, size);
+    }
+
+    private static int walk(Node first, int mask, Terminal[] lookahead, int size) {
+        if (first == Node.ANY) return MATCHED;
+        int out = 0;
+        for (int i = 0; i < size; i++) {
+            if ((mask & (1 << i)) == 0) continue;
+            Node node = first;
+            int pos = i;
+            while (true) {
+                if (node.end) out |= 1 << pos;
+                Node child = node.next.get(lookahead[pos]);
+                if (child == null) break;
+                if (++pos == size) return MATCHED;
+                node = child;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * &epsilon; and grammar predicates consume no token.
+     */
+    private static boolean isTransparent(Symbol<?> symbol) {
+        return symbol.type() == Terminal.EPSILON || symbol.type().name().contains(Constants.PREDICATE_ABLE);
+    }
+
+    /**
+     * FIRST<sub>k</sub> of every grammar, solved one strongly connected component of the reference graph at a
+     * time, those referenced first: a component is iterated to its fixpoint only over its own grammars, the sets of
+     * the grammars it references being final already. A component is taken over from {@code previous} when none of
+     * its grammars was rebuilt and none of the grammars it references came out changed, and iterated on from its
+     * sets of {@code previous} when the grammars only grew (see {@link #seedable}).
+     *
+     * @param changed receives the names of the grammars whose set is not the one of {@code previous}
+     */
+    private Map<String, Set<List<Terminal>>> computeGrammarFirsts(Grammars grammars, LookaheadSets previous,
+                                                                  Set<String> rebuilt, Set<String> narrowed,
+                                                                  Set<String> changed) {
+        List<Grammar> all = grammars.grammars();
+        Map<String, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < all.size(); i++) indexes.put(all.get(i).name(), i);
+        List<int[]> dependencies = new ArrayList<>(all.size());
+        for (Grammar grammar : all) {
+            Set<Integer> referenced = new LinkedHashSet<>();
+            for (Production production : grammar.productions()) {
+                for (Symbol<?> symbol : production.symbols()) {
+                    Integer index = symbol.isTerminal() ? null : indexes.get(symbol.name());
+                    if (index != null) referenced.add(index);
+                }
+            }
+            dependencies.add(referenced.stream().mapToInt(Integer::intValue).toArray());
+        }
+        Map<String, Set<List<Terminal>>> sets = new HashMap<>();
+        for (int[] component : new Components(dependencies).components()) {
+            boolean seeded = previous != null && seedable(component, all, dependencies, previous, narrowed, sets);
+            if (seeded && !reaches(component, dependencies, all, changed) && !reaches(component, all, rebuilt)) {
+                for (int member : component) sets.put(all.get(member).name(), previous.sets.get(all.get(member).name()));
+                continue;
+            }
+            for (int member : component) {
+                Set<List<Terminal>> set = seeded ? previous.sets.get(all.get(member).name()) : null;
+                sets.put(all.get(member).name(), set == null ? new HashSet<>() : set == TOP ? TOP : new HashSet<>(set));
+            }
+            boolean cyclic = component.length > 1 || Components.selfDependent(component[0], dependencies);
+            boolean grown;
+            do {
+                grown = false;
+                for (int member : component) grown |= grow(all.get(member), sets);
+            } while (grown && cyclic);
+            for (int member : component) {
+                String name = all.get(member).name();
+                if (previous == null || !same(previous.sets.get(name), sets.get(name))) changed.add(name);
+            }
+        }
+        return sets;
+    }
+
+    /**
+     * Whether a component can be solved from its sets of {@code previous}: none of its grammars lost a production,
+     * and the grammars it references only gained sequences. Its sets before are then below the new fixpoint and
+     * iterating from them reaches it, often in a single pass.
+     */
+    private static boolean seedable(int[] component, List<Grammar> all, List<int[]> dependencies,
+                                    LookaheadSets previous, Set<String> narrowed, Map<String, Set<List<Terminal>>> sets) {
+        for (int member : component) {
+            String name = all.get(member).name();
+            if (narrowed.contains(name) || !previous.sets.containsKey(name)) return false;
+            for (int dependency : dependencies.get(member)) {
+                String referenced = all.get(dependency).name();
+                Set<List<Terminal>> was = previous.sets.get(referenced);
+                Set<List<Terminal>> is = sets.get(referenced);
+                if (is == null) continue; // in the component
+                if (was == null || was == TOP && is != TOP || is != TOP && !is.containsAll(was)) return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean reaches(int[] component, List<Grammar> all, Set<String> names) {
+        for (int member : component) {
+            if (names.contains(all.get(member).name())) return true;
+        }
+        return false;
+    }
+
+    private static boolean reaches(int[] component, List<int[]> dependencies, List<Grammar> all, Set<String> changed) {
+        for (int member : component) {
+            for (int dependency : dependencies.get(member)) {
+                if (changed.contains(all.get(dependency).name())) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the FIRST<sub>k</sub> of every production of {@code grammar} to its set.
+     *
+     * @return whether the set grew
+     */
+    private boolean grow(Grammar grammar, Map<String, Set<List<Terminal>>> sets) {
+        Set<List<Terminal>> current = sets.get(grammar.name());
+        if (current == TOP) return false;
+        boolean grown = false;
+        for (Production production : grammar.productions()) {
+            Set<List<Terminal>> first = firstOf(production.symbols(), sets);
+            if (first == TOP || current.size() + first.size() > MAX_SEQUENCES) {
+                sets.put(grammar.name(), TOP);
+                return true;
+            }
+            grown |= current.addAll(first);
+        }
+        return grown;
+    }
+
+    /**
+     * Set equality that tells {@link #TOP} from the empty set.
+     */
+    private static boolean same(Set<List<Terminal>> left, Set<List<Terminal>> right) {
+        return left != null && right != null && (left == TOP) == (right == TOP) && left.equals(right);
+    }
+
+    /**
+     * FIRST<sub>k</sub> of a symbol sequence: the k-bounded concatenation of its symbols' sets.
+     */
+    private Set<List<Terminal>> firstOf(List<Symbol> symbols, Map<String, Set<List<Terminal>>> sets) {
+        Set<List<Terminal>> result = new HashSet<>();
+        result.add(Collections.emptyList());
+        for (Symbol<?> symbol : symbols) {
+            Set<List<Terminal>> next;
+            if (symbol.isTerminal()) {
+                next = isTransparent(symbol)
+                        ? Collections.singleton(Collections.emptyList())
+                        : Collections.singleton(Collections.singletonList((Terminal) symbol.type()));
+            } else {
+                next = sets.get(symbol.name());
+                if (next == null || next == TOP) return TOP;
+            }
+            result = concat(result, next);
+            if (result == TOP) return TOP;
+            if (allComplete(result)) break;
+        }
+        return result;
+    }
+
+    private Set<List<Terminal>> concat(Set<List<Terminal>> left, Set<List<Terminal>> right) {
+        Set<List<Terminal>> out = new HashSet<>();
+        for (List<Terminal> prefix : left) {
+            if (prefix.size() >= k) {
+                out.add(prefix);
+                continue;
+            }
+            for (List<Terminal> suffix : right) {
+                if (suffix.isEmpty()) {
+                    out.add(prefix);
+                    continue;
+                }
+                List<Terminal> joined = new ArrayList<>(Math.min(k, prefix.size() + suffix.size()));
+                joined.addAll(prefix);
+                for (int i = 0; i < suffix.size() && joined.size() < k; i++) {
+                    joined.add(suffix.get(i));
+                }
+                out.add(Collections.unmodifiableList(joined));
+            }
+            if (out.size() > MAX_SEQUENCES) return TOP;
+        }
+        return out;
+    }
+
+    private boolean allComplete(Set<List<Terminal>> set) {
+        for (List<Terminal> sequence : set) {
+            if (sequence.size() < k) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Trie over terminal sequences; {@code end} marks a complete derivation shorter than k.
+     */
+    private static final class Node {
+        static final Node ANY = new Node();
+
+        boolean end = false;
+        Map<Terminal, Node> next = new HashMap<>(4);
+
+        static Node of(Set<List<Terminal>> set, int k) {
+            if (set == TOP) return ANY;
+            Node root = new Node();
+            for (List<Terminal> sequence : set) {
+                Node node = root;
+                for (Terminal terminal : sequence) {
+                    node = node.next.computeIfAbsent(terminal, t -> new Node());
+                }
+                // sequences of exactly k terminals are truncated prefixes, not complete derivations
+                if (sequence.size() < k) node.end = true;
+            }
+            return root;
+        }
+    }
+}
@@ -3,9 +3,12 @@ package org.twelve.msll.parser;
 import org.twelve.msll.exception.AggregateGrammarSyntaxException;
 import org.twelve.msll.exception.GrammarSyntaxException;
 import org.twelve.msll.grammar.Grammar;
+import org.twelve.msll.grammar.GrammarBuilder;
 import org.twelve.msll.grammar.Grammars;
 import org.twelve.msll.grammar.Production;
+import org.twelve.msll.grammarsymbol.NonTerminal;
 import org.twelve.msll.grammarsymbol.NonTerminals;
+import org.twelve.msll.grammarsymbol.Terminal;
 import org.twelve.msll.grammarsymbol.Terminals;
 import org.twelve.msll.lexer.Lexer;
 import org.twelve.msll.lexer.RegexLexer;
@@ -17,7 +20,9 @@ import org.twelve.msll.util.Constants;
 import org.twelve.msll.util.Tool;
 
 import java.io.Reader;
+import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -93,7 +98,7 @@ public abstract class MsllParser<P extends ParserTree> {
      * The parse tree contains all the detailed parsing information, including every token and rule matched during the parsing process.
      * This structure is a direct reflection of the grammar and serves as an intermediate step before the AST is built, where unnecessary details are removed for further semantic analysis.
      */
-    private final P parseTree;
+    private P parseTree;
 
     /**
      * Stores the non-terminal symbols defined in the grammar.
@@ -137,6 +142,11 @@ public abstract class MsllParser<P extends ParserTree> {
     protected final java.util.Map<String, java.util.Set<String>> epsilonAlongsideGrammars
             = new java.util.HashMap<>();
 
+    /**
+     * {@link #epsilonAlongsideGrammars} translated into predict-table slots at the start of each parse.
+     */
+    private BitSet epsilonAlongsideSlots = new BitSet();
+
     /**
      * Constructs a parser instance using the provided cfg formatted grammar and parsing components.
      * <p>
@@ -154,7 +164,7 @@ public abstract class MsllParser<P extends ParserTree> {
      * panic-mode error-recovery logic can attach recovered statement subtrees
      * without going through the (possibly abstract) parse-tree API.
      */
-    private final NonTerminalNode startNode;
+    private NonTerminalNode startNode;
 
     /**
      * Collected syntax errors from the most recent parse.
@@ -165,17 +175,63 @@ public abstract class MsllParser<P extends ParserTree> {
      */
     private List<GrammarSyntaxException> syntaxErrors = java.util.Collections.emptyList();
 
+    /**
+     * Feeds the predict table's {@link PredictionCache} during a parse; {@code null} when no cache is installed.
+     */
+    private PredictionTracker tracker = null;
+
+    /**
+     * Whether a lone stack runs the deterministic LL(1) loop of {@link #parseTokenFast}; on by default.
+     */
+    private boolean fastPath = true;
+
+    /**
+     * Number of tokens the last parse consumed entirely on the fast path.
+     */
+    private int fastPathTokens = 0;
+
+    /**
+     * Number of stacks forked at conflicted cells during the last parse.
+     */
+    private int forkedStacks = 0;
+
+    /**
+     * Maximum number of live stacks carried from one token to the next, 0 for no limit (the default).
+     */
+    private int beam = 0;
+
+    /**
+     * Number of stacks the beam expired during the last parse.
+     */
+    private int beamPrunedStacks = 0;
+
+    /**
+     * Turns the derivation of the surviving stack into the parse tree.
+     */
+    private final TreeBuilder tree;
+
+    /**
+     * What made the latest stack fail; becomes the syntax error once no stack is left.
+     */
+    private final Diagnostic failure = new Diagnostic();
+
+    /**
+     * The stacks of this parser, reused by all of its parses.
+     */
+    private final StackArena arena = new StackArena();
+
     public MsllParser(Grammars grammars, PredictTable predictTable, NonTerminals nonTerminals, Terminals terminals, Reader reader) {
         this.grammars = grammars;
-        this.lexer = new RegexLexer(reader, terminals);
+        this.lexer = new RegexLexer(reader, terminals, grammars.expectsLineEnds());
         this.nonTerminals = nonTerminals;
         this.terminals = terminals;
-        MsllStack stack = MsllStack.apply();
-        stack.push(new EndNode(terminals));
-
-        NonTerminalNode start = new NonTerminalNode(new Symbol<>(grammars.getStart().nonTerminal()));
-        stack.push(start);
+        MsllStack stack = MsllStack.apply(this.arena);
+        Symbol<NonTerminal> startSymbol = new Symbol<>(grammars.getStart().nonTerminal());
+        startSymbol.bind(grammars.getStart());
+        NonTerminalNode start = new NonTerminalNode(startSymbol);
         this.startNode = start;
+        this.tree = new TreeBuilder(start, terminals);
+        this.tree.begin(stack, start);
         this.parseTree = createParseTree(start);
         this.predictTable = predictTable;
         stacks = new MsllStacks();
@@ -191,6 +247,68 @@ public abstract class MsllParser<P extends ParserTree> {
         return this.stacks.totalStackSize();
     }
 
+    /**
+     * Turns the deterministic LL(1) fast path on or off. The fast path never changes the result; switching it off
+     * routes every token through the generic multi-stack machinery, which is mainly useful for comparison.
+     */
+    public void setFastPath(boolean enabled) {
+        this.fastPath = enabled;
+    }
+
+    /**
+     * @return number of tokens of the last parse that were consumed on the fast path, without ever meeting a
+     * conflicted cell
+     */
+    public int fastPathTokens() {
+        return this.fastPathTokens;
+    }
+
+    /**
+     * @return number of stacks forked at conflicted cells during the last parse, one per production a cell's
+     * stack was forked for; a grammar the parser forks less on parses with fewer copies of its stacks
+     */
+    public int forkedStacks() {
+        return this.forkedStacks;
+    }
+
+    /**
+     * Chooses whether the parse tree gets a node for every rule {@link GrammarBuilder.Transform#INLINING} inlined,
+     * as the grammar as written would have made. Off by default: such a rule derives a single node, which tree
+     * post-processing such as {@link MyParser} abstracts away anyway.
+     */
+    public void setInlinedNodes(boolean enabled) {
+        this.tree.setInlinedNodes(enabled);
+    }
+
+    /**
+     * Bounds the number of live stacks: at every token boundary, the stacks beyond the {@code width} best are
+     * expired, ranked by consumed tokens and then grammar order like a longest-match resolution. Memory and time per
+     * token are then bounded whatever the grammar or input, at the price of completeness: an alternative that would
+     * have won later may be cut, and the parse then fails or, rarely, settles on another derivation (see
+     * {@link #beamPruned()}). Forks within a single token are not limited. {@code width <= 0} (the default)
+     * switches the beam off.
+     *
+     * @param width maximum number of stacks carried to the next token
+     */
+    public void setBeam(int width) {
+        this.beam = Math.max(width, 0);
+    }
+
+    /**
+     * @return whether the beam expired any stack during the last parse, i.e. whether its result may differ from an
+     * unbounded parse
+     */
+    public boolean beamPruned() {
+        return this.beamPrunedStacks > 0;
+    }
+
+    /**
+     * @return number of stacks the beam expired during the last parse
+     */
+    public int beamPrunedStacks() {
+        return this.beamPrunedStacks;
+    }
+
     /**
      * Creates and initializes the parse tree starting from the given non-terminal node.
      * <p>
@@ -210,15 +328,15 @@ public abstract class MsllParser<P extends ParserTree> {
      * a cursor is used to traverse the token buffer, no lookahead, nor look backward waste
      * <p>
      * This function is triggered for each token and is also invoked recursively when descending into nested or leveled grammar rules.
-     * The parsing process involves multiple stacks, represented by the `stackList`, which handles different potential parsing paths.
-     * These stacks are dynamically managed to explore various grammar rules, and are updated throughout the recursive parsing process.
+     * The parsing process involves multiple stacks, one generation of {@link MsllStacks} per token, which handles different
+     * potential parsing paths. These stacks are dynamically managed to explore various grammar rules, and are updated throughout
+     * the recursive parsing process.
      *
      * @param tokens    The buffer of tokens to be parsed.
      * @param cursor    The current position in the token buffer used to look ahead during parsing.
-     * @param stackList A list of active MSLL stacks involved in this parsing call, tracking different parse paths.
      * @param lineIndex An atomic counter used to keep track of the current line index in the source input.
      */
-    private void parseToken(TokenBuffer tokens, int cursor, List<MsllStack> stackList, AtomicInteger lineIndex) {
+    private void parseToken(TokenBuffer tokens, int cursor, AtomicInteger lineIndex) {
         Token token = tokens.get(cursor);
         if (token == null) {//error in lexing
             throw new RuntimeException("something wrong in lexing...");
@@ -227,71 +345,198 @@ public abstract class MsllParser<P extends ParserTree> {
 //            lineIndex.set(cursor);
             return;
         }
+        if (this.tracker != null) {
+            this.tracker.moveTo(cursor);
+        }
+
+        // token boundary: the stacks that survived the previous token become the generation parsing this one
+        this.stacks.advance();
+        if (this.beam > 0) {
+            this.beamPrunedStacks += this.stacks.prune(this.beam);
+        }
+        if (this.stacks.size() == 1) {
+            // the stack is alone: whatever it derived since the last commit is part of the result
+            this.tree.commit(this.stacks.get(0));
+            if (this.fastPath) {
+                parseTokenFast(tokens, cursor, token, lineIndex);
+                return;
+            }
+        }
+        // forks created meanwhile join the next generation, so the current one is not modified while it is walked
+        for (int i = 0, size = this.stacks.generationSize(); i < size; i++) {
+            if (!parseToken(tokens, cursor, token, this.stacks.get(i), lineIndex)) break;
+        }
+    }
+
+    /**
+     * Parses the current token on the stacks a non-terminal was just expanded onto.
+     *
+     * @param forks the stacks, in the order they were forked
+     */
+    private void parseToken(TokenBuffer tokens, int cursor, Token token, List<MsllStack> forks, AtomicInteger lineIndex) {
+        for (int i = 0; i < forks.size(); i++) {
+            if (!parseToken(tokens, cursor, token, forks.get(i), lineIndex)) break;
+        }
+    }
+
+    /**
+     * Parses the current token on one stack.
+     *
+     * @return {@code false} if the stack had already completed the parse, which ends the round
+     */
+    private boolean parseToken(TokenBuffer tokens, int cursor, Token token, MsllStack stack, AtomicInteger lineIndex) {
+        //check predicate
+        checkPredicate(tokens, token, stack);
+        if (token.terminal() == terminals.EOL) {
+            lineIndex.set(cursor);
+            return true;
+        }
+        if (stack.size() == 0) {
+            this.stacks.remove(stack);
+            return false;
+        }
+        Production owner = stack.ownerAt(stack.size() - 1);
+        Symbol<?> symbol = cursor > 0 ? stack.pop(tokens.get(cursor - 1)) : stack.pop();
+        matchNode(stack, symbol, owner, null, tokens, cursor, token, lineIndex);
+        return true;
+    }
 
-        List<MsllStack> all = new ArrayList<>(stackList);
-        for (MsllStack stack : all) {
-            //check predicate
+    /**
+     * Deterministic LL(1) loop for the common case of a single live stack.
+     * <p>
+     * As long as the expanded cell holds exactly one production there is nothing to fork and nothing to compare,
+     * so the loop pops, expands and continues in place: no copy of the stack list, no recursion, no
+     * {@link GrammarAmbiguity} and no checkpoint lookups in {@link MsllStack#pop(Token)} — with one stack alive no
+     * competing stack can ever reach a pending checkpoint. The first node that is not such a non-terminal (a
+     * terminal, a cell that forks, a missing cell) is handed to the generic {@link #matchNode}, which forks, matches
+     * or reports exactly as before; once the forks collapse back to one stack, the next token returns here. A
+     * conflicted cell that LL(k) lookahead or the {@link PredictionCache} narrows to one production stays here.
+     * <p>
+     * The loop is only entered at the start of a token, when the stack is already alone: a stack left alone in the
+     * middle of a token may still meet a checkpoint a sibling passed on this very token, so it stays generic.
+     */
+    private void parseTokenFast(TokenBuffer tokens, int cursor, Token token, AtomicInteger lineIndex) {
+        MsllStack stack = this.stacks.get(0);
+        while (true) {
             checkPredicate(tokens, token, stack);
             if (token.terminal() == terminals.EOL) {
                 lineIndex.set(cursor);
-                continue;
+                return;
             }
             if (stack.size() == 0) {
                 this.stacks.remove(stack);
-                break;
+                return;
             }
-            ParseNode node = cursor > 0 ? stack.pop(tokens.get(cursor - 1)) : stack.pop();
-            List<MsllStack> more;
-            try {
-                if (node instanceof NonTerminalNode) {
-                    more = matchNonTerminalToken(stack, (NonTerminalNode) node, token, tokens.getLine(token.location().line().number()));
-                    parseToken(tokens, cursor, more, lineIndex);
-                } else {
-                    matchTerminalToken(stack, cast(node), token, tokens.getLine(token.location().line().number()));
-                    // Successfully consumed a terminal token: bump the
-                    // longest-match counter used by GrammarAmbiguity to
-                    // resolve competing live stacks.
-                    stack.incrementTokensConsumed();
-                    if (token.terminal() == terminals.END && stack.size() == 0) {
-                        // Stacks marked expired by longest-match resolution
-                        // (GrammarAmbiguity) are not real second completions –
-                        // they are losing alternatives kept alive only because
-                        // the parser does not eagerly skip expired stacks.
-                        // Ignore them in the end-of-input ambiguity check.
-                        if (!stack.flag().expired()) {
-                            if(this.status == PARSE_STATUS.DONE){
-                                this.status = PARSE_STATUS.AMBIGUOUS;
-                            }
-                            if(this.status == PARSE_STATUS.RUNNING){
-                               this.status = PARSE_STATUS.DONE;
-                               lineIndex.set(cursor);
-                           }
-                        }
-                    }
+            Production owner = stack.ownerAt(stack.size() - 1);
+            Symbol<?> symbol = stack.pop();
+            List<MsllStack> forks = null;
+            if (!symbol.isTerminal()) {
+                Grammar grammar = grammarOf(symbol);
+                int slot = this.predictTable.slot(grammar, token.terminal());
+                boolean epsilonAlongside = isEpsilonAlongside(slot, grammar, token.terminal());
+                List<Production> cell = slot >= 0
+                        ? this.predictTable.cell(slot, epsilonAlongside)
+                        : this.predictTable.cell(token.terminal(), grammar, epsilonAlongside);
+                if (cell != null && cell.size() == 1) {
+                    stack.expand(cell.get(0), cell.get(0).explain(), terminals.EPSILON);
+                    continue;
                 }
-            } catch (GrammarSyntaxException e) {
-                if (!this.stacks.isEmpty()) {
-                    this.stacks.remove(stack);
-                    stack.expire();
+                if (cell != null) {
+                    // conflicted: LL(k) lookahead or the prediction cache may still decide it without a fork
+                    forks = matchNonTerminalToken(stack, symbol, token, tokens, cursor);
+                    if (forks != null && forks.size() == 1 && forks.get(0) == stack) continue;
                 }
-                if (this.stacks.size() == 0) {
-                    throw new GrammarSyntaxException(e.getMessage());
+            } else if (symbol.type() == token.terminal()) {
+                this.fastPathTokens++;
+            }
+            matchNode(stack, symbol, owner, forks, tokens, cursor, token, lineIndex);
+            return;
+        }
+    }
+
+    /**
+     * Processes one item popped from {@code stack} against the current token: expands a non-terminal (forking at
+     * conflicted cells and parsing the token on the resulting stacks) or matches a terminal. A stack that fails is
+     * expired; the error only propagates once no stack is left.
+     *
+     * @param symbol the symbol of the popped item
+     * @param owner  the production the item belonged to
+     * @param forks  the stacks a non-terminal was already expanded onto, or {@code null} to expand it here
+     */
+    private void matchNode(MsllStack stack, Symbol<?> symbol, Production owner, List<MsllStack> forks,
+                           TokenBuffer tokens, int cursor, Token token, AtomicInteger lineIndex) {
+        List<MsllStack> more;
+        try {
+            if (!symbol.isTerminal()) {
+                more = forks != null ? forks : matchNonTerminalToken(stack, symbol, token, tokens, cursor);
+                if (more == null) {
+                    fail(stack, tokens);
+                    return;
                 }
-            }finally {
-                if(this.status==PARSE_STATUS.AMBIGUOUS){
-                    throw new GrammarSyntaxException("the parsing is ambiguous");
+                parseToken(tokens, cursor, token, more, lineIndex);
+            } else if (!matchTerminalToken(stack, symbol, owner, token)) {
+                fail(stack, tokens);
+            } else {
+                // Successfully consumed a terminal token: bump the
+                // longest-match counter used by GrammarAmbiguity to
+                // resolve competing live stacks.
+                stack.incrementTokensConsumed();
+                if (token.terminal() == terminals.END && stack.size() == 0) {
+                    // Stacks marked expired by longest-match resolution
+                    // (GrammarAmbiguity) are not real second completions –
+                    // they are losing alternatives kept alive until the
+                    // token boundary drops them (MsllStacks.advance).
+                    // Ignore them in the end-of-input ambiguity check.
+                    if (!stack.expired()) {
+                        if(this.status == PARSE_STATUS.DONE){
+                            this.status = PARSE_STATUS.AMBIGUOUS;
+                        }
+                        if(this.status == PARSE_STATUS.RUNNING){
+                           this.status = PARSE_STATUS.DONE;
+                           lineIndex.set(cursor);
+                           this.tree.commit(stack);
+                       }
+                    }
                 }
             }
+        } catch (GrammarSyntaxException e) {
+            if (!this.stacks.isEmpty()) {
+                this.stacks.remove(stack);
+                stack.expire();
+            }
+            if (this.stacks.size() == 0) {
+                throw new GrammarSyntaxException(e.getMessage());
+            }
+        }finally {
+            if(this.status==PARSE_STATUS.AMBIGUOUS){
+                throw new GrammarSyntaxException("the parsing is ambiguous");
+            }
+        }
+    }
+
+    /**
+     * Drops a stack that did not match the token. The other stacks carry on; once none is left, the recorded
+     * {@link #failure} is rendered and thrown as the syntax error of the parse.
+     */
+    private void fail(MsllStack stack, TokenBuffer tokens) {
+        if (!this.stacks.isEmpty()) {
+            this.stacks.remove(stack);
+            stack.expire();
+        }
+        if (this.stacks.size() == 0) {
+            Tool.grammarError(stack, this.failure.render(tokens, this.predictTable));
         }
     }
 
     private void checkPredicate(TokenBuffer tokens, Token token, MsllStack stack) {
         if (stack.size() > 0) {
-            ParseNode lookHead = stack.peek();
-            if (lookHead.symbol().type().name().contains(Constants.PREDICATE_ABLE)) {
-                new GrammarPredicate(lookHead.symbol().name().replaceAll("\\{|\\}", "")).test(token, tokens);
+            GrammarPredicate predicate = stack.peek().predicate();
+            if (predicate != null) {
+                predicate.test(token, tokens);
+                // its outcome may depend on tokens a cached prediction is not keyed by
+                stack.poisonDecisions();
+                // a predicate never becomes a node, so there is nothing to log
                 stack.pop();
-                lookHead.parent().removeNode(lookHead);
             }
         }
     }
@@ -305,9 +550,10 @@ public abstract class MsllParser<P extends ParserTree> {
      * 1. If the symbol on top of the stack is a non-terminal, find the corresponding grammar rule for the non-terminal
      * using the predict table. The FIRST set of the non-terminal is used to determine potential matching productions.
      * <p>
-     * 2. If no matching productions are found, a grammar error is thrown, originating from the `predictTable.match()` method.
+     * 2. If no matching productions are found, the failure is recorded in {@link #failure} and {@code null} is returned.
      * <p>
-     * 3. If one or more productions match the input token, create a new node corresponding to the non-terminal.
+     * 3. If one or more productions match the input token, log the expansion on every stack that takes it; the node
+     * itself is only created when a stack commits.
      * <p>
      * 4. If multiple productions match, duplicate the current parsing stack for each production, allowing the parser
      * to explore multiple paths in parallel.
@@ -316,13 +562,16 @@ public abstract class MsllParser<P extends ParserTree> {
      * for the next token match.
      *
      * @param stack The current parsing stack being processed.
-     * @param node  The non-terminal node at the top of the stack.
+     * @param symbol The non-terminal popped from the top of the stack.
      * @param token The token from the input stream currently being matched.
-     * @param line  The current line in the input source, used for error tracking and reporting.
-     * @return A list of new or updated parsing stacks resulting from the matching process.
+     * @param tokens The token buffer, peeked at conflicted cells when the predict table has LL(k) lookahead.
+     * @param cursor The position of {@code token} in the buffer.
+     * @return A list of new or updated parsing stacks resulting from the matching process, {@code null} if the table
+     * has no cell for the token.
      */
-    private List<MsllStack> matchNonTerminalToken(MsllStack stack, final NonTerminalNode node, Token token, String line) {
-        Grammar grammar = grammars.get(node.name());
+    private List<MsllStack> matchNonTerminalToken(MsllStack stack, Symbol<?> symbol, Token token,
+                                                  TokenBuffer tokens, int cursor) {
+        Grammar grammar = grammarOf(symbol);
         // For grammars listed in epsilonAlongsideGrammars, epsilon productions are kept
         // alongside non-epsilon ones so the parser can explore both paths in parallel via
         // GrammarAmbiguity.  This resolves targeted FIRST/FOLLOW conflicts (e.g. '<' as
@@ -335,31 +584,69 @@ public abstract class MsllParser<P extends ParserTree> {
         // keep epsilon productions alongside non-epsilon ones to resolve targeted FIRST/FOLLOW
         // conflicts without global side-effects.  Epsilon is sorted first so the non-epsilon
         // explain() is written last in the loop below (it "wins" as the node's explain).
-        // Two sources feed this flag:
-        //   (1) epsilonAlongsideGrammars: a hand-curated whitelist set up by
-        //       subclasses (e.g. MyParser) to override specific conflict cells;
-        //   (2) predictTable.hasEpsilonAlongside(...): every FIRST/FOLLOW cell
-        //       the table itself detected as conflicted at build time.
-        // Either source is enough to keep an epsilon production alongside the
-        // non-empty ones so the multi-stack runtime can explore both paths.
-        java.util.Set<String> epsilonTerminals = epsilonAlongsideGrammars.get(grammar.name());
-        boolean epsilonAlongside = (epsilonTerminals != null
-                && epsilonTerminals.contains(token.terminal().name()))
-                || this.predictTable.hasEpsilonAlongside(grammar.name(), token.terminal().name());
+        int slot = this.predictTable.slot(grammar, token.terminal());
+        boolean epsilonAlongside = isEpsilonAlongside(slot, grammar, token.terminal());
         // Pre-filtered per-cell list (nulls/ε handled, ε-first pre-sorted) — see
-        // PredictTable.matchFiltered. The list is cached and unmodifiable.
-        List<Production> productions = this.predictTable.matchFiltered(token, grammar, line, epsilonAlongside);
+        // PredictTable.cell. The list is cached and unmodifiable.
+        List<Production> productions = slot >= 0 ? this.predictTable.cell(slot, epsilonAlongside) : null;
+        if (productions == null) {
+            productions = this.predictTable.cell(token.terminal(), grammar, epsilonAlongside);
+        }
+        if (productions == null) {
+            this.failure.noProduction(token, grammar);
+            return null;
+        }
+        List<Production> candidates = productions;
+        // the explain the node gets: that of a cached outcome, or the one the expansion below gives
+        String explain = null;
+        // A cell already decided by an earlier parse for this token sequence expands its winner directly.
+        if (productions.size() > 1 && this.tracker != null) {
+            PredictionCache.Prediction prediction = this.tracker.lookup(productions, cursor);
+            if (prediction != null && productions.contains(prediction.winner())) {
+                productions = java.util.Collections.singletonList(prediction.winner());
+                explain = prediction.explain();
+            }
+        }
+        // With LL(k) lookahead enabled, drop the productions the next k tokens already rule out
+        // before any stack is cloned for them.
+        boolean cacheable = true;
+        int window = 0;
+        if (productions.size() > 1 && this.predictTable.lookahead() > 1) {
+            Terminal[] lookahead = new Terminal[this.predictTable.lookahead()];
+            int size = peek(tokens, cursor, lookahead);
+            productions = this.predictTable.viable(productions, stack, lookahead, size);
+            if (productions != candidates && this.tracker != null) {
+                // A production rejected only because of the symbols below it makes this and every enclosing
+                // outcome context-dependent; one rejected by its own lookahead set fails in any context.
+                for (Production production : candidates) {
+                    if (!productions.contains(production)
+                            && !this.predictTable.rejectedByItself(production, lookahead, size)) {
+                        cacheable = false;
+                        stack.poisonDecisions();
+                        break;
+                    }
+                }
+                window = size;
+            }
+        }
         List<MsllStack> all = new ArrayList<>();
         all.add(stack);
         if (productions.size() == 0) {
+            stack.expand(null, null, terminals.EPSILON);
             return all;
         }
         GrammarAmbiguity grammarAmbiguity = null;
         if (productions.size() > 1) {
             grammarAmbiguity = new GrammarAmbiguity(stack);
+            this.forkedStacks += productions.size();
+            PredictionTracker.Decision decision = this.tracker == null || !cacheable
+                    ? null : this.tracker.open(candidates, productions, stack.size(), window);
             for (int j = 0; j < productions.size(); j++) {
                 // Label is a write-only debug field — never pay Production.toString() here.
                 MsllStack matched = MsllStack.apply(stack, grammarAmbiguity, grammar.name());
+                if (decision != null) {
+                    matched.join(decision, j);
+                }
                 this.stacks.add(matched);
                 all.add(matched);
             }
@@ -368,23 +655,10 @@ public abstract class MsllParser<P extends ParserTree> {
             stack.free();
 //            parseTree.addK(productions.size());
         }
+        // forks used to share one node and each wrote its explain in turn, so the node kept the last one
+        if (explain == null) explain = productions.get(productions.size() - 1).explain();
         for (int j = 0; j < productions.size(); j++) {
-            Production production = productions.get(j);
-            node.setExplain(production.explain());
-            MsllStack matched = all.get(j);
-            List<Symbol> symbols = production.symbols();
-            // 反向遍历该non terminal node type命中production的所有symbol
-            // 这些symbol创建SyntaxNode加入到该non terminal node下面
-            // 并且推入栈，替代node的位置，开启下一层次的匹配
-            for (int i = symbols.size() - 1; i >= 0; i--) {
-                Symbol symbol = symbols.get(i);
-                if (symbol.type() == terminals.EPSILON) {
-                    continue;
-                }
-                ParseNode newNode = symbol.type().parse(symbol);
-                node.addNode(newNode, 0);
-                matched.push(newNode);
-            }
+            all.get(j).expand(productions.get(j), explain, terminals.EPSILON);
         }
         if (grammarAmbiguity != null) {
             grammarAmbiguity.getReady();
@@ -392,6 +666,50 @@ public abstract class MsllParser<P extends ParserTree> {
         return all;
     }
 
+    /**
+     * Whether the cell of {@code terminal} in {@code grammar} keeps its &epsilon; productions alongside the
+     * non-empty ones. Two sources feed this flag:
+     * (1) {@link #epsilonAlongsideGrammars}: a hand-curated whitelist set up by subclasses (e.g. MyParser) to
+     * override specific conflict cells;
+     * (2) {@link PredictTable#hasEpsilonAlongside}: every FIRST/FOLLOW cell the table itself detected as
+     * conflicted at build time.
+     * Both are bitsets over the predict-table slots; a cell without a slot falls back to the name-keyed sets.
+     */
+    private boolean isEpsilonAlongside(int slot, Grammar grammar, Terminal terminal) {
+        if (slot >= 0) {
+            return this.epsilonAlongsideSlots.get(slot) || this.predictTable.hasEpsilonAlongside(slot);
+        }
+        java.util.Set<String> epsilonTerminals = epsilonAlongsideGrammars.get(grammar.name());
+        return (epsilonTerminals != null && epsilonTerminals.contains(terminal.name()))
+                || this.predictTable.hasEpsilonAlongside(grammar.name(), terminal.name());
+    }
+
+    /**
+     * The grammar a non-terminal expands by: the one its symbol was bound to when the predict table was built, or,
+     * for a symbol bound by another language's table, the grammar of the same name in this one.
+     */
+    private Grammar grammarOf(Symbol<?> symbol) {
+        Grammar grammar = symbol.grammar();
+        return grammar != null && grammar.grammars() == this.grammars ? grammar : grammars.get(symbol.name());
+    }
+
+    /**
+     * Fills {@code lookahead} with the terminals of the next significant tokens starting at {@code cursor},
+     * skipping the tokens the parse loop skips as well (hidden channels and end-of-line markers).
+     *
+     * @return the number of terminals collected
+     */
+    private int peek(TokenBuffer tokens, int cursor, Terminal[] lookahead) {
+        int size = 0;
+        for (int i = cursor; i < tokens.size() && size < lookahead.length; i++) {
+            Token next = tokens.get(i);
+            if (next == null) break;
+            if (!next.channel().isEmpty() || next.terminal() == terminals.EOL) continue;
+            lookahead[size++] = next.terminal();
+        }
+        return size;
+    }
+
     /**
      * Handles the parsing of a terminal symbol at the top of the stack.
      * <p>
@@ -399,26 +717,23 @@ public abstract class MsllParser<P extends ParserTree> {
      * For example, if the terminal symbol on the stack is "IF", then the corresponding token from the input should represent
      * the keyword "if".
      * <p>
-     * If the token matches the terminal, the parser proceeds. If the token does not match, a grammar error is raised.
+     * If the token matches the terminal, the parser proceeds. If the token does not match, the mismatch is recorded
+     * in {@link #failure} and {@code false} is returned.
      *
      * @param stack The current parsing stack being processed.
-     * @param node  The terminal node at the top of the stack, representing the expected token.
+     * @param symbol The terminal popped from the top of the stack, representing the expected token.
+     * @param owner The production the terminal belongs to, named in the error message.
      * @param token The token from the input stream currently being matched against the terminal.
-     * @param line  The current line in the input source, used for error reporting and tracking.
-     */
-    private void matchTerminalToken(MsllStack stack, TerminalNode node, Token token, String line) {
-        if (token.terminal() == node.terminal()) {
-            // 如果terminal匹配正确，将实际token放入该terminal node。一般对变量型node有价值，比如ID
-            node.setToken(token);
-        } else {
-            String keywordHint = (!token.terminal().isRegex() && node.terminal().name().equals("ID"))
-                    ? System.lineSeparator() + "Hint: '" + token.lexeme() + "' is a reserved keyword and cannot be used as an identifier."
-                    : "";
-            Tool.grammarError(stack,
-                    "unexpected token: " + token.lexeme() + ", expected token in " + (node.parent() == null ? node.name() : node.parent().name()) + " is "
-                            + node.terminal().name() + ", at line:" + token.location().line().number() + ", position: " + token.location().lineStart() + " - "
-                            + token.location().lineEnd() + System.lineSeparator() + line + keywordHint);
+     * @return whether the token matched
+     */
+    private boolean matchTerminalToken(MsllStack stack, Symbol<?> symbol, Production owner, Token token) {
+        if (token.terminal() == symbol.type()) {
+            // 如果terminal匹配正确，记录实际token，提交时放入该terminal node。一般对变量型node有价值，比如ID
+            stack.match(token);
+            return true;
         }
+        this.failure.unexpectedToken(token, symbol, owner);
+        return false;
     }
 
     /**
@@ -436,17 +751,46 @@ public abstract class MsllParser<P extends ParserTree> {
      * the tree easier to work with and interpret.
      */
     protected P done() {
-        this.stacks.removeIf(s -> s.size() == 0);
+        this.stacks.removeCompleted();
         if (!this.stacks.isEmpty()) {
             Tool.grammarError("the parser is not finished with correct input");
         }
         parseTree.polish();
-        // Reset the static MsllStack pool after every completed parse to prevent
-        // unbounded accumulation across successive parse() calls (O(n) scan fix).
-        MsllStack.reset();
         return parseTree;
     }
 
+    /**
+     * Prepares the parser for a new input, so one parser can serve many small inputs one after the other. Everything
+     * that does not depend on the input is kept: the lexer and its buffers, the stack arena, the configuration
+     * (epsilon-alongside grammars, beam, fast path). Statistics and syntax errors start over.
+     * <p>
+     * The tree returned by an earlier {@link #parse()} belongs to the caller: the next parse builds a new tree from a
+     * new start node and never touches the nodes or tokens of an earlier one. Like {@link #parse()}, reset is not
+     * thread-safe; a parser serves one thread at a time.
+     *
+     * @param reader the new input
+     */
+    public void reset(Reader reader) {
+        this.lexer.reset(reader);
+        this.stacks.reset();
+        NonTerminalNode start = new NonTerminalNode(this.startNode.symbol());
+        this.startNode = start;
+        this.tree.reset(start);
+        MsllStack stack = MsllStack.apply(this.arena);
+        this.tree.begin(stack, start);
+        this.parseTree = createParseTree(start);
+        this.stacks.add(stack);
+        this.status = PARSE_STATUS.NOT_STARTED;
+        this.syntaxErrors = java.util.Collections.emptyList();
+    }
+
+    /**
+     * {@link #reset(Reader)} with an in-memory input.
+     */
+    public void reset(CharSequence source) {
+        reset(new StringReader(source.toString()));
+    }
+
     /**
      * Initiates the parsing process by scanning the input source using the lexer asynchronously, while parsing tokens in parallel.
      * <p>
@@ -462,7 +806,13 @@ public abstract class MsllParser<P extends ParserTree> {
      */
     public P parse() {
         this.status = PARSE_STATUS.RUNNING;
+        this.fastPathTokens = 0;
+        this.forkedStacks = 0;
+        this.beamPrunedStacks = 0;
+        this.epsilonAlongsideSlots = this.predictTable.slots(this.epsilonAlongsideGrammars);
         TokenBuffer tokens = lexer().scan();
+        PredictionCache cache = this.predictTable.predictionCache();
+        this.tracker = cache == null ? null : new PredictionTracker(cache, tokens, terminals.EOL);
         List<GrammarSyntaxException> collectedErrors = new ArrayList<>();
         // The loop runs inline on the caller's thread: the old
         // CompletableFuture.runAsync + future.get() wrapper added a ForkJoin
@@ -478,8 +828,12 @@ public abstract class MsllParser<P extends ParserTree> {
             int cursor = 0;
             while (cursor == 0 || cursor < tokens.size() || !endsWithEnd) {
                 try {
-                    this.parseToken(tokens, cursor++, this.stacks, lineIndex);
+                    this.parseToken(tokens, cursor++, lineIndex);
                 } catch (GrammarSyntaxException e) {
+                    if (this.stacks.isEmpty()) {
+                        // the attempt failed as a whole: nothing it committed belongs to the result
+                        this.tree.discard();
+                    }
                     // Panic-mode recovery: collect this error and try to resume
                     // at the next statement boundary if the subclass supports it.
                     String recoverySymbol = syntaxErrorRecoverySymbol();
@@ -510,16 +864,9 @@ public abstract class MsllParser<P extends ParserTree> {
             if (!collectedErrors.isEmpty()) {
                 throw new AggregateGrammarSyntaxException(collectedErrors);
             }
-        } catch (AggregateGrammarSyntaxException agg) {
-            // Always reset the static MsllStack pool so that a failed parse does not
-            // leave stale entries that corrupt subsequent parse() calls.
-            MsllStack.reset();
-            throw agg;
         } catch (GrammarSyntaxException gse) {
-            MsllStack.reset();
             throw gse;
         } catch (Exception e) {
-            MsllStack.reset();
             throw new GrammarSyntaxException("parsing error: " + e.getMessage());
         }
         this.syntaxErrors = java.util.Collections.emptyList();
@@ -587,14 +934,15 @@ public abstract class MsllParser<P extends ParserTree> {
         Grammar grammar = grammars.get(symbolName);
         if (grammar == null) return false;
         // Clear all failed stacks
-        this.stacks.removeIf(s -> true);
+        this.stacks.clear();
         // Create a fresh recovery node and wire it into the existing tree root
-        NonTerminalNode recoveryNode = new NonTerminalNode(new Symbol<>(grammar.nonTerminal()));
+        Symbol<NonTerminal> recoverySymbol = new Symbol<>(grammar.nonTerminal());
+        recoverySymbol.bind(grammar);
+        NonTerminalNode recoveryNode = new NonTerminalNode(recoverySymbol);
         startNode.addNode(recoveryNode);
         // Push onto a brand-new stack
-        MsllStack freshStack = MsllStack.apply();
-        freshStack.push(new EndNode(terminals));
-        freshStack.push(recoveryNode);
+        MsllStack freshStack = MsllStack.apply(this.arena);
+        this.tree.begin(freshStack, recoveryNode);
         this.stacks.add(freshStack);
         return true;
     }
@@ -1,96 +1,86 @@
 package org.twelve.msll.parser;
 
-import lombok.Setter;
+import org.twelve.msll.grammar.Production;
+import org.twelve.msll.grammarsymbol.Terminal;
 import org.twelve.msll.lexer.Token;
 import org.twelve.msll.parsetree.Flag;
-import org.twelve.msll.parsetree.ParseNode;
+import org.twelve.msll.parsetree.Liveness;
 import org.twelve.msll.util.GrammarAmbiguity;
 
-import java.util.*;
-import java.util.concurrent.ConcurrentLinkedDeque;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Arrays;
+import java.util.EmptyStackException;
 
 /**
  * This class represents a stack used in the Multi-Stack LL (MSLL) parsing approach.
  * <p>
- * The stack holds `ParseNode` objects, and each stack instance maintains a `StackFlag` to indicate whether the
- * stack is expired (due to mismatches during multi-stack parsing) or still active. The stack flag also attaches
- * to related nodes in the parse tree, allowing for dynamic removal of expired nodes when the stack is expired.
+ * The stack holds lightweight items instead of parse nodes: each item is a grammar {@link Symbol} together with the
+ * {@link Production} it was pushed for ({@code null} for the items a parse starts with). What the stack does with
+ * them is recorded in its {@link Derivation} log, and parse nodes are only materialized from that log once the
+ * stack commits — so the thousands of forks that die on a conflicted input never allocate a node.
  * <p>
- * Expired stacks are freed and their associated parse nodes are removed from the parse tree. This mechanism supports
- * the MSLL parser's ability to manage multiple parsing paths and handle parsing errors effectively.
+ * Each stack instance holds a flag id in the parse's {@link Liveness} table to indicate whether the stack is
+ * expired (due to mismatches during multi-stack parsing) or still active. Forks get a child id of their parent's,
+ * so a stack counts as expired once all of its forks have failed.
  * <p>
  * huizi 2024
  */
 public class MsllStack {
 
     /**
-     * Backing storage. Historically this class extended {@link java.util.Stack}
-     * (hence {@link java.util.Vector}), which made every push/pop/peek in the
-     * parser's innermost loop take a monitor lock. Stacks are confined to one
-     * parse invocation, so an unsynchronized ArrayList is safe and much faster.
+     * Backing storage: the symbols of the items, bottom first. Historically this class extended
+     * {@link java.util.Stack} of parse nodes (hence {@link java.util.Vector}), which made every push/pop/peek in the
+     * parser's innermost loop take a monitor lock. Stacks are confined to one parse invocation, so plain arrays are
+     * safe, and a fork copies them with one {@link System#arraycopy}.
      */
-    private final ArrayList<ParseNode> nodes = new ArrayList<>(32);
+    private Symbol<?>[] symbols = new Symbol<?>[32];
     /**
-     * Pool of freed (unoccupied) stacks available for reuse.
-     * Using an ArrayDeque gives O(1) offer/poll vs the previous O(N) linear scan
-     * over the old `all` list.  The pool is cleared by reset() after each parse.
+     * The production each item was pushed for, parallel to {@link #symbols}.
      */
-    // ConcurrentLinkedDeque is fully thread-safe for poll()/offer()/clear(), which
-    // prevents ConcurrentModificationException when two parse() calls run simultaneously
-    // on different threads (e.g. editor typecheck racing with an LLM tool call).
-    private static final ConcurrentLinkedDeque<MsllStack> freePool = new ConcurrentLinkedDeque<>();
-
-    /**
-     * Atomic counter to assign a unique index to each new stack
-     */
-    private static AtomicInteger counter = new AtomicInteger(0);
+    private Production[] owners = new Production[32];
+    private int size = 0;
     /**
-     * Unique index identifying this particular stack
+     * The arena of the parser this stack belongs to; the stack returns there when freed, and its forks are taken
+     * from there.
      */
-    private final int id;
+    private final StackArena arena;
     private final String grammarName;
     /**
      * Indicates if the stack is currently occupied (in use)
      */
     private boolean occupied = true;
     /**
-     * The flag indicating the status (active/expired) of this stack and its related nodes
+     * The liveness table of the parse this stack belongs to, shared by all its forks.
+     */
+    private Liveness liveness;
+    /**
+     * The id of the flag indicating the status (active/expired) of this stack and its related nodes
+     */
+    private int flag;
+    /**
+     * Handle on {@link #flag} for the nodes this stack commits, created on first use.
      */
-    private Flag flag;
+    private Flag handle;
 
-    private Map<ParseNode, GrammarAmbiguity> batches = new HashMap<>();
     /**
-     * Flattened ancestor ambiguities. Kept as a flat map (not a chain) because
-     * {@link #pop(Token)} looks one up on every popped node and needs O(1) lookup —
-     * the lookups vastly outnumber the forks.
-     *
-     * <p>The map is <em>immutable</em> once published to a stack: a stack's
-     * {@link #batches} is filled only at construction (via {@link #addBatch}) and
-     * never mutated afterwards, and {@code parentBatches} is only ever reassigned,
-     * never {@code put} into. Historically every fork rebuilt this map by merging
-     * the parent's {@code batches} + {@code parentBatches} — an O(ancestors) copy
-     * that compounded to O(n²) (a single 4 KB parse copied ~8M entries over ~60k
-     * forks; the merge was ~40 % of parse wall-clock). Now a fork {@link #share(MsllStack)}s
-     * the parent's already-flattened map by reference whenever the parent itself
-     * added no ambiguity (the common case), and only allocates a new map at the
-     * comparatively rare forks where {@code parent.batches} is non-empty. {@link #free()}
-     * hands the stack a fresh {@code batches} map rather than clearing the old one,
-     * so references shared into descendants stay valid.
-     */
-    private Map<ParseNode, GrammarAmbiguity> parentBatches = Collections.emptyMap();
-
-    /** Parent's flattened ancestor map extended with the parent's own batches (shared when possible). */
-    private static Map<ParseNode, GrammarAmbiguity> share(MsllStack parent) {
-        if (parent.batches.isEmpty()) {
-            return parent.parentBatches;  // O(1) structural share — parent added nothing
-        }
-        Map<ParseNode, GrammarAmbiguity> merged =
-                new HashMap<>(parent.parentBatches.size() + parent.batches.size(), 1f);
-        merged.putAll(parent.parentBatches);
-        merged.putAll(parent.batches);
-        return merged;
-    }
+     * Pending {@link GrammarAmbiguity} checkpoints, newest first. A checkpoint is passed when the item at its
+     * height is popped; as long as it is pending the stack never shrank below that height, so the item there is
+     * still the one that sat below the forked non-terminal. Heights therefore never increase along the chain, and
+     * passing or abandoning checkpoints only ever drops a prefix of it.
+     * <p>
+     * The chain is immutable and shared with forks: a fork costs one link instead of the map merges the old
+     * node-keyed lookups needed.
+     */
+    private Checkpoint checkpoints = null;
+
+    /**
+     * Height of the newest pending checkpoint, 0 if none; pops above it skip the checkpoint logic entirely.
+     */
+    private int checkHeight = 0;
+
+    /**
+     * What this stack did since it was last committed, newest first; shared with forks.
+     */
+    private Derivation derivation = null;
 
     /**
      * Number of input tokens this stack has consumed. Used by the longest-match
@@ -103,58 +93,99 @@ public class MsllStack {
 
     public int tokensConsumed() { return tokensConsumed; }
 
+    /**
+     * Open prediction decisions this stack descends from (see {@link PredictionTracker}); {@code null} when the
+     * parser runs without a {@link PredictionCache} or the stack never took part in a fork.
+     */
+    private PredictionTracker.Membership memberships = null;
+
+    /**
+     * Popping below this size leaves the production of at least one open decision (0 when none is open).
+     */
+    private int escapeHeight = 0;
+
+    /**
+     * Stamp of the stack's entry in {@link MsllStacks}, -1 while it is not listed.
+     */
+    int entry = -1;
+
     public void incrementTokensConsumed() { this.tokensConsumed++; }
 
     /**
      * Applies and returns an available stack, optionally copying a parent stack if provided.
      * <p>
-     * This method either reuses an available (unoccupied) stack or creates a new one if none are available.
-     * If a parent stack is provided, the current stack is populated with the parent stack's nodes and inherits
-     * the parent's `StackFlag`.
+     * This method either reuses an available (unoccupied) stack of the parent's arena or creates a new one if none
+     * are available; a stack without a parent gets an arena of its own. If a parent stack is provided, the current stack is populated with the parent stack's items and derivation
+     * and gets a flag id forked from the parent's.
      *
      * @param parent The parent stack to duplicate (can be null).
      * @return The applied `MsllStack`.
      */
     public static MsllStack apply(MsllStack parent, GrammarAmbiguity grammarAmbiguity, String grammarName) {
-        MsllStack s = freePool.poll();  // O(1) reuse
-        if (s != null) {
-            s.addBatch(grammarAmbiguity);
-        } else {
-            s = new MsllStack(grammarAmbiguity, grammarName);
+        return apply(parent == null ? new StackArena() : parent.arena, parent, grammarAmbiguity, grammarName);
+    }
+
+    private static MsllStack apply(StackArena arena, MsllStack parent, GrammarAmbiguity grammarAmbiguity, String grammarName) {
+        MsllStack s = arena.poll();
+        if (s == null) {
+            s = new MsllStack(arena, grammarName);
         }
         s.occupied = true;
+        s.handle = null;
 
         if (parent != null) {
-            s.flag = new Flag(parent.flag);
-            // Direct element copy (no setFlag): forked nodes keep their original flags,
-            // matching the historical Vector.addAll behaviour.
-            s.nodes.addAll(parent.nodes);
-            // Share the parent's flattened ancestor map by reference when the parent
-            // added no ambiguity of its own; only copy at genuine ambiguity forks.
-            s.parentBatches = share(parent);
+            s.liveness = parent.liveness;
+            s.flag = parent.liveness.fork(parent.flag);
+            s.copy(parent);
+            s.checkpoints = parent.checkpoints;
+            s.derivation = parent.derivation;
             // Forked stack inherits the parent's consumed-token count so the
             // longest-match resolver compares both stacks fairly.
             s.tokensConsumed = parent.tokensConsumed;
+            s.memberships = PredictionTracker.Membership.inherit(parent.memberships);
+            s.escapeHeight = PredictionTracker.Membership.height(s.memberships);
         } else {
-            s.flag = new Flag(null);
-            s.parentBatches = Collections.emptyMap();
+            s.liveness = new Liveness();
+            s.flag = s.liveness.fork(-1);
+            s.checkpoints = null;
+            s.derivation = null;
             s.tokensConsumed = 0;
         }
+        if (grammarAmbiguity != null) {
+            s.checkpoints = new Checkpoint(grammarAmbiguity, s.checkpoints);
+        }
+        s.checkHeight = s.checkpoints == null ? 0 : s.checkpoints.ambiguity.height();
         return s;
     }
 
-    private void addBatch(GrammarAmbiguity grammarAmbiguity) {
-        if (grammarAmbiguity == null) return;
-        this.batches.put(grammarAmbiguity.checkNode(), grammarAmbiguity);
+    private void copy(MsllStack parent) {
+        if (this.symbols.length < parent.size) {
+            this.symbols = new Symbol<?>[parent.symbols.length];
+            this.owners = new Production[parent.owners.length];
+        }
+        System.arraycopy(parent.symbols, 0, this.symbols, 0, parent.size);
+        System.arraycopy(parent.owners, 0, this.owners, 0, parent.size);
+        this.size = parent.size;
+    }
+
+    /**
+     * Enters this (freshly forked) stack into alternative {@code alt} of a prediction decision.
+     */
+    void join(PredictionTracker.Decision decision, int alt) {
+        this.memberships = PredictionTracker.Membership.join(decision, alt, this.memberships);
+        this.escapeHeight = PredictionTracker.Membership.height(this.memberships);
     }
 
     /**
-     * Private constructor that assigns a unique index to the new stack.
+     * Marks every decision this stack descends from as not cacheable.
      */
-    private MsllStack(GrammarAmbiguity grammarAmbiguity, String grammarName) {
-        this.id = counter.incrementAndGet();
+    void poisonDecisions() {
+        PredictionTracker.Membership.poison(this.memberships);
+    }
+
+    private MsllStack(StackArena arena, String grammarName) {
+        this.arena = arena;
         this.grammarName = grammarName;
-        this.addBatch(grammarAmbiguity);
     }
 
 
@@ -163,16 +194,14 @@ public class MsllStack {
     }
 
     /**
-     * Resets the stack system by draining the free pool.
-     * Called after each completed parse to prevent stale stacks from leaking
-     * across parse invocations.
+     * Applies a stack a parse starts with from the parser's {@code arena}.
      */
-    public static void reset() {
-        freePool.clear();
+    static MsllStack apply(StackArena arena) {
+        return apply(arena, null, null, "");
     }
 
     /**
-     * Frees the stack by clearing its contents and returning it to the free pool for reuse.
+     * Frees the stack by clearing its contents and returning it to its arena for reuse.
      * The {@code occupied} guard prevents a double-add when expire() or free() is called more
      * than once on the same stack instance (a scenario that can arise from the panic-mode
      * catch block in MsllParser.parseToken).
@@ -180,35 +209,83 @@ public class MsllStack {
     public void free() {
         if (!this.occupied) return;  // guard: already freed, do not re-add to pool
         this.occupied = false;
-        this.nodes.clear();
-        // Hand the stack a FRESH batches map instead of clearing in place: a descendant
-        // fork may still reference this exact map (share() hands it out by reference),
-        // and clearing it would corrupt that descendant's ancestor lookups. The old map
-        // is now immutable and is GC'd once no live stack references it.
-        this.batches = new HashMap<>();
-        this.parentBatches = Collections.emptyMap();
+        this.size = 0;
+        PredictionTracker.Membership.leave(this.memberships, false);
+        this.memberships = null;
+        this.escapeHeight = 0;
+        // chains are shared with forks and never mutated, dropping the references is enough
+        this.checkpoints = null;
+        this.checkHeight = 0;
+        this.derivation = null;
         this.tokensConsumed = 0;
-        freePool.offer(this);
+        this.arena.offer(this);
     }
 
     // ── Stack surface (previously inherited from java.util.Stack) ───────────
 
-    public ParseNode pop() {
-        if (nodes.isEmpty()) throw new EmptyStackException();
-        return nodes.remove(nodes.size() - 1);
+    /**
+     * Pops the top item without passing checkpoints: a checkpoint whose item is popped this way is dropped.
+     *
+     * @return the symbol of the popped item
+     */
+    public Symbol<?> pop() {
+        if (size == 0) throw new EmptyStackException();
+        Symbol<?> popped = symbols[--size];
+        if (size < escapeHeight) {
+            escapeHeight = PredictionTracker.Membership.escape(memberships, size);
+        }
+        if (size < checkHeight) {
+            passCheckpoints();
+        }
+        return popped;
     }
 
-    public ParseNode peek() {
-        if (nodes.isEmpty()) throw new EmptyStackException();
-        return nodes.get(nodes.size() - 1);
+    /**
+     * Drops the checkpoints the stack shrank below.
+     *
+     * @return the newest checkpoint whose item was just popped, if any
+     */
+    private GrammarAmbiguity passCheckpoints() {
+        GrammarAmbiguity passed = null;
+        Checkpoint checkpoint = this.checkpoints;
+        while (checkpoint != null && checkpoint.ambiguity.height() > size) {
+            if (passed == null && checkpoint.ambiguity.height() == size + 1) passed = checkpoint.ambiguity;
+            checkpoint = checkpoint.next;
+        }
+        this.checkpoints = checkpoint;
+        this.checkHeight = checkpoint == null ? 0 : checkpoint.ambiguity.height();
+        return passed;
+    }
+
+    /**
+     * @return the symbol of the top item
+     */
+    public Symbol<?> peek() {
+        if (size == 0) throw new EmptyStackException();
+        return symbols[size - 1];
     }
 
     public int size() {
-        return nodes.size();
+        return size;
+    }
+
+    /**
+     * Returns the symbol of the item at the given depth-from-bottom index without popping (0 is the bottom,
+     * size()-1 the top). Used by lookahead checks that read the symbols still waiting on the stack.
+     */
+    public Symbol<?> symbolAt(int index) {
+        return symbols[index];
+    }
+
+    /**
+     * Returns the production the item at the given index was pushed for; {@code null} for the initial items.
+     */
+    public Production ownerAt(int index) {
+        return owners[index];
     }
 
     public boolean isEmpty() {
-        return nodes.isEmpty();
+        return size == 0;
     }
 
     /**
@@ -218,74 +295,101 @@ public class MsllStack {
      * `StackFlag` is also marked as expired. The stack is then freed and its contents are cleared.
      */
     public void expire() {
-        this.flag.expire();
+        this.liveness.expire(this.flag);
+        if (this.occupied) {
+            PredictionTracker.Membership.leave(this.memberships, true);
+            this.memberships = null;
+        }
         this.free();
     }
 
-
     /**
-     * Pushes a `ParseNode` onto the stack and attaches the stack's flag to the node.
-     * <p>
-     * Each `ParseNode` added to the stack is tagged with the stack's flag, allowing the parser to
-     * track and manage the node's status (active or expired) during the parsing process.
-     *
-     * @param node The `ParseNode` to push onto the stack.
-     * @return The pushed `ParseNode`.
+     * Expires the stack as the loser of a longest-match resolution ({@link GrammarAmbiguity}). Unlike a token
+     * mismatch this outcome depends on the competing stacks, so the decisions it descends from are not cached.
      */
-    public ParseNode push(ParseNode node) {
-        node.setFlag(this.flag);
-        nodes.add(node);
-        return node;
+    public void lose() {
+        this.poisonDecisions();
+        this.expire();
     }
 
+
     /**
-     * Hash by unique index, consistent with {@link #equals(Object)}. (The old
-     * contents-based {@code Objects.hash(id, this)} would have recursed into
-     * itself — proof it was never actually called.)
+     * Pushes an item onto the stack.
+     *
+     * @param symbol The grammar symbol to match next.
+     * @param owner  The production the symbol belongs to, {@code null} for the items a parse starts with.
      */
-    @Override
-    public int hashCode() {
-        return this.id;
+    public void push(Symbol<?> symbol, Production owner) {
+        if (size == symbols.length) {
+            symbols = Arrays.copyOf(symbols, size * 2);
+            owners = Arrays.copyOf(owners, size * 2);
+        }
+        symbols[size] = symbol;
+        owners[size++] = owner;
     }
 
     /**
-     * Compares two stacks by their unique index to determine equality for map match
+     * Replaces the popped non-terminal by the symbols of {@code production} (&epsilon; pushes nothing) and logs the
+     * expansion.
      *
-     * @param stack The object to compare with.
-     * @return True if the stacks have the same index, false otherwise.
+     * @param explain the explain the expanded node is to carry; {@code null} with a {@code null} production, which
+     *                logs a non-terminal whose cell offered no production
      */
-    @Override
-    public boolean equals(Object stack) {
-        if (stack instanceof MsllStack) {
-            return ((MsllStack) stack).id == this.id;
-        } else {
-            return false;
+    public void expand(Production production, String explain, Terminal epsilon) {
+        this.derivation = Derivation.expand(production, explain, this.derivation);
+        if (production == null) return;
+        for (int i = production.symbolCount() - 1; i >= 0; i--) {
+            Symbol<?> symbol = production.symbolAt(i);
+            if (symbol.type() != epsilon) {
+                push(symbol, production);
+            }
         }
     }
 
-    public ParseNode pop(Token token) {
-        ParseNode popped = this.pop();
-        GrammarAmbiguity grammarAmbiguity = null;
-        if (!this.isEmpty()) {
-            // Hot path: this stack's own batch first, then the shared flattened
-            // ancestor map. Both are O(1); no merged map is materialised on pop.
-            grammarAmbiguity = this.batches.get(popped);
-            if (grammarAmbiguity == null) grammarAmbiguity = this.parentBatches.get(popped);
+    /**
+     * Logs that the popped terminal matched {@code token}.
+     */
+    public void match(Token token) {
+        this.derivation = Derivation.match(token, this.derivation);
+    }
+
+    /**
+     * Hands the derivation logged since the last commit to the caller and starts a new, empty log.
+     */
+    Derivation commit() {
+        Derivation committed = this.derivation;
+        this.derivation = null;
+        return committed;
+    }
+
+    /**
+     * Pops the top item and, when that passes a {@link GrammarAmbiguity} checkpoint, lets the ambiguity resolve
+     * this stack against the others that passed it with the same previous token.
+     *
+     * @param token the token before the one being parsed
+     * @return the symbol of the popped item
+     */
+    public Symbol<?> pop(Token token) {
+        if (size == 0) throw new EmptyStackException();
+        Symbol<?> popped = symbols[--size];
+        if (size < escapeHeight) {
+            escapeHeight = PredictionTracker.Membership.escape(memberships, size);
         }
+        GrammarAmbiguity grammarAmbiguity = size < checkHeight ? passCheckpoints() : null;
         // Only use a non-hidden token as the disambiguation key.
         // Hidden-channel tokens (e.g. SingleLineComment) must never be passed to
         // makeItDone() because they are skipped by the parser loop and therefore
         // arrive as the "previous token" for the first real token in a file.
         // Using a hidden token as the key causes both ambiguous stacks to be
         // incorrectly marked as ambiguous, leaving dead parse-tree nodes behind.
-        if (grammarAmbiguity != null && token.channel().isEmpty()) {
+        if (grammarAmbiguity != null && size > 0 && token.channel().isEmpty()) {
             grammarAmbiguity.makeItDone(token, this);
         }
         return popped;
     }
 
     public void setAmbiguous(Flag flag) {
-        this.flag.expire();
+        this.liveness.expire(this.flag);
         this.free();
     }
 
@@ -294,8 +398,40 @@ public class MsllStack {
 //    }
 
     public Flag flag() {
+        if (this.handle == null) this.handle = new Flag(this.liveness, this.flag);
+        return this.handle;
+    }
+
+    /**
+     * @return the id of this stack's flag in {@link #liveness()}
+     */
+    public int flagId() {
         return this.flag;
     }
+
+    public Liveness liveness() {
+        return this.liveness;
+    }
+
+    /**
+     * @return true once this stack, or every fork of it, has failed
+     */
+    public boolean expired() {
+        return this.liveness.expired(this.flag);
+    }
+
+    /**
+     * Immutable link of the pending checkpoint chain.
+     */
+    private static final class Checkpoint {
+        final GrammarAmbiguity ambiguity;
+        final Checkpoint next;
+
+        Checkpoint(GrammarAmbiguity ambiguity, Checkpoint next) {
+            this.ambiguity = ambiguity;
+            this.next = next;
+        }
+    }
 }
 
 
@@ -1,57 +1,223 @@
 package org.twelve.msll.parser;
 
-import java.util.ArrayList;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Consumer;
-import java.util.function.Predicate;
+import java.util.Arrays;
 
 /**
- * A specialized ArrayList implementation for managing a list of `MsllStack` objects.
- *
- * This class is designed to store and manage multiple instances of `MsllStack` used during the
- * parsing process in the Multi-Stack LL (MSLL) parser. By extending ArrayList, it retains
- * the flexibility and performance of the standard ArrayList while providing more contextual clarity.
- *
- * In MSLL parsing, multiple stacks are needed to handle different parsing paths simultaneously, and
- * this class provides a convenient way to store and iterate over these stacks during parsing operations.
+ * The live stacks of an MSLL parse, kept as one generation per token.
+ * <p>
+ * In MSLL parsing, multiple stacks are needed to handle different parsing paths simultaneously. While a token is
+ * parsed, the stacks of the current generation are processed in order; forks created on the way are appended to the
+ * next buffer, and a stack that fails or is replaced by its forks is only unlisted, which is O(1): every stack
+ * carries the stamp of its entry, and an entry whose stamp no longer matches is skipped. At the token boundary
+ * {@link #advance()} compacts the surviving entries of the current generation, appends the surviving forks and drops
+ * stacks that lost a longest-match resolution, so they are not carried through the rest of the input.
+ * <p>
+ * The order of a generation is the order in which its stacks were added, the order in which the parser always
+ * visited its stacks.
  *
  * @author huizi 2024
  */
-public class MsllStacks extends ArrayList<MsllStack> {
-    private AtomicInteger maxStackSize = new AtomicInteger(0);
-    private AtomicInteger totalStackSize = new AtomicInteger(0);
+public class MsllStacks {
+    private MsllStack[] current = new MsllStack[8];
+    private int[] currentStamps = new int[8];
+    private int currentSize = 0;
+
+    /**
+     * Stacks added since the last {@link #advance()}, in creation order.
+     */
+    private MsllStack[] next = new MsllStack[8];
+    private int[] nextStamps = new int[8];
+    private int nextSize = 0;
 
-    public Integer maxStackSize(){
-        return this.maxStackSize.get();
+    /**
+     * Number of listed stacks.
+     */
+    private int live = 0;
+    private int stamp = 0;
+    private int maxStackSize = 0;
+    private int totalStackSize = 0;
+
+    public Integer maxStackSize() {
+        return this.maxStackSize;
     }
-    public Integer totalStackSize(){
-        return this.totalStackSize.get();
+
+    public Integer totalStackSize() {
+        return this.totalStackSize;
     }
-    @Override
-    public boolean add(MsllStack parseNodes) {
-        boolean result =  super.add(parseNodes);
-        this.totalStackSize.incrementAndGet();
-        setMaxStackSize();
-        return result;
+
+    /**
+     * Lists {@code stack}; it joins the current generation at the next {@link #advance()}.
+     */
+    public void add(MsllStack stack) {
+        if (this.nextSize == this.next.length) {
+            this.next = Arrays.copyOf(this.next, this.nextSize * 2);
+            this.nextStamps = Arrays.copyOf(this.nextStamps, this.nextSize * 2);
+        }
+        stack.entry = ++this.stamp;
+        this.next[this.nextSize] = stack;
+        this.nextStamps[this.nextSize++] = stack.entry;
+        this.live++;
+        this.totalStackSize++;
+        if (this.maxStackSize < this.live) {
+            this.maxStackSize = this.live;
+        }
     }
 
-    @Override
-    public boolean removeIf(Predicate<? super MsllStack> filter) {
-        boolean result =   super.removeIf(filter);
-        setMaxStackSize();
-        return result;
+    /**
+     * Unlists {@code stack}; does nothing if it is not listed.
+     */
+    public void remove(MsllStack stack) {
+        if (stack.entry < 0) return;
+        stack.entry = -1;
+        this.live--;
     }
 
-    @Override
-    public MsllStack remove(int index) {
-        MsllStack result = super.remove(index);
-        setMaxStackSize();
-        return result;
+    /**
+     * Unlists every stack.
+     */
+    public void clear() {
+        for (int i = 0; i < this.currentSize; i++) {
+            this.current[i].entry = -1;
+            this.current[i] = null;
+        }
+        for (int i = 0; i < this.nextSize; i++) {
+            this.next[i].entry = -1;
+            this.next[i] = null;
+        }
+        this.currentSize = 0;
+        this.nextSize = 0;
+        this.live = 0;
     }
 
-    private void setMaxStackSize(){
-        if(this.maxStackSize.get()<this.size()){
-            this.maxStackSize.set(this.size());
+    /**
+     * Unlists every stack and zeroes the statistics, for a new parse.
+     */
+    public void reset() {
+        clear();
+        this.maxStackSize = 0;
+        this.totalStackSize = 0;
+    }
+
+    public int size() {
+        return this.live;
+    }
+
+    public boolean isEmpty() {
+        return this.live == 0;
+    }
+
+    /**
+     * Starts a new generation at a token boundary: the listed stacks of the current generation, then the listed
+     * stacks added since, each in its order. Stacks expired by a longest-match resolution are dropped, unless no
+     * other stack survives, in which case they carry on as before.
+     */
+    public void advance() {
+        int survivors = 0;
+        for (int i = 0; i < this.currentSize; i++) {
+            if (listed(this.current[i], this.currentStamps[i]) && !this.current[i].expired()) survivors++;
+        }
+        for (int i = 0; i < this.nextSize; i++) {
+            if (listed(this.next[i], this.nextStamps[i]) && !this.next[i].expired()) survivors++;
+        }
+        boolean dropExpired = survivors > 0;
+        int size = 0;
+        for (int i = 0; i < this.currentSize; i++) {
+            MsllStack stack = this.current[i];
+            this.current[i] = null;
+            if (keep(stack, this.currentStamps[i], dropExpired)) {
+                this.current[size] = stack;
+                this.currentStamps[size++] = stack.entry;
+            }
+        }
+        if (size + this.nextSize > this.current.length) {
+            int length = Math.max(size + this.nextSize, this.current.length * 2);
+            this.current = Arrays.copyOf(this.current, length);
+            this.currentStamps = Arrays.copyOf(this.currentStamps, length);
+        }
+        for (int i = 0; i < this.nextSize; i++) {
+            MsllStack stack = this.next[i];
+            this.next[i] = null;
+            if (keep(stack, this.nextStamps[i], dropExpired)) {
+                this.current[size] = stack;
+                this.currentStamps[size++] = stack.entry;
+            }
+        }
+        this.currentSize = size;
+        this.nextSize = 0;
+    }
+
+    private boolean keep(MsllStack stack, int stamp, boolean dropExpired) {
+        if (!listed(stack, stamp)) return false;
+        if (dropExpired && stack.expired()) {
+            remove(stack);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Cuts the current generation down to its {@code width} best stacks. Stacks are ranked like a longest-match
+     * resolution in {@link org.twelve.msll.util.GrammarAmbiguity}: more consumed tokens first, then the earlier
+     * stack (grammar order) on a tie. The others lose, as if a competitor had passed their checkpoint first, and
+     * are unlisted; the survivors keep their order.
+     *
+     * @return the number of stacks expired
+     */
+    public int prune(int width) {
+        int size = this.currentSize;
+        if (size <= width) return 0;
+        Integer[] ranked = new Integer[size];
+        for (int i = 0; i < size; i++) ranked[i] = i;
+        // stable: equal counts keep generation order
+        Arrays.sort(ranked, (x, y) -> Integer.compare(this.current[y].tokensConsumed(), this.current[x].tokensConsumed()));
+        for (int i = width; i < size; i++) {
+            MsllStack stack = this.current[ranked[i]];
+            stack.lose();
+            remove(stack);
+        }
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            MsllStack stack = this.current[i];
+            this.current[i] = null;
+            if (listed(stack, this.currentStamps[i])) {
+                this.current[kept] = stack;
+                this.currentStamps[kept++] = stack.entry;
+            }
+        }
+        this.currentSize = kept;
+        return size - width;
+    }
+
+    /**
+     * Whether an entry still stands for its stack: a stack unlisted and reused from the pool gets a new stamp.
+     */
+    private static boolean listed(MsllStack stack, int stamp) {
+        return stack.entry == stamp;
+    }
+
+    /**
+     * Number of stacks in the current generation; stacks unlisted since {@link #advance()} are still counted.
+     */
+    public int generationSize() {
+        return this.currentSize;
+    }
+
+    /**
+     * The {@code index}-th stack of the current generation, whether or not it is still listed.
+     */
+    public MsllStack get(int index) {
+        return this.current[index];
+    }
+
+    /**
+     * Unlists the stacks that have completed the parse (emptied their stack).
+     */
+    public void removeCompleted() {
+        for (int i = 0; i < this.currentSize; i++) {
+            if (listed(this.current[i], this.currentStamps[i]) && this.current[i].size() == 0) remove(this.current[i]);
+        }
+        for (int i = 0; i < this.nextSize; i++) {
+            if (listed(this.next[i], this.nextStamps[i]) && this.next[i].size() == 0) remove(this.next[i]);
         }
     }
 }
@@ -224,6 +224,7 @@ public class ParserGrammarParser extends G4Parser<ParserGrammarTree> {
 
         String name = node.name() + "_" + node.id() + "'";//the created non terminal is an ignored type end with '
         NonTerminalNode grammar = new NonTerminalNode(new Symbol<>(this.nonTerminals.fromName(Constants.GRAMMAR)));
+        grammar.setTag(Constants.GENERATED, true);
         NonTerminalNode head = new NonTerminalNode(new Symbol<>(getHead()));
         TerminalNode id = new TerminalNode(new Symbol<>(this.terminals.fromName(Constants.ID)));
         id.setToken(new Token(id.symbol().type(), name, node.location()));
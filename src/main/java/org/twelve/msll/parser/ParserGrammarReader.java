@@ -0,0 +1,298 @@
+package org.twelve.msll.parser;
+
+import org.twelve.msll.grammarsymbol.NonTerminals;
+import org.twelve.msll.grammarsymbol.Terminal;
+import org.twelve.msll.grammarsymbol.Terminals;
+import org.twelve.msll.lexer.Token;
+import org.twelve.msll.parsetree.NonTerminalNode;
+import org.twelve.msll.parsetree.ParseNode;
+import org.twelve.msll.parsetree.ParserGrammarTree;
+import org.twelve.msll.parsetree.TerminalNode;
+import org.twelve.msll.util.Constants;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a parser grammar ({@code .gm}) file into the {@link ParserGrammarTree} a {@link ParserGrammarParser} would
+ * parse it into, in one pass and without an MSLL parser.
+ * <p>
+ * The grammar file is read as
+ * <pre>
+ * parser   : comment* parser_head? comment* options_and_channels? (grammar | comment)+
+ * grammar  : head COMMENT* ':' production ('|' production | COMMENT)* LEXER_COMMAND? ';'
+ * production : (associate? symbol quantifier?)+ EXPLAIN?
+ * symbol   : STRING | REGEX | COMMENT | PREDICATE | ID | '&lt;' ID '&gt;' | UPPER_ID | '(' productions ')'
+ * </pre>
+ * A comment after a symbol belongs to its production, as the parser decides it. Groups and quantified symbols are
+ * replaced by generated non-terminals exactly as {@link ParserGrammarParser} replaces them, the generated grammars
+ * appended after the grammars of the file in the order the parser appends them.
+ *
+ * @author huizi 2024
+ */
+public class ParserGrammarReader extends G4Reader<ParserGrammarTree> {
+    private final Terminal parserGrammar;
+    private final Terminal comment;
+    private final Terminal longComment;
+    private final Terminal id;
+    private final Terminal upperId;
+    private final Terminal fragment;
+    private final Terminal less;
+    private final Terminal greater;
+    private final Terminal assoc;
+    private final Terminal leftParen;
+    private final Terminal rightParen;
+    private final Terminal explain;
+    private final Terminal lexerCommand;
+    private final Terminal star;
+    private final Terminal plus;
+    private final Terminal question;
+    private final Terminal[] symbols;
+    private final Terminal[] directions;
+    /**
+     * The grammars generated for groups and quantified symbols, appended to the grammars node once all grammars of
+     * the file are read.
+     */
+    private final List<NonTerminalNode> generated = new ArrayList<>();
+
+    public ParserGrammarReader(Reader reader) {
+        super(NonTerminals.parser(), Terminals.parser(), reader);
+        this.parserGrammar = terminal(Constants.PARSER_GRAMMAR);
+        this.comment = terminal(Constants.COMMENT);
+        this.longComment = terminal(Constants.LONG_COMMENT);
+        this.id = terminal(Constants.ID);
+        this.upperId = terminal(Constants.UPPER_ID);
+        this.fragment = terminal(Constants.FRAGMENT.toUpperCase());
+        this.less = terminal(Constants.LESS_STR);
+        this.greater = terminal(Constants.GREATER_STR);
+        this.assoc = terminal(Constants.ASSOC.toUpperCase());
+        this.leftParen = terminal(Constants.LEFT_PAREN_STR);
+        this.rightParen = terminal(Constants.RIGHT_PAREN_STR);
+        this.explain = terminal(Constants.EXPLAIN);
+        this.lexerCommand = terminal(Constants.LEXER_COMMAND);
+        this.star = terminal(Constants.STAR_STR);
+        this.plus = terminal(Constants.PLUS_STR);
+        this.question = terminal(Constants.QUESTION_STR);
+        this.symbols = new Terminal[]{terminal(Constants.STRING), terminal(Constants.REGEX), this.comment,
+                terminal(Constants.PREDICATE), this.id, this.less, this.upperId, this.leftParen};
+        this.directions = new Terminal[]{terminal(Constants.NONE.toUpperCase()), terminal(Constants.LEFT.toUpperCase()),
+                terminal(Constants.RIGHT.toUpperCase())};
+    }
+
+    @Override
+    public ParserGrammarTree read() {
+        NonTerminalNode parser = node(Constants.PARSER);
+        comments(parser, this.longComment, this.comment);
+        if (at(this.parserGrammar)) {
+            NonTerminalNode head = node(Constants.PARSER_HEAD);
+            head.addNode(take());
+            head.addNode(id());
+            head.addNode(expect(this.terminals.SEMICOLON));
+            parser.addNode(head);
+            comments(parser, this.longComment, this.comment);
+        }
+        channelOptions(parser);
+
+        NonTerminalNode grammars = node(Constants.GRAMMARS);
+        do {
+            if (atAny(this.longComment, this.comment)) {
+                grammars.addNode(take());
+            } else {
+                grammars.addNode(grammar());
+            }
+        } while (!atEnd());
+        this.generated.forEach(grammars::addNode);
+        parser.addNode(grammars);
+        return new ParserGrammarTree(parser);
+    }
+
+    private NonTerminalNode grammar() {
+        NonTerminalNode grammar = node(Constants.GRAMMAR);
+        if (at(this.fragment)) {
+            NonTerminalNode head = node(Constants.FRAGMENT_TERMINAL);
+            head.addNode(take());
+            head.addNode(expect(this.upperId));
+            grammar.addNode(head);
+        } else if (at(this.upperId)) {
+            grammar.addNode(terminalSymbol());
+        } else if (atAny(this.id, this.less)) {
+            grammar.addNode(nonTerminalSymbol());
+        } else {
+            fail("a grammar");
+        }
+        comments(grammar, this.comment);
+        grammar.addNode(expect(this.terminals.COLON));
+        grammar.addNode(productions());
+        if (at(this.lexerCommand)) grammar.addNode(take());
+        grammar.addNode(expect(this.terminals.SEMICOLON));
+        return grammar;
+    }
+
+    private NonTerminalNode productions() {
+        NonTerminalNode productions = node(Constants.PRODUCTIONS);
+        productions.addNode(production());
+        while (true) {
+            if (at(this.comment)) {
+                // only after an explained production: any other one takes a comment as its symbol
+                productions.addNode(take());
+            } else if (at(this.terminals.OR)) {
+                skip();
+                productions.addNode(production());
+            } else {
+                return productions;
+            }
+        }
+    }
+
+    private NonTerminalNode production() {
+        NonTerminalNode production = node(Constants.PRODUCTION);
+        do {
+            if (at(this.less) && next(this.assoc)) production.addNode(associate());
+            production.addNode(quantified(symbol()));
+            if (at(this.explain)) {
+                production.addNode(take());
+                break;
+            }
+        } while (atAny(this.symbols));
+        return production;
+    }
+
+    private NonTerminalNode associate() {
+        NonTerminalNode associate = node(Constants.ASSOCIATE);
+        associate.addNode(take());
+        associate.addNode(take());
+        associate.addNode(expect(terminal(Constants.EQUAL_STR)));
+        if (!atAny(this.directions)) fail("an associativity");
+        associate.addNode(take());
+        associate.addNode(expect(this.greater));
+        return associate;
+    }
+
+    private ParseNode symbol() {
+        if (at(this.id) || at(this.less)) return nonTerminalSymbol();
+        if (at(this.upperId)) return terminalSymbol();
+        if (at(this.leftParen)) {
+            NonTerminalNode factor = node(Constants.FACTOR);
+            factor.addNode(take());
+            factor.addNode(productions());
+            factor.addNode(expect(this.rightParen));
+            return generate(factor, (productions, target, id) ->
+                    productions.addNodes(((NonTerminalNode) target.nodes().get(1)).nodes()));
+        }
+        if (!atAny(this.symbols)) fail("a symbol");
+        return take();
+    }
+
+    /**
+     * Reads the quantifier of the symbol just read, if any, and replaces the quantified symbol by the non-terminal
+     * generated for it.
+     */
+    private ParseNode quantified(ParseNode symbol) {
+        if (at(this.question)) {
+            NonTerminalNode zeroOne = quantifier(Constants.ZERO_ONE, symbol);
+            return generate(zeroOne, (productions, target, id) -> {
+                epsilonProduction(productions);// zero production
+                anotherProduction(productions, target.nodes().get(0));// another production
+            });
+        }
+        if (at(this.star)) return zeroMore(quantifier(Constants.ZERO_MORE, symbol));
+        if (at(this.plus)) {
+            NonTerminalNode oneMore = quantifier(Constants.ONE_MORE, symbol);
+            return generate(oneMore, (productions, target, id) -> {
+                NonTerminalNode production = anotherProduction(productions, target.nodes().get(0));
+                NonTerminalNode zeroMore = synthetic(Constants.ZERO_MORE);
+                production.addNode(zeroMore);//one more = one + zero more
+                zeroMore.addNode(target.nodes().get(0));//this is one
+                production.addNode(zeroMore(zeroMore), production.removeNode(zeroMore));
+            });
+        }
+        return symbol;
+    }
+
+    private NonTerminalNode quantifier(String name, ParseNode symbol) {
+        NonTerminalNode quantifier = node(name);
+        quantifier.addNode(symbol);
+        quantifier.addNode(take());
+        return quantifier;
+    }
+
+    private NonTerminalNode zeroMore(NonTerminalNode zeroMore) {
+        return generate(zeroMore, (productions, target, id) -> {
+            epsilonProduction(productions);
+            NonTerminalNode pMore = anotherProduction(productions, target.nodes().get(0));
+            NonTerminalNode idWrapper = synthetic(Constants.NON_TERMINAL);
+            idWrapper.addNode(id.clone());
+            pMore.addNode(idWrapper);
+        });
+    }
+
+    private NonTerminalNode nonTerminalSymbol() {
+        NonTerminalNode nonTerminal = node(Constants.NON_TERMINAL);
+        if (at(this.less)) {
+            skip();
+            nonTerminal.addNode(expect(this.id));
+            expect(this.greater);
+            nonTerminal.setTag(Constants.FIX, true);
+        } else {
+            nonTerminal.addNode(take());
+        }
+        return nonTerminal;
+    }
+
+    private NonTerminalNode terminalSymbol() {
+        NonTerminalNode terminal = node(Constants.TERMINAL);
+        terminal.addNode(take());
+        return terminal;
+    }
+
+    /**
+     * Generates the grammar a group or a quantified symbol stands for, as {@link ParserGrammarParser} does: an ignored
+     * non-terminal named after the node, whose productions the handler fills in. The grammar is tagged as
+     * {@link Constants#GENERATED}.
+     *
+     * @return the non-terminal symbol that replaces the node
+     */
+    private NonTerminalNode generate(NonTerminalNode node, ParserGrammarParser.TriConsumer<NonTerminalNode, NonTerminalNode, TerminalNode> handler) {
+        String name = node.name() + "_" + node.id() + "'";//the created non terminal is an ignored type end with '
+        NonTerminalNode grammar = synthetic(Constants.GRAMMAR);
+        grammar.setTag(Constants.GENERATED, true);
+        NonTerminalNode head = synthetic(Constants.NON_TERMINAL);
+        TerminalNode id = new TerminalNode(new Symbol<>(this.id));
+        id.setToken(new Token(id.symbol().type(), name, node.location()));
+        head.addNode(id);
+        TerminalNode colon = new TerminalNode(new Symbol<>(this.terminals.COLON, this.terminals.COLON.pattern()));
+        NonTerminalNode productions = synthetic(Constants.PRODUCTIONS);
+        TerminalNode semicolon = new TerminalNode(new Symbol<>(this.terminals.SEMICOLON, this.terminals.SEMICOLON.pattern()));
+        this.generated.add(grammar);
+        grammar.addNode(head);
+        grammar.addNode(colon);
+        grammar.addNode(productions);
+        handler.accept(productions, node, id);
+        grammar.addNode(semicolon);
+
+        NonTerminalNode idWrapper = synthetic(Constants.NON_TERMINAL);
+        idWrapper.addNode(id.clone());
+        return idWrapper;
+    }
+
+    private void epsilonProduction(NonTerminalNode productions) {
+        NonTerminalNode epsilon = synthetic(Constants.PRODUCTION);
+        productions.addNode(epsilon);
+        epsilon.addNode(new TerminalNode(new Symbol<>(this.terminals.EPSILON)));
+    }
+
+    private NonTerminalNode anotherProduction(NonTerminalNode productions, ParseNode target) {
+        NonTerminalNode production = synthetic(Constants.PRODUCTION);
+        productions.addNode(production);
+        production.addNode(target);
+        return production;
+    }
+
+    /**
+     * Creates a node that stands for no text of the file.
+     */
+    private NonTerminalNode synthetic(String name) {
+        return new NonTerminalNode(new Symbol<>(nonTerminal(name)));
+    }
+}
@@ -0,0 +1,104 @@
+package org.twelve.msll.parser;
+
+import org.twelve.msll.grammar.Grammar;
+import org.twelve.msll.grammar.Grammars;
+import org.twelve.msll.grammar.Production;
+import org.twelve.msll.lexer.Token;
+import org.twelve.msll.util.Constants;
+import org.twelve.msll.util.Pair;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiPredicate;
+
+/**
+ * The grammar predicate functions of one parser builder, and the predicates of its grammars bound to them.
+ * <p>
+ * A predicate such as {@code {notLineTerminator()}} is parsed once, when the builder is built: every predicate
+ * symbol of the grammars gets its {@link GrammarPredicate}, with typed arguments and the function it names already
+ * looked up, so the parser tests a predicate by a single field read on the symbol. The registry starts with the
+ * global functions of {@link GrammarPredicate#addFunction}; a function added here applies to this builder only and
+ * rebinds the predicates naming it.
+ *
+ * @author huizi 2024
+ */
+public class PredicateRegistry {
+    private final Map<String, BiPredicate<Pair<Token, List<Token>>, List>> functions;
+    private final List<GrammarPredicate> predicates = new ArrayList<>();
+    private volatile boolean frozen = false;
+
+    /**
+     * Binds every predicate symbol of {@code grammars}.
+     */
+    public PredicateRegistry(Grammars grammars) {
+        this(grammars, GrammarPredicate.functions());
+    }
+
+    /**
+     * Binds every predicate symbol of {@code grammars} rebuilt from those of {@code previous}, to the functions of
+     * {@code previous}: the functions added to a builder carry over to the builder rebuilt from it.
+     */
+    public PredicateRegistry(Grammars grammars, PredicateRegistry previous) {
+        this(grammars, previous.functions());
+    }
+
+    private synchronized Map<String, BiPredicate<Pair<Token, List<Token>>, List>> functions() {
+        return new HashMap<>(this.functions);
+    }
+
+    private PredicateRegistry(Grammars grammars, Map<String, BiPredicate<Pair<Token, List<Token>>, List>> functions) {
+        this.functions = new HashMap<>(functions);
+        for (Grammar grammar : grammars.grammars()) {
+            for (Production production : grammar.productions()) {
+                for (Symbol<?> symbol : production.symbols()) {
+                    if (symbol.predicate() == null && symbol.type().name().contains(Constants.PREDICATE_ABLE)) {
+                        GrammarPredicate predicate = new GrammarPredicate(symbol.name());
+                        predicate.bind(this.functions.get(predicate.funcName()));
+                        this.predicates.add(predicate);
+                        symbol.bind(predicate);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds or replaces a predicate function of this builder. Like the grammar, the registry is not meant to change
+     * while its parsers run.
+     *
+     * @param name      the function name used in the grammar
+     * @param predicate the function logic for the predicate
+     * @throws IllegalStateException if the registry is {@link #freeze() frozen}
+     */
+    public synchronized void addFunction(String name, BiPredicate<Pair<Token, List<Token>>, List> predicate) {
+        if (this.frozen) throw new IllegalStateException("predicate registry is frozen");
+        this.functions.put(name, predicate);
+        for (GrammarPredicate bound : this.predicates) {
+            if (name.equals(bound.funcName())) bound.bind(predicate);
+        }
+    }
+
+    /**
+     * Stops functions from being added, see {@link #addFunction}. A {@link
+     * org.twelve.msll.parserbuilder.ParserBuilder#freeze() frozen} builder freezes its registry.
+     */
+    public synchronized void freeze() {
+        this.frozen = true;
+    }
+
+    /**
+     * @return whether the registry is {@link #freeze() frozen}
+     */
+    public boolean isFrozen() {
+        return this.frozen;
+    }
+
+    /**
+     * Returns the predicates bound, one per predicate symbol.
+     */
+    public List<GrammarPredicate> predicates() {
+        return this.predicates;
+    }
+}
@@ -1,15 +1,21 @@
 package org.twelve.msll.parser;
 
+import org.twelve.msll.grammar.Factoring;
 import org.twelve.msll.grammar.Grammar;
 import org.twelve.msll.grammar.Grammars;
 import org.twelve.msll.grammar.Production;
 import org.twelve.msll.grammarsymbol.Terminal;
 import org.twelve.msll.lexer.Token;
+import org.twelve.msll.util.Constants;
 import org.twelve.msll.util.Tool;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -58,9 +64,32 @@ public class PredictTable {
      * </ul>
      * Replaces a per-expansion stream filter + collect + sort in the parser's
      * hottest loop. Lists are unmodifiable; callers must not mutate them.
+     * <p>
+     * Both are flat arrays indexed by {@link #slot}: row {@link Grammar#ordinal()}, column
+     * {@link Terminal#ordinal()}, so the innermost lookup of the parser is two array reads instead of two nested
+     * hash lookups. {@code null} marks a missing cell.
      */
-    private final Map<Terminal, Map<Grammar, List<Production>>> nonEmptyCells = new HashMap<>();
-    private final Map<Terminal, Map<Grammar, List<Production>>> epsilonFirstCells = new HashMap<>();
+    private final List<Production>[] nonEmptyCells;
+    private final List<Production>[] epsilonFirstCells;
+
+    /**
+     * The grammar owning each row and the terminal owning each column. A slot is only served when both owners are
+     * the very objects asked for, so a symbol from another language (or a terminal that inherited its ordinal
+     * from another {@link org.twelve.msll.grammarsymbol.Terminals}) can never read a foreign cell.
+     */
+    private final Grammar[] rows;
+    private final Terminal[] columns;
+
+    /**
+     * Cells of terminals that could not get a column of their own because another terminal of the table holds
+     * the same ordinal. Empty unless terminals are shared between terminal collections.
+     */
+    private final Map<Terminal, Map<Grammar, List<Production>[]>> overflowCells = new HashMap<>();
+
+    /**
+     * {@link #epsilonAlongsideCells} by {@link #slot}.
+     */
+    private final BitSet epsilonAlongsideSlots = new BitSet();
 
     /**
      * When {@code false} (default), {@link #hasEpsilonAlongside} always returns
@@ -69,7 +98,34 @@ public class PredictTable {
      * behaviour for every grammar that existed before auto-conflict detection
      * landed. The G4 loader path flips this on to get ANTLR4-style semantics.
      */
-    private boolean autoEpsilonAlongsideEnabled = false;
+    private volatile boolean autoEpsilonAlongsideEnabled = false;
+
+    /**
+     * The grammars the table was built from, kept so {@link #setLookahead(int)} can derive lookahead sets later.
+     */
+    private final Grammars grammars;
+
+    /**
+     * Bounded LL(k) lookahead sets for the conflicted cells, or {@code null} (default) when the table predicts
+     * with a single token only. See {@link #setLookahead(int)}.
+     */
+    private volatile LookaheadSets lookaheadSets = null;
+
+    /**
+     * Outcomes of conflicted cells learned by earlier parses, or {@code null} (default) when every parse forks
+     * afresh. Shared by all parsers created from this table; see {@link #setPredictionCache}.
+     */
+    private volatile PredictionCache predictionCache = null;
+
+    /**
+     * Whether the settings may no longer change, see {@link #freeze()}.
+     */
+    private volatile boolean frozen = false;
+
+    /**
+     * The cells found different by {@link #rebuild}, empty for a table built from scratch.
+     */
+    private final List<CellChange> changes = new ArrayList<>();
 
     /**
      * Builds the prediction table by populating it with grammar rules and their respective FIRST and FOLLOW sets.
@@ -80,26 +136,278 @@ public class PredictTable {
      * @param grammars The set of grammars for which the prediction table is built.
      */
     public PredictTable(Grammars grammars) {
-        grammars.grammars().forEach(grammar -> {
-            AtomicBoolean hasEmpty = new AtomicBoolean(false);
-            grammar.productions().forEach(production -> {
-                if (production.isEmpty()) {
-                    // For empty productions, use the FOLLOW set to predict
-                    grammar.follow().forEach(symbol -> addMapping(grammar, production, symbol));
-                    hasEmpty.set(true);
+        this(grammars, cellsOf(grammars));
+    }
+
+    /**
+     * Builds the prediction table from cells computed before, such as those of a {@link #cells()} read back from a
+     * {@link org.twelve.msll.grammar.GrammarSnapshot}; the conflict cells and the filtered cells are derived from
+     * them as for a table computed from the grammars.
+     *
+     * @param grammars the grammars the cells belong to
+     * @param cells    terminal -> grammar -> productions; a {@code null} production stands for a grammar that
+     *                 produces ε only indirectly
+     */
+    public PredictTable(Grammars grammars, Map<Terminal, Map<Grammar, List<Production>>> cells) {
+        this.grammars = grammars;
+        cells.forEach((terminal, byGrammar) -> {
+            Map<Grammar, List<Production>> row = table.computeIfAbsent(terminal, k -> new HashMap<>());
+            byGrammar.forEach((grammar, productions) -> row.put(grammar, new ArrayList<>(productions)));
+        });
+        this.rows = new Grammar[grammars.size()];
+        for (Grammar grammar : grammars.grammars()) {
+            if (grammar.ordinal() >= 0 && grammar.ordinal() < this.rows.length) this.rows[grammar.ordinal()] = grammar;
+            // bind every non-terminal symbol to its grammar so the parser never looks grammars up by name
+            for (Production production : grammar.productions()) {
+                for (Symbol<?> symbol : production.symbols()) {
+                    if (!symbol.isTerminal()) symbol.bind(grammars.get(symbol.name()));
                 }
-                // Add terminal symbols from the FIRST set to the prediction table
-                production.first().forEach(symbol -> addMapping(grammar, production, symbol));
-            });
-            // For grammars that can produce epsilon indirectly, use the FOLLOW set
-            if (!hasEmpty.get() && grammar.containsEmptyFirst()) {
-                grammar.follow().forEach(symbol -> addMapping(grammar, null, symbol));
+                if (production.factoring() != null) bind(production.factoring().nests(), grammars);
             }
-        });
+        }
+        this.columns = new Terminal[table.keySet().stream().mapToInt(t -> t.ordinal() + 1).max().orElse(0)];
+        for (Terminal terminal : table.keySet()) {
+            if (terminal.ordinal() >= 0 && this.columns[terminal.ordinal()] == null) {
+                this.columns[terminal.ordinal()] = terminal;
+            }
+        }
+        this.nonEmptyCells = newCells(this.rows.length * this.columns.length);
+        this.epsilonFirstCells = newCells(this.rows.length * this.columns.length);
         detectConflicts();
         precomputeFilteredCells();
     }
 
+    /**
+     * Binds the symbols of the rule nodes a left factored production puts back, as those of its own symbols.
+     */
+    private static void bind(List<Factoring.Nest> nests, Grammars grammars) {
+        for (Factoring.Nest nest : nests) {
+            nest.symbol().bind(grammars.get(nest.symbol().name()));
+            bind(nest.nests(), grammars);
+        }
+    }
+
+    /**
+     * Builds the table of grammars rebuilt from those of {@code previous}'s table (see
+     * {@link Grammars#changed()}): the rows of the grammars the change did not reach are taken over, their
+     * productions mapped to the rebuilt grammars, and only the other rows are derived from FIRST and FOLLOW. The
+     * cells that came out different are reported by {@link #changes()}.
+     * <p>
+     * The settings of {@code previous} carry over: auto epsilon alongside, and the lookahead depth, whose sets are
+     * rebuilt from those of {@code previous} the same way. A prediction cache carries over as a new, empty one with
+     * the same bounds, as its decisions name the productions of {@code previous}.
+     * <p>
+     * A row is taken over only if the productions of its grammar correspond one to one, by position, to those of
+     * the grammar it was rebuilt from; if a production of a row cannot be mapped, every row is derived again.
+     *
+     * @param grammars the rebuilt grammars
+     * @param previous the table of the grammars they were rebuilt from
+     * @return the new table; {@code previous} is left as it is
+     */
+    public static PredictTable rebuild(Grammars grammars, PredictTable previous) {
+        PredictTable table = rebuild(grammars, previous, false);
+        return table != null ? table : rebuild(grammars, previous, true);
+    }
+
+    /**
+     * @param whole whether to derive every row, rather than take over those the change did not reach
+     * @return the new table, or {@code null} if a row to take over has a production that cannot be mapped
+     */
+    private static PredictTable rebuild(Grammars grammars, PredictTable previous, boolean whole) {
+        Set<String> changed = whole ? null : grammars.changed();
+        Map<Terminal, Map<Grammar, List<Production>>> cells = new HashMap<>();
+        Map<Grammar, Map<Terminal, List<Production>>> derived = new HashMap<>();
+        for (Grammar grammar : grammars.grammars()) {
+            if (changed == null || changed.contains(grammar.name()) || previous.grammars.get(grammar.name()) == null) {
+                Map<Terminal, Map<Grammar, List<Production>>> row = new HashMap<>();
+                addRow(row, grammar);
+                row.forEach((terminal, byGrammar) -> {
+                    cells.computeIfAbsent(terminal, t -> new HashMap<>()).putAll(byGrammar);
+                    derived.computeIfAbsent(grammar, g -> new HashMap<>()).put(terminal, byGrammar.get(grammar));
+                });
+                derived.putIfAbsent(grammar, new HashMap<>());
+            }
+        }
+        // the rows taken over, and the rows before of those derived again
+        Map<String, Map<Terminal, List<Production>>> rowsBefore = new HashMap<>();
+        Map<Grammar, Map<Production, Production>> correspondences = new HashMap<>();
+        for (Map.Entry<Terminal, Map<Grammar, List<Production>>> column : previous.table.entrySet()) {
+            Terminal terminal = column.getKey();
+            for (Map.Entry<Grammar, List<Production>> cell : column.getValue().entrySet()) {
+                Grammar was = cell.getKey();
+                List<Production> productions = cell.getValue();
+                Grammar grammar = grammars.get(was.name());
+                if (grammar == null || derived.containsKey(grammar)) {
+                    rowsBefore.computeIfAbsent(was.name(), n -> new HashMap<>()).put(terminal, productions);
+                    continue;
+                }
+                Map<Production, Production> correspondence = correspondences.computeIfAbsent(grammar,
+                        g -> correspondence(was, g));
+                if (correspondence == null) return null;
+                List<Production> mapped = new ArrayList<>(productions.size());
+                for (Production production : productions) {
+                    Production to = production == null ? null : correspondence.get(production);
+                    if (production != null && to == null) return null;
+                    mapped.add(to);
+                }
+                cells.computeIfAbsent(terminal, t -> new HashMap<>()).put(grammar, mapped);
+            }
+        }
+
+        PredictTable table = new PredictTable(grammars, cells);
+        derived.forEach((grammar, row) -> table.diff(grammar.name(), rowsBefore.remove(grammar.name()), row));
+        rowsBefore.forEach((name, row) -> table.diff(name, row, null));
+        table.changes.sort(Comparator.comparing(CellChange::grammar).thenComparing(CellChange::terminal));
+
+        table.autoEpsilonAlongsideEnabled = previous.autoEpsilonAlongsideEnabled;
+        PredictionCache cache = previous.predictionCache;
+        if (cache != null) table.predictionCache = new PredictionCache(cache.maxNodes(), cache.maxDepth());
+        if (previous.lookaheadSets != null && whole) {
+            table.setLookahead(previous.lookaheadSets.k(), null, null, null, null);
+        } else if (previous.lookaheadSets != null) {
+            Map<Production, Production> before = new HashMap<>();
+            Set<String> rebuilt = grammars.rebuilt();
+            Set<String> narrowed = new HashSet<>();
+            for (Grammar grammar : grammars.grammars()) {
+                Grammar was = previous.grammars.get(grammar.name());
+                if (was == null || rebuilt == null) continue;
+                if (rebuilt.contains(grammar.name())) {
+                    if (!display(grammar.productions()).containsAll(display(was.productions()))) {
+                        narrowed.add(grammar.name());
+                    }
+                    continue;
+                }
+                Map<Production, Production> correspondence = correspondences.computeIfAbsent(grammar,
+                        g -> correspondence(was, g));
+                if (correspondence == null) return null;
+                correspondence.forEach((from, to) -> before.put(to, from));
+            }
+            table.setLookahead(previous.lookaheadSets.k(), previous.lookaheadSets, rebuilt, narrowed, before);
+        }
+        return table;
+    }
+
+    /**
+     * Maps the productions of {@code was} to those of {@code grammar} rebuilt from it, by position; a production
+     * is only mapped to one displaying the same.
+     *
+     * @return the productions of {@code grammar} by those of {@code was}, or {@code null} if they do not correspond
+     */
+    private static Map<Production, Production> correspondence(Grammar was, Grammar grammar) {
+        List<Production> before = was.productions();
+        List<Production> after = grammar.productions();
+        if (before.size() != after.size()) return null;
+        Map<Production, Production> correspondence = new IdentityHashMap<>();
+        for (int i = 0; i < before.size(); i++) {
+            if (!before.get(i).toString().equals(after.get(i).toString())) return null;
+            correspondence.put(before.get(i), after.get(i));
+        }
+        return correspondence;
+    }
+
+    /**
+     * Records the cells of a grammar's row that differ between {@code before} and {@code after}; productions are
+     * compared by what they display, as the two rows belong to different grammar objects.
+     */
+    private void diff(String grammar, Map<Terminal, List<Production>> before, Map<Terminal, List<Production>> after) {
+        Map<Terminal, List<Production>> was = before == null ? Collections.emptyMap() : before;
+        Map<Terminal, List<Production>> is = after == null ? Collections.emptyMap() : after;
+        Set<Terminal> terminals = new HashSet<>(was.keySet());
+        terminals.addAll(is.keySet());
+        for (Terminal terminal : terminals) {
+            List<String> from = display(was.get(terminal));
+            List<String> to = display(is.get(terminal));
+            if (!from.equals(to)) this.changes.add(new CellChange(grammar, terminal.name(), from, to));
+        }
+    }
+
+    private static List<String> display(List<Production> productions) {
+        if (productions == null) return Collections.emptyList();
+        List<String> displays = new ArrayList<>(productions.size());
+        for (Production production : productions) {
+            displays.add(production == null ? Constants.EPSILON : production.toString());
+        }
+        return displays;
+    }
+
+    /**
+     * A cell of a rebuilt table that differs from the cell of the table it was rebuilt from.
+     *
+     * @param grammar  the grammar of the cell's row
+     * @param terminal the terminal of the cell's column
+     * @param before   the productions of the cell before, as displayed; empty if there was no such cell, and
+     *                 {@link Constants#EPSILON} for a grammar that produces ε only indirectly
+     * @param after    the productions of the cell now, likewise
+     */
+    public record CellChange(String grammar, String terminal, List<String> before, List<String> after) {
+    }
+
+    /**
+     * @return the cells {@link #rebuild} found different from the table rebuilt, by grammar and terminal; empty for
+     * a table built from scratch
+     */
+    public List<CellChange> changes() {
+        return Collections.unmodifiableList(this.changes);
+    }
+
+    /**
+     * Populates the cells from the grammars' FIRST and FOLLOW sets.
+     */
+    private static Map<Terminal, Map<Grammar, List<Production>>> cellsOf(Grammars grammars) {
+        Map<Terminal, Map<Grammar, List<Production>>> table = new HashMap<>();
+        grammars.grammars().forEach(grammar -> addRow(table, grammar));
+        return table;
+    }
+
+    /**
+     * Populates the row of one grammar.
+     *
+     * The terminals of the FIRST set of every production are mapped to it. If a production can produce an
+     * empty (ε) symbol, the FOLLOW set is added.
+     */
+    private static void addRow(Map<Terminal, Map<Grammar, List<Production>>> table, Grammar grammar) {
+        AtomicBoolean hasEmpty = new AtomicBoolean(false);
+        grammar.productions().forEach(production -> {
+            if (production.isEmpty()) {
+                // For empty productions, use the FOLLOW set to predict
+                grammar.follow().forEach(symbol -> addMapping(table, grammar, production, symbol));
+                hasEmpty.set(true);
+            }
+            // Add terminal symbols from the FIRST set to the prediction table
+            production.first().forEach(symbol -> addMapping(table, grammar, production, symbol));
+        });
+        // For grammars that can produce epsilon indirectly, use the FOLLOW set
+        if (!hasEmpty.get() && grammar.containsEmptyFirst()) {
+            if (grammar.factoredRest()) {
+                // a left factoring helper must expand the production of the alternative the parse completes
+                grammar.productions().stream().filter(p -> p.first().contains(Terminal.EPSILON)).forEach(p ->
+                        grammar.follow().forEach(symbol -> addMapping(table, grammar, p, symbol)));
+            } else {
+                grammar.follow().forEach(symbol -> addMapping(table, grammar, null, symbol));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Production>[] newCells(int size) {
+        return (List<Production>[]) new List[size];
+    }
+
+    /**
+     * Index of the cell of {@code terminal} in {@code grammar} in the flat cell arrays.
+     *
+     * @return the slot, or -1 if the table has no column for the terminal or the grammar is not one of its rows
+     */
+    public int slot(Grammar grammar, Terminal terminal) {
+        int row = grammar.ordinal();
+        int column = terminal.ordinal();
+        if (row < 0 || row >= rows.length || rows[row] != grammar
+                || column < 0 || column >= columns.length || columns[column] != terminal) {
+            return -1;
+        }
+        return row * columns.length + column;
+    }
+
     /**
      * Walks the finished table and records every (grammar, terminal) cell that
      * contains <em>both</em> an empty and a non-empty production. Those cells
@@ -127,6 +435,8 @@ public class PredictTable {
                     epsilonAlongsideCells
                             .computeIfAbsent(byGrammar.getKey().name(), k -> new HashSet<>())
                             .add(terminalName);
+                    int slot = slot(byGrammar.getKey(), byTerm.getKey());
+                    if (slot >= 0) epsilonAlongsideSlots.set(slot);
                 }
             }
         }
@@ -143,12 +453,41 @@ public class PredictTable {
         return terms != null && terms.contains(terminalName);
     }
 
+    /**
+     * {@link #hasEpsilonAlongside(String, String)} for the cell at {@code slot}, answered from a bitset.
+     */
+    public boolean hasEpsilonAlongside(int slot) {
+        return autoEpsilonAlongsideEnabled && epsilonAlongsideSlots.get(slot);
+    }
+
+    /**
+     * Translates a {@code grammarName -> {terminalName,...}} cell list (such as
+     * {@link MsllParser#epsilonAlongsideGrammars}) into slots. Cells the table does not have are skipped.
+     *
+     * @return a new bitset with the slot of every listed cell set
+     */
+    public BitSet slots(Map<String, Set<String>> cells) {
+        BitSet slots = new BitSet();
+        cells.forEach((grammarName, terminalNames) -> {
+            Grammar grammar = grammars.get(grammarName);
+            if (grammar == null) return;
+            for (Terminal terminal : columns) {
+                if (terminal != null && terminalNames.contains(terminal.name())) {
+                    int slot = slot(grammar, terminal);
+                    if (slot >= 0) slots.set(slot);
+                }
+            }
+        });
+        return slots;
+    }
+
     /**
      * Opt-in switch for the auto-detected {@link #epsilonAlongsideCells}. Leave
      * unset for legacy MSLL grammars (unchanged behaviour); flip on for G4-loaded
      * grammars, where MSLL is aiming to mimic ANTLR4's adaptive lookahead.
      */
     public void setAutoEpsilonAlongsideEnabled(boolean enabled) {
+        checkNotFrozen();
         this.autoEpsilonAlongsideEnabled = enabled;
     }
 
@@ -160,19 +499,157 @@ public class PredictTable {
         return epsilonAlongsideCells;
     }
 
-    /** Builds {@link #nonEmptyCells} / {@link #epsilonFirstCells} from the finished table. */
+    /**
+     * @return whether the auto-detected conflict cells are in use, see {@link #setAutoEpsilonAlongsideEnabled}
+     */
+    public boolean autoEpsilonAlongsideEnabled() {
+        return this.autoEpsilonAlongsideEnabled;
+    }
+
+    /**
+     * The raw cells of the table, terminal -> grammar -> productions, as the constructor computed them; a
+     * {@code null} production stands for a grammar that produces ε only indirectly. Read-only.
+     */
+    public Map<Terminal, Map<Grammar, List<Production>>> cells() {
+        return Collections.unmodifiableMap(this.table);
+    }
+
+    /**
+     * Sets the lookahead depth used to prune forks at conflicted cells. With {@code k > 1} the table computes
+     * bounded FIRST<sub>k</sub> sets (see {@link LookaheadSets}) for every cell that holds more than one
+     * production, and the parser forks only the productions still viable for the next k tokens. {@code k <= 1}
+     * (the default) keeps the classic one-token behaviour, so legacy grammars tuned against the exact fork
+     * counts are unaffected. Like {@link #setAutoEpsilonAlongsideEnabled}, call it before the table is shared.
+     *
+     * @param k lookahead depth; values above 3 are accepted but rarely pay for their build cost
+     */
+    public void setLookahead(int k) {
+        checkNotFrozen();
+        setLookahead(k, null, null, null, null);
+    }
+
+    private void setLookahead(int k, LookaheadSets previous, Set<String> rebuilt, Set<String> narrowed,
+                              Map<Production, Production> before) {
+        if (k <= 1) {
+            this.lookaheadSets = null;
+            return;
+        }
+        Set<Production> conflicted = new HashSet<>();
+        for (List<Production>[] cells : List.of(nonEmptyCells, epsilonFirstCells)) {
+            for (List<Production> cell : cells) {
+                if (cell != null && cell.size() > 1) conflicted.addAll(cell);
+            }
+        }
+        for (Map<Grammar, List<Production>[]> byGrammar : overflowCells.values()) {
+            for (List<Production>[] regimes : byGrammar.values()) {
+                for (List<Production> cell : regimes) {
+                    if (cell.size() > 1) conflicted.addAll(cell);
+                }
+            }
+        }
+        this.lookaheadSets = new LookaheadSets(this.grammars, k, conflicted, previous, rebuilt, narrowed, before);
+    }
+
+    /**
+     * @return the lookahead depth the table prunes conflicted cells with; 1 means no pruning
+     */
+    public int lookahead() {
+        return this.lookaheadSets == null ? 1 : this.lookaheadSets.k();
+    }
+
+    /**
+     * Narrows a conflicted cell to the productions that remain viable for the given lookahead.
+     * The check is conservative (see {@link LookaheadSets#viable}); when nothing survives the original list is
+     * returned so the forks fail exactly as they would have and error reporting is unchanged.
+     *
+     * @param productions the cell as returned by {@link #matchFiltered}
+     * @param stack       the stack the cell's grammar node was popped from
+     * @param lookahead   the next significant terminals, starting with the current token
+     * @param size        number of valid entries in {@code lookahead}
+     * @return {@code productions} itself when nothing was pruned, otherwise a new list in the same order
+     */
+    public List<Production> viable(List<Production> productions, MsllStack stack, Terminal[] lookahead, int size) {
+        if (this.lookaheadSets == null || productions.size() < 2) return productions;
+        List<Production> viable = null;
+        for (int i = 0; i < productions.size(); i++) {
+            Production production = productions.get(i);
+            if (this.lookaheadSets.viable(production, stack, lookahead, size)) {
+                if (viable != null) viable.add(production);
+            } else if (viable == null) {
+                viable = new ArrayList<>(productions.subList(0, i));
+            }
+        }
+        return viable == null || viable.isEmpty() ? productions : viable;
+    }
+
+    /**
+     * Installs an adaptive {@link PredictionCache} shared by every parser created from this table: parsers record
+     * which production alone survived a conflicted cell for a given token sequence, and later parses that meet
+     * the same cell and tokens expand that production without forking. Off by default, so fork statistics of
+     * existing grammars are unchanged; pass {@code null} to switch it off again.
+     *
+     * @param cache the cache to share, typically {@code new PredictionCache()}
+     */
+    public void setPredictionCache(PredictionCache cache) {
+        checkNotFrozen();
+        this.predictionCache = cache;
+    }
+
+    /**
+     * Stops the settings of the table from changing: {@link #setLookahead}, {@link #setPredictionCache} and
+     * {@link #setAutoEpsilonAlongsideEnabled} throw {@link IllegalStateException} from then on, so the parsers
+     * sharing the table all predict alike. A {@link org.twelve.msll.parserbuilder.ParserBuilder#freeze() frozen}
+     * builder freezes its table.
+     */
+    public void freeze() {
+        this.frozen = true;
+    }
+
+    /**
+     * @return whether the settings of the table are {@link #freeze() frozen}
+     */
+    public boolean isFrozen() {
+        return this.frozen;
+    }
+
+    private void checkNotFrozen() {
+        if (this.frozen) throw new IllegalStateException("predict table is frozen");
+    }
+
+    /**
+     * @return the installed prediction cache (hit-rate statistics live there), or {@code null}
+     */
+    public PredictionCache predictionCache() {
+        return this.predictionCache;
+    }
+
+    /**
+     * @return true if LL(k) lookahead rules the production out without consulting any stack
+     * @see LookaheadSets#rejectedByItself
+     */
+    public boolean rejectedByItself(Production production, Terminal[] lookahead, int size) {
+        return this.lookaheadSets != null && this.lookaheadSets.rejectedByItself(production, lookahead, size);
+    }
+
+    /** Builds {@link #nonEmptyCells} / {@link #epsilonFirstCells} (and {@link #overflowCells}) from the finished table. */
     private void precomputeFilteredCells() {
         for (Map.Entry<Terminal, Map<Grammar, List<Production>>> byTerm : table.entrySet()) {
-            Map<Grammar, List<Production>> nonEmptyByGrammar = new HashMap<>();
-            Map<Grammar, List<Production>> epsilonFirstByGrammar = new HashMap<>();
             for (Map.Entry<Grammar, List<Production>> cell : byTerm.getValue().entrySet()) {
-                nonEmptyByGrammar.put(cell.getKey(),
-                        java.util.Collections.unmodifiableList(filterCell(cell.getValue(), false)));
-                epsilonFirstByGrammar.put(cell.getKey(),
-                        java.util.Collections.unmodifiableList(filterCell(cell.getValue(), true)));
+                List<Production> epsilonFirst = java.util.Collections.unmodifiableList(filterCell(cell.getValue(), true));
+                // the cells of a left factoring helper keep their ε production in either regime
+                List<Production> nonEmpty = cell.getKey().factoredRest() ? epsilonFirst
+                        : java.util.Collections.unmodifiableList(filterCell(cell.getValue(), false));
+                int slot = slot(cell.getKey(), byTerm.getKey());
+                if (slot >= 0) {
+                    nonEmptyCells[slot] = nonEmpty;
+                    epsilonFirstCells[slot] = epsilonFirst;
+                } else {
+                    List<Production>[] regimes = newCells(2);
+                    regimes[0] = nonEmpty;
+                    regimes[1] = epsilonFirst;
+                    overflowCells.computeIfAbsent(byTerm.getKey(), t -> new HashMap<>()).put(cell.getKey(), regimes);
+                }
             }
-            nonEmptyCells.put(byTerm.getKey(), nonEmptyByGrammar);
-            epsilonFirstCells.put(byTerm.getKey(), epsilonFirstByGrammar);
         }
     }
 
@@ -197,18 +674,37 @@ public class PredictTable {
      * {@code match()} on a missing cell so error reporting is unchanged.
      */
     public List<Production> matchFiltered(Token token, Grammar grammar, String line, boolean epsilonAlongside) {
-        Map<Grammar, List<Production>> byGrammar =
-                (epsilonAlongside ? epsilonFirstCells : nonEmptyCells).get(token.terminal());
-        List<Production> cached = byGrammar == null ? null : byGrammar.get(grammar);
+        List<Production> cached = cell(token.terminal(), grammar, epsilonAlongside);
         if (cached != null) return cached;
         // Missing cell: match() raises the canonical grammar error.
         return filterCell(match(token, grammar, line), epsilonAlongside);
     }
 
+    /**
+     * The cached, filtered cell for {@code terminal} in {@code grammar}, or {@code null} when the table has no such
+     * cell. Never raises: the parser's deterministic fast path uses it to test a cell and leaves the error
+     * reporting of a missing cell to {@link #matchFiltered}.
+     */
+    public List<Production> cell(Terminal terminal, Grammar grammar, boolean epsilonAlongside) {
+        int slot = slot(grammar, terminal);
+        if (slot >= 0) return cell(slot, epsilonAlongside);
+        Map<Grammar, List<Production>[]> byGrammar = overflowCells.get(terminal);
+        List<Production>[] regimes = byGrammar == null ? null : byGrammar.get(grammar);
+        return regimes == null ? null : regimes[epsilonAlongside ? 1 : 0];
+    }
+
+    /**
+     * The cached, filtered cell at {@code slot} (see {@link #slot}), or {@code null} when the cell is missing.
+     */
+    public List<Production> cell(int slot, boolean epsilonAlongside) {
+        return (epsilonAlongside ? epsilonFirstCells : nonEmptyCells)[slot];
+    }
+
     /**
      *  Helper method to add mappings of a grammar, production, and terminal to the prediction table.
      */
-    private void addMapping(Grammar grammar, Production production, Terminal symbol) {
+    private static void addMapping(Map<Terminal, Map<Grammar, List<Production>>> table, Grammar grammar,
+                                   Production production, Terminal symbol) {
         Map<Grammar, List<Production>> firsts = table.computeIfAbsent(symbol, k -> new HashMap<>());
         List<Production> productions = firsts.get(grammar);
         if (productions == null) {
@@ -230,12 +726,26 @@ public class PredictTable {
      * @return The list of productions that match the current token.
      */
     public List<Production> match(Token token, Grammar grammar, String line) {
+        Map<Grammar, List<Production>> grammars = table.get(token.terminal());
+        List<Production> productions = grammars == null ? null : grammars.get(grammar);
+        if (productions == null) {
+            Tool.grammarError(mismatch(token, grammar, line));
+        }
+        return productions;
+    }
+
+    /**
+     * Describes why {@link #match} finds no production for {@code token} in {@code grammar}: the token is unknown
+     * to the table, or the grammar has no cell for it (listing the productions that would accept it).
+     *
+     * @return the error message, or {@code null} if the table does have such a cell
+     */
+    public String mismatch(Token token, Grammar grammar, String line) {
         Terminal terminal = token.terminal();
         Map<Grammar, List<Production>> grammars = table.get(terminal);
         String lineSeparator = System.lineSeparator();
         if (grammars == null) {
-            Tool.grammarError(
-                    "`" + terminal.pattern() + "` is not found in predict table" + lineSeparator + line);
+            return "`" + terminal.pattern() + "` is not found in predict table" + lineSeparator + line;
         }
         List<Production> productions = grammars.get(grammar);
         if (productions == null) {
@@ -248,13 +758,13 @@ public class PredictTable {
             String keywordHint = !terminal.isRegex()
                     ? lineSeparator + "Hint: '" + token.lexeme() + "' is a reserved keyword and cannot be used as an identifier or in this position."
                     : "";
-            Tool.grammarError("token: " + terminal.name() + ":" + token.lexeme()
+            return "token: " + terminal.name() + ":" + token.lexeme()
                     + " doesn't match any grammar definition at line: " + token.location().line().number()
                     + ", position from " + (token.location().start() - token.location().line().beginIndex()) + " to "
                     + (token.location().end() - token.location().line().beginIndex()) + lineSeparator + line
                     + keywordHint
-                    + lineSeparator + " the possible productions should be matched would be:" + sb);
+                    + lineSeparator + " the possible productions should be matched would be:" + sb;
         }
-        return productions;
+        return null;
     }
 }
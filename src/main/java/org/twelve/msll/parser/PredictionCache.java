@@ -0,0 +1,215 @@
+package org.twelve.msll.parser;
+
+import org.twelve.msll.grammar.Production;
+import org.twelve.msll.grammarsymbol.Terminal;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adaptive prediction cache shared by every parser created from one {@link PredictTable} (ALL(*)-style DFA).
+ * <p>
+ * Each parser otherwise rediscovers, by forking, which alternative of a conflicted cell wins for the same
+ * recurring token patterns (e.g. {@code x < y} versus {@code x<T>} at {@code factor_expression_alpha'}). The
+ * cache remembers those outcomes: per conflicted cell it keeps a trie over the significant token sequences that
+ * were seen to decide the cell, and the production that turned out to be the only survivor. A later parse that
+ * meets the same cell walks the trie with its own lookahead and, on a hit, expands the winner directly instead
+ * of cloning a stack per production. The node it expands gets the explain the fork would have given it, recorded
+ * along with the winner, so a warm cache builds exactly the tree a cold one does.
+ * <p>
+ * Only context-free outcomes are recorded (see {@link PredictionTracker}): every losing alternative must have
+ * failed on a token mismatch while still inside its own production, never after popping below the fork point
+ * and never through longest-match resolution, and no member may have run a grammar predicate, whose outcome may
+ * depend on tokens the key leaves out. Such a loser fails on the same tokens in any context, so the recorded
+ * winner is the only production that can survive there.
+ * <p>
+ * The cache never invalidates: it stops growing once {@link #maxNodes()} trie nodes exist and ignores sequences
+ * longer than {@link #maxDepth()}. A sequence that was ever recorded with two different winners is marked
+ * conflicted and always misses. All operations are lock-free and safe for concurrent parsers.
+ *
+ * @author huizi 2024
+ */
+public class PredictionCache {
+    /**
+     * Default bound on the number of trie nodes across all cells.
+     */
+    public static final int DEFAULT_MAX_NODES = 1 << 16;
+
+    /**
+     * Default bound on the length of a recorded token sequence.
+     */
+    public static final int DEFAULT_MAX_DEPTH = 8;
+
+    private final int maxNodes;
+    private final int maxDepth;
+
+    /**
+     * Trie roots keyed by the cell's candidate list as served by {@link PredictTable#matchFiltered}.
+     */
+    private final Map<List<Production>, Node> cells = new ConcurrentHashMap<>();
+
+    private final AtomicInteger nodes = new AtomicInteger();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder recordings = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    public PredictionCache(int maxNodes, int maxDepth) {
+        this.maxNodes = maxNodes;
+        this.maxDepth = maxDepth;
+    }
+
+    public PredictionCache() {
+        this(DEFAULT_MAX_NODES, DEFAULT_MAX_DEPTH);
+    }
+
+    /**
+     * The outcome recorded for a conflicted cell.
+     *
+     * @param winner  the only production that survived
+     * @param explain the explain the fork gave the expanded node
+     */
+    public record Prediction(Production winner, String explain) {
+    }
+
+    /**
+     * Looks up the winner recorded for a conflicted cell.
+     *
+     * @param candidates the cell's productions
+     * @param lookahead  the next significant terminals, starting with the current token
+     * @param size       number of valid entries in {@code lookahead}
+     * @return the recorded winner if the lookahead walks to a decided node, otherwise {@code null}
+     */
+    public Production lookup(List<Production> candidates, Terminal[] lookahead, int size) {
+        Prediction prediction = predict(candidates, lookahead, size);
+        return prediction == null ? null : prediction.winner();
+    }
+
+    /**
+     * Looks up the outcome recorded for a conflicted cell, see {@link #lookup}.
+     *
+     * @return the recorded outcome if the lookahead walks to a decided node, otherwise {@code null}
+     */
+    public Prediction predict(List<Production> candidates, Terminal[] lookahead, int size) {
+        lookups.increment();
+        Node node = cells.get(candidates);
+        for (int i = 0; node != null && i < size; i++) {
+            node = node.next.get(lookahead[i]);
+            if (node == null || node.conflicted) return null;
+            Prediction prediction = node.prediction;
+            if (prediction != null) {
+                hits.increment();
+                return prediction;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records that {@code winner} was the only survivor of the cell once {@code sequence} had been consumed, the
+     * node it expanded having got {@code explain}.
+     */
+    public void record(List<Production> candidates, Terminal[] sequence, int size, Production winner,
+                       String explain) {
+        if (size == 0 || size > maxDepth) {
+            rejections.increment();
+            return;
+        }
+        Node node = cells.computeIfAbsent(candidates, c -> new Node());
+        for (int i = 0; i < size; i++) {
+            Node child = node.next.get(sequence[i]);
+            if (child == null) {
+                if (nodes.get() >= maxNodes) {
+                    rejections.increment();
+                    return;
+                }
+                Node created = new Node();
+                child = node.next.putIfAbsent(sequence[i], created);
+                if (child == null) {
+                    child = created;
+                    nodes.incrementAndGet();
+                }
+            }
+            node = child;
+            // a shorter sequence already decides the cell
+            if (node.prediction != null && i < size - 1) return;
+        }
+        synchronized (node) {
+            if (node.conflicted) return;
+            if (node.prediction == null) {
+                node.prediction = new Prediction(winner, explain);
+                recordings.increment();
+            } else if (node.prediction.winner() != winner || !Objects.equals(node.prediction.explain(), explain)) {
+                node.prediction = null;
+                node.conflicted = true;
+            }
+        }
+    }
+
+    public int maxNodes() {
+        return this.maxNodes;
+    }
+
+    public int maxDepth() {
+        return this.maxDepth;
+    }
+
+    /**
+     * @return number of trie nodes currently held
+     */
+    public int size() {
+        return this.nodes.get();
+    }
+
+    /**
+     * @return number of lookups performed at conflicted cells
+     */
+    public long lookups() {
+        return this.lookups.sum();
+    }
+
+    /**
+     * @return number of lookups that returned a winner and so avoided a fork
+     */
+    public long hits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * @return fraction of lookups that hit, 0 when nothing was looked up yet
+     */
+    public double hitRate() {
+        long lookups = this.lookups.sum();
+        return lookups == 0 ? 0 : (double) this.hits.sum() / lookups;
+    }
+
+    /**
+     * @return number of decided sequences recorded
+     */
+    public long recordings() {
+        return this.recordings.sum();
+    }
+
+    /**
+     * @return number of outcomes not recorded because of the growth limits
+     */
+    public long rejections() {
+        return this.rejections.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "PredictionCache{nodes=" + size() + ", lookups=" + lookups() + ", hits=" + hits()
+                + ", recordings=" + recordings() + ", rejections=" + rejections() + "}";
+    }
+
+    private static final class Node {
+        final Map<Terminal, Node> next = new ConcurrentHashMap<>(4);
+        volatile Prediction prediction;
+        volatile boolean conflicted;
+    }
+}
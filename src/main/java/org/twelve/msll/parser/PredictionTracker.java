@@ -0,0 +1,227 @@
+package org.twelve.msll.parser;
+
+import org.twelve.msll.grammar.Production;
+import org.twelve.msll.grammarsymbol.Terminal;
+import org.twelve.msll.lexer.Token;
+import org.twelve.msll.lexer.TokenBuffer;
+
+import java.util.List;
+
+/**
+ * Per-parse bookkeeping that feeds the {@link PredictionCache}.
+ * <p>
+ * Every fork at a conflicted cell opens a {@link Decision}. Stacks carry a chain of {@link Membership}s naming
+ * the open decisions they descend from and which alternative they took; forks inherit the chain, so each
+ * decision knows how many live stacks each alternative still has. When all but one alternative have died the
+ * decision is resolved, and the significant tokens consumed since the fork are recorded as deciding the cell.
+ * <p>
+ * A decision is only recorded when the outcome is context-free:
+ * <ul>
+ *   <li>a losing alternative must never have popped below the fork point ({@link Decision#escaped}) — once it
+ *       does, its fate depends on the symbols of the surrounding context rather than on the production;</li>
+ *   <li>no member may have been expired by longest-match resolution, had a nested cell narrowed by
+ *       stack-dependent LL(k) pruning or run a grammar predicate, which may look at end-of-line tokens the
+ *       recorded sequence leaves out ({@link Decision#poisoned}).</li>
+ * </ul>
+ * Not thread-safe; one tracker belongs to one parse.
+ *
+ * @author huizi 2024
+ */
+class PredictionTracker {
+    private final PredictionCache cache;
+    private final TokenBuffer tokens;
+    private final Terminal eol;
+    private final Terminal[] sequence;
+
+    /**
+     * Position of the token the parser is currently processing; deaths happen on this token.
+     */
+    private int cursor = 0;
+
+    PredictionTracker(PredictionCache cache, TokenBuffer tokens, Terminal eol) {
+        this.cache = cache;
+        this.tokens = tokens;
+        this.eol = eol;
+        this.sequence = new Terminal[cache.maxDepth()];
+    }
+
+    void moveTo(int cursor) {
+        this.cursor = cursor;
+    }
+
+    /**
+     * Consults the cache for a conflicted cell at the current token.
+     */
+    PredictionCache.Prediction lookup(List<Production> candidates, int from) {
+        int size = collect(from, Integer.MAX_VALUE);
+        return cache.predict(candidates, sequence, Math.min(size, cache.maxDepth()));
+    }
+
+    /**
+     * Collects the significant terminals from {@code from} up to {@code to} (inclusive) into {@link #sequence}.
+     *
+     * @return the number collected; {@code sequence.length + 1} when the range holds more than fit
+     */
+    private int collect(int from, int to) {
+        int size = 0;
+        for (int i = from; i <= to && i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            if (token == null) break;
+            if (!token.channel().isEmpty() || token.terminal() == eol) continue;
+            if (size == sequence.length) return size + 1;
+            sequence[size++] = token.terminal();
+        }
+        return size;
+    }
+
+    /**
+     * Opens a decision for a fork at the current token.
+     *
+     * @param candidates the cell's productions, the cache key
+     * @param forked     the productions actually forked: {@code candidates} minus those LL(k) lookahead rejected
+     * @param height     stack size after the expanded node was popped; popping below it leaves the production
+     * @param window     number of significant tokens the LL(k) rejection looked at (0 if nothing was rejected);
+     *                   a recorded sequence is never shorter, since those rejections depend on all of them
+     */
+    Decision open(List<Production> candidates, List<Production> forked, int height, int window) {
+        return new Decision(this, candidates, forked, height, cursor, window);
+    }
+
+    private void resolved(Decision decision, Production winner) {
+        int size = collect(decision.cursor, cursor);
+        if (size < decision.window) {
+            size = Math.min(collect(decision.cursor, Integer.MAX_VALUE), decision.window);
+        }
+        // forks used to share one node and each wrote its explain in turn, so the node kept the last one
+        String explain = decision.forked.get(decision.forked.size() - 1).explain();
+        cache.record(decision.candidates, sequence, size, winner, explain);
+    }
+
+    /**
+     * One fork at a conflicted cell.
+     */
+    static final class Decision {
+        private final PredictionTracker tracker;
+        private final List<Production> candidates;
+        private final List<Production> forked;
+        private final int height;
+        private final int cursor;
+        private final int window;
+        private final int[] live;
+        private final boolean[] escaped;
+        private boolean poisoned = false;
+        private boolean closed = false;
+
+        private Decision(PredictionTracker tracker, List<Production> candidates, List<Production> forked,
+                         int height, int cursor, int window) {
+            this.tracker = tracker;
+            this.window = window;
+            this.candidates = candidates;
+            this.forked = forked;
+            this.height = height;
+            this.cursor = cursor;
+            this.live = new int[forked.size()];
+            this.escaped = new boolean[forked.size()];
+        }
+
+        boolean closed() {
+            return this.closed;
+        }
+
+        void poison() {
+            this.poisoned = true;
+        }
+
+        private void died(int alt) {
+            if (closed || --live[alt] > 0) return;
+            int alive = -1;
+            for (int i = 0; i < live.length; i++) {
+                if (live[i] == 0) continue;
+                if (alive != -1) return;
+                alive = i;
+            }
+            closed = true;
+            if (alive == -1 || poisoned) return;
+            for (int i = 0; i < live.length; i++) {
+                if (i != alive && escaped[i]) return;
+            }
+            tracker.resolved(this, forked.get(alive));
+        }
+    }
+
+    /**
+     * Immutable link in a stack's chain of open decisions; shared between forks.
+     */
+    static final class Membership {
+        private final Decision decision;
+        private final int alt;
+        private final Membership next;
+
+        private Membership(Decision decision, int alt, Membership next) {
+            this.decision = decision;
+            this.alt = alt;
+            this.next = next;
+        }
+
+        /**
+         * Chain for a new stack joining {@code alt} of {@code decision}.
+         */
+        static Membership join(Decision decision, int alt, Membership chain) {
+            decision.live[alt]++;
+            return new Membership(decision, alt, chain);
+        }
+
+        /**
+         * Chain for a stack forked from a stack holding {@code chain}: counts the fork as one more live stack of
+         * every open decision and drops the closed ones.
+         */
+        static Membership inherit(Membership chain) {
+            if (chain == null) return null;
+            Membership rest = inherit(chain.next);
+            if (chain.decision.closed) return rest;
+            chain.decision.live[chain.alt]++;
+            return rest == chain.next ? chain : new Membership(chain.decision, chain.alt, rest);
+        }
+
+        /**
+         * The stack holding {@code chain} went away: as a death ({@code died}) it may resolve decisions, as a
+         * hand-over to its own forks it only releases its count.
+         */
+        static void leave(Membership chain, boolean died) {
+            for (Membership m = chain; m != null; m = m.next) {
+                if (died) {
+                    m.decision.died(m.alt);
+                } else if (!m.decision.closed) {
+                    m.decision.live[m.alt]--;
+                }
+            }
+        }
+
+        static void poison(Membership chain) {
+            for (Membership m = chain; m != null; m = m.next) m.decision.poison();
+        }
+
+        /**
+         * Marks the decisions the stack has now left (its size dropped below their fork height).
+         *
+         * @return the next height at which another decision would be left, 0 if none
+         */
+        static int escape(Membership chain, int size) {
+            int next = 0;
+            for (Membership m = chain; m != null; m = m.next) {
+                if (size < m.decision.height) {
+                    m.decision.escaped[m.alt] = true;
+                } else if (m.decision.height > next && !m.decision.escaped[m.alt]) {
+                    next = m.decision.height;
+                }
+            }
+            return next;
+        }
+
+        static int height(Membership chain) {
+            int max = 0;
+            for (Membership m = chain; m != null; m = m.next) max = Math.max(max, m.decision.height);
+            return max;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package org.twelve.msll.parser;
+
+import java.util.ArrayDeque;
+
+/**
+ * The free stacks of one parser.
+ * <p>
+ * A stack replaced by its forks is freed here and taken again by a later fork of the same parser, in the same or a
+ * later parse, so a parser reused for many inputs settles on a fixed set of stacks and arrays. The arena belongs to
+ * its parser and, like the parser, is used by one thread at a time: there is no lock, and parsers running on other
+ * threads never share or clear each other's stacks.
+ *
+ * @author huizi 2024
+ */
+final class StackArena {
+    private final ArrayDeque<MsllStack> free = new ArrayDeque<>();
+
+    /**
+     * @return a freed stack, or {@code null} if there is none
+     */
+    MsllStack poll() {
+        return this.free.pollLast();
+    }
+
+    void offer(MsllStack stack) {
+        this.free.addLast(stack);
+    }
+
+    int size() {
+        return this.free.size();
+    }
+}
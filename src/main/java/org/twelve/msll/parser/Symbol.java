@@ -1,5 +1,6 @@
 package org.twelve.msll.parser;
 
+import org.twelve.msll.grammar.Grammar;
 import org.twelve.msll.grammarsymbol.NonTerminals;
 import org.twelve.msll.grammarsymbol.SymbolType;
 import org.twelve.msll.grammarsymbol.Terminal;
@@ -31,6 +32,18 @@ public class Symbol<T extends SymbolType> {
      */
     private final String name;
 
+    /**
+     * The grammar a non-terminal symbol expands by, bound when the predict table is built; {@code null} for
+     * terminals and unbound symbols.
+     */
+    private Grammar grammar;
+
+    /**
+     * The predicate a grammar predicate symbol stands for, bound when the parser builder is built; {@code null} for
+     * every other symbol.
+     */
+    private GrammarPredicate predicate;
+
     /**
      * Constructs a symbol with a given type and name.
      *
@@ -78,6 +91,42 @@ public class Symbol<T extends SymbolType> {
         return this.name;
     }
 
+    /**
+     * Binds a non-terminal symbol to the grammar it expands by, so the parser reaches it without a name lookup.
+     *
+     * @param grammar the grammar named by this symbol
+     */
+    public void bind(Grammar grammar) {
+        this.grammar = grammar;
+    }
+
+    /**
+     * Returns the grammar this symbol is bound to.
+     *
+     * @return the grammar, or {@code null} if the symbol is a terminal or was never bound
+     */
+    public Grammar grammar() {
+        return this.grammar;
+    }
+
+    /**
+     * Binds a grammar predicate symbol to its parsed predicate.
+     *
+     * @param predicate the predicate named by this symbol
+     */
+    public void bind(GrammarPredicate predicate) {
+        this.predicate = predicate;
+    }
+
+    /**
+     * Returns the predicate this symbol stands for.
+     *
+     * @return the predicate, or {@code null} if the symbol is no grammar predicate
+     */
+    public GrammarPredicate predicate() {
+        return this.predicate;
+    }
+
     @Override
     public String toString() {
         return this.name() + (this.type == NonTerminals.IGNORED ? "("+ Constants.IGNORED +")" : "");
@@ -0,0 +1,195 @@
+package org.twelve.msll.parser;
+
+import org.twelve.msll.grammar.Factoring;
+import org.twelve.msll.grammarsymbol.Terminals;
+import org.twelve.msll.parsetree.EndNode;
+import org.twelve.msll.parsetree.Flag;
+import org.twelve.msll.parsetree.NonTerminalNode;
+import org.twelve.msll.parsetree.ParseNode;
+import org.twelve.msll.parsetree.TerminalNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the parse tree from the {@link Derivation} log of the stack that survives.
+ * <p>
+ * An LL parse is a leftmost derivation, so a log read oldest first visits the tree in preorder: every expansion
+ * enters a rule whose children follow, every match fills the next terminal, and a rule is left once as many
+ * children as its production has symbols are complete. The builder therefore needs no explicit exit events; it
+ * keeps the nodes still waiting for a step, mirroring the items of the stack it last committed, and attaches each
+ * step in a single pass.
+ * <p>
+ * Only the derivation that survives ever reaches the tree: a log is committed when its stack is the only one left
+ * (everything it did is then part of the result) and when it completes the parse. Nodes of dead forks are never
+ * created, so the tree needs no sweep for expired nodes afterwards; when a whole parse attempt fails, what it
+ * committed is dropped with {@link #discard}.
+ *
+ * @author huizi 2024
+ */
+final class TreeBuilder {
+    private NonTerminalNode start;
+    private final Terminals terminals;
+
+    /**
+     * The nodes for the items of the last committed stack, bottom first; {@code null} where the item is a grammar
+     * predicate, which never gets a node. Every live stack's log continues from here.
+     */
+    private final List<ParseNode> pending = new ArrayList<>();
+
+    /**
+     * Scratch buffer a log is reversed into.
+     */
+    private final List<Derivation> replay = new ArrayList<>();
+
+    /**
+     * The node the current parse attempt derives: the start node, or the node of a recovered statement.
+     */
+    private NonTerminalNode root;
+
+    /**
+     * Whether the nodes of inlined rules are put back, see {@link #setInlinedNodes}.
+     */
+    private boolean inlinedNodes = false;
+
+    TreeBuilder(NonTerminalNode start, Terminals terminals) {
+        this.start = start;
+        this.terminals = terminals;
+    }
+
+    /**
+     * Builds a new tree from {@code start} on; the tree built before is left as it is.
+     */
+    void reset(NonTerminalNode start) {
+        this.start = start;
+        this.replay.clear();
+    }
+
+    /**
+     * Chooses whether the nodes of rules inlined into a production ({@link Factoring.Nest#inlined()}) are put back
+     * around the nodes they derived; by default they are left out, as single child nodes are abstracted anyway.
+     */
+    void setInlinedNodes(boolean enabled) {
+        this.inlinedNodes = enabled;
+    }
+
+    /**
+     * Starts a derivation of {@code root} on {@code stack}: pushes {@code root} on top of the end marker.
+     */
+    void begin(MsllStack stack, NonTerminalNode root) {
+        EndNode end = new EndNode(terminals);
+        end.setFlag(stack.flag());
+        root.setFlag(stack.flag());
+        stack.push(end.symbol(), null);
+        stack.push(root.symbol(), null);
+        this.root = root;
+        this.pending.clear();
+        this.pending.add(end);
+        this.pending.add(root);
+    }
+
+    /**
+     * Materializes the derivation {@code stack} logged since the last commit: creates the children of every
+     * expanded non-terminal and hands matched tokens to their terminal nodes. Only called for a stack that is alone
+     * or has completed the parse, so no other stack still needs the state committed before.
+     */
+    void commit(MsllStack stack) {
+        Derivation derivation = stack.commit();
+        if (derivation == null) return;
+        for (Derivation d = derivation; d != null; d = d.previous) {
+            this.replay.add(d);
+        }
+        List<ParseNode> pending = this.pending;
+        for (int i = this.replay.size() - 1; i >= 0; i--) {
+            Derivation step = this.replay.get(i);
+            ParseNode node;
+            do {
+                // predicate items were popped without being logged
+                node = pending.remove(pending.size() - 1);
+            } while (node == null);
+            if (step.isMatch()) {
+                ((TerminalNode) node).setToken(step.token);
+                continue;
+            }
+            if (step.production == null) continue;
+            NonTerminalNode parent = (NonTerminalNode) node;
+            parent.setExplain(step.explain);
+            int top = pending.size();
+            for (Symbol symbol : step.production) {
+                if (symbol.type() == terminals.EPSILON) continue;
+                if (symbol.predicate() != null) {
+                    pending.add(top, null);
+                    continue;
+                }
+                ParseNode child = symbol.type().parse(symbol);
+                child.setFlag(stack.flag());
+                parent.addNode(child);
+                // the first symbol ends up on top, as on the stack
+                pending.add(top, child);
+            }
+            if (step.production.factoring() != null) unfactor(parent, step.production.factoring(), stack.flag());
+        }
+        this.replay.clear();
+        while (pending.size() > stack.size()) {
+            // trailing predicates popped after the last logged step
+            pending.remove(pending.size() - 1);
+        }
+    }
+
+    /**
+     * Builds the nodes of a production made by left factoring or inlining as the grammar before would have: a
+     * helper's nodes are moved into its parent, so an alternative's nodes end up side by side however the
+     * factored productions cut it, and once it is known which alternative was parsed, that alternative's explain
+     * and rule nodes are given to the node it derives. See {@link Factoring}.
+     */
+    private void unfactor(NonTerminalNode node, Factoring factoring, Flag flag) {
+        NonTerminalNode owner = node;
+        if (factoring.spliced()) {
+            owner = node.parent();
+            owner.addNodes(node.nodes(), owner.removeNode(node));
+        }
+        if (factoring.completes()) owner.setExplain(factoring.explain());
+        nest(owner, factoring.nests(), 0, flag);
+    }
+
+    /**
+     * Puts the rule nodes of {@code nests} back among the nodes of {@code node}, their indexes shifted by
+     * {@code offset}.
+     */
+    private void nest(NonTerminalNode node, List<Factoring.Nest> nests, int offset, Flag flag) {
+        // last first, so the indexes of the nests before are still those of the nodes
+        for (int i = nests.size() - 1; i >= 0; i--) {
+            Factoring.Nest nest = nests.get(i);
+            int from = offset + nest.from();
+            if (nest.inlined() && !this.inlinedNodes) {
+                // the rule's nodes stay where they are, the rules substituted within it are still put back
+                nest(node, nest.nests(), from, flag);
+                continue;
+            }
+            NonTerminalNode rule = nest.symbol().type().parse(nest.symbol());
+            rule.setExplain(nest.explain());
+            rule.setFlag(flag);
+            for (int j = nest.from(); j < nest.to(); j++) {
+                ParseNode child = node.nodeAt(from);
+                node.removeNode(child);
+                rule.addNode(child);
+            }
+            node.addNode(rule, from);
+            nest(rule, nest.nests(), 0, flag);
+        }
+    }
+
+    /**
+     * Drops what the current parse attempt committed once every stack of it has failed.
+     */
+    void discard() {
+        if (this.root == this.start) {
+            for (int i = this.start.nodeCount() - 1; i >= 0; i--) {
+                this.start.removeNode(this.start.nodeAt(i));
+            }
+        } else if (this.root.parent() != null) {
+            this.root.parent().removeNode(this.root);
+        }
+        this.pending.clear();
+    }
+}
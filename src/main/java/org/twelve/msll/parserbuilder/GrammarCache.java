@@ -0,0 +1,259 @@
+package org.twelve.msll.parserbuilder;
+
+import org.twelve.msll.grammar.GrammarBuilder;
+import org.twelve.msll.parser.PredictionCache;
+import org.twelve.msll.util.Tool;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Content-addressed cache of built parser builders.
+ * <p>
+ * A builder is keyed by a SHA-256 digest of its parser and lexer grammar text and its {@link Options}, so asking
+ * again for a grammar already built costs a digest and a lookup instead of the whole grammar pipeline, wherever the
+ * text comes from. A grammar asked for by several threads at once is built once; the others wait for it. A build
+ * that fails is not cached.
+ * <p>
+ * The cache holds at most {@code maximumSize} builders and evicts the least recently used one beyond that;
+ * {@link #invalidate} and {@link #invalidateAll()} drop entries explicitly, e.g. when a grammar file changed.
+ * <p>
+ * The builders returned are shared by every caller of the same key, so they are {@link ParserBuilder#freeze()
+ * frozen} before anyone gets them: creating parsers from them on any thread is safe, and adding predicate functions
+ * to them or changing the settings of their predict table throws {@link IllegalStateException} instead of changing
+ * them for everyone. Callers who need to do so should build a builder of their own.
+ *
+ * @author huizi 2024
+ */
+public final class GrammarCache {
+    /**
+     * The terminals a grammar is built on.
+     */
+    public enum Seed {
+        /**
+         * The Outline token table, as {@link MyParserBuilder} seeds it.
+         */
+        OUTLINE,
+        /**
+         * The structural built-ins only, as {@link MsllParserBuilder} seeds it.
+         */
+        BARE
+    }
+
+    /**
+     * Everything besides the grammar text that makes two builders differ.
+     *
+     * @param seed                 the seed terminals
+     * @param autoEpsilonAlongside see {@link org.twelve.msll.parser.PredictTable#setAutoEpsilonAlongsideEnabled}
+     * @param lookahead            see {@link org.twelve.msll.parser.PredictTable#setLookahead}
+     * @param transforms           the optional grammar rewrites, see {@link GrammarBuilder.Transform}
+     * @param predictionCache      whether the predict table gets a {@link PredictionCache}, see
+     *                             {@link org.twelve.msll.parser.PredictTable#setPredictionCache}; shared by every
+     *                             caller of the builder, as the builder is
+     */
+    public record Options(Seed seed, boolean autoEpsilonAlongside, int lookahead,
+                          Set<GrammarBuilder.Transform> transforms, boolean predictionCache) {
+        /**
+         * The options of {@code new MyParserBuilder(...)}.
+         */
+        public static final Options OUTLINE = new Options(Seed.OUTLINE, false, 1);
+        /**
+         * The options of {@code new MsllParserBuilder(...)}.
+         */
+        public static final Options BARE = new Options(Seed.BARE, false, 1);
+
+        public Options {
+            transforms = Set.copyOf(transforms);
+        }
+
+        /**
+         * Options without a prediction cache.
+         */
+        public Options(Seed seed, boolean autoEpsilonAlongside, int lookahead,
+                       Set<GrammarBuilder.Transform> transforms) {
+            this(seed, autoEpsilonAlongside, lookahead, transforms, false);
+        }
+
+        /**
+         * Options without optional grammar rewrites or a prediction cache.
+         */
+        public Options(Seed seed, boolean autoEpsilonAlongside, int lookahead) {
+            this(seed, autoEpsilonAlongside, lookahead, Set.of());
+        }
+
+        /**
+         * @return these options, with a prediction cache or without one
+         */
+        public Options withPredictionCache(boolean predictionCache) {
+            return new Options(this.seed, this.autoEpsilonAlongside, this.lookahead, this.transforms, predictionCache);
+        }
+    }
+
+    private static final GrammarCache SHARED = new GrammarCache(64);
+
+    private final int maximumSize;
+    private final Map<String, CompletableFuture<MsllParserBuilder>> builders;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * @param maximumSize the number of builders kept; the least recently used one is evicted beyond it
+     */
+    public GrammarCache(int maximumSize) {
+        if (maximumSize < 1) throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+        this.maximumSize = maximumSize;
+        this.builders = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompletableFuture<MsllParserBuilder>> eldest) {
+                return size() > GrammarCache.this.maximumSize;
+            }
+        };
+    }
+
+    /**
+     * @return the process-wide cache, holding up to 64 builders
+     */
+    public static GrammarCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * The cached equivalent of {@code new MyParserBuilder(parserPath, lexerPath)}: the grammar files are read and
+     * digested, and only built if their text was not built before.
+     */
+    public MyParserBuilder my(String parserPath, String lexerPath) throws IOException {
+        return (MyParserBuilder) get(read(parserPath), read(lexerPath), Options.OUTLINE);
+    }
+
+    /**
+     * Returns the builder of the given grammar text and options, building it if it is not cached.
+     *
+     * @param parserGrammar the parser grammar ({@code .gm}) text
+     * @param lexerGrammar  the lexer grammar ({@code .gm}) text
+     * @return a shared, {@link ParserBuilder#freeze() frozen} builder, a {@link MyParserBuilder} for
+     * {@link Seed#OUTLINE}
+     */
+    public MsllParserBuilder get(String parserGrammar, String lexerGrammar, Options options) {
+        String key = key(parserGrammar, lexerGrammar, options);
+        CompletableFuture<MsllParserBuilder> future;
+        boolean owner = false;
+        synchronized (this) {
+            future = this.builders.get(key);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                this.builders.put(key, future);
+                this.misses++;
+                owner = true;
+            } else {
+                this.hits++;
+            }
+        }
+        if (owner) {
+            try {
+                MsllParserBuilder builder = build(parserGrammar, lexerGrammar, options);
+                builder.freeze();
+                future.complete(builder);
+            } catch (RuntimeException | Error e) {
+                synchronized (this) {
+                    this.builders.remove(key, future);
+                }
+                future.completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
+    }
+
+    /**
+     * Drops the builder of the given grammar text and options; the next {@link #get} builds it again.
+     *
+     * @return whether it was cached
+     */
+    public synchronized boolean invalidate(String parserGrammar, String lexerGrammar, Options options) {
+        return this.builders.remove(key(parserGrammar, lexerGrammar, options)) != null;
+    }
+
+    /**
+     * Drops every builder.
+     */
+    public synchronized void invalidateAll() {
+        this.builders.clear();
+    }
+
+    /**
+     * @return the number of builders cached, builds in progress included
+     */
+    public synchronized int size() {
+        return this.builders.size();
+    }
+
+    /**
+     * @return the number of requests served from the cache
+     */
+    public synchronized long hits() {
+        return this.hits;
+    }
+
+    /**
+     * @return the number of requests that built their grammar
+     */
+    public synchronized long misses() {
+        return this.misses;
+    }
+
+    static MsllParserBuilder build(String parserGrammar, String lexerGrammar, Options options) {
+        MsllParserBuilder builder = options.seed() == Seed.OUTLINE
+                ? new MyParserBuilder(new StringReader(parserGrammar), new StringReader(lexerGrammar),
+                options.transforms())
+                : new MsllParserBuilder(new StringReader(parserGrammar), new StringReader(lexerGrammar),
+                options.transforms());
+        builder.predictTable().setAutoEpsilonAlongsideEnabled(options.autoEpsilonAlongside());
+        builder.predictTable().setLookahead(options.lookahead());
+        if (options.predictionCache()) builder.predictTable().setPredictionCache(new PredictionCache());
+        return builder;
+    }
+
+    /**
+     * SHA-256 of the options and the two texts, each text prefixed by its length so no two pairs of texts collide
+     * by construction.
+     */
+    private static String key(String parserGrammar, String lexerGrammar, Options options) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            String transforms = options.transforms().isEmpty() ? "" : EnumSet.copyOf(options.transforms()).toString();
+            digest.update((options.seed() + ";" + options.autoEpsilonAlongside() + ";" + options.lookahead() + ";"
+                    + transforms + ";" + options.predictionCache() + ";").getBytes(StandardCharsets.UTF_8));
+            for (String text : new String[]{parserGrammar, lexerGrammar}) {
+                byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                digest.update((bytes.length + ";").getBytes(StandardCharsets.UTF_8));
+                digest.update(bytes);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String read(String grammarPath) throws IOException {
+        String path = Tool.getGrammarFilePath(grammarPath);
+        if (path == null) throw new IOException("grammar file not found: " + grammarPath);
+        return Files.readString(Path.of(path));
+    }
+}
@@ -0,0 +1,321 @@
+package org.twelve.msll.parserbuilder;
+
+import org.twelve.msll.parser.MyParser;
+import org.twelve.msll.parser.ParserGrammarReader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A grammar that can change while it serves parses: a handle on the current builder of a parser and lexer grammar
+ * pair, which a new version of the grammar replaces without stopping anything.
+ * <p>
+ * A new version, given as text ({@link #update}) or read from the grammar files the handle {@link #watch watches},
+ * is built on a background thread: incrementally from the current builder when it only changes or adds parser rules
+ * (see {@link MsllParserBuilder#rebuild(Reader)}), from scratch otherwise. The new builder is then validated by
+ * parsing the sample corpus, and only if every sample parses does it replace the current one, atomically: parses
+ * started after the swap use the new builder, parses in flight finish on the builder they started with. A version
+ * that fails to build or to parse a sample is rejected and the current builder stays; {@link #lastError()} tells
+ * why. A version with the same rules as the current one (only comments or layout changed) is the current one: it is
+ * neither swapped in nor counted.
+ * <p>
+ * Versions are built one at a time, in the order they were given. Counters of rebuilds, swaps and failures and the
+ * time spent rebuilding are kept for monitoring.
+ * <p>
+ * The builders of a handle are {@link ParserBuilder#freeze() frozen} before they are put in use, so predicate
+ * functions must be added globally ({@link org.twelve.msll.parser.GrammarPredicate#addFunction}).
+ *
+ * @author huizi 2024
+ */
+public final class GrammarHandle implements AutoCloseable {
+    /**
+     * How long the watcher waits for more changes after a grammar file changed, so that an editor saving both
+     * files, or writing one in several steps, causes one rebuild.
+     */
+    private static final Duration SETTLE = Duration.ofMillis(100);
+
+    /**
+     * A version of the grammar: its text and its builder.
+     */
+    private record Version(MsllParserBuilder builder, String parserGrammar, String lexerGrammar, long number) {
+    }
+
+    private final GrammarCache.Options options;
+    private final List<Source> corpus;
+    private final ExecutorService rebuilder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "msll-grammar-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile Version current;
+    private WatchService watchService = null;
+
+    private long rebuilds = 0;
+    private long swaps = 0;
+    private long failures = 0;
+    private long lastRebuildNanos = 0;
+    private long totalRebuildNanos = 0;
+    private Throwable lastError = null;
+
+    /**
+     * Builds the first version of the grammar, on the calling thread.
+     *
+     * @param parserGrammar the parser grammar ({@code .gm}) text
+     * @param lexerGrammar  the lexer grammar ({@code .gm}) text
+     * @param options       the seed terminals and predict table settings of every version
+     * @param corpus        the samples every version must parse; may be empty
+     * @throws IllegalArgumentException if a sample does not parse with the first version
+     */
+    public GrammarHandle(String parserGrammar, String lexerGrammar, GrammarCache.Options options,
+                         List<? extends Source> corpus) {
+        this.options = options;
+        this.corpus = List.copyOf(corpus);
+        MsllParserBuilder builder = GrammarCache.build(parserGrammar, lexerGrammar, options);
+        builder.freeze();
+        Exception invalid = validate(builder);
+        if (invalid != null) throw new IllegalArgumentException(invalid.getMessage(), invalid.getCause());
+        this.current = new Version(builder, parserGrammar, lexerGrammar, 1);
+    }
+
+    /**
+     * Creates a handle on the grammar in the given files, which builds a new version whenever one of them changes.
+     *
+     * @see #GrammarHandle(String, String, GrammarCache.Options, List)
+     */
+    public static GrammarHandle watch(Path parserFile, Path lexerFile, GrammarCache.Options options,
+                                      List<? extends Source> corpus) throws IOException {
+        GrammarHandle handle = new GrammarHandle(Files.readString(parserFile), Files.readString(lexerFile), options,
+                corpus);
+        handle.startWatching(parserFile, lexerFile);
+        return handle;
+    }
+
+    /**
+     * @return the builder of the current version; a parse keeps the builder it started with
+     */
+    public MsllParserBuilder builder() {
+        return this.current.builder();
+    }
+
+    /**
+     * Creates a parser of the current version.
+     */
+    public MyParser createParser(Reader reader) {
+        return builder().createParser(reader);
+    }
+
+    /**
+     * Creates a parser of the current version.
+     */
+    public MyParser createParser(String code) {
+        return builder().createParser(code);
+    }
+
+    /**
+     * @return the number of the current version, 1 for the first one and one more for every swap
+     */
+    public long version() {
+        return this.current.number();
+    }
+
+    /**
+     * Builds, validates and swaps in a new version of the grammar, on the background thread.
+     *
+     * @param parserGrammar the new parser grammar text
+     * @param lexerGrammar  the new lexer grammar text
+     * @return completes with whether the version is in use: {@code true} if it was swapped in or is the current one,
+     * {@code false} if it was rejected
+     */
+    public CompletableFuture<Boolean> update(String parserGrammar, String lexerGrammar) {
+        return CompletableFuture.supplyAsync(() -> rebuild(parserGrammar, lexerGrammar), this.rebuilder);
+    }
+
+    private boolean rebuild(String parserGrammar, String lexerGrammar) {
+        Version version = this.current;
+        if (version.parserGrammar().equals(parserGrammar) && version.lexerGrammar().equals(lexerGrammar)) {
+            return true;
+        }
+        long start = System.nanoTime();
+        MsllParserBuilder builder;
+        Throwable error;
+        try {
+            builder = build(version, parserGrammar, lexerGrammar);
+            if (builder == version.builder()) {
+                // the same rules (only comments or layout changed): the current version, under its new text
+                this.current = new Version(builder, parserGrammar, lexerGrammar, version.number());
+                return true;
+            }
+            builder.freeze();
+            error = validate(builder);
+        } catch (Throwable e) {
+            builder = null;
+            error = e;
+        }
+        if (error == null) {
+            this.current = new Version(builder, parserGrammar, lexerGrammar, version.number() + 1);
+        }
+        record(System.nanoTime() - start, error);
+        return error == null;
+    }
+
+    private MsllParserBuilder build(Version version, String parserGrammar, String lexerGrammar) {
+        if (version.lexerGrammar().equals(lexerGrammar)) {
+            MsllParserBuilder rebuilt = version.builder()
+                    .rebuild(new ParserGrammarReader(new StringReader(parserGrammar)).read());
+            if (rebuilt != null) return rebuilt;
+        }
+        return GrammarCache.build(parserGrammar, lexerGrammar, this.options);
+    }
+
+    /**
+     * Parses the corpus with the builder.
+     *
+     * @return the error of the first sample that does not parse, or {@code null} if all parse
+     */
+    private Exception validate(MsllParserBuilder builder) {
+        if (this.corpus.isEmpty()) return null;
+        List<ParseResult> results = builder.parseAll(this.corpus, Runtime.getRuntime().availableProcessors()).join();
+        for (ParseResult result : results) {
+            if (!result.succeeded()) {
+                return new IllegalStateException("sample " + result.source().name() + " does not parse: "
+                        + result.error().getMessage(), result.error());
+            }
+        }
+        return null;
+    }
+
+    private synchronized void record(long nanos, Throwable error) {
+        this.rebuilds++;
+        this.lastRebuildNanos = nanos;
+        this.totalRebuildNanos += nanos;
+        if (error == null) {
+            this.swaps++;
+        } else {
+            this.failures++;
+            this.lastError = error;
+        }
+    }
+
+    private synchronized void recordFailure(Exception error) {
+        this.failures++;
+        this.lastError = error;
+    }
+
+    /**
+     * @return the number of versions built, rejected ones included; a version with the rules of the current one is
+     * not built
+     */
+    public synchronized long rebuilds() {
+        return this.rebuilds;
+    }
+
+    /**
+     * @return the number of versions swapped in after the first one
+     */
+    public synchronized long swaps() {
+        return this.swaps;
+    }
+
+    /**
+     * @return the number of versions rejected, and of watched changes whose files could not be read
+     */
+    public synchronized long failures() {
+        return this.failures;
+    }
+
+    /**
+     * @return why the last rejected version was rejected, or {@code null} if none was
+     */
+    public synchronized Throwable lastError() {
+        return this.lastError;
+    }
+
+    /**
+     * @return the time the last version took to build and validate
+     */
+    public synchronized Duration lastRebuildTime() {
+        return Duration.ofNanos(this.lastRebuildNanos);
+    }
+
+    /**
+     * @return the time all versions took to build and validate
+     */
+    public synchronized Duration totalRebuildTime() {
+        return Duration.ofNanos(this.totalRebuildNanos);
+    }
+
+    private void startWatching(Path parserFile, Path lexerFile) throws IOException {
+        Path parser = parserFile.toAbsolutePath();
+        Path lexer = lexerFile.toAbsolutePath();
+        this.watchService = FileSystems.getDefault().newWatchService();
+        for (Path dir : new LinkedHashSet<>(List.of(parser.getParent(), lexer.getParent()))) {
+            dir.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+        Thread watcher = new Thread(() -> watch(parser, lexer), "msll-grammar-watch");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watch(Path parser, Path lexer) {
+        try {
+            while (true) {
+                if (!concerns(this.watchService.take(), parser, lexer)) continue;
+                // let the change settle, taking the events it causes meanwhile
+                Thread.sleep(SETTLE.toMillis());
+                for (WatchKey key = this.watchService.poll(); key != null; key = this.watchService.poll()) {
+                    concerns(key, parser, lexer);
+                }
+                try {
+                    update(Files.readString(parser), Files.readString(lexer));
+                } catch (IOException e) {
+                    recordFailure(e);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException | RejectedExecutionException e) {
+            // closed
+        }
+    }
+
+    /**
+     * Takes the events of a watch key.
+     *
+     * @return whether one of them concerns a grammar file
+     */
+    private static boolean concerns(WatchKey key, Path parser, Path lexer) {
+        boolean concerns = false;
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.context() instanceof Path name) {
+                Path file = dir.resolve(name);
+                concerns |= file.equals(parser) || file.equals(lexer);
+            }
+        }
+        key.reset();
+        return concerns;
+    }
+
+    /**
+     * Stops watching the grammar files and building new versions; the current version stays usable.
+     */
+    @Override
+    public void close() throws IOException {
+        this.rebuilder.shutdownNow();
+        if (this.watchService != null) this.watchService.close();
+    }
+}
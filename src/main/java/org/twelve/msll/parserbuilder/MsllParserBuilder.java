@@ -1,14 +1,23 @@
 package org.twelve.msll.parserbuilder;
 
+import org.twelve.msll.grammar.GrammarBuilder;
+import org.twelve.msll.grammar.GrammarSnapshot;
+import org.twelve.msll.grammar.IncrementalGrammarBuilder;
+import org.twelve.msll.grammar.ParserRules;
 import org.twelve.msll.grammar.ParserTreeGrammarBuilder;
 import org.twelve.msll.grammarsymbol.NonTerminals;
 import org.twelve.msll.grammarsymbol.Terminals;
+import org.twelve.msll.parser.LexerRuleReader;
 import org.twelve.msll.parser.MyParser;
+import org.twelve.msll.parser.ParserGrammarReader;
 import org.twelve.msll.parser.PredictTable;
 import org.twelve.msll.parsetree.LexerRuleTree;
 import org.twelve.msll.parsetree.ParserGrammarTree;
 
+import java.io.IOException;
 import java.io.Reader;
+import java.nio.file.Path;
+import java.util.Set;
 
 /**
  * Builds an MSLL runtime parser from a {@code (parser.gm, lexer.gm)} pair
@@ -38,6 +47,16 @@ public class MsllParserBuilder extends ParserBuilder<ParserTreeGrammarBuilder, M
 
     private final ParserGrammarTree parserGrammarTree;
     private final LexerRuleTree lexerRuleTree;
+    /**
+     * The parser rules the grammars were built from, collected from {@link #parserGrammarTree} on the first
+     * {@link #rebuild}; {@code null} for a builder restored from a snapshot.
+     */
+    private ParserRules rules;
+    /**
+     * The optional grammar rewrites the grammars were built with; a
+     * {@link #rebuild} runs them too.
+     */
+    private final Set<GrammarBuilder.Transform> transforms;
 
     /**
      * Internal constructor: hands fully-parsed grammar trees and the seed
@@ -48,22 +67,154 @@ public class MsllParserBuilder extends ParserBuilder<ParserTreeGrammarBuilder, M
                                 LexerRuleTree lexerRuleTree,
                                 NonTerminals nonTerminals,
                                 Terminals terminals) {
-        super(new ParserTreeGrammarBuilder(parserGrammarTree, lexerRuleTree,
-                nonTerminals, terminals));
+        this(parserGrammarTree, lexerRuleTree, nonTerminals, terminals, Set.of());
+    }
+
+    /**
+     * Internal constructor building the grammars with the given optional
+     * rewrites, see {@link GrammarBuilder.Transform}.
+     */
+    protected MsllParserBuilder(ParserGrammarTree parserGrammarTree,
+                                LexerRuleTree lexerRuleTree,
+                                NonTerminals nonTerminals,
+                                Terminals terminals,
+                                Set<GrammarBuilder.Transform> transforms) {
+        super(transforming(new ParserTreeGrammarBuilder(parserGrammarTree, lexerRuleTree,
+                nonTerminals, terminals), transforms));
         this.parserGrammarTree = parserGrammarTree;
         this.lexerRuleTree = lexerRuleTree;
+        this.transforms = Set.copyOf(transforms);
     }
 
     /**
-     * Public bare entry: parses the two grammar sources and seeds with
+     * Public bare entry: reads the two grammar sources and seeds with
      * {@link Terminals#newBare()} / {@link NonTerminals#newMy()}. The
      * latter is already a non-shared, non-Outline-specific factory.
+     * <p>
+     * The sources are read by a {@link ParserGrammarReader} and a
+     * {@link LexerRuleReader}, which produce the trees the grammar parsers
+     * ({@link ParserGrammarParserBuilder}, {@link LexerRuleParserBuilder})
+     * would, without building and running those parsers.
      */
     public MsllParserBuilder(Reader parserReader, Reader lexerReader) {
-        this(new ParserGrammarParserBuilder().createParser(parserReader).parse(),
-             new LexerRuleParserBuilder().createParser(lexerReader).parse(),
+        this(parserReader, lexerReader, Set.of());
+    }
+
+    /**
+     * Bare entry building the grammars with the given optional rewrites,
+     * e.g. {@link GrammarBuilder.Transform#LEFT_FACTORING}; the parse trees
+     * are those of the grammar as written.
+     */
+    public MsllParserBuilder(Reader parserReader, Reader lexerReader,
+                             Set<GrammarBuilder.Transform> transforms) {
+        this(new ParserGrammarReader(parserReader).read(),
+             new LexerRuleReader(lexerReader).read(),
              NonTerminals.newMy(),
-             Terminals.newBare());
+             Terminals.newBare(),
+             transforms);
+    }
+
+    /**
+     * Restoring constructor, see {@link #load(Path)}. There are no grammar
+     * trees: {@link #parserGrammarTree()} and {@link #lexerGrammarTree()}
+     * return {@code null}.
+     */
+    protected MsllParserBuilder(GrammarSnapshot snapshot) {
+        super(snapshot);
+        this.parserGrammarTree = null;
+        this.lexerRuleTree = null;
+        this.transforms = Set.of();
+    }
+
+    /**
+     * Rebuilding constructor, see {@link #rebuild(Reader)}. There is no
+     * parser grammar tree: the rules are those merged.
+     */
+    protected MsllParserBuilder(MsllParserBuilder previous, ParserRules rules) {
+        super(transforming(new IncrementalGrammarBuilder(rules, previous.grammars,
+                NonTerminals.newMy(), previous.terminals.copy()), previous.transforms), previous);
+        this.parserGrammarTree = null;
+        this.lexerRuleTree = previous.lexerRuleTree;
+        this.rules = rules;
+        this.transforms = previous.transforms;
+    }
+
+    private static <B extends GrammarBuilder> B transforming(B builder, Set<GrammarBuilder.Transform> transforms) {
+        builder.setTransforms(transforms);
+        return builder;
+    }
+
+    /**
+     * @return the optional grammar rewrites the grammars were built with;
+     * empty for a builder restored from a snapshot, whose grammars are as
+     * they were saved
+     */
+    public Set<GrammarBuilder.Transform> transforms() {
+        return this.transforms;
+    }
+
+    /**
+     * Builds the parser of this grammar with some of its parser rules
+     * replaced or added, without building the untouched part again: the
+     * lexer rules and terminals are kept, FIRST/FOLLOW (and lookahead) sets
+     * are recomputed only for the grammars the change reaches, and so are
+     * the predict table rows; {@link PredictTable#changes()} of the result
+     * tells which cells changed. This builder is left as it is and keeps
+     * serving its parsers.
+     * <p>
+     * A rule in {@code changedRules} replaces the rule of the same name, a
+     * rule of a new name is added; the first rule of the grammar stays the
+     * start rule. Lexer rules cannot change this way.
+     *
+     * @param changedRules parser rules in the {@code parser.gm} format; the
+     *                     {@code parser grammar} header may be left out
+     * @return the rebuilt builder
+     * @throws IllegalStateException if this builder was restored from a
+     *                               snapshot, which keeps no rules
+     */
+    public MsllParserBuilder rebuild(Reader changedRules) {
+        ParserRules changed = ParserRules.of(new ParserGrammarReader(changedRules).read());
+        return new MsllParserBuilder(this, rules().with(changed));
+    }
+
+    /**
+     * Rebuilds this grammar for another version of its parser grammar,
+     * as {@link #rebuild(Reader)} does for the rules the new version
+     * changes or adds.
+     *
+     * @return the rebuilt builder, this builder if the new version has
+     * the same rules, or {@code null} if it cannot be had by replacing
+     * and adding rules (it drops a rule, or starts with another one) or
+     * this builder was restored from a snapshot
+     */
+    MsllParserBuilder rebuild(ParserGrammarTree parserGrammarTree) {
+        if (this.rules == null && this.parserGrammarTree == null) return null;
+        ParserRules changed = rules().changedIn(ParserRules.of(parserGrammarTree));
+        if (changed == null) return null;
+        return changed.isEmpty() ? this : new MsllParserBuilder(this, rules().with(changed));
+    }
+
+    private synchronized ParserRules rules() {
+        if (this.rules == null) {
+            if (this.parserGrammarTree == null) {
+                throw new IllegalStateException("a builder restored from a snapshot has no rules to rebuild");
+            }
+            this.rules = ParserRules.of(this.parserGrammarTree);
+        }
+        return this.rules;
+    }
+
+    /**
+     * Restores a builder from a snapshot written by {@link #save(Path)},
+     * ready to parse: the grammar sources are not parsed again and no
+     * FIRST/FOLLOW or predict table computation runs. The settings of the
+     * saved predict table (auto epsilon-alongside, lookahead) come with it.
+     *
+     * @throws IOException if the snapshot cannot be read or is of another
+     *                     {@link GrammarSnapshot#VERSION}
+     */
+    public static MsllParserBuilder load(Path path) throws IOException {
+        return new MsllParserBuilder(GrammarSnapshot.load(path));
     }
 
     @Override
@@ -1,7 +1,10 @@
 package org.twelve.msll.parserbuilder;
 
+import org.twelve.msll.grammar.GrammarBuilder;
 import org.twelve.msll.grammarsymbol.NonTerminals;
 import org.twelve.msll.grammarsymbol.Terminals;
+import org.twelve.msll.parser.LexerRuleReader;
+import org.twelve.msll.parser.ParserGrammarReader;
 import org.twelve.msll.parsetree.LexerRuleTree;
 import org.twelve.msll.parsetree.ParserGrammarTree;
 import org.twelve.msll.util.Tool;
@@ -9,6 +12,7 @@ import org.twelve.msll.util.Tool;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.util.Set;
 
 /**
  * Outline-flavoured wrapper around {@link MsllParserBuilder}.
@@ -31,12 +35,13 @@ import java.io.Reader;
  */
 public class MyParserBuilder extends MsllParserBuilder {
 
-    private MyParserBuilder(ParserGrammarTree parserGrammarTree, LexerRuleTree lexerRuleTree) {
+    private MyParserBuilder(ParserGrammarTree parserGrammarTree, LexerRuleTree lexerRuleTree,
+                            Set<GrammarBuilder.Transform> transforms) {
         // Outline seeds: a fresh NonTerminals plus the full Outline token table
         // (Terminals.newMy). Fresh instances per build avoid cross-grammar leak
         // of registered lexer rules - see Terminals#newMy / NonTerminals#newMy.
         super(parserGrammarTree, lexerRuleTree,
-                NonTerminals.newMy(), Terminals.newMy());
+                NonTerminals.newMy(), Terminals.newMy(), transforms);
     }
 
     /**
@@ -44,10 +49,8 @@ public class MyParserBuilder extends MsllParserBuilder {
      * lookup helper. Equivalent to wrapping the files in {@link FileReader}s.
      */
     public MyParserBuilder(String parserPath, String lexerPath) throws IOException {
-        this(new ParserGrammarParserBuilder()
-                        .createParser(new FileReader(Tool.getGrammarFilePath(parserPath))).parse(),
-             new LexerRuleParserBuilder()
-                        .createParser(new FileReader(Tool.getGrammarFilePath(lexerPath))).parse());
+        this(new ParserGrammarReader(new FileReader(Tool.getGrammarFilePath(parserPath))).read(),
+             new LexerRuleReader(new FileReader(Tool.getGrammarFilePath(lexerPath))).read(), Set.of());
     }
 
     /**
@@ -55,7 +58,15 @@ public class MyParserBuilder extends MsllParserBuilder {
      * provide grammar sources from network streams, in-memory strings, etc.
      */
     public MyParserBuilder(Reader parserReader, Reader lexerReader) {
-        this(new ParserGrammarParserBuilder().createParser(parserReader).parse(),
-             new LexerRuleParserBuilder().createParser(lexerReader).parse());
+        this(parserReader, lexerReader, Set.of());
+    }
+
+    /**
+     * Reads grammar definitions from {@link Reader}s and builds the grammars
+     * with the given optional rewrites, see {@link GrammarBuilder.Transform}.
+     */
+    public MyParserBuilder(Reader parserReader, Reader lexerReader, Set<GrammarBuilder.Transform> transforms) {
+        this(new ParserGrammarReader(parserReader).read(),
+             new LexerRuleReader(lexerReader).read(), transforms);
     }
 }
@@ -0,0 +1,45 @@
+package org.twelve.msll.parserbuilder;
+
+import org.twelve.msll.parsetree.ParserTree;
+
+import static org.twelve.msll.util.Tool.cast;
+
+/**
+ * The outcome of parsing one {@link Source} in a batch: its tree, or the error that stopped it.
+ *
+ * @author huizi 2024
+ */
+public class ParseResult {
+    private final Source source;
+    private final ParserTree tree;
+    private final Throwable error;
+
+    public ParseResult(Source source, ParserTree tree, Throwable error) {
+        this.source = source;
+        this.tree = tree;
+        this.error = error;
+    }
+
+    public Source source() {
+        return this.source;
+    }
+
+    /**
+     * @return the parse tree, {@code null} if the source failed
+     */
+    public <T extends ParserTree> T tree() {
+        return cast(this.tree);
+    }
+
+    /**
+     * @return what stopped the parse (a syntax error, an error reading the source, or anything else the parser
+     * threw), {@code null} on success
+     */
+    public Throwable error() {
+        return this.error;
+    }
+
+    public boolean succeeded() {
+        return this.error == null;
+    }
+}
@@ -1,14 +1,30 @@
 package org.twelve.msll.parserbuilder;
 
 import org.twelve.msll.grammar.GrammarBuilder;
+import org.twelve.msll.grammar.GrammarSnapshot;
 import org.twelve.msll.grammar.Grammars;
 import org.twelve.msll.grammarsymbol.NonTerminals;
 import org.twelve.msll.grammarsymbol.Terminals;
 import org.twelve.msll.parser.MsllParser;
+import org.twelve.msll.parser.PredicateRegistry;
 import org.twelve.msll.parser.PredictTable;
 
+import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 /**
  * Abstract ParserBuilder class responsible for building a parser based on the provided grammars.
@@ -39,12 +55,21 @@ public abstract class ParserBuilder<B extends GrammarBuilder, P extends MsllPars
      * The set of terminal symbols used in the grammar.
      */
     protected final Terminals terminals;
+    /**
+     * The grammar predicate functions of this builder, with the grammars' predicates bound to them
+     */
+    protected final PredicateRegistry predicates;
+    /**
+     * Whether the builder may no longer change, see {@link #freeze()}
+     */
+    private volatile boolean frozen = false;
 
     /**
      * Constructor to initialize the ParserBuilder with the provided GrammarBuilder.
      *
      * The constructor initializes the terminals and non-terminals from the grammar builder,
-     * builds the grammars, and constructs the predict table based on the provided grammar.
+     * builds the grammars, binds their predicates, constructs the predict table based on the
+     * provided grammar and {@link #compile() compiles} the result.
      *
      * @param grammarBuilder The GrammarBuilder used to define and construct the grammar.
      */
@@ -53,7 +78,113 @@ public abstract class ParserBuilder<B extends GrammarBuilder, P extends MsllPars
         this.terminals = grammarBuilder.terminals();
         initProductions(grammarBuilder);
         this.grammars = grammarBuilder.build();
+        this.predicates = new PredicateRegistry(this.grammars);
         this.predictTable = new PredictTable(this.grammars);
+        compile();
+    }
+
+    /**
+     * Constructor rebuilding the grammar of {@code previous} after some of its rules changed.
+     *
+     * The grammar builder builds the grammars from the changed rules and the grammars of {@code previous} (see
+     * {@link org.twelve.msll.grammar.IncrementalGrammarBuilder}); the predicates are bound to the functions of
+     * {@code previous}, and the predict table is {@link PredictTable#rebuild rebuilt} from the one of
+     * {@code previous}, with its settings. {@code previous} is left as it is, so its parsers keep running; if it is
+     * {@link #freeze() frozen}, so is the rebuilt builder.
+     *
+     * @param grammarBuilder The GrammarBuilder rebuilding the grammar.
+     * @param previous       The builder of the grammar before the change.
+     */
+    protected ParserBuilder(B grammarBuilder, ParserBuilder<?, ?> previous) {
+        this.nonTerminals = grammarBuilder.nonTerminals();
+        this.terminals = grammarBuilder.terminals();
+        initProductions(grammarBuilder);
+        this.grammars = grammarBuilder.build();
+        this.predicates = new PredicateRegistry(this.grammars, previous.predicates);
+        this.predictTable = PredictTable.rebuild(this.grammars, previous.predictTable);
+        if (previous.isFrozen()) {
+            freeze();
+        } else {
+            compile();
+        }
+    }
+
+    /**
+     * Constructor restoring a grammar built before, see {@link #save(Path)}.
+     *
+     * The grammars, symbols and predict table cells are taken as they were saved; only the predicates are bound
+     * again and the result {@link #compile() compiled}, so none of the grammar pipeline runs.
+     *
+     * @param snapshot The saved grammar.
+     */
+    protected ParserBuilder(GrammarSnapshot snapshot) {
+        this.nonTerminals = snapshot.nonTerminals();
+        this.terminals = snapshot.terminals();
+        this.grammars = snapshot.grammars();
+        this.predicates = new PredicateRegistry(this.grammars);
+        this.predictTable = new PredictTable(this.grammars, snapshot.cells());
+        this.predictTable.setAutoEpsilonAlongsideEnabled(snapshot.autoEpsilonAlongside());
+        this.predictTable.setLookahead(snapshot.lookahead());
+        compile();
+    }
+
+    /**
+     * Saves the built grammar of this builder as a {@link GrammarSnapshot}, together with the settings of its
+     * predict table, so that {@link MsllParserBuilder#load(Path)} can restore a builder ready to parse without
+     * running the grammar pipeline again.
+     *
+     * @param path the snapshot file; replaced if it exists
+     */
+    public void save(Path path) throws IOException {
+        GrammarSnapshot.save(path, this.grammars, this.nonTerminals, this.terminals, this.predictTable);
+    }
+
+    /**
+     * Computes everything parsing would otherwise compute lazily on the shared grammar (compiled terminal patterns,
+     * per-mode terminal arrays), so that parsing only reads it. The terminals are told which of them the grammars
+     * expect (see {@link Terminals#expect}), so the lexer spends less on the others.
+     * <p>
+     * Called at the end of construction; call it again only after changing the grammar's terminals by hand.
+     *
+     * @return this builder
+     */
+    public ParserBuilder<B, P> compile() {
+        this.terminals.expect(this.grammars.expectedTerminals()).compile();
+        return this;
+    }
+
+    /**
+     * {@link #compile() Compiles} the grammar and stops the builder from changing: its terminals, the settings of
+     * its predict table and its predicate functions throw {@link IllegalStateException} when changed from then on,
+     * so any number of parsers created by this builder may run on any threads without synchronization and all
+     * parse alike. Configure the builder first, then freeze it before sharing it; freezing it again does nothing.
+     * <p>
+     * Construction compiles but does not freeze: the predict table settings
+     * ({@link PredictTable#setLookahead lookahead}, {@link PredictTable#setPredictionCache prediction cache},
+     * auto epsilon-alongside) and the functions of {@link #predicates()} are set on a constructed builder, and taking
+     * them all through the constructors would multiply constructors every subclass has to repeat. Freezing is the
+     * step between configuring a builder and sharing it, which {@link GrammarCache} and {@link GrammarHandle} take
+     * for the builders they hand out.
+     *
+     * @return this builder
+     */
+    public ParserBuilder<B, P> freeze() {
+        synchronized (this) {
+            if (this.frozen) return this;
+            compile();
+            this.terminals.freeze();
+            this.predictTable.freeze();
+            this.predicates.freeze();
+            this.frozen = true;
+        }
+        return this;
+    }
+
+    /**
+     * @return whether the builder is {@link #freeze() frozen}
+     */
+    public boolean isFrozen() {
+        return this.frozen;
     }
 
     /**
@@ -100,6 +231,87 @@ public abstract class ParserBuilder<B extends GrammarBuilder, P extends MsllPars
         return this.createParser(new StringReader(code));
     }
 
+    /**
+     * Parses many sources concurrently on virtual threads, at most {@code concurrency} at a time.
+     *
+     * @return the results in input order, once every source is done
+     * @see #parseAll(Collection, int, Executor, Consumer)
+     */
+    public CompletableFuture<List<ParseResult>> parseAll(Collection<? extends Source> sources, int concurrency) {
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        return parseAll(sources, concurrency, executor, result -> {
+        }).whenComplete((results, error) -> executor.shutdown());
+    }
+
+    /**
+     * Parses many sources concurrently.
+     * <p>
+     * Up to {@code concurrency} workers run on {@code executor}; each takes the next source not yet taken, so the
+     * work balances itself whatever the sizes of the sources. A worker creates one parser and {@link
+     * MsllParser#reset(Reader) resets} it for every further source, which reuses its lexer buffers and stacks; each
+     * result still gets a tree of its own. A source that fails to open or to parse, whatever it throws, yields a result
+     * holding the error, and the batch goes on; the worker creates a new parser for its next source, as the failed
+     * one may be left in any state.
+     * <p>
+     * An error thrown by {@code onResult} does not stop the batch either: once every source is done, the returned
+     * future completes exceptionally with the first such error, the later ones suppressed by it.
+     *
+     * @param concurrency maximum number of sources parsed at the same time
+     * @param executor    runs the workers, e.g. a virtual-thread executor or a pool of the caller's
+     * @param onResult    receives every result as soon as it is ready, i.e. in completion order, on the worker thread
+     * @return the results in input order, once every source is done
+     */
+    public CompletableFuture<List<ParseResult>> parseAll(Collection<? extends Source> sources, int concurrency,
+                                                         Executor executor, Consumer<? super ParseResult> onResult) {
+        List<Source> inputs = new ArrayList<>(sources);
+        ParseResult[] results = new ParseResult[inputs.size()];
+        AtomicInteger next = new AtomicInteger();
+        AtomicReference<Throwable> callbackError = new AtomicReference<>();
+        int workers = Math.max(1, Math.min(concurrency, inputs.size()));
+        CompletableFuture<?>[] running = new CompletableFuture<?>[workers];
+        for (int w = 0; w < workers; w++) {
+            running[w] = CompletableFuture.runAsync(() -> {
+                P parser = null;
+                for (int i = next.getAndIncrement(); i < inputs.size(); i = next.getAndIncrement()) {
+                    Source source = inputs.get(i);
+                    ParseResult result;
+                    try (Reader reader = source.open()) {
+                        if (parser == null) {
+                            parser = createParser(reader);
+                        } else {
+                            parser.reset(reader);
+                        }
+                        result = new ParseResult(source, parser.parse(), null);
+                    } catch (Throwable e) {
+                        result = new ParseResult(source, null, e);
+                        parser = null;
+                    }
+                    results[i] = result;
+                    try {
+                        onResult.accept(result);
+                    } catch (Throwable e) {
+                        if (!callbackError.compareAndSet(null, e)) callbackError.get().addSuppressed(e);
+                    }
+                }
+            }, executor);
+        }
+        return CompletableFuture.allOf(running).thenApply(done -> {
+            Throwable error = callbackError.get();
+            if (error != null) throw new CompletionException(error);
+            return Arrays.asList(results);
+        });
+    }
+
+    /**
+     * Retrieves the grammar predicate functions of this builder; a function added here applies to the parsers of
+     * this builder only.
+     *
+     * @return the predicate registry of this builder
+     */
+    public PredicateRegistry predicates() {
+        return this.predicates;
+    }
+
     /**
      * Retrieves the terminal symbols used in the grammar.
      *
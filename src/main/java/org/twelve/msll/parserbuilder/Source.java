@@ -0,0 +1,60 @@
+package org.twelve.msll.parserbuilder;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * An input of a batch parse ({@link ParserBuilder#parseAll}): a name to report it by and a way to open it. A source
+ * is opened once, by the thread that parses it, and closed right after.
+ *
+ * @author huizi 2024
+ */
+public interface Source {
+    /**
+     * @return the name the source is reported by, e.g. its path
+     */
+    String name();
+
+    /**
+     * @return a new reader over the source
+     */
+    Reader open() throws IOException;
+
+    /**
+     * An in-memory source.
+     */
+    static Source of(String name, CharSequence code) {
+        return new Source() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public Reader open() {
+                return new StringReader(code.toString());
+            }
+        };
+    }
+
+    /**
+     * A UTF-8 file, read when it is parsed.
+     */
+    static Source of(Path path) {
+        return new Source() {
+            @Override
+            public String name() {
+                return path.toString();
+            }
+
+            @Override
+            public Reader open() throws IOException {
+                return Files.newBufferedReader(path, StandardCharsets.UTF_8);
+            }
+        };
+    }
+}
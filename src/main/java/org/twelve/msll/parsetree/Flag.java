@@ -1,42 +1,34 @@
 package org.twelve.msll.parsetree;
 
-import lombok.Getter;
-
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
-
 /**
  * The MSLL stack flag associated with parse nodes.
  * This flag tracks whether a stack has failed during the parsing process.
+ * It is a handle on one id of a {@link Liveness} table, which holds the fork
+ * tree of the parse; stacks themselves only keep the id.
  *
- * If a stack match fails, the associated flag is marked as expired. Nodes
- * with this flag will then be removed during the parse tree's polish phase,
- * ensuring that only valid paths remain in the final parse tree.
+ * If a stack match fails, the associated flag is marked as expired; once
+ * every fork of a stack has expired, so has the stack's own flag. The parser
+ * only attaches nodes for stacks that survive, and a node carries the flag of
+ * the stack that committed it.
  *
  * @return true if the flag is expired (i.e., the stack match failed), false otherwise.
  *
  * @author huizi 2024
  */
 public class Flag {
-    private static final AtomicInteger counter = new AtomicInteger(0);
+    private final Liveness liveness;
     private final int id;
-    private boolean expired = false;
-    private final Flag parent;
-    private final List<Flag> children = new ArrayList<>();
-    private boolean ambiguous = false;
 
     /**
-     * Constructor that links a parent flag to this flag.
-     *
-     * @param parent The parent `StackFlag` (can be null).
+     * Creates a handle on flag {@code id} of {@code liveness}.
      */
-    public Flag(Flag parent) {
-        this.parent = parent;
-        if (parent != null) {
-            parent.children.add(this);
-        }
-        this.id = counter.getAndIncrement();
+    public Flag(Liveness liveness, int id) {
+        this.liveness = liveness;
+        this.id = id;
+    }
+
+    public int id() {
+        return this.id;
     }
 
     /**
@@ -45,35 +37,23 @@ public class Flag {
      * @return True if the flag is expired, false otherwise.
      */
     public boolean expired() {
-        return this.expired;
+        return this.liveness.expired(this.id);
     }
 
     public Boolean isAmbiguous(){
-        return this.ambiguous;
-    }
-    private void setAmbiguous() {
-        this.ambiguous = true;
+        return this.liveness.isAmbiguous(this.id);
     }
 
     public void setAmbiguous(Flag aligned){
-        Flag parent = this;
-        while (parent != aligned) {
-            parent.setAmbiguous();
-            parent = parent.parent();
-        }
+        this.liveness.setAmbiguous(this.id, aligned == null ? -1 : aligned.id);
     }
 
     public void expire() {
-        this.expired = true;
-        if (this.parent != null) {
-            this.parent.children.remove(this);
-            if (this.parent.children.isEmpty()) {
-                this.parent.expire();
-            }
-        }
+        this.liveness.expire(this.id);
     }
 
     public Flag parent() {
-        return this.parent;
+        int parent = this.liveness.parent(this.id);
+        return parent < 0 ? null : new Flag(this.liveness, parent);
     }
 }
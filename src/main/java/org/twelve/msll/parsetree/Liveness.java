@@ -0,0 +1,79 @@
+package org.twelve.msll.parsetree;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Liveness of the stacks of one parse, indexed by flag id.
+ * <p>
+ * Every fork gets the next id and remembers its parent's id; a stack dies by setting its bit, and a parent dies
+ * once its last live child has. The whole fork tree is two int arrays and two bitsets: no object per flag, no
+ * child lists to search on expiry, and checking a flag is a bit test.
+ * <p>
+ * Not thread-safe; one table belongs to one parse.
+ *
+ * @author huizi 2024
+ */
+public class Liveness {
+    private int[] parents = new int[64];
+    private int[] liveChildren = new int[64];
+    private final BitSet expired = new BitSet();
+    private final BitSet ambiguous = new BitSet();
+    private int size = 0;
+
+    /**
+     * Allocates the flag id of a stack.
+     *
+     * @param parent the id of the stack it was forked from, -1 for a stack a parse starts with
+     * @return the new id
+     */
+    public int fork(int parent) {
+        if (size == parents.length) {
+            parents = Arrays.copyOf(parents, size * 2);
+            liveChildren = Arrays.copyOf(liveChildren, size * 2);
+        }
+        parents[size] = parent;
+        if (parent >= 0) liveChildren[parent]++;
+        return size++;
+    }
+
+    /**
+     * Marks {@code id} dead; a parent whose last live child this was dies with it.
+     */
+    public void expire(int id) {
+        while (id >= 0 && !expired.get(id)) {
+            expired.set(id);
+            int parent = parents[id];
+            if (parent < 0 || --liveChildren[parent] > 0) return;
+            id = parent;
+        }
+    }
+
+    public boolean expired(int id) {
+        return expired.get(id);
+    }
+
+    public int parent(int id) {
+        return parents[id];
+    }
+
+    /**
+     * Marks {@code id} and its ancestors up to (excluding) {@code aligned} ambiguous.
+     */
+    public void setAmbiguous(int id, int aligned) {
+        for (int flag = id; flag >= 0 && flag != aligned; flag = parents[flag]) {
+            ambiguous.set(flag);
+        }
+    }
+
+    public boolean isAmbiguous(int id) {
+        return ambiguous.get(id);
+    }
+
+    /**
+     * @return number of ids handed out
+     */
+    public int size() {
+        return size;
+    }
+}
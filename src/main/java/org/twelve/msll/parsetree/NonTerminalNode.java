@@ -1,6 +1,7 @@
 package org.twelve.msll.parsetree;
 
 import lombok.Setter;
+import org.twelve.msll.grammar.Grammar;
 import org.twelve.msll.grammarsymbol.NonTerminal;
 import org.twelve.msll.lexer.Location;
 import org.twelve.msll.parser.Symbol;
@@ -37,6 +38,15 @@ public class NonTerminalNode extends ParseNode<NonTerminal> {
         super(symbol);
     }
 
+    /**
+     * Returns the grammar this node expands by, taken from its symbol.
+     *
+     * @return the grammar, or {@code null} if the symbol was never bound by a predict table
+     */
+    public Grammar grammar() {
+        return this.symbol.grammar();
+    }
+
     public String explain() {
         return this.explain == null ? null : this.explain.trim();
     }
@@ -52,13 +52,12 @@ public class ParserTree {
     /**
      * Polishes the parse tree to remove redundant information generated during parsing.
      * This includes:
-     * - Clearing flags associated with expired stacks (from failed parse paths).
      * - Removing nodes that are marked as ignored.
      * - Eliminating empty non-terminal nodes that do not contribute to the final structure.
+     * Failed parse paths need no sweep: the parser only ever attaches the derivation of the stack that survives.
      */
     public void polish() {
-        this.clearFlags(this.start);
-        this.clearIgnores(this.start, null);
+        this.clearIgnores(this.start);
         this.clearEmptyNonTerminals(this.start);
     }
 
@@ -83,46 +82,36 @@ public class ParserTree {
         }
     }
 
-    /**
-     * Clears nodes that have expired flags, which indicate that the path associated with those nodes failed
-     * in the multi-stack parsing process.
-     * Uses reverse index-based iteration to avoid the defensive-copy overhead of
-     * {@link NonTerminalNode#nodes()}.  Removing the child at index {@code i} only shifts indices
-     * {@code >= i}, so the already-visited prefix (indices {@code < i}) is never affected.
-     *
-     * @param node The current parse node.
-     */
-    private void clearFlags(ParseNode node) {
-        if (node.flag().expired() && node.parent() != null) {
-            node.parent().removeNode(node);
-        } else if (node instanceof NonTerminalNode) {
-            NonTerminalNode ntNode = (NonTerminalNode) node;
-            for (int i = ntNode.nodeCount() - 1; i >= 0; i--) {
-                clearFlags(ntNode.nodeAt(i));
-            }
-        }
-    }
-
     /**
      * Removes intermediate non-terminal nodes that are marked as ignored. These nodes typically come from
      * recursive or layered grammar structures e.g.,
      * statements -> statement statements'
      * statements' -> epsilon | statement statements'
      * statements' with ' end is an ignored node
+     * <p>
+     * Such a list nests as deep as it is long, so the nodes are visited children-first from an explicit worklist
+     * rather than by recursion: a long input must not overflow the thread stack.
      *
-     * @param node   The current non-terminal node.
-     * @param parent The parent node of the current node.
+     * @param root The node whose descendants are cleared.
      */
-    private void clearIgnores(NonTerminalNode node, NonTerminalNode parent) {
-        for (ParseNode child : node.nodes()) {
-            if (child instanceof NonTerminalNode) {
-                clearIgnores(cast(child), node);
+    private void clearIgnores(NonTerminalNode root) {
+        List<NonTerminalNode> order = new ArrayList<>();
+        order.add(root);
+        // every node is appended after its parent, so walking the list backwards sees children first
+        for (int i = 0; i < order.size(); i++) {
+            NonTerminalNode node = order.get(i);
+            for (int j = 0; j < node.nodeCount(); j++) {
+                if (node.nodeAt(j) instanceof NonTerminalNode) {
+                    order.add(cast(node.nodeAt(j)));
+                }
             }
         }
-        if (node.symbol().type() == NonTerminals.IGNORED) {
-            if(node.explain()!=null && !node.explain().isEmpty()) {
-                return;
-            }
+        for (int i = order.size() - 1; i >= 0; i--) {
+            NonTerminalNode node = order.get(i);
+            if (node.symbol().type() != NonTerminals.IGNORED) continue;
+            if (node.explain() != null && !node.explain().isEmpty()) continue;
+            // its parent is flattened (if at all) only after it, so the link is still the original one
+            NonTerminalNode parent = node.parent();
             int index = parent.removeNode(node);
             parent.addNodes(node.nodes(), index);
         }
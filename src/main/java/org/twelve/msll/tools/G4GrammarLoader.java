@@ -1,5 +1,6 @@
 package org.twelve.msll.tools;
 
+import org.twelve.msll.parserbuilder.GrammarCache;
 import org.twelve.msll.parserbuilder.MsllParserBuilder;
 
 import java.io.IOException;
@@ -18,6 +19,8 @@ import java.nio.file.Path;
  * <ol>
  *   <li>{@link G4Splitter#split} &mdash; handles combined grammars by
  *       splitting them into lexer and parser halves based on rule name case.</li>
+ *   <li>{@link G4ActionStripper#strip} &mdash; drops embedded target-language
+ *       actions and semantic predicates, which MSLL cannot evaluate.</li>
  *   <li>{@link G4ImplicitTokens#lift} &mdash; promotes anonymous string
  *       literals in parser rules into named lexer rules, because MSLL only
  *       accepts declared terminals.</li>
@@ -25,14 +28,38 @@ import java.nio.file.Path;
  *       rewrites needed to move from ANTLR4's {@code .g4} dialect to MSLL's
  *       {@code .gm} dialect (drop {@code EOF}, rename the start rule to
  *       {@code root}, strip empty alternatives, etc).</li>
- *   <li>Construct a {@link MyParserBuilder} from the two converted sources.</li>
+ *   <li>Construct a {@link MsllParserBuilder} from the two converted sources,
+ *       which reads them with the hand-written {@code .gm} readers
+ *       ({@link org.twelve.msll.parser.ParserGrammarReader},
+ *       {@link org.twelve.msll.parser.LexerRuleReader}) in one pass each.</li>
  * </ol>
  *
+ * <p>The {@code .g4} text passes stay text to text: {@link Loaded} hands the
+ * converted {@code .gm} sources out for diffing and dumping, and the passes
+ * cost a few percent of loading next to the grammar analysis.
+ *
  * <p>Every stage is re-usable on its own; this class owns nothing but the
  * wiring.
  */
 public final class G4GrammarLoader {
 
+    /** Lookahead depth used to prune forks in G4-loaded grammars (see {@code PredictTable.setLookahead}). */
+    private static final int G4_LOOKAHEAD = 2;
+
+    /**
+     * Bare seeds: {@code Terminals.newBare()} so no Outline built-in tokens (STRING, ++, ==, COMMA, etc.) sneak
+     * into the user grammar's terminal table and out-compete the user's own lexer rules during maximal-munch
+     * matching.
+     * <p>
+     * ANTLR4-style conflict handling is on: any FIRST/FOLLOW cell that the predict table detected as conflicted
+     * will fork the parse stack between its empty and non-empty alternatives at runtime. It is kept off by default
+     * to preserve byte-exact behaviour for legacy .gm grammars that were hand-tuned against the original greedy
+     * semantics. ANTLR4 decides most of those conflicts with a couple of tokens of lookahead; the table gets LL(2)
+     * sets so only the alternatives still viable after the next two tokens are forked.
+     */
+    private static final GrammarCache.Options OPTIONS =
+            new GrammarCache.Options(GrammarCache.Seed.BARE, true, G4_LOOKAHEAD);
+
     private G4GrammarLoader() {}
 
     /**
@@ -87,6 +114,17 @@ public final class G4GrammarLoader {
      *                 combined grammar.
      */
     public static Loaded loadG4String(String lexerG4, String parserG4) {
+        return loadG4String(lexerG4, parserG4, null);
+    }
+
+    /**
+     * Loads a grammar from raw source strings like {@link #loadG4String(String, String)}, taking the builder from
+     * {@code cache} when the converted grammar was built before. The builder is then shared with every other
+     * caller of the same grammar, and {@link org.twelve.msll.parserbuilder.ParserBuilder#freeze() frozen}.
+     *
+     * @param cache the cache to build through, or {@code null} for a builder of the caller's own
+     */
+    public static Loaded loadG4String(String lexerG4, String parserG4, GrammarCache cache) {
         // Normalise the inputs to a (lexer, parser) pair.
         String lexerSrc;
         String parserSrc;
@@ -117,17 +155,14 @@ public final class G4GrammarLoader {
         String lexerGm = G4ToGMConverter.convert(lifted.lexer, true);
         String parserGm = G4ToGMConverter.convert(lifted.parser, false);
 
-        // Bare seeds: Terminals.newBare() so no Outline built-in tokens (STRING,
-        // ++, ==, COMMA, etc.) sneak into the user grammar's terminal table and
-        // out-compete the user's own lexer rules during maximal-munch matching.
-        MsllParserBuilder builder = new MsllParserBuilder(
-                new StringReader(parserGm), new StringReader(lexerGm));
-        // Flip on ANTLR4-style conflict handling: any FIRST/FOLLOW cell that the
-        // predict table detected as conflicted will fork the parse stack between
-        // its empty and non-empty alternatives at runtime. Kept off by default
-        // to preserve byte-exact behaviour for legacy .gm grammars that were
-        // hand-tuned against the original greedy semantics.
-        builder.predictTable().setAutoEpsilonAlongsideEnabled(true);
+        MsllParserBuilder builder;
+        if (cache != null) {
+            builder = cache.get(parserGm, lexerGm, OPTIONS);
+        } else {
+            builder = new MsllParserBuilder(new StringReader(parserGm), new StringReader(lexerGm));
+            builder.predictTable().setAutoEpsilonAlongsideEnabled(OPTIONS.autoEpsilonAlongside());
+            builder.predictTable().setLookahead(OPTIONS.lookahead());
+        }
         return new Loaded(builder, lexerGm, parserGm, lifted.liftedCount);
     }
 }
@@ -0,0 +1,81 @@
+package org.twelve.msll.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tarjan's strongly connected components of a dependency graph over dense node indexes.
+ * <p>
+ * A component is emitted after every component it reaches, i.e. after everything it depends on, so solving the
+ * components in {@link #components()} order sees the final value of every dependency outside the component.
+ *
+ * @author huizi 2024
+ */
+public final class Components {
+    private final List<int[]> dependencies;
+    private final int[] index;
+    private final int[] low;
+    private final boolean[] onStack;
+    private final int[] stack;
+    private int top = 0;
+    private int counter = 0;
+    private final List<int[]> components = new ArrayList<>();
+
+    /**
+     * @param dependencies the nodes every node depends on, by node index
+     */
+    public Components(List<int[]> dependencies) {
+        this.dependencies = dependencies;
+        int size = dependencies.size();
+        this.index = new int[size];
+        this.low = new int[size];
+        this.onStack = new boolean[size];
+        this.stack = new int[size];
+        Arrays.fill(this.index, -1);
+        for (int node = 0; node < size; node++) {
+            if (this.index[node] < 0) visit(node);
+        }
+    }
+
+    /**
+     * @return the components, dependencies first
+     */
+    public List<int[]> components() {
+        return this.components;
+    }
+
+    /**
+     * @return whether the node depends on itself, which makes a component of one node a cycle
+     */
+    public static boolean selfDependent(int node, List<int[]> dependencies) {
+        for (int dependency : dependencies.get(node)) {
+            if (dependency == node) return true;
+        }
+        return false;
+    }
+
+    private void visit(int node) {
+        this.index[node] = this.low[node] = this.counter++;
+        this.stack[this.top++] = node;
+        this.onStack[node] = true;
+        for (int next : this.dependencies.get(node)) {
+            if (this.index[next] < 0) {
+                visit(next);
+                this.low[node] = Math.min(this.low[node], this.low[next]);
+            } else if (this.onStack[next]) {
+                this.low[node] = Math.min(this.low[node], this.index[next]);
+            }
+        }
+        if (this.low[node] == this.index[node]) {
+            int start = this.top;
+            do {
+                start--;
+            } while (this.stack[start] != node);
+            int[] component = Arrays.copyOfRange(this.stack, start, this.top);
+            for (int member : component) this.onStack[member] = false;
+            this.top = start;
+            this.components.add(component);
+        }
+    }
+}
@@ -45,6 +45,7 @@ public class Constants {
     public static final String EMPTY = "";
     public static final String IGNORED = "ignored";
     public static final String FIX = "fix";
+    public static final String GENERATED = "generated";
     public static final String COMMENTS = "comments";
     public static final String LESS = "<";
     public static final String LESS_STR = "LESS";
@@ -121,6 +122,7 @@ public class Constants {
     public static final String PARSER_GRAMMAR = "PARSER_GRAMMAR";
     public static final String LEXER_GRAMMAR = "LEXER_GRAMMAR";
     public static final String PARSER = "parser";
+    public static final String LEXER = "lexer";
     public static final String PARSER_HEAD = "parser_head";
     public static final String LEXER_HEAD = "lexer_head";
     public static final String OPTIONS = "options";
@@ -2,35 +2,36 @@ package org.twelve.msll.util;
 
 import org.twelve.msll.lexer.Token;
 import org.twelve.msll.parser.MsllStack;
-import org.twelve.msll.parsetree.Flag;
-import org.twelve.msll.parsetree.ParseNode;
+import org.twelve.msll.parsetree.Liveness;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
 
 public class GrammarAmbiguity {
-    private static AtomicInteger counter = new AtomicInteger();
-    private final int id;
-    private final ParseNode checkNode;
+    /**
+     * Size of the forking stack once the expanded non-terminal was popped: the item at {@code height - 1} sat below
+     * it, and popping that item is the checkpoint where the forks are compared.
+     */
+    private final int height;
     private final Map<Token, Entry> checkEnds = new HashMap();
-    private final Flag flag;
+    private final Liveness liveness;
+    private final int flag;
     private boolean isReady = false;
 
     public GrammarAmbiguity(MsllStack stack) {
-        this.id = counter.incrementAndGet();
-        this.checkNode = stack.peek();
-        this.flag = stack.flag();
+        this.height = stack.size();
+        this.liveness = stack.liveness();
+        this.flag = stack.flagId();
     }
 
     public void makeItDone(Token token, MsllStack stack){
         if(!this.isReady) return;
         Entry prev = checkEnds.get(token);
-        if(prev==null || prev.flag.expired()){
+        if(prev==null || liveness.expired(prev.flag)){
             // No previous arrival, or the previously-recorded sibling already
             // died: take ownership as the new live "first" so a later live
             // arriver isn't wrongly killed by a dead sibling's flag.
-            checkEnds.put(token, new Entry(stack.flag(), stack.tokensConsumed(), stack));
+            checkEnds.put(token, new Entry(stack.flagId(), stack.tokensConsumed(), stack));
             return;
         }
         // Longest-match resolution: when two live stacks both pass the same
@@ -43,23 +44,23 @@ public class GrammarAmbiguity {
         if (currConsumed != prevConsumed) {
             // Strictly different lengths: longest match wins.
             if (currConsumed > prevConsumed) {
-                prev.stack.expire();
-                checkEnds.put(token, new Entry(stack.flag(), currConsumed, stack));
+                prev.stack.lose();
+                checkEnds.put(token, new Entry(stack.flagId(), currConsumed, stack));
             } else {
-                stack.expire();
+                stack.lose();
             }
             return;
         }
         // Tie on length: keep the first arriver (grammar-order priority via
         // matchNonTerminalToken's iteration of productions in grammar order).
-        stack.expire();
+        stack.lose();
     }
 
     private static final class Entry {
-        final Flag flag;
+        final int flag;
         final int tokensConsumed;
         final MsllStack stack;
-        Entry(Flag flag, int tokensConsumed, MsllStack stack) {
+        Entry(int flag, int tokensConsumed, MsllStack stack) {
             this.flag = flag;
             this.tokensConsumed = tokensConsumed;
             this.stack = stack;
@@ -70,14 +71,11 @@ public class GrammarAmbiguity {
         this.isReady = true;
     }
 
-    public ParseNode checkNode() {
-        return this.checkNode;
+    public int height() {
+        return this.height;
     }
 
-    public int id(){
-        return this.id;
-    }
-    public Flag flag(){
+    public int flag(){
         return this.flag;
     }
 }
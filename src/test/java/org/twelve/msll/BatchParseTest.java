@@ -0,0 +1,147 @@
+package org.twelve.msll;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.twelve.msll.exception.GrammarSyntaxException;
+import org.twelve.msll.grammarsymbol.Terminals;
+import org.twelve.msll.lexer.CodeCache;
+import org.twelve.msll.lexer.Line;
+import org.twelve.msll.lexer.Location;
+import org.twelve.msll.lexer.Token;
+import org.twelve.msll.lexer.TokenBuffer;
+import org.twelve.msll.parserbuilder.MyParserBuilder;
+import org.twelve.msll.parserbuilder.ParseResult;
+import org.twelve.msll.parserbuilder.Source;
+import org.twelve.msll.parsetree.ParserTree;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.twelve.msll.ParseTrees.bareShape;
+
+/**
+ * A batch parse gives every source the result a parser of its own would, in input order, with failures reported per
+ * source.
+ */
+public class BatchParseTest {
+    private static final String[] SAMPLES = {
+            "let a = 1;",
+            "var result = fx(x,y,z){ { { let more = 1+counter; me.age+more+x(y,z) } } };",
+            "let b = me.get(1;",
+            "let me = { age: 40, name: { first: \"Will\", last: \"Zhang\" } };\ncounter += result((a,b)->a+b,1,2);"
+    };
+
+    @Test
+    @SneakyThrows
+    void results_match_single_parses_in_input_order() {
+        MyParserBuilder builder = new MyParserBuilder("outlineParser.gm", "outlineLexer.gm");
+        List<Source> sources = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            sources.add(Source.of("sample" + i, SAMPLES[i % SAMPLES.length]));
+        }
+        ConcurrentLinkedQueue<ParseResult> completed = new ConcurrentLinkedQueue<>();
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        List<ParseResult> results;
+        try {
+            results = builder.parseAll(sources, 3, pool, completed::add).get();
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(sources.size(), results.size());
+        assertEquals(sources.size(), completed.size());
+        for (int i = 0; i < sources.size(); i++) {
+            ParseResult result = results.get(i);
+            assertSame(sources.get(i), result.source());
+            String sample = SAMPLES[i % SAMPLES.length];
+            if (sample.contains("get(1;")) {
+                assertFalse(result.succeeded());
+                assertInstanceOf(GrammarSyntaxException.class, result.error());
+            } else {
+                assertTrue(result.succeeded(), () -> result.error().getMessage());
+                ParserTree tree = result.tree();
+                assertEquals(bareShape(builder.createParser(sample).parse().start()), bareShape(tree.start()));
+            }
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void virtual_threads_by_default() {
+        MyParserBuilder builder = new MyParserBuilder("outlineParser.gm", "outlineLexer.gm");
+        List<ParseResult> results = builder.parseAll(List.of(Source.of("one", SAMPLES[0]), Source.of("two", SAMPLES[1])), 8).get();
+        assertTrue(results.get(0).succeeded());
+        assertTrue(results.get(1).succeeded());
+        assertNotSame(results.get(0).tree(), results.get(1).tree());
+    }
+
+    @Test
+    @SneakyThrows
+    void errors_of_any_kind_stay_with_their_source() {
+        MyParserBuilder builder = new MyParserBuilder("outlineParser.gm", "outlineLexer.gm");
+        Source broken = new Source() {
+            @Override
+            public String name() {
+                return "broken";
+            }
+
+            @Override
+            public Reader open() {
+                throw new AssertionError("broken source");
+            }
+        };
+        List<Source> sources = List.of(Source.of("one", SAMPLES[0]), Source.of("bad", SAMPLES[2]), broken,
+                Source.of("two", SAMPLES[1]));
+        List<String> seen = new ArrayList<>();
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        CompletableFuture<List<ParseResult>> batch;
+        try {
+            batch = builder.parseAll(sources, 1, pool, result -> {
+                seen.add(result.source().name());
+                if (!result.succeeded()) throw new IllegalStateException("rejected " + result.source().name());
+            });
+            ExecutionException error = assertThrows(ExecutionException.class, batch::get);
+            assertEquals("rejected bad", error.getCause().getMessage());
+            assertEquals(1, error.getCause().getSuppressed().length);
+        } finally {
+            pool.shutdown();
+        }
+        // every source was parsed and reported, the one after the failures by a new parser
+        assertEquals(List.of("one", "bad", "broken", "two"), seen);
+        List<ParseResult> results = builder.parseAll(sources, 1).get();
+        assertInstanceOf(GrammarSyntaxException.class, results.get(1).error());
+        assertInstanceOf(AssertionError.class, results.get(2).error());
+        assertTrue(results.get(3).succeeded(), () -> results.get(3).error().getMessage());
+        assertEquals(bareShape(builder.createParser(SAMPLES[1]).parse().start()), bareShape(results.get(3).tree().start()));
+    }
+
+    /**
+     * A reader that gets ahead of the lexer waits for the token, without holding the buffer's monitor.
+     */
+    @Test
+    @SneakyThrows
+    void a_reader_waits_for_tokens_not_yet_added() {
+        TokenBuffer buffer = new TokenBuffer(new CodeCache());
+        Terminals terminals = new Terminals();
+        Token[] seen = new Token[1];
+        Thread reader = Thread.ofVirtual().start(() -> seen[0] = buffer.get(300));
+        List<Token> added = new ArrayList<>();
+        for (int i = 0; i <= 300; i++) {
+            Token token = new Token(terminals.END, "$", new Location(i, i, new Line(0, 0)));
+            added.add(token);
+            buffer.addToken(token);
+        }
+        reader.join(5000);
+        assertFalse(reader.isAlive());
+        assertEquals(301, buffer.size());
+        assertSame(added.get(300), seen[0]);
+        assertSame(added.get(7), buffer.get(7));
+    }
+}
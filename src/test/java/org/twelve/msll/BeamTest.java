@@ -0,0 +1,65 @@
+package org.twelve.msll;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.twelve.msll.parser.MyParser;
+import org.twelve.msll.parserbuilder.MyParserBuilder;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.twelve.msll.ParseTrees.assertParsesAlike;
+
+/**
+ * A beam bounds the stacks carried from token to token; on the deep-layers sample of the paper a narrow beam keeps
+ * the tree while cutting the peak number of live stacks.
+ */
+public class BeamTest {
+    private static final String CODE = """
+            me.make_friend({
+                name:("Noble","Zhang"),
+                age:1,
+                friends:[{
+                    name:{
+                        last:"a",
+                        first:"b",
+                        friends:[{
+                            name:"c",
+                            friends:[{
+                                name:"d",
+                                friends:["name":"e"]
+            }]}]}}]});
+            var result = fx(x,y,z){ { { {
+                let more = 1+counter;
+                me.friends.get("Noble").age+me.age+more+x(y,z)
+            } } }};
+            counter += result((a,b)->a+b,1,2);""";
+
+    @Test
+    @SneakyThrows
+    void a_narrow_beam_keeps_the_tree() {
+        MyParserBuilder builder = new MyParserBuilder("outlineParser.gm", "outlineLexer.gm");
+        ParseTrees.Parsed<MyParser> parsed = assertParsesAlike(() -> builder.createParser(CODE), () -> {
+            MyParser beam = builder.createParser(CODE);
+            beam.setBeam(2);
+            return beam;
+        });
+        MyParser unbounded = parsed.off();
+        MyParser beam = parsed.on();
+        assertFalse(unbounded.beamPruned());
+        assertEquals(33, unbounded.maxStackSize());
+        assertTrue(beam.beamPruned());
+        assertTrue(beam.maxStackSize() < unbounded.maxStackSize(), beam.maxStackSize() + " live stacks at most");
+        assertTrue(beam.totalStackSize() < unbounded.totalStackSize());
+    }
+
+    @Test
+    @SneakyThrows
+    void a_wide_beam_prunes_nothing() {
+        MyParserBuilder builder = new MyParserBuilder("outlineParser.gm", "outlineLexer.gm");
+        MyParser parser = builder.createParser(CODE);
+        parser.setBeam(64);
+        parser.parse();
+        assertFalse(parser.beamPruned());
+        assertEquals(0, parser.beamPrunedStacks());
+        assertEquals(181, parser.totalStackSize());
+    }
+}
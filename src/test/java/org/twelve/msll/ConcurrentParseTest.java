@@ -0,0 +1,97 @@
+package org.twelve.msll;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.twelve.msll.parser.MyParser;
+import org.twelve.msll.parserbuilder.MyParserBuilder;
+import org.twelve.msll.parsetree.NonTerminalNode;
+import org.twelve.msll.parsetree.ParseNode;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.twelve.msll.ParseTrees.shape;
+
+/**
+ * Parsers keep their stacks in arenas of their own, so parsers of one builder running on different threads neither
+ * share nor clear each other's stacks, and a parser reused for many parses keeps producing the same tree.
+ */
+public class ConcurrentParseTest {
+    private static final String CODE = """
+            let me = {
+                age: 40,
+                name: { first: "Will", last: "Zhang" },
+                make_friend: friend -> this.friends.put(friend.name[0], friend)
+            };
+            var result = fx(x,y,z){ { {
+                let more = 1+counter;
+                me.friends.get("Noble").age+me.age+more+x(y,z)
+            } } };
+            counter += result((a,b)->a+b,1,2);""";
+
+    @Test
+    @SneakyThrows
+    void parsers_on_different_threads_agree() {
+        MyParserBuilder builder = new MyParserBuilder("outlineParser.gm", "outlineLexer.gm");
+        MyParser reference = builder.createParser(CODE);
+        String expected = shape(reference.parse().start());
+        int total = reference.totalStackSize();
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> runs = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                runs.add(pool.submit(() -> {
+                    for (int i = 0; i < 20; i++) {
+                        MyParser parser = builder.createParser(CODE);
+                        assertEquals(expected, shape(parser.parse().start()));
+                        assertEquals(total, parser.totalStackSize());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> run : runs) run.get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Node ids name the grammars generated while a grammar file is read, so no two threads may hand out the same.
+     */
+    @Test
+    @SneakyThrows
+    void node_ids_are_unique_across_threads() {
+        MyParserBuilder builder = new MyParserBuilder("outlineParser.gm", "outlineLexer.gm");
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<Long>>> runs = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                runs.add(pool.submit(() -> {
+                    List<Long> ids = new ArrayList<>();
+                    collectIds(builder.createParser(CODE).parse().start(), ids);
+                    return ids;
+                }));
+            }
+            Set<Long> seen = new HashSet<>();
+            for (Future<List<Long>> run : runs) {
+                for (Long id : run.get()) assertTrue(seen.add(id), "id handed out twice: " + id);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void collectIds(ParseNode node, List<Long> ids) {
+        ids.add(node.id());
+        if (node instanceof NonTerminalNode nt) {
+            for (ParseNode child : nt.nodes()) collectIds(child, ids);
+        }
+    }
+}
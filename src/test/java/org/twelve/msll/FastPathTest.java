@@ -0,0 +1,82 @@
+package org.twelve.msll;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.twelve.msll.lexer.Token;
+import org.twelve.msll.lexer.TokenBuffer;
+import org.twelve.msll.parser.MyParser;
+import org.twelve.msll.parserbuilder.MyParserBuilder;
+import org.twelve.msll.util.Constants;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.twelve.msll.ParseTrees.assertParsesAlike;
+
+/**
+ * The deterministic LL(1) fast path takes over whenever a single stack is alive; it must never change the tree
+ * or the forks the multi-stack machinery performs.
+ */
+public class FastPathTest {
+    private static final String JSON = """
+            {
+                "name": "Will",
+                "age": 40,
+                "tags": ["a", "b", {"deep": [1, 2, 3]}],
+                "friend": {"name": "Noble", "age": 10, "married": false, "spouse": null}
+            }""";
+
+    private static final String OUTLINE = """
+            let me = {
+                name: ("Will", "Zhang"),
+                age: 40,
+                make_friend: friend -> this.friends.put(friend.name[0], friend)
+            };
+            me.make_friend({name: ("Noble", "Zhang"), age: 10});""";
+
+    /**
+     * {@code object} and {@code array} have alternatives sharing their opening bracket; with LL(2) lookahead
+     * those cells are decided in place and the whole document stays on one stack.
+     */
+    @Test
+    @SneakyThrows
+    void json_parses_almost_entirely_on_the_fast_path() {
+        MyParserBuilder builder = new MyParserBuilder("jsonParser.gm", "jsonLexer.gm");
+        builder.predictTable().setLookahead(2);
+        ParseTrees.Parsed<MyParser> parsed = assertParsesAlike(() -> slow(builder, JSON), () -> builder.createParser(JSON));
+        MyParser slow = parsed.off();
+        MyParser fast = parsed.on();
+        assertEquals(0, slow.fastPathTokens());
+        assertEquals(slow.totalStackSize(), fast.totalStackSize());
+        int significant = significantTokens(builder.createParser(JSON).lexer().scan());
+        assertTrue(fast.fastPathTokens() * 10 >= significant * 9,
+                fast.fastPathTokens() + " of " + significant + " tokens on the fast path");
+    }
+
+    @Test
+    @SneakyThrows
+    void conflicted_cells_fall_back_to_multi_stack_mode() {
+        MyParserBuilder builder = new MyParserBuilder("outlineParser.gm", "outlineLexer.gm");
+        ParseTrees.Parsed<MyParser> parsed = assertParsesAlike(() -> slow(builder, OUTLINE),
+                () -> builder.createParser(OUTLINE));
+        MyParser slow = parsed.off();
+        MyParser fast = parsed.on();
+        assertEquals(slow.totalStackSize(), fast.totalStackSize());
+        assertEquals(slow.maxStackSize(), fast.maxStackSize());
+        assertTrue(fast.totalStackSize() > 1, "the outline sample forks");
+        assertTrue(fast.fastPathTokens() > 0);
+    }
+
+    private static MyParser slow(MyParserBuilder builder, String code) {
+        MyParser parser = builder.createParser(code);
+        parser.setFastPath(false);
+        return parser;
+    }
+
+    private static int significantTokens(TokenBuffer tokens) {
+        int count = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            if (token.channel().isEmpty() && !token.terminal().name().equals(Constants.EOL_STR)) count++;
+        }
+        return count;
+    }
+}
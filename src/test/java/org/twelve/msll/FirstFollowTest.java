@@ -0,0 +1,85 @@
+package org.twelve.msll;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.twelve.msll.grammar.Grammar;
+import org.twelve.msll.grammar.Grammars;
+import org.twelve.msll.grammarsymbol.Terminal;
+import org.twelve.msll.parserbuilder.MyParserBuilder;
+
+import java.io.StringReader;
+import java.util.Collection;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FIRST and FOLLOW are solved per strongly connected component of the rule graph, over bitsets, and stored on the
+ * grammars and productions once.
+ */
+public class FirstFollowTest {
+    private static final String LEXER = "ADD:\"add\"; MUL:\"mul\"; OPEN:\"open\"; CLOSE:\"close\"; NUM:\"num\";"
+            + " X:\"x\"; W:\"w\"; Y:\"y\"; Z:\"z\";";
+
+    @Test
+    @SneakyThrows
+    void expression_grammar_sets() {
+        MyParserBuilder builder = new MyParserBuilder(
+                new StringReader("e: e ADD t | t; t: t MUL f | f; f: OPEN e CLOSE | NUM;"), new StringReader(LEXER));
+        Grammars grammars = builder.grammars();
+        String end = builder.terminals().END.name();
+
+        assertEquals(names("OPEN", "NUM"), names(grammars.get("e").first()));
+        assertEquals(names("OPEN", "NUM"), names(grammars.get("t").first()));
+        assertEquals(names("OPEN", "NUM"), names(grammars.get("f").first()));
+        assertEquals(names("CLOSE", end), names(grammars.get("e").follow()));
+        assertEquals(names("ADD", "CLOSE", end), names(grammars.get("t").follow()));
+        assertEquals(names("MUL", "ADD", "CLOSE", end), names(grammars.get("f").follow()));
+
+        // the tails left recursion elimination introduces are nullable
+        Grammar tail = grammars.get("e_alpha'");
+        assertTrue(tail.containsEmptyFirst());
+        assertEquals(names("ADD", "EPSILON"), names(tail.first()));
+        assertEquals(names("CLOSE", end), names(tail.follow()));
+        assertFalse(grammars.get("e").containsEmptyFirst());
+        assertEquals(names("NUM"), names(grammars.get("f").productions().get(1).first()));
+    }
+
+    /**
+     * Two rules whose FIRST sets depend on each other form one component, iterated to their common fixpoint.
+     */
+    @Test
+    @SneakyThrows
+    void mutually_dependent_rules() {
+        MyParserBuilder builder = new MyParserBuilder(
+                new StringReader("s: a NUM; a: b Y | X; b: a Z | W;"), new StringReader(LEXER));
+        Grammars grammars = builder.grammars();
+        assertEquals(names("X", "W"), names(grammars.get("a").first()));
+        assertEquals(names("X", "W"), names(grammars.get("b").first()));
+        assertEquals(names("X", "W"), names(grammars.get("s").first()));
+        assertEquals(names("NUM", "Z"), names(grammars.get("a").follow()));
+        assertEquals(names("Y"), names(grammars.get("b").follow()));
+    }
+
+    /**
+     * The computed FIRST is cached: every call returns an equal copy the caller may change.
+     */
+    @Test
+    @SneakyThrows
+    void first_is_cached() {
+        MyParserBuilder builder = new MyParserBuilder(new StringReader("s: X s | W;"), new StringReader(LEXER));
+        Grammar s = builder.grammars().get("s");
+        s.first().clear();
+        assertEquals(names("X", "W"), names(s.first()));
+    }
+
+    private static Set<String> names(String... names) {
+        return new TreeSet<>(Set.of(names));
+    }
+
+    private static Set<String> names(Collection<Terminal> terminals) {
+        return terminals.stream().map(Terminal::name).collect(Collectors.toCollection(TreeSet::new));
+    }
+}
@@ -0,0 +1,154 @@
+package org.twelve.msll;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.twelve.msll.grammarsymbol.Terminals;
+import org.twelve.msll.lexer.Token;
+import org.twelve.msll.parserbuilder.MsllParserBuilder;
+import org.twelve.msll.parserbuilder.MyParserBuilder;
+import org.twelve.msll.tools.G4GrammarLoader;
+import org.twelve.msll.util.RegexString;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.twelve.msll.ParseTrees.shape;
+
+/**
+ * A builder compiles its grammar when it is constructed: every terminal pattern is compiled and every per-mode
+ * terminal array built up front, so parsers of one builder share the grammar read-only, however many start at once.
+ * Once frozen, the builder rejects every change.
+ */
+public class FrozenGrammarTest {
+    private static final int THREADS = 16;
+    private static final int PARSES = 25;
+
+    private static final String[] CODES = {
+            """
+            let me = {
+                age: 40,
+                name: { first: "Will", last: "Zhang" },
+                make_friend: friend -> this.friends.put(friend.name[0], friend)
+            };""",
+            """
+            var result = fx(x,y,z){ { {
+                let more = 1+counter;
+                me.friends.get("Noble").age+me.age+more+x(y,z)
+            } } };
+            counter += result((a,b)->a+b,1,2);""",
+            "let a = 1; let b = \"two\"; a+b;"
+    };
+
+    private static final String MODAL_G4 =
+            "grammar kv;\n"
+            + "root : line+ EOF ;\n"
+            + "line : KEY SEP VALUE NL ;\n"
+            + "KEY  : [A-Za-z_] [A-Za-z_0-9]* ;\n"
+            + "SEP  : '=' -> pushMode(VAL) ;\n"
+            + "NL   : '\\n' ;\n"
+            + "WS   : [ \\t]+ -> skip ;\n"
+            + "mode VAL;\n"
+            + "VALUE  : ~[\\r\\n]+ -> popMode ;\n"
+            + "NL_VAL : '\\n' -> type(NL), popMode ;\n";
+
+    @Test
+    @SneakyThrows
+    void one_builder_serves_many_threads_started_at_once() {
+        MyParserBuilder builder = new MyParserBuilder("outlineParser.gm", "outlineLexer.gm");
+        builder.freeze();
+        stress(i -> shape(builder.createParser(CODES[i % CODES.length]).parse().start()), CODES.length);
+    }
+
+    @Test
+    @SneakyThrows
+    void frozen_lexer_modes_are_shared_read_only() {
+        MsllParserBuilder builder = G4GrammarLoader.loadG4String(null, MODAL_G4).builder;
+        builder.freeze();
+        String[] inputs = {"host=hello\nport=world\n", "a=b c\n", "key=value=more\nx=y\n"};
+        stress(i -> shape(builder.createParser(new StringReader(inputs[i % inputs.length])).parse().start()),
+                inputs.length);
+    }
+
+    /**
+     * Terminals added after compiling take part in matching: the arrays are built again.
+     */
+    @Test
+    void adding_a_terminal_after_compile_compiles_again() {
+        Terminals terminals = new Terminals().compile();
+        assertThrows(Exception.class, () -> terminals.match("abc", 0, 0));
+        terminals.addTerminal("WORD", new RegexString("[a-z]+"));
+        List<Token> tokens = terminals.match("abc", 0, 0);
+        assertEquals("WORD", tokens.get(0).terminal().name());
+        assertSame(terminals, terminals.compile());
+    }
+
+    @Test
+    @SneakyThrows
+    void a_frozen_builder_rejects_changes() {
+        MyParserBuilder builder = new MyParserBuilder("outlineParser.gm", "outlineLexer.gm");
+        builder.predictTable().setLookahead(2);
+        String expected = shape(builder.createParser(CODES[0]).parse().start());
+        assertSame(builder, builder.freeze());
+        assertSame(builder, builder.freeze());
+        assertTrue(builder.isFrozen() && builder.terminals().isFrozen() && builder.predictTable().isFrozen());
+
+        assertThrows(IllegalStateException.class, () -> builder.predictTable().setLookahead(1));
+        assertThrows(IllegalStateException.class, () -> builder.predictTable().setPredictionCache(null));
+        assertThrows(IllegalStateException.class, () -> builder.predictTable().setAutoEpsilonAlongsideEnabled(true));
+        assertThrows(IllegalStateException.class, () -> builder.terminals().addTerminal("WORD", "word"));
+        assertThrows(IllegalStateException.class, () -> builder.terminals().expect(null));
+        assertThrows(IllegalStateException.class, () -> builder.predicates().addFunction("n", (a, b) -> true));
+        // compiling again tells the terminals what they were told, which keeps them as they are
+        assertSame(builder, builder.compile());
+        assertEquals(2, builder.predictTable().lookahead());
+        assertEquals(expected, shape(builder.createParser(CODES[0]).parse().start()));
+    }
+
+    @Test
+    void a_builder_rebuilt_from_a_frozen_one_is_frozen() {
+        MsllParserBuilder builder = new MsllParserBuilder(new StringReader("s: ID+;"),
+                new StringReader("ID: /\"[a-z]+\"/;\nWS: /\"[ ]+\"/ -> skip;"));
+        builder.freeze();
+        MsllParserBuilder rebuilt = builder.rebuild(new StringReader("s: ID*;"));
+        assertTrue(rebuilt.isFrozen());
+        assertNotSame(builder.terminals(), rebuilt.terminals());
+        assertDoesNotThrow(() -> rebuilt.createParser(new StringReader("a b")).parse());
+    }
+
+    /**
+     * Parses {@code kinds} different inputs once on this thread, then {@link #PARSES} times on each of
+     * {@link #THREADS} threads released together, every result compared with the single-threaded one.
+     */
+    private static void stress(Function<Integer, String> parse, int kinds) throws Exception {
+        String[] expected = new String[kinds];
+        for (int i = 0; i < kinds; i++) expected[i] = parse.apply(i);
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> runs = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int offset = t;
+                runs.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < PARSES; i++) {
+                        int kind = (offset + i) % kinds;
+                        assertEquals(expected[kind], parse.apply(kind));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> run : runs) run.get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
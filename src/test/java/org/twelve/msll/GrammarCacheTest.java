@@ -0,0 +1,149 @@
+package org.twelve.msll;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.twelve.msll.parser.PredictionCache;
+import org.twelve.msll.parserbuilder.GrammarCache;
+import org.twelve.msll.parserbuilder.MsllParserBuilder;
+import org.twelve.msll.parserbuilder.MyParserBuilder;
+import org.twelve.msll.tools.G4GrammarLoader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Builders are cached by the digest of their grammar text and options: the same grammar is built once, whoever
+ * asks for it and however often.
+ */
+public class GrammarCacheTest {
+    private static final String LEXER = "ID:/\"([a-z]+)\"/;";
+    private static final String PAIR = "s: ID ID;";
+    private static final String TRIPLE = "s: ID ID ID;";
+
+    @Test
+    void same_text_and_options_share_one_builder() {
+        GrammarCache cache = new GrammarCache(4);
+        MsllParserBuilder first = cache.get(PAIR, LEXER, GrammarCache.Options.OUTLINE);
+        assertInstanceOf(MyParserBuilder.class, first);
+        assertSame(first, cache.get(new String(PAIR), LEXER, GrammarCache.Options.OUTLINE));
+        assertEquals(1, cache.misses());
+        assertEquals(1, cache.hits());
+        assertEquals("a b", lexemes(first, "a b"));
+
+        MsllParserBuilder bare = cache.get(PAIR, LEXER, GrammarCache.Options.BARE);
+        assertNotSame(first, bare);
+        assertFalse(bare instanceof MyParserBuilder);
+        MsllParserBuilder tuned = cache.get(PAIR, LEXER, new GrammarCache.Options(GrammarCache.Seed.BARE, true, 2));
+        assertTrue(tuned.predictTable().autoEpsilonAlongsideEnabled());
+        assertEquals(2, tuned.predictTable().lookahead());
+        assertNotSame(first, cache.get(TRIPLE, LEXER, GrammarCache.Options.OUTLINE));
+        assertEquals(4, cache.size());
+    }
+
+    @Test
+    void shared_builders_reject_changes() {
+        GrammarCache cache = new GrammarCache(4);
+        MsllParserBuilder shared = cache.get(PAIR, LEXER, GrammarCache.Options.OUTLINE);
+        assertTrue(shared.isFrozen());
+        assertThrows(IllegalStateException.class, () -> shared.predictTable().setLookahead(2));
+        assertThrows(IllegalStateException.class, () -> shared.predicates().addFunction("n", (a, b) -> false));
+        assertEquals(1, cache.get(PAIR, LEXER, GrammarCache.Options.OUTLINE).predictTable().lookahead());
+    }
+
+    @Test
+    void shared_builders_may_share_a_prediction_cache() {
+        String parser = "s: stmt*;\nstmt: ID ID SEMI # pair\n    | ID ID ID SEMI # triple\n    ;";
+        String lexer = "SEMI: ';';\nID: /\"[a-z]+\"/;\nWS: /\"[ ]+\"/ -> skip;";
+        GrammarCache cache = new GrammarCache(4);
+        MsllParserBuilder plain = cache.get(parser, lexer, GrammarCache.Options.BARE);
+        assertNull(plain.predictTable().predictionCache());
+
+        GrammarCache.Options options = GrammarCache.Options.BARE.withPredictionCache(true);
+        MsllParserBuilder cached = cache.get(parser, lexer, options);
+        assertNotSame(plain, cached);
+        assertSame(cached, cache.get(parser, lexer, GrammarCache.Options.BARE.withPredictionCache(true)));
+        assertTrue(cached.isFrozen());
+        PredictionCache predictions = cached.predictTable().predictionCache();
+        assertNotNull(predictions);
+        cached.createParser("x y; x y z; x y;").parse();
+        cached.createParser("x y; x y z; x y;").parse();
+        assertTrue(predictions.hits() > 0, predictions.toString());
+    }
+
+    @Test
+    void least_recently_used_builders_are_evicted_and_invalidation_drops_them() {
+        GrammarCache cache = new GrammarCache(1);
+        MsllParserBuilder pair = cache.get(PAIR, LEXER, GrammarCache.Options.OUTLINE);
+        cache.get(TRIPLE, LEXER, GrammarCache.Options.OUTLINE);
+        assertEquals(1, cache.size());
+        assertNotSame(pair, cache.get(PAIR, LEXER, GrammarCache.Options.OUTLINE));
+
+        MsllParserBuilder again = cache.get(PAIR, LEXER, GrammarCache.Options.OUTLINE);
+        assertTrue(cache.invalidate(PAIR, LEXER, GrammarCache.Options.OUTLINE));
+        assertFalse(cache.invalidate(PAIR, LEXER, GrammarCache.Options.OUTLINE));
+        assertNotSame(again, cache.get(PAIR, LEXER, GrammarCache.Options.OUTLINE));
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    @SneakyThrows
+    void a_grammar_asked_for_at_once_is_built_once() {
+        GrammarCache cache = new GrammarCache(4);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<MsllParserBuilder>> builders = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                builders.add(pool.submit(() -> {
+                    start.await();
+                    return cache.get(TRIPLE, LEXER, GrammarCache.Options.OUTLINE);
+                }));
+            }
+            start.countDown();
+            MsllParserBuilder built = builders.get(0).get();
+            for (Future<MsllParserBuilder> builder : builders) assertSame(built, builder.get());
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(1, cache.misses());
+        assertEquals(7, cache.hits());
+    }
+
+    @Test
+    void failed_builds_are_not_cached() {
+        GrammarCache cache = new GrammarCache(4);
+        assertThrows(RuntimeException.class, () -> cache.get("s: ID UNKNOWN;", LEXER, GrammarCache.Options.OUTLINE));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    @SneakyThrows
+    void grammar_files_and_g4_grammars_go_through_the_cache() {
+        GrammarCache cache = new GrammarCache(4);
+        MyParserBuilder json = cache.my("jsonParser.gm", "jsonLexer.gm");
+        assertSame(json, cache.my("jsonParser.gm", "jsonLexer.gm"));
+
+        String g4 = "grammar pair;\nroot : KEY KEY EOF ;\nKEY : [a-z]+ ;\nWS : [ \\t]+ -> skip ;\n";
+        G4GrammarLoader.Loaded loaded = G4GrammarLoader.loadG4String(null, g4, cache);
+        assertSame(loaded.builder, G4GrammarLoader.loadG4String(null, g4, cache).builder);
+        assertTrue(loaded.builder.predictTable().autoEpsilonAlongsideEnabled());
+        assertEquals(2, loaded.builder.predictTable().lookahead());
+        assertEquals("ab cd", lexemes(loaded.builder, "ab cd"));
+    }
+
+    private static String lexemes(MsllParserBuilder builder, String code) {
+        StringBuilder sb = new StringBuilder();
+        builder.createParser(code).parse().start().nodes().forEach(node -> {
+            if (!sb.isEmpty()) sb.append(' ');
+            sb.append(node.lexeme());
+        });
+        return sb.toString();
+    }
+}
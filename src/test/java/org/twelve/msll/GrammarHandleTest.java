@@ -0,0 +1,144 @@
+package org.twelve.msll;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.twelve.msll.parser.PredictionCache;
+import org.twelve.msll.parserbuilder.GrammarCache;
+import org.twelve.msll.parserbuilder.GrammarHandle;
+import org.twelve.msll.parserbuilder.MsllParserBuilder;
+import org.twelve.msll.parserbuilder.Source;
+import org.twelve.msll.util.Tool;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A grammar handle swaps in new versions of its grammar built and validated in the background, and keeps the
+ * current version when a new one fails.
+ */
+public class GrammarHandleTest {
+    private static final String RULE = "return_statement\n    : 'return' expression ';'\n    ;";
+    private static final String CHANGED = "return_statement\n    : 'return' expression? ';'\n    ;";
+    private static final List<Source> CORPUS = List.of(Source.of("sample", "let a = 1;\nreturn a;"));
+
+    @TempDir
+    Path dir;
+
+    private String parser;
+    private String lexer;
+    private GrammarHandle handle;
+
+    @BeforeEach
+    @SneakyThrows
+    void setUp() {
+        parser = Files.readString(Path.of(Tool.getGrammarFilePath("outlineParser.gm")));
+        lexer = Files.readString(Path.of(Tool.getGrammarFilePath("outlineLexer.gm")));
+    }
+
+    @AfterEach
+    @SneakyThrows
+    void tearDown() {
+        if (handle != null) handle.close();
+    }
+
+    @Test
+    @SneakyThrows
+    void changed_rule_is_rebuilt_and_swapped_in() {
+        handle = new GrammarHandle(parser, lexer, GrammarCache.Options.OUTLINE, CORPUS);
+        MsllParserBuilder before = handle.builder();
+        assertThrows(Exception.class, () -> handle.createParser("return;").parse());
+
+        assertTrue(handle.update(parser.replace(RULE, CHANGED), lexer).join());
+        assertEquals(2, handle.version());
+        assertNotSame(before, handle.builder());
+        assertNotNull(handle.builder().grammars().rebuilt(), "only the parser rule changed");
+        // the same grammar as a handle built from scratch on the new version
+        try (GrammarHandle scratch = new GrammarHandle(parser.replace(RULE, CHANGED), lexer,
+                GrammarCache.Options.OUTLINE, CORPUS)) {
+            assertEquals(IncrementalRebuildTest.describe(scratch.builder()),
+                    IncrementalRebuildTest.describe(handle.builder()));
+        }
+        assertNotNull(handle.createParser("return;").parse());
+        // a parse holding the old builder keeps its grammar
+        assertThrows(Exception.class, () -> before.createParser("return;").parse());
+        assertEquals(1, handle.rebuilds());
+        assertEquals(1, handle.swaps());
+        assertEquals(0, handle.failures());
+        assertTrue(handle.lastRebuildTime().toNanos() > 0);
+
+        // the same text again is the current version
+        assertTrue(handle.update(parser.replace(RULE, CHANGED), lexer).join());
+        assertEquals(2, handle.version());
+        assertEquals(1, handle.rebuilds());
+    }
+
+    @Test
+    void rebuilt_versions_get_a_prediction_cache_of_their_own() {
+        handle = new GrammarHandle(parser, lexer, GrammarCache.Options.OUTLINE.withPredictionCache(true), CORPUS);
+        PredictionCache first = handle.builder().predictTable().predictionCache();
+        assertNotNull(first);
+
+        assertTrue(handle.update(parser.replace(RULE, CHANGED), lexer).join());
+        assertNotNull(handle.builder().grammars().rebuilt());
+        PredictionCache rebuilt = handle.builder().predictTable().predictionCache();
+        assertNotNull(rebuilt);
+        assertNotSame(first, rebuilt);
+        assertTrue(handle.update(parser, lexer + "\n").join());
+        assertNotNull(handle.builder().predictTable().predictionCache());
+    }
+
+    @Test
+    void version_with_the_same_rules_is_the_current_one() {
+        handle = new GrammarHandle(parser, lexer, GrammarCache.Options.OUTLINE, CORPUS);
+        MsllParserBuilder before = handle.builder();
+
+        assertTrue(handle.update("// a comment\n" + parser, lexer).join());
+        assertSame(before, handle.builder());
+        assertEquals(1, handle.version());
+        assertEquals(0, handle.rebuilds());
+        assertEquals(0, handle.swaps());
+        assertEquals(0, handle.failures());
+    }
+
+    @Test
+    void version_failing_to_build_or_to_parse_the_corpus_is_rejected() {
+        handle = new GrammarHandle(parser, lexer, GrammarCache.Options.OUTLINE, CORPUS);
+        MsllParserBuilder before = handle.builder();
+
+        assertFalse(handle.update(parser.replace(RULE, "return_statement : 'return' expression ',' ;"), lexer).join());
+        assertTrue(handle.lastError().getMessage().contains("sample"), handle.lastError().getMessage());
+        assertFalse(handle.update(parser.replace(RULE, "return_statement : 'return' ( ;"), lexer).join());
+        assertSame(before, handle.builder());
+        assertEquals(1, handle.version());
+        assertEquals(2, handle.failures());
+        assertEquals(0, handle.swaps());
+    }
+
+    @Test
+    void lexer_change_rebuilds_from_scratch() {
+        handle = new GrammarHandle(parser, lexer, GrammarCache.Options.OUTLINE, CORPUS);
+        assertTrue(handle.update(parser, lexer + "\n").join());
+        assertEquals(2, handle.version());
+        assertNull(handle.builder().grammars().rebuilt());
+    }
+
+    @Test
+    @SneakyThrows
+    void watched_files_are_rebuilt_when_they_change() {
+        Path parserFile = Files.writeString(dir.resolve("parser.gm"), parser);
+        Path lexerFile = Files.writeString(dir.resolve("lexer.gm"), lexer);
+        handle = GrammarHandle.watch(parserFile, lexerFile, GrammarCache.Options.OUTLINE, CORPUS);
+
+        Files.writeString(parserFile, parser.replace(RULE, CHANGED));
+        long deadline = System.currentTimeMillis() + 20_000;
+        while (handle.version() == 1 && System.currentTimeMillis() < deadline) Thread.sleep(50);
+        assertEquals(2, handle.version());
+        assertNotNull(handle.createParser("return;").parse());
+    }
+}
@@ -0,0 +1,135 @@
+package org.twelve.msll;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.twelve.msll.exception.GrammarSyntaxException;
+import org.twelve.msll.parser.LexerRuleReader;
+import org.twelve.msll.parser.ParserGrammarReader;
+import org.twelve.msll.parserbuilder.LexerRuleParserBuilder;
+import org.twelve.msll.parserbuilder.ParserGrammarParserBuilder;
+import org.twelve.msll.parsetree.NonTerminalNode;
+import org.twelve.msll.parsetree.ParseNode;
+import org.twelve.msll.parsetree.ParserTree;
+import org.twelve.msll.util.Constants;
+import org.twelve.msll.util.Tool;
+
+import java.io.StringReader;
+import java.lang.reflect.Constructor;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The hand-written grammar readers return the very trees the MSLL grammar parsers return for the same file, down to
+ * the grammars generated for groups and quantified symbols.
+ */
+public class GrammarReaderTest {
+    private static final String PARSER = """
+            /* every construct of the format */
+            parser grammar Demo;
+            // options follow
+            options {
+                tokenVocab = DemoLexer;
+            }
+            program : statement* EOF ; // after the rule
+            statement // before the colon
+                : ID '=' expr ';'   #assign
+                // between alternatives
+                | <assoc=right> expr '^' expr
+                | (ID | NUM (',' NUM)*)+ {pred(1)}
+                | block? // after a symbol
+                ;
+            <block> : '{' statement+ '}' ;
+            """;
+
+    private static final String LEXER = """
+            lexer grammar DemoLexer;
+            channels { COMMENTS, WHITES }
+            ID : [a-z]+ ('_' [a-z0-9]+)*? ;
+            STR : '"' (~["\\\\] | '\\\\' .)* '"' ;
+            fragment DIGIT : [0-9] ;
+            NUM : DIGIT+ | '0x' [0-9a-f]+ ;
+            OPEN : '{' -> pushMode(INNER) ;
+            mode INNER;
+            CLOSE : '}' -> popMode ;
+            """;
+
+    @Test
+    void parser_grammar_is_read_as_it_is_parsed() {
+        assertEquals(shape(metaParse(PARSER)),
+                shape(new ParserGrammarReader(new StringReader(PARSER)).read()));
+    }
+
+    @Test
+    void lexer_grammar_is_read_as_it_is_parsed() {
+        assertEquals(shape(new LexerRuleParserBuilder().createParser(new StringReader(LEXER)).parse()),
+                shape(new LexerRuleReader(new StringReader(LEXER)).read()));
+    }
+
+    @Test
+    @SneakyThrows
+    void outline_grammars_are_read_as_they_are_parsed() {
+        String parser = Files.readString(Path.of(Tool.getGrammarFilePath("outlineParser.gm")));
+        String lexer = Files.readString(Path.of(Tool.getGrammarFilePath("outlineLexer.gm")));
+        assertEquals(shape(metaParse(parser)),
+                shape(new ParserGrammarReader(new StringReader(parser)).read()));
+        assertEquals(shape(new LexerRuleParserBuilder().createParser(new StringReader(lexer)).parse()),
+                shape(new LexerRuleReader(new StringReader(lexer)).read()));
+    }
+
+    @Test
+    void syntax_errors_name_the_line() {
+        GrammarSyntaxException error = assertThrows(GrammarSyntaxException.class,
+                () -> new ParserGrammarReader(new StringReader("parser grammar Demo;\ns : a\n  | ;\n")).read());
+        assertTrue(error.getMessage().contains("line 3"), error.getMessage());
+        assertThrows(GrammarSyntaxException.class,
+                () -> new LexerRuleReader(new StringReader("A : 'a' ;\nB 'b' ;\n")).read());
+    }
+
+    /**
+     * Parses a parser grammar the way it was parsed before the reader, with the MSLL parser of the format; its
+     * builder is internal to the parser builders.
+     */
+    @SneakyThrows
+    private static ParserTree metaParse(String grammar) {
+        Constructor<ParserGrammarParserBuilder> constructor = ParserGrammarParserBuilder.class.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        return constructor.newInstance().createParser(new StringReader(grammar)).parse();
+    }
+
+    /**
+     * The tree with its tags, explanations and token locations; generated grammar names are numbered in order of
+     * appearance, as their ids depend on how many nodes were created before.
+     */
+    private static String shape(ParserTree tree) {
+        StringBuilder sb = new StringBuilder();
+        shape(tree.start(), sb);
+        Matcher matcher = Pattern.compile("(factor|zero_more|one_more|zero_one)_\\d+'").matcher(sb);
+        Map<String, String> names = new HashMap<>();
+        StringBuilder renamed = new StringBuilder();
+        while (matcher.find()) {
+            String name = names.computeIfAbsent(matcher.group(), k -> matcher.group(1) + "#" + names.size() + "'");
+            matcher.appendReplacement(renamed, Matcher.quoteReplacement(name));
+        }
+        return matcher.appendTail(renamed).toString();
+    }
+
+    private static void shape(ParseNode node, StringBuilder sb) {
+        sb.append(node.symbol().name()).append(':').append(node.symbol().type().name());
+        if (!(node instanceof NonTerminalNode nonTerminal)) {
+            sb.append('\'').append(node.lexeme()).append('\'');
+            if (node.location() != null) sb.append('@').append(node.location().start());
+            sb.append(' ');
+            return;
+        }
+        if (nonTerminal.getTag(Constants.FIX) != null) sb.append("!fix");
+        sb.append('#').append(nonTerminal.explain()).append('(');
+        for (ParseNode child : nonTerminal.nodes()) shape(child, sb);
+        sb.append(") ");
+    }
+}
@@ -0,0 +1,194 @@
+package org.twelve.msll;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.twelve.msll.exception.GrammarSyntaxException;
+import org.twelve.msll.grammar.Grammar;
+import org.twelve.msll.grammarsymbol.Terminal;
+import org.twelve.msll.parser.PredictTable;
+import org.twelve.msll.parserbuilder.MsllParserBuilder;
+import org.twelve.msll.parserbuilder.MyParserBuilder;
+import org.twelve.msll.util.Tool;
+
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.twelve.msll.ParseTrees.assertParsesAlike;
+
+/**
+ * A builder rebuilt after a parser rule changed has the grammars, FIRST/FOLLOW sets and predict table of a builder
+ * built from scratch from the changed grammar file, and reports the cells the change touched.
+ */
+public class IncrementalRebuildTest {
+    private static final String RULE = "return_statement\n    : 'return' expression ';'\n    ;";
+    private static final String CHANGED = "return_statement\n    : 'return' expression? ';'\n    ;";
+    private static final String CODE = """
+            let a = 1+2*x;
+            return;
+            return a;""";
+
+    private static final Pattern GENERATED = Pattern.compile("(factor|zero_more|one_more|zero_one)_\\d+'");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @SneakyThrows
+    void rebuilt_grammar_equals_the_grammar_built_from_scratch() {
+        String parser = Files.readString(Path.of(Tool.getGrammarFilePath("outlineParser.gm")));
+        String lexer = Files.readString(Path.of(Tool.getGrammarFilePath("outlineLexer.gm")));
+        assertTrue(parser.contains(RULE));
+        MyParserBuilder before = new MyParserBuilder(new StringReader(parser), new StringReader(lexer));
+        MsllParserBuilder rebuilt = before.rebuild(new StringReader(CHANGED));
+        MyParserBuilder scratch = new MyParserBuilder(new StringReader(parser.replace(RULE, CHANGED)),
+                new StringReader(lexer));
+
+        assertEquals(describe(scratch), describe(rebuilt));
+        assertParsesAlike(scratch, rebuilt, CODE);
+        // the builder rebuilt from keeps its grammar
+        assertEquals("[return_statement->Return expression SEMICOLON ]",
+                before.grammars().get("return_statement").productions().toString());
+    }
+
+    @Test
+    @SneakyThrows
+    void only_the_grammars_the_change_reaches_are_rebuilt() {
+        MyParserBuilder before = new MyParserBuilder("outlineParser.gm", "outlineLexer.gm");
+        MsllParserBuilder rebuilt = before.rebuild(new StringReader(CHANGED));
+
+        Set<String> changed = rebuilt.grammars().changed();
+        assertTrue(changed.contains("return_statement"));
+        assertTrue(changed.size() < rebuilt.grammars().size() / 4, changed.toString());
+        assertNull(before.grammars().changed());
+        // untouched rules keep their generated grammars, names included
+        for (Grammar grammar : before.grammars().grammars()) {
+            if (!grammar.name().equals("return_statement")) assertNotNull(rebuilt.grammars().get(grammar.name()));
+        }
+        // FIRST/FOLLOW of untouched grammars are unchanged
+        assertEquals(names(before.grammars().get("expression").follow()),
+                names(rebuilt.grammars().get("expression").follow()));
+
+        List<PredictTable.CellChange> changes = rebuilt.predictTable().changes();
+        assertTrue(changes.stream().anyMatch(c -> c.grammar().equals("return_statement")), changes.toString());
+        assertTrue(changes.stream().allMatch(c -> changed.contains(c.grammar())), changes.toString());
+        assertTrue(before.predictTable().changes().isEmpty());
+    }
+
+    @Test
+    @SneakyThrows
+    void rebuilds_chain_and_keep_table_settings() {
+        MyParserBuilder first = new MyParserBuilder("outlineParser.gm", "outlineLexer.gm");
+        first.predictTable().setLookahead(2);
+        MsllParserBuilder second = first.rebuild(new StringReader(CHANGED));
+        MsllParserBuilder third = second.rebuild(new StringReader(RULE));
+
+        assertEquals(2, third.predictTable().lookahead());
+        assertEquals(Set.of("return_statement"), third.grammars().rebuilt().stream()
+                .filter(name -> !name.endsWith("'")).collect(Collectors.toSet()));
+        assertParsesAlike(first, third, "return a;");
+    }
+
+    /**
+     * The grammars generated for the changed rules never take the name of a grammar generated for another rule,
+     * wherever the grammar was read first.
+     */
+    @Test
+    @SneakyThrows
+    void a_rebuild_on_another_thread_keeps_generated_grammars_apart() {
+        String lexer = "ID: /\"[a-z]+\"/;\nNUM: /\"[0-9]+\"/;\nWS: /\"[ ]+\"/ -> skip;";
+        String parser = "s: ID* t?;\nt: ID;";
+        MsllParserBuilder before = new MsllParserBuilder(new StringReader(parser), new StringReader(lexer));
+        ExecutorService other = Executors.newSingleThreadExecutor();
+        MsllParserBuilder rebuilt;
+        try {
+            rebuilt = other.submit(() -> before.rebuild(new StringReader("t: NUM*;"))).get();
+        } finally {
+            other.shutdown();
+        }
+        MsllParserBuilder scratch = new MsllParserBuilder(new StringReader("s: ID* t?;\nt: NUM*;"),
+                new StringReader(lexer));
+
+        assertEquals(describe(scratch), describe(rebuilt));
+        List<String> names = rebuilt.grammars().grammars().stream().map(Grammar::name).toList();
+        assertEquals(names.size(), new java.util.HashSet<>(names).size(), names.toString());
+        assertDoesNotThrow(() -> rebuilt.createParser(new StringReader("a b 1 2")).parse());
+        assertThrows(GrammarSyntaxException.class, () -> rebuilt.createParser(new StringReader("1 a 2 b")).parse());
+    }
+
+    @Test
+    void rows_whose_productions_cannot_be_mapped_are_derived_again() {
+        String lexer = "ID: /\"[a-z]+\"/;\nNUMBER: /\"[0-9]+\"/;\nWS: /\"[ ]+\"/ -> skip;";
+        MsllParserBuilder before = new MsllParserBuilder(new StringReader("s: a*;\na: ID;"), new StringReader(lexer));
+        MsllParserBuilder rebuilt = before.rebuild(new StringReader("s: a+;"));
+        assertFalse(rebuilt.grammars().changed().contains("a"));
+        // a table whose row of the untouched a has another production than the rebuilt a
+        MsllParserBuilder other = new MsllParserBuilder(new StringReader("s: a*;\na: ID | NUMBER;"),
+                new StringReader(lexer));
+
+        PredictTable table = PredictTable.rebuild(rebuilt.grammars(), other.predictTable());
+        assertEquals(cells(new PredictTable(rebuilt.grammars())), cells(table));
+    }
+
+    private static Set<String> cells(PredictTable table) {
+        Set<String> cells = new TreeSet<>();
+        table.cells().forEach((terminal, byGrammar) -> byGrammar.forEach((grammar, productions) ->
+                cells.add(terminal.name() + " " + grammar.name() + "=" + productions)));
+        return cells;
+    }
+
+    @Test
+    @SneakyThrows
+    void builder_loaded_from_a_snapshot_cannot_be_rebuilt() {
+        Path file = dir.resolve("grammar.msll");
+        new MyParserBuilder("outlineParser.gm", "outlineLexer.gm").save(file);
+        MsllParserBuilder loaded = MsllParserBuilder.load(file);
+        assertThrows(IllegalStateException.class, () -> loaded.rebuild(new StringReader(CHANGED)));
+    }
+
+    /**
+     * Sets and cells of every grammar, in name order; generated grammar names are reduced to what they were
+     * generated for, as their ids depend on the build.
+     */
+    static String describe(MsllParserBuilder builder) {
+        Map<Grammar, Set<String>> cells = new HashMap<>();
+        builder.predictTable().cells().forEach((terminal, byGrammar) -> byGrammar.forEach((grammar, productions) ->
+                cells.computeIfAbsent(grammar, g -> new TreeSet<>()).add(terminal.name() + "=" + productions.stream()
+                        .map(p -> p == null ? "null" : p.toString()).toList())));
+        List<String> rows = new ArrayList<>();
+        for (Grammar grammar : builder.grammars().grammars()) {
+            rows.add(normalize(grammar.name() + ": first" + names(grammar.first()) + " follow" + names(grammar.follow())
+                    + " " + cells.getOrDefault(grammar, Set.of())));
+        }
+        Collections.sort(rows);
+        return String.join("\n", rows);
+    }
+
+    private static String normalize(String row) {
+        Matcher matcher = GENERATED.matcher(row);
+        StringBuilder normalized = new StringBuilder();
+        while (matcher.find()) matcher.appendReplacement(normalized, matcher.group(1) + "'");
+        return matcher.appendTail(normalized).toString();
+    }
+
+    private static Set<String> names(Collection<Terminal> terminals) {
+        Set<String> names = new TreeSet<>();
+        for (Terminal terminal : terminals) names.add(terminal.name());
+        return names;
+    }
+}
@@ -0,0 +1,142 @@
+package org.twelve.msll;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.twelve.msll.grammar.GrammarBuilder;
+import org.twelve.msll.parser.MsllParser;
+import org.twelve.msll.parserbuilder.MsllParserBuilder;
+import org.twelve.msll.parsetree.MyParserTree;
+import org.twelve.msll.parsetree.NonTerminalNode;
+
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.twelve.msll.ParseTrees.assertParsesAlike;
+import static org.twelve.msll.ParseTrees.shape;
+
+/**
+ * With {@link GrammarBuilder.Transform#INLINING} the rules that only pass through are inlined into the productions
+ * referring to them: the parser no longer expands them one level at a time, the abstracted tree is the same, and
+ * their nodes are put back when the parser asks for them.
+ */
+public class InliningTest {
+    private static final Set<GrammarBuilder.Transform> INLINED = Set.of(GrammarBuilder.Transform.INLINING);
+
+    private static final String LEXER = """
+            ASSIGN: '=';
+            PLUS: '+';
+            LPAREN: '(';
+            RPAREN: ')';
+            SEMI: ';';
+            ID: /"[a-z]+"/;
+            NUMBER: /"[0-9]+"/;
+            WS: /"[ \\t\\n]+"/ -> skip;
+            """;
+    private static final String PARSER = """
+            program
+                : statement*
+                ;
+            statement
+                : ID ASSIGN expression SEMI     # assignment
+                | LPAREN expression RPAREN SEMI # grouped
+                ;
+            expression
+                : sum
+                ;
+            sum
+                : sum PLUS term                 # addition
+                | term
+                ;
+            term
+                : atom                          # atomic
+                ;
+            atom
+                : ID
+                | NUMBER
+                ;
+            """;
+    private static final String CODE = "a = 1 + b + 2; (c);";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @SneakyThrows
+    void pass_through_rules_are_inlined_and_put_back_on_request() {
+        MsllParserBuilder plain = new MsllParserBuilder(new StringReader(PARSER), new StringReader(LEXER));
+        MsllParserBuilder inlined = new MsllParserBuilder(new StringReader(PARSER), new StringReader(LEXER), INLINED);
+        assertEquals(INLINED, inlined.transforms());
+        assertNotNull(plain.grammars().get("expression"));
+        assertNull(inlined.grammars().get("expression"));
+        assertNull(inlined.grammars().get("term"));
+        assertNotNull(inlined.grammars().get("atom"));
+        assertTrue(inlined.grammars().size() < plain.grammars().size());
+
+        assertParsesAlike(plain, inlined, CODE);
+
+        String written = shape(raw(plain, false).parse().start());
+        String flat = shape(raw(inlined, false).parse().start());
+        assertTrue(written.contains("expression#("), written);
+        assertTrue(written.contains("term#atomic(atom#("), written);
+        assertFalse(flat.contains("expression#"), flat);
+        assertFalse(flat.contains("term#"), flat);
+        assertTrue(nodes(flat) < nodes(written));
+        assertEquals(written, shape(raw(inlined, true).parse().start()));
+    }
+
+    @Test
+    @SneakyThrows
+    void sample_grammars_parse_alike_when_inlined() {
+        Set<GrammarBuilder.Transform> both = Set.of(GrammarBuilder.Transform.INLINING,
+                GrammarBuilder.Transform.LEFT_FACTORING);
+        for (Set<GrammarBuilder.Transform> transforms : java.util.List.of(INLINED, both)) {
+            assertParsesAlike("pythonParser-simple.gm", "pythonLexer-simple.gm", transforms,
+                    "x = foo(1, 2)", "result = a + b * c - d", "pass");
+            assertParsesAlike("javascriptParser-simple.gm", "javascriptLexer-simple.gm", transforms,
+                    "let x = foo(1, 2) + bar;", "var a = (1 + 2) * 3; print(a);",
+                    "function f(a, b) { if (a < b) { return g(a); } else { return b; } }");
+            assertParsesAlike("outlineParser.gm", "outlineLexer.gm", transforms,
+                    "let a = 1+2*x;", "let f = x->x+1; f(2);");
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void inlined_rules_survive_snapshots_and_rebuilds() {
+        MsllParserBuilder inlined = new MsllParserBuilder(new StringReader(PARSER), new StringReader(LEXER), INLINED);
+        String written = shape(raw(inlined, true).parse().start());
+
+        Path file = dir.resolve("inlined.msll");
+        inlined.save(file);
+        MsllParserBuilder loaded = MsllParserBuilder.load(file);
+        assertNull(loaded.grammars().get("expression"));
+        assertEquals(written, shape(raw(loaded, true).parse().start()));
+
+        MsllParserBuilder rebuilt = inlined.rebuild(new StringReader(PARSER.replace("| NUMBER", "| NUMBER\n    | LPAREN sum RPAREN")));
+        assertEquals(INLINED, rebuilt.transforms());
+        assertNull(rebuilt.grammars().get("expression"));
+        assertEquals(written, shape(raw(rebuilt, true).parse().start()));
+    }
+
+    /**
+     * A parser leaving the tree as the grammar derives it, without abstracting single child nodes.
+     */
+    private static MsllParser<MyParserTree> raw(MsllParserBuilder builder, boolean inlinedNodes) {
+        MsllParser<MyParserTree> parser = new MsllParser<>(builder.grammars(), builder.predictTable(),
+                builder.nonTerminals(), builder.terminals(), new StringReader(CODE)) {
+            @Override
+            protected MyParserTree createParseTree(NonTerminalNode start) {
+                return new MyParserTree(start);
+            }
+        };
+        parser.setInlinedNodes(inlinedNodes);
+        return parser;
+    }
+
+    private static long nodes(String shape) {
+        return shape.chars().filter(c -> c == '#').count();
+    }
+}
@@ -0,0 +1,80 @@
+package org.twelve.msll;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.twelve.msll.grammarsymbol.Terminals;
+import org.twelve.msll.parser.MyParser;
+import org.twelve.msll.parser.PredictionCache;
+import org.twelve.msll.parserbuilder.MyParserBuilder;
+import org.twelve.msll.parsetree.EndNode;
+import org.twelve.msll.parsetree.NonTerminalNode;
+import org.twelve.msll.parsetree.ParseNode;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.twelve.msll.ParseTrees.shape;
+
+/**
+ * Stacks hold symbols and log their derivation; parse nodes are only created for the derivation that survives,
+ * so how much a parse forks no longer changes how many nodes it allocates.
+ */
+public class LazyMaterializationTest {
+    private static final String CODE = """
+            let me = {
+                age: 40,
+                name: { first: "Will", last: "Zhang" },
+                make_friend: friend -> this.friends.put(friend.name[0], friend)
+            };
+            var result = fx(x,y,z){ { {
+                let more = 1+counter;
+                me.friends.get("Noble").age+me.age+more+x(y,z)
+            } } };
+            counter += result((a,b)->a+b,1,2);""";
+
+    @Test
+    @SneakyThrows
+    void dead_forks_allocate_no_nodes() {
+        MyParserBuilder builder = new MyParserBuilder("outlineParser.gm", "outlineLexer.gm");
+        MyParser forking = builder.createParser(CODE);
+        long before = nextNodeId();
+        String expected = shape(forking.parse().start());
+        long forkingNodes = nextNodeId() - before;
+
+        // a warm prediction cache decides most conflicted cells without forking
+        builder.predictTable().setPredictionCache(new PredictionCache());
+        builder.createParser(CODE).parse();
+        MyParser pruned = builder.createParser(CODE);
+        before = nextNodeId();
+        assertEquals(expected, shape(pruned.parse().start()));
+        long prunedNodes = nextNodeId() - before;
+
+        assertTrue(pruned.totalStackSize() < forking.totalStackSize(), "the cache removes forks");
+        assertEquals(prunedNodes, forkingNodes);
+    }
+
+    /**
+     * polish() no longer sweeps expired nodes: nothing a dead fork did may reach the tree.
+     */
+    @Test
+    @SneakyThrows
+    void the_tree_holds_no_expired_node() {
+        MyParserBuilder builder = new MyParserBuilder("outlineParser.gm", "outlineLexer.gm");
+        MyParser parser = builder.createParser(CODE);
+        NonTerminalNode start = parser.parse().start();
+        assertTrue(parser.totalStackSize() > 1, "the sample forks");
+        assertNoExpiredNode(start);
+    }
+
+    private static void assertNoExpiredNode(ParseNode node) {
+        assertFalse(node.flag().expired(), node.name());
+        if (node instanceof NonTerminalNode) {
+            for (ParseNode child : ((NonTerminalNode) node).nodes()) assertNoExpiredNode(child);
+        }
+    }
+
+    /**
+     * Parse node ids are sequential, so the difference of two probes counts the nodes created in between.
+     */
+    private static long nextNodeId() {
+        return new EndNode(new Terminals()).id();
+    }
+}
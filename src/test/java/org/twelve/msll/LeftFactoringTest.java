@@ -0,0 +1,121 @@
+package org.twelve.msll;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.twelve.msll.grammar.Grammar;
+import org.twelve.msll.grammar.GrammarBuilder;
+import org.twelve.msll.parser.MsllParser;
+import org.twelve.msll.parserbuilder.GrammarCache;
+import org.twelve.msll.parserbuilder.MsllParserBuilder;
+import org.twelve.msll.parsetree.ParseNode;
+
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.twelve.msll.ParseTrees.assertParsesAlike;
+import static org.twelve.msll.ParseTrees.shape;
+
+/**
+ * With {@link GrammarBuilder.Transform#LEFT_FACTORING} alternatives sharing a prefix are parsed by one production
+ * instead of one forked stack each, and the parse tree still comes out as the unfactored grammar builds it. Nodes
+ * carry the explain of the alternative actually parsed, where a forked parse labels them with the last alternative.
+ */
+public class LeftFactoringTest {
+    private static final Set<GrammarBuilder.Transform> FACTORED = Set.of(GrammarBuilder.Transform.LEFT_FACTORING);
+
+    private static final String LEXER = """
+            ASSIGN: '=';
+            LPAREN: '(';
+            RPAREN: ')';
+            SEMI: ';';
+            ID: /"[a-z]+"/;
+            NUMBER: /"[0-9]+"/;
+            WS: /"[ \\t\\n]+"/ -> skip;
+            """;
+    private static final String PARSER = """
+            program
+                : statement*
+                ;
+            statement
+                : call SEMI                 # call_statement
+                | ID ASSIGN value SEMI      # assignment
+                | ID ASSIGN call SEMI       # assigned_call
+                ;
+            call
+                : ID LPAREN value RPAREN    # invocation
+                ;
+            value
+                : ID
+                | NUMBER
+                ;
+            """;
+    private static final String CODE = "a = 1; b = f(a); g(b); c = d;";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @SneakyThrows
+    void factored_grammar_builds_the_same_tree_with_fewer_forks() {
+        MsllParserBuilder plain = new MsllParserBuilder(new StringReader(PARSER), new StringReader(LEXER));
+        MsllParserBuilder factored = new MsllParserBuilder(new StringReader(PARSER), new StringReader(LEXER), FACTORED);
+        assertEquals(FACTORED, factored.transforms());
+        assertTrue(plain.transforms().isEmpty());
+        assertTrue(factored.grammars().grammars().stream().map(Grammar::name).anyMatch(name -> name.contains("_rest_")));
+        assertTrue(plain.grammars().grammars().stream().map(Grammar::name).noneMatch(name -> name.contains("_rest_")));
+
+        MsllParser<?> expected = plain.createParser(new StringReader(CODE));
+        MsllParser<?> actual = factored.createParser(new StringReader(CODE));
+        ParseNode start = expected.parse().start();
+        String tree = shape(actual.parse().start());
+        assertEquals(shape(start).replaceAll("#[a-z_]*", ""), tree.replaceAll("#[a-z_]*", ""));
+        // the substituted call is put back under its own node, each statement named by its own alternative
+        assertEquals("program#(statement#assignment(a = 1 ; ) "
+                + "statement#assigned_call(b = call#invocation(f ( a ) ) ; ) "
+                + "statement#call_statement(call#invocation(g ( b ) ) ; ) "
+                + "statement#assignment(c = d ; ) )", tree);
+        assertTrue(expected.forkedStacks() > 0);
+        assertEquals(0, actual.forkedStacks());
+    }
+
+    @Test
+    @SneakyThrows
+    void sample_grammars_parse_alike_when_factored() {
+        assertParsesAlike("pythonParser-simple.gm", "pythonLexer-simple.gm", FACTORED,
+                "x = foo(1, 2)", "result = a + b * c - d", "pass");
+        assertParsesAlike("javascriptParser-simple.gm", "javascriptLexer-simple.gm", FACTORED,
+                "let x = foo(1, 2) + bar;", "var a = (1 + 2) * 3; print(a);",
+                "function f(a, b) { if (a < b) { return g(a); } else { return b; } }");
+        assertParsesAlike("outlineParser.gm", "outlineLexer.gm", FACTORED, "let a = 1+2*x;", "let f = x->x+1; f(2);");
+    }
+
+    @Test
+    @SneakyThrows
+    void factoring_survives_snapshots_rebuilds_and_the_cache() {
+        MsllParserBuilder factored = new MsllParserBuilder(new StringReader(PARSER), new StringReader(LEXER), FACTORED);
+        String tree = shape(factored.createParser(new StringReader(CODE)).parse().start());
+
+        Path file = dir.resolve("factored.msll");
+        factored.save(file);
+        MsllParserBuilder loaded = MsllParserBuilder.load(file);
+        MsllParser<?> parser = loaded.createParser(new StringReader(CODE));
+        assertEquals(tree, shape(parser.parse().start()));
+        assertEquals(0, parser.forkedStacks());
+
+        MsllParserBuilder rebuilt = factored.rebuild(new StringReader(PARSER.replace("| NUMBER", "| NUMBER\n    | LPAREN value RPAREN")));
+        assertEquals(FACTORED, rebuilt.transforms());
+        parser = rebuilt.createParser(new StringReader(CODE));
+        assertEquals(tree, shape(parser.parse().start()));
+        assertEquals(0, parser.forkedStacks());
+
+        GrammarCache cache = new GrammarCache(4);
+        GrammarCache.Options options = new GrammarCache.Options(GrammarCache.Seed.BARE, false, 1, FACTORED);
+        MsllParserBuilder cached = cache.get(PARSER, LEXER, options);
+        assertEquals(FACTORED, cached.transforms());
+        assertSame(cached, cache.get(PARSER, LEXER, new GrammarCache.Options(GrammarCache.Seed.BARE, false, 1, FACTORED)));
+        assertNotSame(cached, cache.get(PARSER, LEXER, GrammarCache.Options.BARE));
+    }
+}
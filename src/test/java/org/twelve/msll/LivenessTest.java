@@ -0,0 +1,53 @@
+package org.twelve.msll;
+
+import org.junit.jupiter.api.Test;
+import org.twelve.msll.parsetree.Flag;
+import org.twelve.msll.parsetree.Liveness;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Stacks are flagged by ids of a per-parse liveness table; a stack counts as expired once all its forks have.
+ */
+public class LivenessTest {
+    @Test
+    void a_parent_expires_with_its_last_live_fork() {
+        Liveness liveness = new Liveness();
+        int root = liveness.fork(-1);
+        int left = liveness.fork(root);
+        int right = liveness.fork(root);
+        int deep = liveness.fork(right);
+
+        liveness.expire(left);
+        assertTrue(liveness.expired(left));
+        assertFalse(liveness.expired(root));
+
+        liveness.expire(deep);
+        assertTrue(liveness.expired(right), "right forked only deep");
+        assertTrue(liveness.expired(root));
+    }
+
+    @Test
+    void expiring_twice_counts_once() {
+        Liveness liveness = new Liveness();
+        int root = liveness.fork(-1);
+        int a = liveness.fork(root);
+        int b = liveness.fork(root);
+        liveness.expire(a);
+        liveness.expire(a);
+        assertFalse(liveness.expired(root));
+        assertFalse(new Flag(liveness, b).expired());
+        new Flag(liveness, b).expire();
+        assertTrue(liveness.expired(root));
+    }
+
+    @Test
+    void ids_grow_past_the_initial_capacity() {
+        Liveness liveness = new Liveness();
+        int parent = liveness.fork(-1);
+        for (int i = 0; i < 1000; i++) parent = liveness.fork(parent);
+        assertEquals(1001, liveness.size());
+        liveness.expire(parent);
+        assertTrue(liveness.expired(0));
+    }
+}
@@ -0,0 +1,78 @@
+package org.twelve.msll;
+
+import org.junit.jupiter.api.Test;
+import org.twelve.msll.parser.MsllStack;
+import org.twelve.msll.parser.MsllStacks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A generation keeps the order the stacks were added in; unlisting is O(1) and only shows at the next boundary.
+ */
+public class MsllStacksTest {
+
+    private static List<MsllStack> generation(MsllStacks stacks) {
+        List<MsllStack> generation = new ArrayList<>();
+        for (int i = 0; i < stacks.generationSize(); i++) generation.add(stacks.get(i));
+        return generation;
+    }
+
+    @Test
+    void survivors_keep_their_order_and_forks_follow() {
+        MsllStacks stacks = new MsllStacks();
+        MsllStack a = MsllStack.apply(), b = MsllStack.apply(), c = MsllStack.apply();
+        stacks.add(a);
+        stacks.add(b);
+        stacks.add(c);
+        stacks.advance();
+        assertEquals(List.of(a, b, c), generation(stacks));
+
+        // a is replaced by two forks, c fails
+        MsllStack a1 = MsllStack.apply(a, null, ""), a2 = MsllStack.apply(a, null, "");
+        stacks.add(a1);
+        stacks.add(a2);
+        stacks.remove(a);
+        stacks.remove(c);
+        assertEquals(3, stacks.size());
+        assertEquals(List.of(a, b, c), generation(stacks), "the generation being walked is not modified");
+
+        stacks.advance();
+        assertEquals(List.of(b, a1, a2), generation(stacks));
+        assertEquals(5, stacks.maxStackSize(), "forks are listed before their parent is removed");
+        assertEquals(5, stacks.totalStackSize());
+    }
+
+    @Test
+    void a_stack_listed_again_takes_its_new_place() {
+        MsllStacks stacks = new MsllStacks();
+        MsllStack a = MsllStack.apply(), b = MsllStack.apply();
+        stacks.add(a);
+        stacks.add(b);
+        stacks.advance();
+        stacks.remove(a);
+        stacks.remove(a);
+        stacks.add(a);
+        assertEquals(2, stacks.size());
+        stacks.advance();
+        assertEquals(List.of(b, a), generation(stacks));
+    }
+
+    @Test
+    void expired_stacks_are_dropped_while_a_live_one_survives() {
+        MsllStacks stacks = new MsllStacks();
+        MsllStack a = MsllStack.apply(), b = MsllStack.apply();
+        stacks.add(a);
+        stacks.add(b);
+        a.expire();
+        stacks.advance();
+        assertEquals(List.of(b), generation(stacks));
+        assertEquals(1, stacks.size());
+
+        b.expire();
+        stacks.advance();
+        assertEquals(List.of(b), generation(stacks), "the last stacks are kept even when expired");
+    }
+}
@@ -0,0 +1,101 @@
+package org.twelve.msll;
+
+import lombok.SneakyThrows;
+import org.twelve.msll.grammar.GrammarBuilder;
+import org.twelve.msll.parser.MsllParser;
+import org.twelve.msll.parserbuilder.MsllParserBuilder;
+import org.twelve.msll.parserbuilder.MyParserBuilder;
+import org.twelve.msll.parsetree.NonTerminalNode;
+import org.twelve.msll.parsetree.ParseNode;
+import org.twelve.msll.util.Tool;
+
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Parse trees written as text, for tests comparing the trees of two parses.
+ */
+final class ParseTrees {
+    private ParseTrees() {
+    }
+
+    /**
+     * Two parsers that parsed the same code to the same tree, one without a feature and one with it, for the
+     * statistics a test compares.
+     */
+    record Parsed<P extends MsllParser<?>>(P off, P on, String shape) {
+    }
+
+    /**
+     * The tree with the explanation of every non-terminal: {@code name#explain(child child )}, tokens by their
+     * lexeme.
+     */
+    static String shape(ParseNode node) {
+        return shape(node, true, false);
+    }
+
+    /**
+     * The tree without explanations: {@code name(child child )}.
+     */
+    static String bareShape(ParseNode node) {
+        return shape(node, false, false);
+    }
+
+    /**
+     * The tree with explanations and every token at its {@code line:column}.
+     */
+    static String locatedShape(ParseNode node) {
+        return shape(node, true, true);
+    }
+
+    private static String shape(ParseNode node, boolean explain, boolean located) {
+        if (!(node instanceof NonTerminalNode nt)) {
+            if (!located) return node.lexeme();
+            return node.lexeme() + "@" + node.location().line().number() + ":" + node.location().start();
+        }
+        StringBuilder sb = new StringBuilder(nt.name());
+        if (explain) sb.append('#').append(nt.explain());
+        sb.append('(');
+        for (ParseNode child : nt.nodes()) sb.append(shape(child, explain, located)).append(' ');
+        return sb.append(')').toString();
+    }
+
+    /**
+     * Parses with a parser without a feature, then with one with it, and asserts both build the same tree. The
+     * parsers are created in this order, so {@code on} may switch the feature on before creating its parser.
+     */
+    static <P extends MsllParser<?>> Parsed<P> assertParsesAlike(Supplier<P> off, Supplier<P> on) {
+        P without = off.get();
+        String expected = shape(without.parse().start());
+        P with = on.get();
+        assertEquals(expected, shape(with.parse().start()));
+        return new Parsed<>(without, with, expected);
+    }
+
+    /**
+     * Asserts both builders parse every code to the same tree.
+     */
+    static void assertParsesAlike(MsllParserBuilder expected, MsllParserBuilder actual, String... codes) {
+        for (String code : codes) {
+            assertEquals(shape(expected.createParser(new StringReader(code)).parse().start()),
+                    shape(actual.createParser(new StringReader(code)).parse().start()), code);
+        }
+    }
+
+    /**
+     * Asserts the sample grammar parses every code to the same tree with the transforms as without them.
+     */
+    @SneakyThrows
+    static void assertParsesAlike(String parser, String lexer, Set<GrammarBuilder.Transform> transforms,
+                                  String... codes) {
+        String parserText = Files.readString(Path.of(Tool.getGrammarFilePath(parser)));
+        String lexerText = Files.readString(Path.of(Tool.getGrammarFilePath(lexer)));
+        assertParsesAlike(new MyParserBuilder(new StringReader(parserText), new StringReader(lexerText)),
+                new MyParserBuilder(new StringReader(parserText), new StringReader(lexerText), transforms), codes);
+    }
+}
@@ -0,0 +1,60 @@
+package org.twelve.msll;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.twelve.msll.exception.GrammarSyntaxException;
+import org.twelve.msll.parser.GrammarPredicate;
+import org.twelve.msll.parser.Symbol;
+import org.twelve.msll.parserbuilder.MyParserBuilder;
+
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Grammar predicates are parsed and bound to their functions once, when the builder is built; the parser only tests
+ * the predicate attached to the symbol on top of the stack.
+ */
+public class PredicateTest {
+    private static final String LEXER = "ID:/\"([a-z]+)\"/;";
+
+    private static MyParserBuilder builder(String parser) {
+        return new MyParserBuilder(new StringReader(parser), new StringReader(LEXER));
+    }
+
+    @Test
+    void predicates_are_bound_with_typed_arguments() {
+        MyParserBuilder builder = builder("s: ID {n(\"go\")} ID {short(3)} ID {ratio(1.5)} ID;");
+        Symbol<?> symbol = builder.grammars().grammars().get(0).productions().get(0).symbols().get(1);
+        GrammarPredicate predicate = symbol.predicate();
+        assertNotNull(predicate);
+        assertSame(predicate, builder.predicates().predicates().get(0));
+        assertEquals("n", predicate.funcName());
+        assertEquals("go", predicate.args().get(0));
+        assertEquals(3L, builder.predicates().predicates().get(1).args().get(0));
+        assertEquals(1.5, builder.predicates().predicates().get(2).args().get(0));
+        assertNull(builder.grammars().grammars().get(0).productions().get(0).symbols().get(0).predicate());
+    }
+
+    @Test
+    @SneakyThrows
+    void a_failing_predicate_rejects_the_input() {
+        MyParserBuilder builder = builder("s: ID {n(\"go\")} ID;");
+        assertDoesNotThrow(() -> builder.createParser("x go").parse());
+        assertThrows(GrammarSyntaxException.class, () -> builder.createParser("x stop").parse());
+    }
+
+    @Test
+    @SneakyThrows
+    void functions_added_to_a_builder_stay_with_it() {
+        MyParserBuilder strict = builder("s: ID {short(3)} ID;");
+        MyParserBuilder lenient = builder("s: ID {short(3)} ID;");
+        strict.predicates().addFunction("short",
+                (input, args) -> input.getKey().lexeme().trim().length() <= (Long) args.get(0));
+
+        assertDoesNotThrow(() -> strict.createParser("x abc").parse());
+        assertThrows(GrammarSyntaxException.class, () -> strict.createParser("x abcd").parse());
+        // an unknown function is ignored, as before
+        assertDoesNotThrow(() -> lenient.createParser("x abcd").parse());
+    }
+}
@@ -0,0 +1,124 @@
+package org.twelve.msll;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.twelve.msll.parser.MyParser;
+import org.twelve.msll.parser.PredictionCache;
+import org.twelve.msll.parserbuilder.MyParserBuilder;
+
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.twelve.msll.ParseTrees.assertParsesAlike;
+import static org.twelve.msll.ParseTrees.shape;
+
+/**
+ * The adaptive prediction cache lets parsers created from one builder share what earlier parses learned about
+ * conflicted cells: a recurring pattern is forked once, then predicted directly.
+ */
+public class PredictionCacheTest {
+    private static final String CODE = """
+            let me = {
+                age: 40,
+                name: { first: "Will", last: "Zhang" },
+                make_friend: friend -> this.friends.put(friend.name[0], friend)
+            };
+            me.make_friend({
+                name: ("Noble", "Zhang"),
+                age: 10
+            });
+            {{
+                let more = 100;
+                me.friends.get("Noble").age + me.age + more
+            }}""";
+
+    private static final String LEXER = """
+            SEMI: ';';
+            ID: /"[a-z]+"/;
+            WS: /"[ \\t\\n]+"/ -> skip;
+            """;
+
+    private MyParserBuilder builder;
+
+    @BeforeEach
+    @SneakyThrows
+    void setup() {
+        this.builder = new MyParserBuilder("outlineParser.gm", "outlineLexer.gm");
+    }
+
+    @Test
+    void later_parses_fork_less_and_build_the_same_tree() {
+        PredictionCache cache = new PredictionCache();
+        ParseTrees.Parsed<MyParser> parsed = assertParsesAlike(() -> builder.createParser(CODE.repeat(3)),
+                () -> cached(cache, CODE.repeat(3)));
+        MyParser uncached = parsed.off();
+        MyParser first = parsed.on();
+        assertTrue(cache.recordings() > 0, cache.toString());
+        // repetitions inside the first parse already hit what the first repetition recorded
+        assertTrue(first.totalStackSize() < uncached.totalStackSize());
+
+        MyParser warm = builder.createParser(CODE.repeat(3));
+        assertEquals(parsed.shape(), shape(warm.parse().start()));
+        assertTrue(warm.totalStackSize() <= first.totalStackSize());
+        assertTrue(cache.hits() > 0 && cache.hitRate() > 0, cache.toString());
+    }
+
+    @Test
+    void growth_limits_stop_recording_without_changing_results() {
+        PredictionCache full = new PredictionCache(0, PredictionCache.DEFAULT_MAX_DEPTH);
+        ParseTrees.Parsed<MyParser> parsed = assertParsesAlike(() -> builder.createParser(CODE),
+                () -> cached(full, CODE));
+        MyParser uncached = parsed.off();
+        MyParser parser = parsed.on();
+        assertEquals(0, full.size());
+        assertEquals(0, full.hits());
+        assertTrue(full.rejections() > 0);
+        assertEquals(uncached.totalStackSize(), parser.totalStackSize());
+    }
+
+    @Test
+    void a_predicted_node_gets_the_explain_a_forked_one_does() {
+        MyParserBuilder builder = builder("""
+                s: stmt*;
+                stmt: ID ID SEMI        # pair
+                    | ID ID ID SEMI     # triple
+                    ;""");
+        String code = "x y; x y z; x y;";
+        String expected = shape(builder.createParser(code).parse().start());
+
+        PredictionCache cache = new PredictionCache();
+        builder.predictTable().setPredictionCache(cache);
+        assertEquals(expected, shape(builder.createParser(code).parse().start()));
+        assertEquals(expected, shape(builder.createParser(code).parse().start()));
+        assertTrue(cache.hits() > 0, cache.toString());
+    }
+
+    @Test
+    void decisions_running_a_predicate_are_not_recorded() {
+        MyParserBuilder builder = builder("""
+                s: stmt*;
+                stmt: ID {n("go")} ID SEMI  # go
+                    | ID ID ID SEMI         # other
+                    ;""");
+        String expected = shape(builder.createParser("x go;").parse().start());
+
+        PredictionCache cache = new PredictionCache();
+        builder.predictTable().setPredictionCache(cache);
+        assertEquals(expected, shape(builder.createParser("x go;").parse().start()));
+        assertEquals(expected, shape(builder.createParser("x go;").parse().start()));
+        assertEquals(0, cache.recordings(), cache.toString());
+    }
+
+    /**
+     * A parser of the code with the cache installed in the predict table.
+     */
+    private MyParser cached(PredictionCache cache, String code) {
+        builder.predictTable().setPredictionCache(cache);
+        return builder.createParser(code);
+    }
+
+    private static MyParserBuilder builder(String parser) {
+        return new MyParserBuilder(new StringReader(parser), new StringReader(LEXER));
+    }
+}
@@ -0,0 +1,120 @@
+package org.twelve.msll;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.twelve.msll.exception.GrammarSyntaxException;
+import org.twelve.msll.grammar.GrammarBuilder;
+import org.twelve.msll.grammarsymbol.Terminal;
+import org.twelve.msll.lexer.RegexLexer;
+import org.twelve.msll.lexer.TokenBuffer;
+import org.twelve.msll.parserbuilder.MsllParserBuilder;
+import org.twelve.msll.util.Constants;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * With {@link GrammarBuilder.Transform#PRUNING} grammars the start grammar never reaches are left out of the built
+ * grammar; terminals no production consumes are only tried where they may match, and end-of-line tokens are only
+ * made for grammars that refer to them.
+ */
+public class ReachabilityTest {
+    private static final String LEXER = """
+            ASSIGN: '=';
+            EQ: '==';
+            ID: /"[a-z]+"/;
+            NUMBER: /"[0-9]+"/;
+            WS: /"[ \\t]+"/ -> skip;
+            """;
+    private static final String PARSER = """
+            program
+                : assignment*
+                ;
+            assignment
+                : ID ASSIGN value
+                ;
+            value
+                : ID
+                | NUMBER
+                ;
+            comparison
+                : value EQ value
+                ;
+            """;
+
+    private static MsllParserBuilder builder(String parser) {
+        return new MsllParserBuilder(new StringReader(parser), new StringReader(LEXER),
+                Set.of(GrammarBuilder.Transform.PRUNING));
+    }
+
+    @Test
+    @SneakyThrows
+    void unreachable_grammars_are_removed() {
+        MsllParserBuilder builder = builder(PARSER);
+        assertNull(builder.grammars().get("comparison"));
+        assertNotNull(builder.grammars().get("value"));
+        builder.predictTable().cells().values().forEach(byGrammar ->
+                byGrammar.keySet().forEach(grammar -> assertNotEquals("comparison", grammar.name())));
+        assertDoesNotThrow(() -> builder.createParser("a = b\nc = 1").parse());
+        // a symbol no grammar is defined for is still an error, reachable or not
+        assertThrows(GrammarSyntaxException.class,
+                () -> builder(PARSER.replace("value EQ value", "value EQ missing")));
+
+        // without the transform every grammar is kept
+        MsllParserBuilder kept = new MsllParserBuilder(new StringReader(PARSER), new StringReader(LEXER));
+        assertNotNull(kept.grammars().get("comparison"));
+        assertTrue(kept.grammars().expectedTerminals().contains(kept.terminals().fromName("EQ")));
+    }
+
+    @Test
+    @SneakyThrows
+    void terminals_the_parser_does_not_expect_still_match() {
+        MsllParserBuilder builder = builder(PARSER);
+        Terminal eq = builder.terminals().fromName("EQ");
+        assertFalse(builder.grammars().expectedTerminals().contains(eq));
+        assertTrue(builder.grammars().expectedTerminals().contains(builder.terminals().fromName("ASSIGN")));
+
+        String code = "a == b\nc = d1";
+        List<String> expected = lex(builder, code);
+        builder.terminals().expect(null).compile();
+        List<String> all = lex(builder, code);
+        assertEquals(all, expected);
+        // the longest match is still the terminal no production consumes
+        assertTrue(expected.contains("EQ == 2"), expected.toString());
+        assertThrows(GrammarSyntaxException.class, () -> builder.createParser("a == b").parse());
+    }
+
+    @Test
+    @SneakyThrows
+    void end_of_line_tokens_are_made_for_grammars_referring_to_them() {
+        MsllParserBuilder plain = builder(PARSER);
+        assertFalse(plain.grammars().expectsLineEnds());
+        assertFalse(lineEnds(lex(plain, "a = b\nc = d")));
+        assertDoesNotThrow(() -> plain.createParser("a = b\nc = d").parse());
+
+        MsllParserBuilder predicated = builder(PARSER.replace("ID ASSIGN value",
+                "ID ASSIGN {notLineTerminator()} value"));
+        assertTrue(predicated.grammars().expectsLineEnds());
+        assertTrue(lineEnds(lex(predicated, "a = b\nc = d")));
+        assertDoesNotThrow(() -> predicated.createParser("a = b\nc = d").parse());
+    }
+
+    private static boolean lineEnds(List<String> lexed) {
+        return lexed.stream().anyMatch(token -> token.startsWith(Constants.EOL_STR + " "));
+    }
+
+    private static List<String> lex(MsllParserBuilder builder, String code) {
+        TokenBuffer tokens = new RegexLexer(new StringReader(code), builder.terminals(),
+                builder.grammars().expectsLineEnds()).scan();
+        List<String> lexed = new ArrayList<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            lexed.add(tokens.get(i).terminal().name() + " " + tokens.get(i).lexeme() + " "
+                    + tokens.get(i).location().start());
+        }
+        return lexed;
+    }
+}
@@ -0,0 +1,58 @@
+package org.twelve.msll;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.twelve.msll.exception.GrammarSyntaxException;
+import org.twelve.msll.parser.MyParser;
+import org.twelve.msll.parserbuilder.MyParserBuilder;
+import org.twelve.msll.parsetree.NonTerminalNode;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.twelve.msll.ParseTrees.locatedShape;
+
+/**
+ * One parser reset for input after input gives the trees and statistics of fresh parsers, and leaves the trees it
+ * returned before as they were.
+ */
+public class ReusableParserTest {
+    private static final String[] INPUTS = {
+            "let a = 1;",
+            "var result = fx(x,y,z){ { { let more = 1+counter; me.age+more+x(y,z) } } };",
+            "let me = { age: 40, name: { first: \"Will\", last: \"Zhang\" } };\ncounter += result((a,b)->a+b,1,2);",
+            "let a = 1;"
+    };
+
+    @Test
+    @SneakyThrows
+    void a_reset_parser_matches_fresh_parsers() {
+        MyParserBuilder builder = new MyParserBuilder("outlineParser.gm", "outlineLexer.gm");
+        MyParser reused = builder.createParser(INPUTS[0]);
+        NonTerminalNode[] trees = new NonTerminalNode[INPUTS.length];
+        String[] shapes = new String[INPUTS.length];
+        for (int i = 0; i < INPUTS.length; i++) {
+            if (i > 0) reused.reset(INPUTS[i]);
+            trees[i] = reused.parse().start();
+            shapes[i] = locatedShape(trees[i]);
+
+            MyParser fresh = builder.createParser(INPUTS[i]);
+            assertEquals(locatedShape(fresh.parse().start()), shapes[i]);
+            assertEquals(fresh.totalStackSize(), reused.totalStackSize());
+            assertEquals(fresh.maxStackSize(), reused.maxStackSize());
+        }
+        for (int i = 0; i < INPUTS.length; i++) {
+            assertEquals(shapes[i], locatedShape(trees[i]), "tree " + i + " was changed by a later parse");
+        }
+        assertNotSame(trees[0], trees[3]);
+    }
+
+    @Test
+    @SneakyThrows
+    void a_parser_is_reusable_after_a_syntax_error() {
+        MyParserBuilder builder = new MyParserBuilder("outlineParser.gm", "outlineLexer.gm");
+        MyParser parser = builder.createParser("let b = me.get(1;");
+        assertThrows(GrammarSyntaxException.class, parser::parse);
+        parser.reset(new StringBuilder("let a = ").append(1).append(';'));
+        assertEquals(locatedShape(builder.createParser("let a = 1;").parse().start()), locatedShape(parser.parse().start()));
+        assertTrue(parser.syntaxErrors().isEmpty());
+    }
+}
@@ -0,0 +1,101 @@
+package org.twelve.msll;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.twelve.msll.grammar.GrammarSnapshot;
+import org.twelve.msll.parser.MyParser;
+import org.twelve.msll.parserbuilder.MsllParserBuilder;
+import org.twelve.msll.parserbuilder.MyParserBuilder;
+import org.twelve.msll.parserbuilder.ParserBuilder;
+import org.twelve.msll.tools.G4GrammarLoader;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.twelve.msll.ParseTrees.shape;
+
+/**
+ * A builder saved as a {@link GrammarSnapshot} and loaded back parses exactly as the builder that was saved, without
+ * running the grammar pipeline.
+ */
+public class SnapshotTest {
+    private static final String CODE = """
+            let me = {
+                age: 40,
+                name: { first: "Will", last: "Zhang" },
+                make_friend: friend -> this.friends.put(friend.name[0], friend)
+            };
+            var result = fx(x,y,z){ { {
+                let more = 1+counter;
+                me.friends.get("Noble").age+me.age+more+x(y,z)
+            } } };
+            counter += result((a,b)->a+b,1,2);""";
+
+    private static final String MODAL_G4 =
+            "grammar kv;\n"
+            + "root : line+ EOF ;\n"
+            + "line : KEY SEP VALUE NL ;\n"
+            + "KEY  : [A-Za-z_] [A-Za-z_0-9]* ;\n"
+            + "SEP  : '=' -> pushMode(VAL) ;\n"
+            + "NL   : '\\n' ;\n"
+            + "WS   : [ \\t]+ -> skip ;\n"
+            + "mode VAL;\n"
+            + "VALUE  : ~[\\r\\n]+ -> popMode ;\n"
+            + "NL_VAL : '\\n' -> type(NL), popMode ;\n";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @SneakyThrows
+    void loaded_outline_grammar_parses_as_the_saved_one() {
+        MyParserBuilder built = new MyParserBuilder("outlineParser.gm", "outlineLexer.gm");
+        MsllParserBuilder loaded = saveAndLoad(built);
+
+        assertEquals(built.grammars().size(), loaded.grammars().size());
+        assertEquals(built.terminals().values().size(), loaded.terminals().values().size());
+        assertNull(loaded.parserGrammarTree());
+        assertParsesAlike(built, loaded, CODE);
+        assertParsesAlike(built, loaded, "let a = 1;");
+    }
+
+    @Test
+    @SneakyThrows
+    void loaded_g4_grammar_keeps_its_modes_and_table_settings() {
+        MsllParserBuilder built = G4GrammarLoader.loadG4String(null, MODAL_G4).builder;
+        MsllParserBuilder loaded = saveAndLoad(built);
+
+        assertTrue(loaded.predictTable().autoEpsilonAlongsideEnabled());
+        assertEquals(built.predictTable().autoEpsilonAlongsideCells(), loaded.predictTable().autoEpsilonAlongsideCells());
+        assertEquals("VAL", loaded.terminals().fromName("VALUE").mode());
+        assertEquals(built.terminals().fromName("SEP").getCommand(), loaded.terminals().fromName("SEP").getCommand());
+        assertParsesAlike(built, loaded, "host=hello world\nport=8080\n");
+    }
+
+    @Test
+    void snapshot_of_another_version_is_rejected() throws IOException {
+        Path file = dir.resolve("old.msll");
+        Files.write(file, new byte[]{'M', 'S', 'L', 'L', 0, 0, 0, 0});
+        IOException error = assertThrows(IOException.class, () -> MsllParserBuilder.load(file));
+        assertTrue(error.getMessage().contains("version"));
+        Files.write(file, new byte[]{1, 2, 3, 4});
+        assertThrows(IOException.class, () -> MsllParserBuilder.load(file));
+    }
+
+    private MsllParserBuilder saveAndLoad(ParserBuilder<?, ?> builder) throws IOException {
+        Path file = dir.resolve("grammar.msll");
+        builder.save(file);
+        return MsllParserBuilder.load(file);
+    }
+
+    private static void assertParsesAlike(ParserBuilder<?, ?> built, MsllParserBuilder loaded, String code) {
+        var expected = built.createParser(new StringReader(code));
+        MyParser actual = loaded.createParser(new StringReader(code));
+        assertEquals(shape(expected.parse().start()), shape(actual.parse().start()));
+        assertEquals(expected.totalStackSize(), actual.totalStackSize());
+    }
+}
@@ -0,0 +1,52 @@
+package org.twelve.msll;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.twelve.msll.exception.GrammarSyntaxException;
+import org.twelve.msll.parser.MyParser;
+import org.twelve.msll.parserbuilder.MyParserBuilder;
+
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A failing fork only records what went wrong; the message is rendered once, for the last stack that fails, and
+ * reads exactly as it did when every failure threw.
+ */
+public class SyntaxErrorTest {
+    private static final String NL = System.lineSeparator();
+
+    private MyParserBuilder forking() throws Exception {
+        return new MyParserBuilder(new StringReader("s: A B C | A B D;"),
+                new StringReader("A:\"a\"; B:\"b\"; C:\"c\"; D:\"d\";"));
+    }
+
+    @Test
+    @SneakyThrows
+    void a_failing_fork_leaves_the_others_running() {
+        MyParser parser = forking().createParser("a b d");
+        assertEquals("abd", parser.parse().start().lexeme());
+        assertTrue(parser.totalStackSize() > 1, "the sample forks");
+    }
+
+    @Test
+    @SneakyThrows
+    void the_last_failing_stack_reports_the_error() {
+        GrammarSyntaxException e = assertThrows(GrammarSyntaxException.class,
+                () -> forking().createParser("a b a").parse());
+        assertEquals("unexpected token: a, expected token in s is D, at line:0, position: 4 - 5" + NL + "a b a",
+                e.getMessage());
+    }
+
+    @Test
+    @SneakyThrows
+    void a_missing_cell_lists_the_candidates() {
+        MyParserBuilder builder = new MyParserBuilder("outlineParser.gm", "outlineLexer.gm");
+        GrammarSyntaxException e = assertThrows(GrammarSyntaxException.class,
+                () -> builder.createParser("let a = 1;\nlet b = me.get(1;").parse());
+        assertTrue(e.getMessage().contains("token: SEMICOLON:; doesn't match any grammar definition at line: 1, "
+                + "position from 16 to 17" + NL + "let b = me.get(1;" + NL), e.getMessage());
+        assertTrue(e.getMessage().contains(" the possible productions should be matched would be:"), e.getMessage());
+    }
+}
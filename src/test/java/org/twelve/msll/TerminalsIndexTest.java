@@ -0,0 +1,67 @@
+package org.twelve.msll;
+
+import org.junit.jupiter.api.Test;
+import org.twelve.msll.grammarsymbol.Terminal;
+import org.twelve.msll.grammarsymbol.Terminals;
+import org.twelve.msll.util.Constants;
+import org.twelve.msll.util.RegexString;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Terminals are looked up through hash indexes by name and by pattern; where several terminals qualify, the one
+ * defined first still wins, as with the former scans of the list.
+ */
+public class TerminalsIndexTest {
+
+    @Test
+    void lookups_by_name_and_pattern() {
+        Terminals terminals = Terminals.newBare();
+        Terminal arrow = terminals.addTerminal("ARROW", "->");
+        assertSame(arrow, terminals.fromName("ARROW"));
+        assertSame(arrow, terminals.fromName(" ARROW "));
+        assertSame(arrow, terminals.fromName("\"->\""), "a quoted lexeme finds the terminal by pattern");
+        assertSame(arrow, terminals.fromPattern("->"));
+        assertNull(terminals.fromName("ARROWS"));
+        assertNull(terminals.fromPattern(""));
+        assertNull(terminals.fromName(Constants.COLON_STR), "the bare seed drops the punctuation");
+    }
+
+    @Test
+    void the_earliest_definition_wins() {
+        Terminals terminals = Terminals.newBare();
+        Terminal id = terminals.addTerminal("ID", new RegexString("[a-z]+"));
+        // named like the pattern of ID: both match the lexeme "[a-z]+"
+        Terminal named = terminals.addTerminal("[a-z]+", "x");
+        assertSame(id, terminals.fromName("[a-z]+"));
+
+        Terminal inserted = terminals.addIfAbsent(new Terminal("FIRST", "[a-z]+x"));
+        Terminal later = terminals.addTerminal("LATER", "[a-z]+x");
+        assertSame(inserted, terminals.fromPattern("[a-z]+x"), "addIfAbsent puts its terminal in front");
+        assertSame(terminals.values().get(0), inserted);
+        assertNotSame(later, terminals.fromPattern("[a-z]+x"));
+        assertSame(named, terminals.fromPattern("x"));
+    }
+
+    @Test
+    void a_redefinition_is_reindexed() {
+        Terminals terminals = Terminals.newBare();
+        Terminal close = terminals.addSymbol(new Terminal("CloseBrace", "}"));
+        Terminal template = new Terminal("TemplateCloseBrace", "}");
+        assertSame(close, terminals.addSymbol(template), "same pattern and mode: absorbed");
+
+        assertEquals("TemplateCloseBrace", close.name());
+        assertSame(close, terminals.fromName("TemplateCloseBrace"));
+        assertSame(close, terminals.fromName("CloseBrace"), "the displaced name resolves through its alias");
+        assertSame(close, terminals.fromPattern("}"));
+        assertSame(close, terminals.values().get(terminals.values().size() - 1), "moved to the end");
+        assertEquals(1, terminals.values().stream().filter(t -> t.pattern().equals("}")).count());
+
+        Terminal other = new Terminal("NL_VAL", "\\n");
+        other.setMode("VAL");
+        Terminal nl = terminals.addSymbol(new Terminal("NL", "\\n"));
+        assertSame(other, terminals.addSymbol(other), "same pattern in another mode: kept apart");
+        assertSame(nl, terminals.fromPattern("\\n"));
+        assertSame(other, terminals.fromName("NL_VAL"));
+    }
+}
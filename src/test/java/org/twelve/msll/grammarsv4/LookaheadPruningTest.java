@@ -0,0 +1,92 @@
+package org.twelve.msll.grammarsv4;
+
+import org.junit.jupiter.api.Test;
+import org.twelve.msll.parser.MyParser;
+import org.twelve.msll.parsetree.NonTerminalNode;
+import org.twelve.msll.parsetree.ParseNode;
+import org.twelve.msll.parsetree.ParserTree;
+import org.twelve.msll.parserbuilder.MyParserBuilder;
+import org.twelve.msll.tools.G4GrammarLoader;
+
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Locks in build-time LL(k) fork pruning: at a conflicted predict-table cell
+ * the parser peeks the next k tokens and clones stacks only for the
+ * productions that can still match them.
+ *
+ * <p>Pruning must be invisible in the result: the tree is the one the
+ * unpruned multi-stack run produces, only fewer stacks are created on the
+ * way there.
+ */
+public class LookaheadPruningTest {
+
+    private static final String ABNF_SHAPE = ""
+            + "grammar G;\n"
+            + "prog   : rule_* EOF ;\n"
+            + "rule_  : ID '=' body ;\n"
+            + "body   : atom+ ;\n"
+            + "atom   : ID | STRING ;\n"
+            + "ID     : [A-Za-z] [A-Za-z0-9]* ;\n"
+            + "STRING : '\"' ~'\"'* '\"' ;\n"
+            + "WS     : [ \\t\\r\\n]+ -> skip ;\n";
+
+    private static final String INPUT = "ALPHA = FOO BAR\nBETA  = \"b\"\nGAMMA = C D \"e\"\n";
+
+    /**
+     * The epsilon-alongside cell on {@code ID} (continue {@code atom+} or
+     * start the next rule) is decided by the token after {@code ID}: an
+     * {@code '='} means a new rule. With LL(2) the doomed fork is never cloned.
+     */
+    @Test
+    void epsilon_alongside_cell_is_decided_without_forking() {
+        G4GrammarLoader.Loaded loaded = G4GrammarLoader.loadG4String(null, ABNF_SHAPE);
+        assertEquals(2, loaded.builder.predictTable().lookahead(), "G4 loader opts in to LL(2) pruning");
+
+        MyParser pruned = loaded.builder.createParser(new StringReader(INPUT));
+        String prunedTree = shape(pruned.parse().start());
+        int prunedStacks = pruned.totalStackSize();
+
+        loaded.builder.predictTable().setLookahead(1);
+        MyParser forked = loaded.builder.createParser(new StringReader(INPUT));
+        String forkedTree = shape(forked.parse().start());
+
+        assertEquals(forkedTree, prunedTree);
+        assertTrue(prunedStacks < forked.totalStackSize(),
+                "LL(2) should clone fewer stacks: " + prunedStacks + " vs " + forked.totalStackSize());
+        assertEquals(1, prunedStacks, "every conflict in this input is decided by the second token");
+    }
+
+    /**
+     * Legacy .gm builders keep the single-token table so their hand-tuned fork
+     * behaviour is unchanged; opting in must still yield the same tree.
+     */
+    @Test
+    void outline_grammar_is_unchanged_by_opt_in_lookahead() throws Exception {
+        MyParserBuilder builder = new MyParserBuilder("outlineParser.gm", "outlineLexer.gm");
+        assertEquals(1, builder.predictTable().lookahead());
+        String code = "let me = {name: (\"Will\", \"Zhang\"), age: 40};\n"
+                + "me.make_friend(friend -> this.friends.put(friend.name[0], friend));";
+
+        MyParser plain = builder.createParser(code);
+        ParserTree expected = plain.parse();
+
+        builder.predictTable().setLookahead(2);
+        MyParser pruned = builder.createParser(code);
+        ParserTree actual = pruned.parse();
+
+        assertEquals(shape(expected.start()), shape(actual.start()));
+        assertTrue(pruned.totalStackSize() <= plain.totalStackSize());
+    }
+
+    /** Bracketed rendering of the full tree shape: rule names, explains and token lexemes. */
+    static String shape(ParseNode node) {
+        if (!(node instanceof NonTerminalNode)) return node.lexeme();
+        NonTerminalNode nt = (NonTerminalNode) node;
+        StringBuilder sb = new StringBuilder(nt.name()).append('#').append(nt.explain()).append('(');
+        for (ParseNode child : nt.nodes()) sb.append(shape(child)).append(' ');
+        return sb.append(')').toString();
+    }
+}